@@ -0,0 +1,370 @@
+package com.example.menuesporas;
+
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+
+import android.content.ContentResolver;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.MediaStore;
+import android.util.Log;
+import android.widget.Button;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.SeekBar;
+import android.widget.TextView;
+
+import com.example.menuesporas.detector.DetectionParams;
+import com.example.menuesporas.detector.DetectionResult;
+import com.example.menuesporas.detector.IncrementalDetector;
+
+import org.opencv.android.OpenCVLoader;
+import org.opencv.android.Utils;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+
+/**
+ * *AjusteParametros*: Pantalla para ajustar un preset sobre una imagen con deslizadores. La imagen se carga una
+ * sola vez en un {@link IncrementalDetector}, que guarda el resultado de cada etapa del pipeline: mover un
+ * deslizador de los filtros de forma (área, circularidad, solidez) solo vuelve a filtrar los contornos, y
+ * mover el de la constante C vuelve a empezar desde el umbral.
+ *
+ * Mientras se analiza, los movimientos de los deslizadores no se encolan: se analiza una sola vez más al
+ * terminar, con los últimos valores.
+ */
+public class AjusteParametros extends AppCompatActivity {
+
+    private static final String TAG = "AjusteParametros";
+    private static final int ELEGIR_IMAGEN = 200;
+
+    private ImageView imageView;
+    private TextView textoEstado;
+    private TextView textoResultado;
+    private DetectionParams parametros;
+
+    private Sesion sesion;
+    // Vista previa en pantalla; vuelve al BitmapPool del motor cuando la reemplaza la siguiente.
+    private Bitmap vistaPrevia;
+    private AnalysisEngine.Tarea<?> tareaActual;
+    private boolean analizando;
+    private boolean pendiente;
+
+    static {
+        if (!OpenCVLoader.initDebug()) {
+            Log.e(TAG, "Error crítico: No se pudo cargar la biblioteca OpenCV.");
+        }
+    }
+
+    /**
+     * Lee el valor de un parámetro.
+     */
+    private interface Lector {
+        double leer(DetectionParams p);
+    }
+
+    /**
+     * Escribe el valor de un parámetro en el Builder (p son los parámetros actuales, para los valores en pareja).
+     */
+    private interface Escritor {
+        void escribir(DetectionParams.Builder b, DetectionParams p, double valor);
+    }
+
+    /**
+     * Un deslizador: rango, paso y cómo se lee y escribe su parámetro.
+     */
+    private static final class Deslizador {
+        final String nombre;
+        final double minimo;
+        final double maximo;
+        final double paso;
+        final Lector lector;
+        final Escritor escritor;
+
+        Deslizador(String nombre, double minimo, double maximo, double paso, Lector lector, Escritor escritor) {
+            this.nombre = nombre;
+            this.minimo = minimo;
+            this.maximo = maximo;
+            this.paso = paso;
+            this.lector = lector;
+            this.escritor = escritor;
+        }
+
+        int pasos() {
+            return (int) Math.round((maximo - minimo) / paso);
+        }
+
+        double valor(int progreso) {
+            return minimo + progreso * paso;
+        }
+
+        int progreso(double valor) {
+            return Math.max(0, Math.min(pasos(), (int) Math.round((valor - minimo) / paso)));
+        }
+    }
+
+    // Ordenados como el pipeline: los primeros recalculan más etapas.
+    private static final Deslizador[] DESLIZADORES = {
+            new Deslizador("Desenfoque (kernel)", 1, 15, 2, p -> p.blurKernelSize,
+                    (b, p, v) -> b.blurKernelSize((int) v)),
+            new Deslizador("Tamaño de bloque del umbral", 3, 51, 2, p -> p.adaptiveBlockSize,
+                    (b, p, v) -> b.adaptiveBlockSize((int) v)),
+            new Deslizador("Constante C del umbral", -10, 20, 0.5, p -> p.adaptiveC,
+                    (b, p, v) -> b.adaptiveC(v)),
+            new Deslizador("Iteraciones de apertura", 0, 5, 1, p -> p.openIterations,
+                    (b, p, v) -> b.open(p.openKernelSize, (int) v)),
+            new Deslizador("Iteraciones de cierre", 0, 5, 1, p -> p.closeIterations,
+                    (b, p, v) -> b.close(p.closeKernelSize, (int) v)),
+            new Deslizador("Área mínima (px)", 0, 100, 1, p -> p.minArea,
+                    (b, p, v) -> b.area(v, p.maxArea)),
+            new Deslizador("Área máxima (px)", 10, 1000, 10, p -> p.maxArea,
+                    (b, p, v) -> b.area(p.minArea, v)),
+            new Deslizador("Circularidad mínima", 0, 1, 0.05, p -> p.minCircularity,
+                    (b, p, v) -> b.minCircularity(v)),
+            new Deslizador("Solidez mínima", 0, 1, 0.05, p -> p.minSolidity,
+                    (b, p, v) -> b.minSolidity(v)),
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.ajusteparametros);
+
+        imageView = findViewById(R.id.imagenAjuste);
+        textoEstado = findViewById(R.id.textoEstadoAjuste);
+        textoResultado = findViewById(R.id.textoResultadoAjuste);
+        Button btnElegirImagen = findViewById(R.id.btnElegirImagenAjuste);
+        LinearLayout contenedor = findViewById(R.id.contenedorDeslizadores);
+
+        String tipoHongo = getIntent().getStringExtra("tipo_espora");
+        parametros = PresetRepository.get(this).resolver(getIntent().getStringExtra("preset_id"), tipoHongo);
+
+        for (Deslizador deslizador : DESLIZADORES) {
+            agregarDeslizador(contenedor, deslizador);
+        }
+
+        btnElegirImagen.setOnClickListener(v -> {
+            Intent intent = new Intent(Intent.ACTION_PICK, MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
+            startActivityForResult(intent, ELEGIR_IMAGEN);
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (tareaActual != null) {
+            tareaActual.cancelar();
+            tareaActual = null;
+        }
+        if (sesion != null) {
+            sesion.release();
+            sesion = null;
+        }
+        mostrarVistaPrevia(null);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == ELEGIR_IMAGEN && resultCode == RESULT_OK && data != null && data.getData() != null) {
+            cargarImagen(data.getData());
+        }
+    }
+
+    private void agregarDeslizador(LinearLayout contenedor, Deslizador deslizador) {
+        TextView etiqueta = new TextView(this);
+        SeekBar barra = new SeekBar(this);
+        barra.setMax(deslizador.pasos());
+        barra.setProgress(deslizador.progreso(deslizador.lector.leer(parametros)));
+        etiqueta.setText(etiqueta(deslizador, deslizador.lector.leer(parametros)));
+        barra.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                if (!fromUser) return;
+                double valor = deslizador.valor(progress);
+                DetectionParams.Builder builder = parametros.toBuilder();
+                deslizador.escritor.escribir(builder, parametros, valor);
+                parametros = builder.build();
+                etiqueta.setText(etiqueta(deslizador, valor));
+                programarAnalisis();
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+            }
+        });
+        contenedor.addView(etiqueta);
+        contenedor.addView(barra);
+    }
+
+    private static String etiqueta(Deslizador deslizador, double valor) {
+        return String.format(Locale.getDefault(), "%s: %s", deslizador.nombre,
+                deslizador.paso >= 1 ? String.valueOf((int) valor) : String.format(Locale.getDefault(), "%.2f", valor));
+    }
+
+    /**
+     * Decodifica la imagen y prepara la sesión de ajuste en el AnalysisEngine; después lanza el primer análisis.
+     */
+    private void cargarImagen(Uri uri) {
+        if (tareaActual != null) tareaActual.cancelar();
+        if (sesion != null) sesion.release();
+        sesion = null;
+        analizando = false;
+        pendiente = false;
+        textoEstado.setText("Cargando imagen...");
+
+        ContentResolver resolver = getContentResolver();
+        DetectionParams params = parametros;
+        tareaActual = AnalysisEngine.get().enviar(progreso -> {
+            BitmapPool bitmaps = AnalysisEngine.get().bitmaps();
+            Bitmap bitmap = ImageLoader.decodificar(resolver, uri, params.workWidth, params.workHeight, bitmaps);
+            try {
+                return new Sesion(ImageLoader.luminancia(bitmap, params), ImageLoader.colorDeZona(bitmap, params));
+            } finally {
+                bitmaps.devolver(bitmap);
+            }
+        }, new AnalysisEngine.Callback<Sesion>() {
+            @Override
+            public void onProgreso(int porcentaje, String etapa) {
+            }
+
+            @Override
+            public void onResultado(Sesion nueva) {
+                sesion = nueva;
+                textoEstado.setText("Mueve los deslizadores para ajustar el preset.");
+                programarAnalisis();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "No se pudo cargar la imagen: " + e.getMessage(), e);
+                textoEstado.setText("Error al cargar la imagen.");
+            }
+        }, Sesion::release);
+    }
+
+    /**
+     * Analiza con los parámetros actuales, o lo deja pendiente si ya hay un análisis en curso.
+     */
+    private void programarAnalisis() {
+        if (sesion == null) return;
+        if (analizando) {
+            pendiente = true;
+            return;
+        }
+        analizando = true;
+        pendiente = false;
+
+        Sesion actual = sesion;
+        DetectionParams params = parametros;
+        tareaActual = AnalysisEngine.get().enviar(progreso -> actual.analizar(params, progreso),
+                new AnalysisEngine.Callback<ResultadoAnalisis>() {
+                    @Override
+                    public void onProgreso(int porcentaje, String etapa) {
+                        textoEstado.setText("Analizando... " + porcentaje + "% (" + etapa + ")");
+                    }
+
+                    @Override
+                    public void onResultado(ResultadoAnalisis resultado) {
+                        mostrarVistaPrevia(resultado.imagen);
+                        textoResultado.setText(resultado.texto);
+                        textoEstado.setText("Mueve los deslizadores para ajustar el preset.");
+                        terminarAnalisis();
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        Log.e(TAG, "Error durante el ajuste: " + e.getMessage(), e);
+                        textoEstado.setText("Error al analizar la imagen.");
+                        terminarAnalisis();
+                    }
+                }, resultado -> AnalysisEngine.get().bitmaps().devolver(resultado.imagen));
+    }
+
+    /**
+     * Muestra la nueva vista previa y devuelve la anterior al pool, que ya no está en pantalla.
+     */
+    private void mostrarVistaPrevia(@Nullable Bitmap nueva) {
+        Bitmap anterior = vistaPrevia;
+        vistaPrevia = nueva;
+        imageView.setImageBitmap(nueva);
+        AnalysisEngine.get().bitmaps().devolver(anterior);
+    }
+
+    private void terminarAnalisis() {
+        analizando = false;
+        if (pendiente) programarAnalisis();
+    }
+
+    /**
+     * Imagen cargada para ajustar: el detector incremental (dueño de la luminancia) y la zona en color sobre la
+     * que se dibujan los contornos. Se usa desde los hilos del motor; {@link #release()} se puede llamar desde el
+     * hilo principal sin esperar al análisis en curso.
+     */
+    private static final class Sesion {
+        private final IncrementalDetector detector;
+        private final Mat color;
+        private volatile boolean liberada;
+        private boolean matsLiberados;
+
+        Sesion(Mat luminancia, Mat color) {
+            this.detector = new IncrementalDetector(luminancia);
+            this.color = color;
+        }
+
+        synchronized ResultadoAnalisis analizar(DetectionParams params, AnalysisEngine.Progreso progreso) {
+            // La imagen se cambió o se cerró la pantalla mientras este análisis esperaba en la cola.
+            if (liberada) throw new CancellationException();
+            DetectionResult deteccion = detector.detect(params, progreso);
+            progreso.metricas().registrar(deteccion);
+            // Cada movimiento de un deslizador dibuja una vista previa: el Mat y el Bitmap salen de los pools.
+            AnalysisEngine motor = AnalysisEngine.get();
+            Mat dibujo = motor.mats().obtener(color.rows(), color.cols(), color.type());
+            try {
+                color.copyTo(dibujo);
+                progreso.reportar(95, "Dibujando resultado");
+                Imgproc.drawContours(dibujo, deteccion.contornos, -1, new Scalar(0, 255, 0), params.drawContourThickness);
+                Bitmap imagen = motor.bitmaps().obtener(dibujo.cols(), dibujo.rows(), Bitmap.Config.ARGB_8888);
+                Utils.matToBitmap(dibujo, imagen);
+
+                String texto = "Esporas detectadas: " + deteccion.getConteo()
+                        + "\nContornos encontrados: " + deteccion.contornosIniciales
+                        + String.format(Locale.getDefault(), "\nRecalculado desde: %s (%.1f ms)",
+                        IncrementalDetector.nombreEtapa(detector.getUltimaEtapaInicial()),
+                        detector.getUltimaDuracionNanos() / 1e6)
+                        + "\nFiltrado: " + deteccion.estadisticasFiltro
+                        + "\nParámetros: " + params;
+                return new ResultadoAnalisis(imagen, texto);
+            } finally {
+                motor.mats().devolver(dibujo);
+                deteccion.release();
+            }
+        }
+
+        /**
+         * Marca la sesión como liberada (los análisis encolados ya no empiezan) y libera los Mats en un hilo del
+         * motor, que espera a que termine el análisis en curso.
+         */
+        void release() {
+            if (liberada) return;
+            liberada = true;
+            AnalysisEngine.get().liberar(this::liberarMats);
+        }
+
+        private synchronized void liberarMats() {
+            if (matsLiberados) return;
+            matsLiberados = true;
+            detector.release();
+            color.release();
+        }
+    }
+}
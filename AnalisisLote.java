@@ -0,0 +1,375 @@
+package com.example.menuesporas;
+
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+
+import android.content.ClipData;
+import android.content.ContentResolver;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.DocumentsContract;
+import android.util.Log;
+import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.TextView;
+
+import com.example.menuesporas.detector.BatchReport;
+import com.example.menuesporas.detector.ComponentSporeCounter;
+import com.example.menuesporas.detector.DensityClassifier;
+import com.example.menuesporas.detector.DetectionMonitor;
+import com.example.menuesporas.detector.DetectionParams;
+import com.example.menuesporas.detector.DetectionPresets;
+import com.example.menuesporas.detector.DetectionResult;
+import com.example.menuesporas.detector.PipelineMetrics;
+import com.example.menuesporas.detector.SporeDetector;
+
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * *AnalisisLote*: Análisis por lotes. El usuario elige varias imágenes (selección múltiple) o una carpeta
+ * completa (ACTION_OPEN_DOCUMENT_TREE) y se aplica a todas el preset de densidad elegido en elegirhongo.
+ *
+ * El lote se ejecuta como un único trabajo del AnalysisEngine en forma de pipeline: mientras se detectan
+ * las esporas de la imagen N, el hilo de decodificación del motor ya está decodificando la imagen N+1.
+ * Al terminar se muestra un informe con el conteo de cada imagen, la media, la desviación estándar y el
+ * total; durante el análisis se muestra el rendimiento en imágenes por minuto.
+ */
+public class AnalisisLote extends AppCompatActivity {
+
+    private static final String TAG = "AnalisisLote";
+    private static final int ELEGIR_IMAGENES = 200;
+    private static final int ELEGIR_CARPETA = 201;
+
+    private static final SporeDetector DETECTOR = new SporeDetector(AnalysisEngine.get().mats());
+    // El lote solo necesita el conteo: con "Conteo rápido" no se extraen los contornos de cada mancha.
+    private static final ComponentSporeCounter CONTEO_RAPIDO = new ComponentSporeCounter(AnalysisEngine.get().mats());
+
+    private TextView textoEstado;   // Progreso del lote y rendimiento.
+    private TextView textoInforme;  // Informe agregado al terminar.
+    private CheckBox checkConteoRapido;
+    private String tipoHongo;
+    private DetectionParams parametros;
+
+    // Lote en curso en el AnalysisEngine. Se cancela al elegir otro lote o al destruir la actividad.
+    private AnalysisEngine.Tarea<BatchReport> tareaActual;
+
+    static {
+        if (!OpenCVLoader.initDebug()) {
+            Log.e(TAG, "Error crítico: No se pudo cargar la biblioteca OpenCV.");
+        }
+    }
+
+    /**
+     * Imagen del lote: su URI y el nombre que se muestra en el informe.
+     */
+    static final class ImagenLote {
+        final Uri uri;
+        final String nombre;
+
+        ImagenLote(Uri uri, String nombre) {
+            this.uri = uri;
+            this.nombre = nombre != null ? nombre : String.valueOf(uri.getLastPathSegment());
+        }
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.analisislote);
+
+        textoEstado = findViewById(R.id.textoEstadoLote);
+        textoInforme = findViewById(R.id.textoInformeLote);
+        checkConteoRapido = findViewById(R.id.checkConteoRapido);
+        Button btnElegirImagenes = findViewById(R.id.btnElegirImagenes);
+        Button btnElegirCarpeta = findViewById(R.id.btnElegirCarpeta);
+        // Cada imagen del lote se agrega a los CSV de resultados en cuanto se analiza.
+        ExportadorResultados.conectar(this, findViewById(R.id.checkExportarEsporas),
+                findViewById(R.id.btnCompartirResultados));
+
+        tipoHongo = getIntent().getStringExtra("tipo_espora");
+        if (tipoHongo == null || tipoHongo.isEmpty()) {
+            tipoHongo = "default";
+        }
+        parametros = PresetRepository.get(this).resolver(getIntent().getStringExtra("preset_id"), tipoHongo);
+        Log.d(TAG, "Parámetros del lote: " + parametros);
+
+        btnElegirImagenes.setOnClickListener(v -> {
+            Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType("image/*");
+            intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+            startActivityForResult(intent, ELEGIR_IMAGENES);
+        });
+        btnElegirCarpeta.setOnClickListener(v ->
+                startActivityForResult(new Intent(Intent.ACTION_OPEN_DOCUMENT_TREE), ELEGIR_CARPETA));
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (tareaActual != null) {
+            tareaActual.cancelar();
+            tareaActual = null;
+        }
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (resultCode != RESULT_OK || data == null) {
+            return;
+        }
+        if (requestCode == ELEGIR_IMAGENES) {
+            List<ImagenLote> seleccion = new ArrayList<>();
+            ClipData clip = data.getClipData();
+            if (clip != null) {
+                for (int i = 0; i < clip.getItemCount(); i++) {
+                    Uri uri = clip.getItemAt(i).getUri();
+                    seleccion.add(new ImagenLote(uri, uri.getLastPathSegment()));
+                }
+            } else if (data.getData() != null) {
+                seleccion.add(new ImagenLote(data.getData(), data.getData().getLastPathSegment()));
+            }
+            analizarLote(seleccion, null);
+        } else if (requestCode == ELEGIR_CARPETA && data.getData() != null) {
+            analizarLote(null, data.getData());
+        }
+    }
+
+    /**
+     * Envía el lote al AnalysisEngine. Se pasa la selección de imágenes o la carpeta; la carpeta
+     * se lista ya en segundo plano.
+     */
+    private void analizarLote(@Nullable List<ImagenLote> seleccion, @Nullable Uri carpeta) {
+        if (tareaActual != null) {
+            tareaActual.cancelar();
+        }
+        textoEstado.setText("Preparando lote...");
+        textoInforme.setText("");
+
+        // El trabajo solo captura lo que necesita, nunca la actividad.
+        ContentResolver resolver = getContentResolver();
+        DetectionParams params = parametros;
+        String presetId = getIntent().getStringExtra("preset_id");
+        PresetRepository presetsAutomaticos = DetectionPresets.ID_AUTOMATICO.equals(presetId)
+                ? PresetRepository.get(this) : null;
+        String preset = presetId != null ? presetId : tipoHongo;
+        boolean conteoRapido = checkConteoRapido.isChecked();
+        ExportadorResultados exportador = ExportadorResultados.para(this);
+        tareaActual = AnalysisEngine.get().enviar(progreso -> {
+            List<ImagenLote> imagenes = carpeta != null ? listarCarpeta(resolver, carpeta) : seleccion;
+            return procesarLote(resolver, imagenes, params, preset, presetsAutomaticos, conteoRapido, exportador,
+                    progreso);
+        }, new AnalysisEngine.Callback<BatchReport>() {
+            @Override
+            public void onProgreso(int porcentaje, String etapa) {
+                textoEstado.setText(porcentaje + "% - " + etapa);
+            }
+
+            @Override
+            public void onResultado(BatchReport informe) {
+                textoEstado.setText(String.format(Locale.getDefault(), "Lote terminado: %.1f imágenes/min",
+                        informe.getImagenesPorMinuto()));
+                textoInforme.setText(formatearInforme(informe, tipoHongo));
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Error en el análisis por lotes: " + e.getMessage(), e);
+                textoEstado.setText("Error al analizar el lote.");
+            }
+        });
+    }
+
+    /**
+     * Lista las imágenes de la carpeta elegida con ACTION_OPEN_DOCUMENT_TREE, ordenadas por nombre.
+     */
+    static List<ImagenLote> listarCarpeta(ContentResolver resolver, Uri carpeta) {
+        List<ImagenLote> imagenes = new ArrayList<>();
+        Uri hijos = DocumentsContract.buildChildDocumentsUriUsingTree(carpeta, DocumentsContract.getTreeDocumentId(carpeta));
+        String[] columnas = {
+                DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+                DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+                DocumentsContract.Document.COLUMN_MIME_TYPE};
+        try (Cursor cursor = resolver.query(hijos, columnas, null, null, null)) {
+            if (cursor == null) return imagenes;
+            while (cursor.moveToNext()) {
+                String mime = cursor.getString(2);
+                if (mime != null && mime.startsWith("image/")) {
+                    Uri uri = DocumentsContract.buildDocumentUriUsingTree(carpeta, cursor.getString(0));
+                    imagenes.add(new ImagenLote(uri, cursor.getString(1)));
+                }
+            }
+        }
+        Collections.sort(imagenes, (a, b) -> a.nombre.compareToIgnoreCase(b.nombre));
+        return imagenes;
+    }
+
+    /**
+     * Pipeline del lote. Se ejecuta en un hilo del AnalysisEngine: la decodificación de la imagen
+     * siguiente se encarga al hilo de decodificación del motor antes de analizar la actual.
+     * Una imagen que no se puede decodificar se anota como fallida y el lote continúa.
+     * Si presetsAutomaticos no es null, el preset de cada imagen se elige estimando su densidad.
+     * Con conteoRapido, cada imagen se cuenta con ComponentSporeCounter, sin extraer los contornos.
+     * El resultado de cada imagen se escribe en los CSV de exportación en cuanto termina, así que el lote
+     * no guarda en memoria más que los conteos del informe.
+     */
+    static BatchReport procesarLote(ContentResolver resolver, List<ImagenLote> imagenes, DetectionParams params,
+                                    String preset, @Nullable PresetRepository presetsAutomaticos,
+                                    boolean conteoRapido, ExportadorResultados exportador,
+                                    AnalysisEngine.Progreso progreso) throws InterruptedException {
+        BatchReport informe = new BatchReport();
+        int total = imagenes.size();
+        if (total == 0) return informe;
+
+        // Las etapas de cada imagen no se publican (serían cientos de mensajes): solo se miden y se verifica la
+        // cancelación.
+        DetectionMonitor monitor = new DetectionMonitor() {
+            @Override
+            public void reportar(int porcentaje, String etapa) {
+                progreso.etapa(etapa);
+            }
+
+            @Override
+            public void verificarCancelacion() {
+                progreso.verificarCancelacion();
+            }
+        };
+
+        AnalysisEngine motor = AnalysisEngine.get();
+        long inicio = System.nanoTime();
+        progreso.avance(0, "Imagen 1 de " + total);
+        // Al terminar o cancelar el lote, la decodificación pendiente que todavía no empezó ya no decodifica.
+        AtomicBoolean descartar = new AtomicBoolean();
+        Future<Mat> siguiente = precargar(motor, resolver, imagenes.get(0), params, descartar);
+        try {
+            for (int i = 0; i < total; i++) {
+                ImagenLote imagen = imagenes.get(i);
+                Mat luminancia;
+                progreso.etapa("Esperando la decodificación");
+                try {
+                    luminancia = siguiente.get();
+                } catch (ExecutionException e) {
+                    Log.w(TAG, "No se pudo decodificar " + imagen.nombre, e.getCause());
+                    luminancia = null;
+                }
+                // La imagen N+1 se decodifica mientras se analiza la N.
+                siguiente = (i + 1 < total) ? precargar(motor, resolver, imagenes.get(i + 1), params, descartar)
+                        : null;
+
+                if (luminancia == null) {
+                    informe.agregarFallo(imagen.nombre);
+                } else {
+                    try {
+                        informe.agregar(imagen.nombre, contar(luminancia, imagen, params, preset, presetsAutomaticos,
+                                conteoRapido, exportador, monitor, progreso.metricas()));
+                    } finally {
+                        motor.mats().devolver(luminancia);
+                    }
+                }
+
+                int hechas = i + 1;
+                double porMinuto = BatchReport.imagenesPorMinuto(hechas, System.nanoTime() - inicio);
+                progreso.avance(hechas * 100 / total, String.format(Locale.getDefault(),
+                        "Imagen %d de %d, %.1f imágenes/min", hechas, total, porMinuto));
+            }
+        } finally {
+            // Si el lote se cancela, se descarta la decodificación pendiente. No se usa Future.cancel: devuelve true
+            // también con la decodificación en curso, y su Mat ya no volvería al pool. Se espera el resultado,
+            // que es null si no llegó a empezar.
+            if (siguiente != null) {
+                descartar.set(true);
+                motor.mats().devolver(esperarDescartada(siguiente));
+            }
+        }
+        informe.setDuracionNanos(System.nanoTime() - inicio);
+        Log.d(TAG, "Lote terminado: " + total + " imágenes, " + informe.getImagenesPorMinuto() + " imágenes/min");
+        return informe;
+    }
+
+    private static Future<Mat> precargar(AnalysisEngine motor, ContentResolver resolver, ImagenLote imagen,
+                                         DetectionParams params, AtomicBoolean descartar) {
+        // El hilo de decodificación entrega directamente la luminancia: el Bitmap no sale de él. Los dos salen de
+        // los pools del motor, así que el lote no reserva memoria nueva después de las primeras imágenes.
+        return motor.precargar(() -> descartar.get() ? null
+                : ImageLoader.decodificarLuminancia(resolver, imagen.uri, params, motor.bitmaps(), motor.mats()));
+    }
+
+    /**
+     * Espera una decodificación descartada para devolver su Mat al pool. Una interrupción (la del lote cancelado)
+     * no corta la espera: se restablece al final.
+     *
+     * @return La luminancia, o null si no se decodificó.
+     */
+    @Nullable
+    private static Mat esperarDescartada(Future<Mat> pendiente) {
+        boolean interrumpido = false;
+        try {
+            while (true) {
+                try {
+                    return pendiente.get();
+                } catch (InterruptedException e) {
+                    interrumpido = true;
+                } catch (ExecutionException ignorada) {
+                    // La imagen pendiente no se pudo decodificar.
+                    return null;
+                }
+            }
+        } finally {
+            if (interrumpido) Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int contar(Mat luminancia, ImagenLote imagen, DetectionParams params, String preset,
+                              @Nullable PresetRepository presetsAutomaticos, boolean conteoRapido,
+                              ExportadorResultados exportador, DetectionMonitor monitor, PipelineMetrics metricas) {
+        if (presetsAutomaticos != null) {
+            monitor.reportar(5, "Estimando densidad");
+            preset = DensityClassifier.estimar(luminancia).presetId;
+            params = presetsAutomaticos.porId(preset);
+        }
+        DetectionResult deteccion = conteoRapido ? CONTEO_RAPIDO.detect(luminancia, params, monitor)
+                : DETECTOR.detect(luminancia, params, monitor);
+        try {
+            metricas.registrar(deteccion);
+            monitor.reportar(90, "Exportando");
+            exportador.registrar(imagen.uri.toString(), preset, deteccion, Double.NaN);
+            return deteccion.getConteo();
+        } finally {
+            deteccion.release();
+        }
+    }
+
+    static String formatearInforme(BatchReport informe, String preset) {
+        StringBuilder texto = new StringBuilder();
+        texto.append("Preset: ").append(preset).append("\n\n");
+        for (BatchReport.Entrada entrada : informe.getEntradas()) {
+            texto.append(entrada.nombre).append(": ").append(entrada.conteo).append(" esporas\n");
+        }
+        texto.append("\nImágenes analizadas: ").append(informe.getImagenes()).append("\n");
+        texto.append("Total de esporas: ").append(informe.getTotal()).append("\n");
+        texto.append(String.format(Locale.getDefault(), "Media por imagen: %.1f esporas\n", informe.getMedia()));
+        texto.append(String.format(Locale.getDefault(), "Desviación estándar: %.1f esporas\n",
+                informe.getDesviacionEstandar()));
+        texto.append(String.format(Locale.getDefault(), "Rendimiento: %.1f imágenes/min\n",
+                informe.getImagenesPorMinuto()));
+        if (!informe.getFallidas().isEmpty()) {
+            texto.append("\nNo se pudieron analizar (").append(informe.getFallidas().size()).append("):\n");
+            for (String nombre : informe.getFallidas()) {
+                texto.append(nombre).append("\n");
+            }
+        }
+        return texto.toString();
+    }
+}
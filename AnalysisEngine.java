@@ -0,0 +1,357 @@
+package com.example.menuesporas;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.example.menuesporas.detector.DetectionMonitor;
+import com.example.menuesporas.detector.MatPool;
+import com.example.menuesporas.detector.PipelineMetrics;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * *AnalysisEngine*: Motor de análisis que ejecuta el pipeline de detección de esporas fuera del hilo
+ * principal. Es un singleton de proceso: las actividades envían trabajos y reciben el progreso y el
+ * resultado en el hilo de la UI, pero nunca son dueñas de los hilos del motor. Cada envío devuelve
+ * una {@link Tarea} que permite cancelar el trabajo (por ejemplo, cuando el usuario elige otra imagen
+ * o la actividad se destruye).
+ *
+ * También es dueño de los pools de memoria de los análisis ({@link #mats()} y {@link #bitmaps()}): los detectores
+ * y ImageLoader toman de ellos sus Mats y Bitmaps temporales, de modo que los lotes y el conteo en vivo trabajan
+ * con memoria nativa estable. En las compilaciones de depuración los préstamos se rastrean para detectar fugas.
+ *
+ * Cada trabajo mide sus etapas con unas {@link PipelineMetrics} (ver {@link Progreso}); al terminar se agregan en
+ * {@link #metricas()}.
+ */
+public final class AnalysisEngine {
+
+    private static final String TAG = "AnalysisEngine";
+
+    // Pocos hilos: cada análisis ya es intensivo en CPU y memoria nativa (Mats de OpenCV).
+    private static final int NUM_HILOS = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+    // Cola acotada: si el usuario encola más trabajos de los que el motor puede absorber, se rechazan.
+    private static final int CAPACIDAD_COLA = 4;
+    // Las bandas de un mismo análisis sí se reparten entre todos los núcleos.
+    private static final int NUM_HILOS_BANDAS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    // Cada imagen de trabajo de 640x480 usa unos 300 KB por Mat de un canal y 1,2 MB por Bitmap ARGB.
+    private static final int MATS_POR_TAMANO = 8;
+    private static final long MAX_BYTES_MATS = 24L * 1024 * 1024;
+    private static final int BITMAPS_POR_TAMANO = 3;
+    private static final long MAX_BYTES_BITMAPS = 16L * 1024 * 1024;
+
+    private static AnalysisEngine instancia;
+
+    private final ThreadPoolExecutor executor;
+    // Hilo aparte para decodificar la siguiente imagen de un lote mientras se analiza la actual, y para liberar
+    // los recursos que el hilo principal no debe esperar (ver liberar).
+    private final ThreadPoolExecutor decodificador;
+    // Hilos para las bandas de la detección por bandas (TiledSporeDetector).
+    private final ThreadPoolExecutor bandas;
+    private final Handler hiloPrincipal = new Handler(Looper.getMainLooper());
+    private final MatPool mats = new MatPool(MATS_POR_TAMANO, MAX_BYTES_MATS);
+    private final BitmapPool bitmaps = new BitmapPool(BITMAPS_POR_TAMANO, MAX_BYTES_BITMAPS);
+    private final MetricasAnalisis metricas = new MetricasAnalisis();
+
+    /**
+     * Trabajo de análisis que se ejecuta en un hilo del motor.
+     * Debe consultar {@link Progreso#verificarCancelacion()} entre etapas costosas.
+     */
+    public interface Trabajo<T> {
+        T ejecutar(Progreso progreso) throws Exception;
+    }
+
+    /**
+     * Receptor de eventos del trabajo. Todos los métodos se invocan en el hilo principal.
+     */
+    public interface Callback<T> {
+        void onProgreso(int porcentaje, String etapa);
+
+        void onResultado(T resultado);
+
+        void onError(Exception e);
+    }
+
+    /**
+     * Libera un resultado que terminó de calcularse pero no se entregó porque la tarea se canceló antes.
+     * Se invoca en un hilo del motor y no debe capturar la actividad que envió el trabajo.
+     */
+    public interface Descarte<T> {
+        void descartar(T resultado);
+    }
+
+    private AnalysisEngine() {
+        executor = new ThreadPoolExecutor(
+                NUM_HILOS,
+                NUM_HILOS,
+                30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(CAPACIDAD_COLA),
+                fabricaDeHilos("analisis-esporas-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+
+        decodificador = new ThreadPoolExecutor(
+                1,
+                1,
+                30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                fabricaDeHilos("decodificacion-esporas-"));
+        decodificador.allowCoreThreadTimeOut(true);
+
+        bandas = new ThreadPoolExecutor(
+                NUM_HILOS_BANDAS,
+                NUM_HILOS_BANDAS,
+                30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                fabricaDeHilos("bandas-esporas-"));
+        bandas.allowCoreThreadTimeOut(true);
+    }
+
+    private static ThreadFactory fabricaDeHilos(String prefijo) {
+        AtomicInteger contador = new AtomicInteger();
+        return r -> {
+            Thread hilo = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, prefijo + contador.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        };
+    }
+
+    public static synchronized AnalysisEngine get() {
+        if (instancia == null) {
+            instancia = new AnalysisEngine();
+        }
+        return instancia;
+    }
+
+    /**
+     * Encola un trabajo de análisis.
+     *
+     * @param trabajo  El trabajo a ejecutar en segundo plano.
+     * @param callback Receptor del progreso y del resultado (se invoca en el hilo principal).
+     * @return Una {@link Tarea} para cancelar el trabajo.
+     */
+    public <T> Tarea<T> enviar(Trabajo<T> trabajo, Callback<T> callback) {
+        return enviar(trabajo, callback, null);
+    }
+
+    /**
+     * Como {@link #enviar(Trabajo, Callback)}, para resultados que son dueños de memoria nativa o de Bitmaps de los
+     * pools: si la tarea se cancela después de que el trabajo terminó, el resultado se pasa a descarte.
+     *
+     * @param descarte Liberación del resultado no entregado, o null si basta con el recolector.
+     */
+    public <T> Tarea<T> enviar(Trabajo<T> trabajo, Callback<T> callback, Descarte<T> descarte) {
+        Tarea<T> tarea = new Tarea<>(callback, descarte);
+        try {
+            tarea.futuro = executor.submit(() -> ejecutar(tarea, trabajo));
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Motor de análisis ocupado, trabajo rechazado.");
+            tarea.publicarError(e);
+        }
+        return tarea;
+    }
+
+    /**
+     * Ejecuta una carga (típicamente la decodificación de la siguiente imagen de un lote) en el hilo
+     * de decodificación, para que se solape con el análisis que se está ejecutando en el motor.
+     * Solo la deben llamar los trabajos del motor, que esperan el resultado con {@link Future#get()}.
+     */
+    public <V> Future<V> precargar(Callable<V> carga) {
+        return decodificador.submit(carga);
+    }
+
+    /**
+     * Ejecuta una liberación en un hilo del motor, detrás de la decodificación en curso. Para lo que el hilo
+     * principal no debe esperar, como liberar una sesión que puede estar en medio de un análisis.
+     */
+    public void liberar(Runnable liberacion) {
+        decodificador.execute(liberacion);
+    }
+
+    /**
+     * Mats temporales de los análisis, compartidos por todos los hilos del motor.
+     */
+    public MatPool mats() {
+        return mats;
+    }
+
+    /**
+     * Bitmaps temporales de los análisis (imágenes decodificadas y vistas previas).
+     */
+    public BitmapPool bitmaps() {
+        return bitmaps;
+    }
+
+    /**
+     * Tiempos por etapa, contornos y memoria de los trabajos terminados.
+     */
+    public MetricasAnalisis metricas() {
+        return metricas;
+    }
+
+    /**
+     * Registra cada préstamo de los pools con su pila de llamadas para informar los que nunca se devuelven.
+     * Es caro: solo se activa en las compilaciones de depuración.
+     */
+    public void setRastrearFugas(boolean rastrear) {
+        mats.setRastrearFugas(rastrear);
+        bitmaps.setRastrearFugas(rastrear);
+    }
+
+    /**
+     * Hilos en los que un trabajo del motor reparte las bandas de una detección por bandas.
+     */
+    public ExecutorService ejecutorBandas() {
+        return bandas;
+    }
+
+    private <T> void ejecutar(Tarea<T> tarea, Trabajo<T> trabajo) {
+        if (tarea.cancelada) return;
+        PipelineMetrics m = tarea.progreso.metricas;
+        try {
+            T resultado = trabajo.ejecutar(tarea.progreso);
+            m.terminar();
+            metricas.registrar(m);
+            tarea.publicarResultado(resultado);
+        } catch (CancellationException e) {
+            Log.d(TAG, "Trabajo de análisis cancelado.");
+        } catch (Exception e) {
+            Log.e(TAG, "Error durante el análisis: " + e.getMessage(), e);
+            tarea.publicarError(e);
+        } finally {
+            // Cierra la sección de traza abierta si el trabajo se canceló o falló a mitad de una etapa.
+            m.terminar();
+        }
+    }
+
+    /**
+     * Manejador de un trabajo enviado al motor. Al cancelarlo se suelta la referencia al callback,
+     * de modo que el motor no retiene a la actividad que lo envió. El descarte se conserva: si el resultado
+     * llega después de la cancelación, lo libera.
+     */
+    public final class Tarea<T> {
+
+        private volatile Callback<T> callback;
+        private final Descarte<T> descarte;
+        private volatile boolean cancelada;
+        private volatile Future<?> futuro;
+        private final Progreso progreso = new Progreso(this, metricas.nuevas());
+
+        private Tarea(Callback<T> callback, Descarte<T> descarte) {
+            this.callback = callback;
+            this.descarte = descarte;
+        }
+
+        public void cancelar() {
+            cancelada = true;
+            callback = null;
+            Future<?> f = futuro;
+            if (f != null) {
+                // Sin interrumpir: OpenCV no responde a interrupciones; el trabajo se detiene en la siguiente etapa.
+                f.cancel(false);
+            }
+        }
+
+        public boolean isCancelada() {
+            return cancelada;
+        }
+
+        private void publicarProgreso(int porcentaje, String etapa) {
+            hiloPrincipal.post(() -> {
+                Callback<T> c = callback;
+                if (!cancelada && c != null) c.onProgreso(porcentaje, etapa);
+            });
+        }
+
+        private void publicarResultado(T resultado) {
+            hiloPrincipal.post(() -> {
+                Callback<T> c = callback;
+                if (!cancelada && c != null) {
+                    c.onResultado(resultado);
+                } else if (descarte != null) {
+                    liberar(() -> descarte.descartar(resultado));
+                }
+                callback = null;
+            });
+        }
+
+        private void publicarError(Exception e) {
+            hiloPrincipal.post(() -> {
+                Callback<T> c = callback;
+                if (!cancelada && c != null) c.onError(e);
+                callback = null;
+            });
+        }
+    }
+
+    /**
+     * Canal que recibe el trabajo para informar su avance y comprobar si fue cancelado.
+     * Implementa {@link DetectionMonitor} para pasarse directamente al SporeDetector.
+     *
+     * Cada etapa informada con {@link #reportar} o {@link #etapa} cierra la anterior en las {@link PipelineMetrics}
+     * del trabajo. Solo se debe llamar desde el hilo del trabajo (las bandas solo verifican la cancelación).
+     */
+    public static final class Progreso implements DetectionMonitor {
+
+        private final Tarea<?> tarea;
+        private final PipelineMetrics metricas;
+
+        private Progreso(Tarea<?> tarea, PipelineMetrics metricas) {
+            this.tarea = tarea;
+            this.metricas = metricas;
+        }
+
+        @Override
+        public void reportar(int porcentaje, String etapa) {
+            verificarCancelacion();
+            metricas.etapa(etapa);
+            tarea.publicarProgreso(porcentaje, etapa);
+        }
+
+        /**
+         * Empieza una etapa que se mide pero no se muestra (por ejemplo, las de cada imagen de un lote).
+         */
+        public void etapa(String etapa) {
+            verificarCancelacion();
+            metricas.etapa(etapa);
+        }
+
+        /**
+         * Muestra un avance sin empezar una etapa nueva.
+         */
+        public void avance(int porcentaje, String texto) {
+            verificarCancelacion();
+            tarea.publicarProgreso(porcentaje, texto);
+        }
+
+        public PipelineMetrics metricas() {
+            return metricas;
+        }
+
+        public boolean isCancelado() {
+            return tarea.cancelada;
+        }
+
+        /**
+         * Lanza {@link CancellationException} si el trabajo fue cancelado.
+         */
+        @Override
+        public void verificarCancelacion() {
+            if (tarea.cancelada) throw new CancellationException();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.menuesporas;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.Nullable;
+
+import com.example.menuesporas.detector.LeakTracker;
+import com.example.menuesporas.detector.PoolStats;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * *BitmapPool*: Bitmaps mutables reutilizables, agrupados por tamaño y formato, el equivalente para Android del
+ * {@link com.example.menuesporas.detector.MatPool}. Lo posee el {@link AnalysisEngine}.
+ *
+ * Sirve las imágenes que se descartan después de cada análisis: las que decodifica ImageLoader (que en
+ * Android 8 o anterior decodifica directamente sobre un Bitmap libre con inBitmap) y las vistas previas de
+ * AjusteParametros. Los resultados que quedan en pantalla o en la CacheResultados no vuelven al pool.
+ *
+ * Un Bitmap devuelto no se debe volver a usar ni a mostrar. Los inmutables o reciclados no se guardan. Con
+ * {@link #setRastrearFugas(boolean)} cada préstamo se registra en un {@link LeakTracker}. Es seguro entre hilos.
+ */
+public final class BitmapPool {
+
+    private final int maxPorGrupo;
+    private final long maxBytesLibres;
+    private final Map<Long, ArrayDeque<Bitmap>> libres = new HashMap<>();
+    private long bytesLibres;
+    private long creados;
+    private long reutilizados;
+    private long liberados;
+    private volatile LeakTracker<Bitmap> rastreador;
+
+    /**
+     * @param maxPorGrupo    Bitmaps libres que se guardan como máximo de cada tamaño y formato.
+     * @param maxBytesLibres Bytes que pueden ocupar en total los Bitmaps libres.
+     */
+    public BitmapPool(int maxPorGrupo, long maxBytesLibres) {
+        this.maxPorGrupo = maxPorGrupo;
+        this.maxBytesLibres = maxBytesLibres;
+    }
+
+    public void setRastrearFugas(boolean rastrear) {
+        if (rastrear == (rastreador != null)) return;
+        rastreador = rastrear ? new LeakTracker<>() : null;
+    }
+
+    /**
+     * Un Bitmap mutable del tamaño y formato pedidos, con contenido indefinido.
+     */
+    public Bitmap obtener(int ancho, int alto, Bitmap.Config config) {
+        Bitmap bitmap = null;
+        synchronized (this) {
+            ArrayDeque<Bitmap> grupo = libres.get(clave(ancho, alto, config));
+            if (grupo != null && !grupo.isEmpty()) {
+                bitmap = grupo.pollLast();
+                bytesLibres -= bitmap.getAllocationByteCount();
+                reutilizados++;
+            } else {
+                creados++;
+            }
+        }
+        if (bitmap == null) bitmap = Bitmap.createBitmap(ancho, alto, config);
+        prestado(bitmap);
+        return bitmap;
+    }
+
+    /**
+     * El Bitmap ARGB_8888 libre más chico con al menos los bytes indicados, para decodificar sobre él con
+     * BitmapFactory.Options.inBitmap (que lo redimensiona), o null si no hay ninguno. No crea Bitmaps.
+     */
+    @Nullable
+    public Bitmap obtenerParaDecodificar(long bytesMinimos) {
+        Bitmap elegido;
+        synchronized (this) {
+            ArrayDeque<Bitmap> grupoElegido = null;
+            elegido = null;
+            for (ArrayDeque<Bitmap> grupo : libres.values()) {
+                Bitmap candidato = grupo.peekLast();
+                if (candidato == null || candidato.getConfig() != Bitmap.Config.ARGB_8888) continue;
+                long bytes = candidato.getAllocationByteCount();
+                if (bytes >= bytesMinimos && (elegido == null || bytes < elegido.getAllocationByteCount())) {
+                    elegido = candidato;
+                    grupoElegido = grupo;
+                }
+            }
+            if (elegido == null) return null;
+            grupoElegido.pollLast();
+            bytesLibres -= elegido.getAllocationByteCount();
+            reutilizados++;
+        }
+        prestado(elegido);
+        return elegido;
+    }
+
+    /**
+     * Devuelve un Bitmap al pool (no hace falta que lo haya creado el pool). Acepta null.
+     */
+    public void devolver(@Nullable Bitmap bitmap) {
+        if (bitmap == null) return;
+        LeakTracker<Bitmap> r = rastreador;
+        if (r != null) r.devuelto(bitmap);
+        if (bitmap.isRecycled()) return;
+        if (!bitmap.isMutable() || bitmap.getConfig() == null) {
+            bitmap.recycle();
+            return;
+        }
+        long tamano = bitmap.getAllocationByteCount();
+        synchronized (this) {
+            if (maxPorGrupo > 0 && bytesLibres + tamano <= maxBytesLibres) {
+                long clave = clave(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+                ArrayDeque<Bitmap> grupo = libres.get(clave);
+                if (grupo == null) {
+                    grupo = new ArrayDeque<>();
+                    libres.put(clave, grupo);
+                }
+                if (grupo.size() < maxPorGrupo) {
+                    grupo.addLast(bitmap);
+                    bytesLibres += tamano;
+                    return;
+                }
+            }
+            liberados++;
+        }
+        bitmap.recycle();
+    }
+
+    /**
+     * Recicla todos los Bitmaps libres. Los prestados no se tocan.
+     */
+    public void vaciar() {
+        List<Bitmap> aReciclar = new ArrayList<>();
+        synchronized (this) {
+            for (ArrayDeque<Bitmap> grupo : libres.values()) aReciclar.addAll(grupo);
+            liberados += aReciclar.size();
+            libres.clear();
+            bytesLibres = 0;
+        }
+        for (Bitmap bitmap : aReciclar) bitmap.recycle();
+    }
+
+    public synchronized PoolStats estadisticas() {
+        int enPool = 0;
+        for (ArrayDeque<Bitmap> grupo : libres.values()) enPool += grupo.size();
+        LeakTracker<Bitmap> r = rastreador;
+        return new PoolStats(creados, reutilizados, liberados, enPool, bytesLibres,
+                r != null ? r.getEnUso() : -1, r != null ? r.getTotalFugas() : -1,
+                r != null ? r.getUltimasFugas() : Collections.<String>emptyList());
+    }
+
+    private void prestado(Bitmap bitmap) {
+        LeakTracker<Bitmap> r = rastreador;
+        if (r != null) r.prestado(bitmap, "Bitmap " + bitmap.getWidth() + "x" + bitmap.getHeight() + " " + bitmap.getConfig());
+    }
+
+    private static long clave(int ancho, int alto, Bitmap.Config config) {
+        return ((long) ancho << 36) | ((long) alto << 12) | config.ordinal();
+    }
+}
@@ -0,0 +1,406 @@
+package com.example.menuesporas;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.example.menuesporas.detector.ContentHash;
+import com.example.menuesporas.detector.DetectionParams;
+import com.example.menuesporas.detector.SporeTable;
+
+import org.opencv.core.Mat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * *CacheResultados*: Caché de los análisis de MainActivity2, para que volver a elegir la misma imagen muestre
+ * el resultado al instante en lugar de repetir el pipeline de OpenCV.
+ *
+ * La clave combina la huella del contenido de la luminancia decodificada ({@link ContentHash}) con la huella
+ * del preset y de todos sus parámetros ({@link DetectionParams#huella()}): la misma imagen con otro preset, o
+ * con parámetros ajustados, es otra entrada. Cada entrada guarda el conteo, el texto mostrado, la tabla de
+ * esporas, la imagen con los contornos dibujados y el preset con que se detectó (en modo automático, el que
+ * eligió la densidad de la imagen).
+ *
+ * La imagen se guarda reducida a {@link #LADO_MAXIMO_IMAGEN} píxeles de lado: a la resolución de trabajo ocupa
+ * varios megabytes y unas pocas llenaban el nivel de memoria, y para mostrarla alcanza con el tamaño de la
+ * pantalla. La selección de una región es relativa a la imagen mostrada, así que no depende de su resolución.
+ *
+ * Tiene dos niveles:
+ * - Memoria: LRU acotada por los bytes de las imágenes ({@link #MAX_BYTES_MEMORIA}). Un acierto devuelve la
+ *   misma imagen ya decodificada, sin copias.
+ * - Disco: un archivo por entrada en getCacheDir()/resultados, con la imagen en JPEG, acotado a
+ *   {@link #MAX_BYTES_DISCO}. Se desaloja la entrada usada hace más tiempo (por fecha de modificación, que se
+ *   actualiza en cada acierto). Sobrevive al cierre de la app y Android puede vaciarlo si falta espacio.
+ *
+ * Es seguro entre hilos: el AnalysisEngine puede consultar y guardar desde varios trabajos a la vez. El candado
+ * de la caché protege solo los índices en memoria; la compresión JPEG y la lectura y escritura de archivos se
+ * hacen fuera de él, para que un trabajo que guarda no frene las búsquedas de los demás. Cada escritura usa su
+ * propio temporal y se publica con un renombrado atómico. Los contadores de aciertos, fallos y desalojos se
+ * muestran en {@link PantallaDepuracion}.
+ */
+public final class CacheResultados {
+
+    private static final String TAG = "CacheResultados";
+    private static final String CARPETA = "resultados";
+    private static final String EXTENSION = ".bin";
+    private static final int MAGICO = 0x53504331; // "SPC1"
+    private static final int VERSION = 2;
+    private static final int CALIDAD_JPEG = 90;
+
+    static final int LADO_MAXIMO_IMAGEN = 1280;
+    static final long MAX_BYTES_MEMORIA = 16L * 1024 * 1024;
+    static final long MAX_BYTES_DISCO = 32L * 1024 * 1024;
+
+    private static volatile CacheResultados instancia;
+
+    private final File carpeta;
+
+    // Nivel de memoria, en orden de acceso; se accede con el candado de la caché.
+    private final LinkedHashMap<String, Entrada> memoria = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytesMemoria;
+    // Índice del nivel de disco (clave -> tamaño del archivo) en orden de acceso; se carga en el primer uso.
+    @Nullable
+    private LinkedHashMap<String, Long> indiceDisco;
+    private long bytesDisco;
+
+    private final AtomicLong aciertosMemoria = new AtomicLong();
+    private final AtomicLong aciertosDisco = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong desalojosMemoria = new AtomicLong();
+    private final AtomicLong desalojosDisco = new AtomicLong();
+
+    private CacheResultados(Context context) {
+        carpeta = new File(context.getApplicationContext().getCacheDir(), CARPETA);
+    }
+
+    public static CacheResultados get(Context context) {
+        CacheResultados cache = instancia;
+        if (cache == null) {
+            synchronized (CacheResultados.class) {
+                cache = instancia;
+                if (cache == null) {
+                    cache = new CacheResultados(context);
+                    instancia = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Un análisis guardado. La imagen se comparte entre todos los aciertos: no se debe reciclar. La de una entrada
+     * leída de la caché puede ser más chica que la que se guardó.
+     */
+    public static final class Entrada {
+        public final int conteo;
+        public final String texto;
+        public final SporeTable esporas;
+        public final Bitmap imagen;
+        public final String preset;  // Preset con que se detectó; en modo automático, el elegido por la densidad.
+
+        public Entrada(int conteo, String texto, SporeTable esporas, Bitmap imagen, String preset) {
+            this.conteo = conteo;
+            this.texto = texto;
+            this.esporas = esporas;
+            this.imagen = imagen;
+            this.preset = preset;
+        }
+    }
+
+    /**
+     * Contadores de la caché en un momento dado.
+     */
+    public static final class Estadisticas {
+        public final long aciertosMemoria;
+        public final long aciertosDisco;
+        public final long fallos;
+        public final long desalojosMemoria;
+        public final long desalojosDisco;
+        public final int entradasMemoria;
+        public final long bytesMemoria;
+        public final int entradasDisco;
+        public final long bytesDisco;
+
+        Estadisticas(long aciertosMemoria, long aciertosDisco, long fallos, long desalojosMemoria,
+                     long desalojosDisco, int entradasMemoria, long bytesMemoria, int entradasDisco, long bytesDisco) {
+            this.aciertosMemoria = aciertosMemoria;
+            this.aciertosDisco = aciertosDisco;
+            this.fallos = fallos;
+            this.desalojosMemoria = desalojosMemoria;
+            this.desalojosDisco = desalojosDisco;
+            this.entradasMemoria = entradasMemoria;
+            this.bytesMemoria = bytesMemoria;
+            this.entradasDisco = entradasDisco;
+            this.bytesDisco = bytesDisco;
+        }
+    }
+
+    /**
+     * Clave de una imagen analizada con un preset.
+     *
+     * @param luminancia Luminancia a la resolución de trabajo (la que recibe el detector).
+     * @param preset     Identificador del preset pedido (el automático también elige el preset por la imagen).
+     * @param params     Parámetros del preset pedido.
+     */
+    public static String clave(Mat luminancia, String preset, DetectionParams params) {
+        return Long.toHexString(ContentHash.luminancia(luminancia)) + "-"
+                + Long.toHexString(ContentHash.texto(preset + "|" + params.huella()));
+    }
+
+    /**
+     * Busca la entrada primero en memoria y después en disco; un acierto en disco pasa también a memoria.
+     *
+     * @return La entrada, o null si no está en ninguno de los dos niveles.
+     */
+    @Nullable
+    public Entrada buscar(String clave) {
+        synchronized (this) {
+            Entrada entrada = memoria.get(clave);
+            if (entrada != null) {
+                aciertosMemoria.incrementAndGet();
+                return entrada;
+            }
+            cargarIndice();
+            // El índice está en orden de acceso: este get mueve la clave al final, como la usada más recientemente,
+            // y la aleja del desalojo mientras se lee el archivo.
+            if (indiceDisco.get(clave) == null) {
+                fallos.incrementAndGet();
+                return null;
+            }
+        }
+        Entrada entrada = leerDisco(clave);
+        if (entrada == null) {
+            borrarDisco(clave);
+            fallos.incrementAndGet();
+            return null;
+        }
+        aciertosDisco.incrementAndGet();
+        synchronized (this) {
+            agregarMemoria(clave, entrada);
+        }
+        return entrada;
+    }
+
+    /**
+     * Guarda la entrada en los dos niveles, con la imagen reducida a {@link #LADO_MAXIMO_IMAGEN}; la imagen de la
+     * entrada recibida no se modifica. Un error de escritura en disco se registra en el log y la entrada queda solo
+     * en memoria.
+     */
+    public void guardar(String clave, Entrada entrada) {
+        entrada = reducir(entrada);
+        synchronized (this) {
+            agregarMemoria(clave, entrada);
+        }
+        long tamano = escribirDisco(clave, entrada);
+        if (tamano < 0) return;
+
+        List<String> desalojadas = new ArrayList<>();
+        synchronized (this) {
+            cargarIndice();
+            Long anterior = indiceDisco.put(clave, tamano);
+            if (anterior != null) bytesDisco -= anterior;
+            bytesDisco += tamano;
+            for (Map.Entry<String, Long> e : indiceDisco.entrySet()) {
+                if (bytesDisco <= MAX_BYTES_DISCO) break;
+                if (e.getKey().equals(clave)) continue;
+                desalojadas.add(e.getKey());
+                bytesDisco -= e.getValue();
+            }
+            indiceDisco.keySet().removeAll(desalojadas);
+        }
+        for (String vieja : desalojadas) {
+            borrarArchivo(vieja);
+            desalojosDisco.incrementAndGet();
+        }
+    }
+
+    public synchronized Estadisticas estadisticas() {
+        cargarIndice();
+        return new Estadisticas(aciertosMemoria.get(), aciertosDisco.get(), fallos.get(), desalojosMemoria.get(),
+                desalojosDisco.get(), memoria.size(), bytesMemoria, indiceDisco.size(), bytesDisco);
+    }
+
+    /**
+     * Borra las dos capas y reinicia los contadores.
+     */
+    public synchronized void vaciar() {
+        memoria.clear();
+        bytesMemoria = 0;
+        File[] archivos = carpeta.listFiles();
+        if (archivos != null) {
+            for (File archivo : archivos) {
+                if (!archivo.delete()) Log.w(TAG, "No se pudo borrar " + archivo);
+            }
+        }
+        indiceDisco = new LinkedHashMap<>(16, 0.75f, true);
+        bytesDisco = 0;
+        for (AtomicLong contador : new AtomicLong[]{aciertosMemoria, aciertosDisco, fallos, desalojosMemoria,
+                desalojosDisco}) {
+            contador.set(0);
+        }
+    }
+
+    /**
+     * La misma entrada con la imagen reducida a {@link #LADO_MAXIMO_IMAGEN} de lado, o la entrada tal cual si ya
+     * cabe. Se hace fuera del candado de la caché.
+     */
+    private static Entrada reducir(Entrada entrada) {
+        Bitmap imagen = entrada.imagen;
+        int lado = Math.max(imagen.getWidth(), imagen.getHeight());
+        if (lado <= LADO_MAXIMO_IMAGEN) return entrada;
+        double escala = (double) LADO_MAXIMO_IMAGEN / lado;
+        Bitmap reducida = Bitmap.createScaledBitmap(imagen,
+                Math.max(1, (int) Math.round(imagen.getWidth() * escala)),
+                Math.max(1, (int) Math.round(imagen.getHeight() * escala)), true);
+        return new Entrada(entrada.conteo, entrada.texto, entrada.esporas, reducida, entrada.preset);
+    }
+
+    private void agregarMemoria(String clave, Entrada entrada) {
+        Entrada anterior = memoria.put(clave, entrada);
+        if (anterior != null) bytesMemoria -= anterior.imagen.getAllocationByteCount();
+        bytesMemoria += entrada.imagen.getAllocationByteCount();
+        // Sin reciclar las imágenes desalojadas: la UI puede seguir mostrándolas.
+        Iterator<Map.Entry<String, Entrada>> it = memoria.entrySet().iterator();
+        while (bytesMemoria > MAX_BYTES_MEMORIA && memoria.size() > 1 && it.hasNext()) {
+            Map.Entry<String, Entrada> masAntigua = it.next();
+            if (masAntigua.getKey().equals(clave)) continue;
+            bytesMemoria -= masAntigua.getValue().imagen.getAllocationByteCount();
+            it.remove();
+            desalojosMemoria.incrementAndGet();
+        }
+    }
+
+    private File archivo(String clave) {
+        return new File(carpeta, clave + EXTENSION);
+    }
+
+    /**
+     * Reconstruye el índice del disco la primera vez, ordenado de la entrada usada hace más tiempo a la más
+     * reciente. Se llama con el candado de la caché.
+     */
+    private void cargarIndice() {
+        if (indiceDisco != null) return;
+        indiceDisco = new LinkedHashMap<>(16, 0.75f, true);
+        bytesDisco = 0;
+        File[] archivos = carpeta.listFiles((dir, nombre) -> nombre.endsWith(EXTENSION));
+        if (archivos == null) return;
+        long[] fechas = new long[archivos.length];
+        for (int i = 0; i < archivos.length; i++) fechas[i] = archivos[i].lastModified();
+        Integer[] orden = new Integer[archivos.length];
+        for (int i = 0; i < orden.length; i++) orden[i] = i;
+        Arrays.sort(orden, (a, b) -> Long.compare(fechas[a], fechas[b]));
+        for (int i : orden) {
+            String nombre = archivos[i].getName();
+            long tamano = archivos[i].length();
+            indiceDisco.put(nombre.substring(0, nombre.length() - EXTENSION.length()), tamano);
+            bytesDisco += tamano;
+        }
+    }
+
+    /**
+     * Lee el archivo de una entrada, sin el candado de la caché.
+     *
+     * @return La entrada, o null si el archivo no existe o no se puede leer.
+     */
+    @Nullable
+    private Entrada leerDisco(String clave) {
+        File archivo = archivo(clave);
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(new FileInputStream(archivo)))) {
+            if (entrada.readInt() != MAGICO || entrada.readInt() != VERSION) {
+                throw new IOException("Formato desconocido");
+            }
+            int conteo = entrada.readInt();
+            String texto = entrada.readUTF();
+            String preset = entrada.readUTF();
+            SporeTable esporas = SporeTable.leer(entrada);
+            byte[] jpeg = new byte[entrada.readInt()];
+            entrada.readFully(jpeg);
+            BitmapFactory.Options opciones = new BitmapFactory.Options();
+            opciones.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            Bitmap imagen = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, opciones);
+            if (imagen == null) throw new IOException("Imagen ilegible");
+            // La fecha de modificación marca el último uso para el desalojo de la próxima sesión.
+            archivo.setLastModified(System.currentTimeMillis());
+            return new Entrada(conteo, texto, esporas, imagen, preset);
+        } catch (IOException e) {
+            Log.w(TAG, "Entrada de caché inválida " + archivo + ", se descarta", e);
+            return null;
+        }
+    }
+
+    /**
+     * Escribe el archivo de una entrada, sin el candado de la caché: se escribe en un temporal propio y se
+     * renombra, así que una entrada a medio escribir nunca se lee y dos trabajos que guardan la misma clave no
+     * mezclan sus bytes.
+     *
+     * @return El tamaño del archivo escrito, o -1 si no se pudo escribir.
+     */
+    private long escribirDisco(String clave, Entrada entrada) {
+        if (!carpeta.isDirectory() && !carpeta.mkdirs()) {
+            Log.w(TAG, "No se pudo crear la carpeta de caché " + carpeta);
+            return -1;
+        }
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream(64 * 1024);
+        entrada.imagen.compress(Bitmap.CompressFormat.JPEG, CALIDAD_JPEG, jpeg);
+        File destino = archivo(clave);
+        File temporal = null;
+        try {
+            temporal = File.createTempFile(clave, ".tmp", carpeta);
+            try (DataOutputStream salida = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporal)))) {
+                salida.writeInt(MAGICO);
+                salida.writeInt(VERSION);
+                salida.writeInt(entrada.conteo);
+                salida.writeUTF(entrada.texto);
+                salida.writeUTF(entrada.preset);
+                entrada.esporas.escribir(salida);
+                salida.writeInt(jpeg.size());
+                jpeg.writeTo(salida);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "No se pudo guardar en la caché " + destino, e);
+            if (temporal != null) temporal.delete();
+            return -1;
+        }
+        if (!temporal.renameTo(destino)) {
+            Log.w(TAG, "No se pudo renombrar " + temporal);
+            temporal.delete();
+            return -1;
+        }
+        return destino.length();
+    }
+
+    /**
+     * Quita la clave del índice con el candado y después borra su archivo sin él.
+     */
+    private void borrarDisco(String clave) {
+        synchronized (this) {
+            Long tamano = indiceDisco.remove(clave);
+            if (tamano != null) bytesDisco -= tamano;
+        }
+        borrarArchivo(clave);
+    }
+
+    private void borrarArchivo(String clave) {
+        File archivo = archivo(clave);
+        if (archivo.exists() && !archivo.delete()) Log.w(TAG, "No se pudo borrar " + archivo);
+    }
+}
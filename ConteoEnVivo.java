@@ -0,0 +1,217 @@
+package com.example.menuesporas;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.core.content.ContextCompat;
+
+import android.Manifest;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.Size;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.example.menuesporas.detector.DetectionParams;
+import com.example.menuesporas.detector.DetectionResult;
+import com.example.menuesporas.detector.FrameStats;
+import com.example.menuesporas.detector.SporeDetector;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.opencv.android.OpenCVLoader;
+import org.opencv.android.Utils;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * *ConteoEnVivo*: Conteo en vivo con la cámara. Un caso de uso ImageAnalysis de CameraX entrega cuadros YUV
+ * a la resolución de trabajo y cada cuadro pasa directamente por el SporeDetector:
+ *
+ * - El plano Y ya es la imagen en escala de grises: se envuelve en un Mat sin copiarlo y sin cvtColor.
+ * - Estrategia "conservar solo el último": si el análisis tarda más que el intervalo de la cámara, los cuadros
+ *   intermedios se descartan en lugar de acumularse, y el conteo siempre corresponde al cuadro más reciente.
+ * - El conteo y los contornos se muestran sobre el cuadro analizado, alternando dos Bitmaps reutilizados. Mientras
+ *   la UI no haya mostrado el cuadro anterior, los cuadros nuevos se descartan sin analizarlos: así el analizador
+ *   nunca escribe en el Bitmap que la UI tiene en pantalla.
+ *
+ * Debajo se muestran los cuadros por segundo, la latencia por cuadro y los cuadros descartados ({@link FrameStats}).
+ */
+public class ConteoEnVivo extends AppCompatActivity {
+
+    private static final String TAG = "ConteoEnVivo";
+    private static final int PEDIR_CAMARA = 300;
+
+    // Los Mats intermedios de cada cuadro salen del pool del motor: en vivo la memoria nativa se mantiene estable.
+    private static final SporeDetector DETECTOR = new SporeDetector(AnalysisEngine.get().mats());
+
+    private ImageView imageView;
+    private TextView textoConteo;
+    private TextView textoEstadisticas;
+    private DetectionParams parametros;
+
+    // Hilo del analizador. Todo el estado de abajo lo usa solo ese hilo.
+    private ExecutorService hiloAnalisis;
+    // Caso de uso de CameraX que entrega los cuadros a hiloAnalisis; solo lo usa el hilo principal.
+    private ImageAnalysis imageAnalysis;
+    private final Handler hiloPrincipal = new Handler(Looper.getMainLooper());
+    private final FrameStats estadisticas = new FrameStats();
+    private final Mat superposicion = new Mat();
+    private final Bitmap[] bitmaps = new Bitmap[2];
+    private int bitmapActual;
+    // El hilo del analizador lo pone en true al publicar un cuadro y la UI en false después de mostrarlo.
+    private volatile boolean cuadroPendiente;
+    private volatile boolean destruida;
+
+    static {
+        if (!OpenCVLoader.initDebug()) {
+            Log.e(TAG, "Error crítico: No se pudo cargar la biblioteca OpenCV.");
+        }
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.conteoenvivo);
+
+        imageView = findViewById(R.id.imagenEnVivo);
+        textoConteo = findViewById(R.id.textoConteoEnVivo);
+        textoEstadisticas = findViewById(R.id.textoEstadisticasEnVivo);
+
+        String tipoHongo = getIntent().getStringExtra("tipo_espora");
+        parametros = PresetRepository.get(this).resolver(getIntent().getStringExtra("preset_id"), tipoHongo);
+        Log.d(TAG, "Parámetros del conteo en vivo: " + parametros);
+
+        hiloAnalisis = Executors.newSingleThreadExecutor(r -> {
+            Thread hilo = new Thread(r, "analisis-en-vivo");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED) {
+            iniciarCamara();
+        } else {
+            requestPermissions(new String[]{Manifest.permission.CAMERA}, PEDIR_CAMARA);
+        }
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode != PEDIR_CAMARA) return;
+        if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+            iniciarCamara();
+        } else {
+            textoConteo.setText("Se necesita el permiso de cámara para el conteo en vivo.");
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        destruida = true;
+        // CameraX deja de enviar cuadros al ejecutor antes de apagarlo; si no, un execute podría llegar después
+        // del shutdown y ser rechazado.
+        if (imageAnalysis != null) imageAnalysis.clearAnalyzer();
+        // La superposición se libera en el propio hilo del analizador, después del último cuadro. Los Bitmaps los
+        // recupera el recolector junto con la vista que los muestra.
+        hiloAnalisis.execute(superposicion::release);
+        hiloAnalisis.shutdown();
+    }
+
+    private void iniciarCamara() {
+        ListenableFuture<ProcessCameraProvider> futuro = ProcessCameraProvider.getInstance(this);
+        futuro.addListener(() -> {
+            // La actividad se destruyó mientras se obtenía la cámara: el ejecutor ya está apagado.
+            if (destruida) return;
+            try {
+                ProcessCameraProvider proveedor = futuro.get();
+                ImageAnalysis analisis = new ImageAnalysis.Builder()
+                        .setTargetResolution(new Size(parametros.workWidth, parametros.workHeight))
+                        .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                        .setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_YUV_420_888)
+                        .build();
+                analisis.setAnalyzer(hiloAnalisis, this::analizarCuadro);
+                proveedor.unbindAll();
+                proveedor.bindToLifecycle(this, CameraSelector.DEFAULT_BACK_CAMERA, analisis);
+                imageAnalysis = analisis;
+            } catch (Exception e) {
+                Log.e(TAG, "No se pudo iniciar la cámara: " + e.getMessage(), e);
+                textoConteo.setText("No se pudo iniciar la cámara.");
+            }
+        }, ContextCompat.getMainExecutor(this));
+    }
+
+    /**
+     * Analiza un cuadro en el hilo del analizador. El cuadro se debe cerrar siempre para que CameraX entregue el siguiente.
+     */
+    private void analizarCuadro(ImageProxy cuadro) {
+        long inicio = System.nanoTime();
+        Mat gris = null;
+        DetectionResult deteccion = null;
+        try {
+            // La UI todavía no mostró el cuadro anterior: este se descarta (FrameStats lo cuenta por el hueco en
+            // las marcas de tiempo) en lugar de dibujarlo sobre un Bitmap que puede seguir en pantalla.
+            if (destruida || cuadroPendiente) return;
+            ImageProxy.PlaneProxy planoY = cuadro.getPlanes()[0];
+            ByteBuffer pixeles = planoY.getBuffer();
+            // El plano Y se envuelve sin copiarlo; el paso de fila puede ser mayor que el ancho.
+            gris = new Mat(cuadro.getHeight(), cuadro.getWidth(), CvType.CV_8UC1, pixeles, planoY.getRowStride());
+            deteccion = DETECTOR.detect(gris, parametros);
+            int conteo = deteccion.getConteo();
+
+            Imgproc.cvtColor(deteccion.imagenTrabajo, superposicion, Imgproc.COLOR_GRAY2RGBA);
+            Imgproc.drawContours(superposicion, deteccion.contornos, -1, new Scalar(0, 255, 0, 255),
+                    parametros.drawContourThickness);
+            Bitmap bitmap = siguienteBitmap(superposicion.cols(), superposicion.rows());
+            Utils.matToBitmap(superposicion, bitmap);
+
+            estadisticas.registrar(cuadro.getImageInfo().getTimestamp(), System.nanoTime() - inicio);
+            int rotacion = cuadro.getImageInfo().getRotationDegrees();
+            String textoEstado = estadisticas.toString();
+            cuadroPendiente = true;
+            hiloPrincipal.post(() -> {
+                if (!destruida) {
+                    imageView.setRotation(rotacion);
+                    imageView.setImageBitmap(bitmap);
+                    textoConteo.setText(String.format(Locale.getDefault(), "Esporas en el cuadro: %d", conteo));
+                    textoEstadisticas.setText(textoEstado);
+                }
+                cuadroPendiente = false;
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "Error al analizar el cuadro: " + e.getMessage(), e);
+        } finally {
+            if (deteccion != null) deteccion.release();
+            if (gris != null) gris.release();
+            cuadro.close();
+        }
+    }
+
+    /**
+     * Alterna entre dos Bitmaps reutilizados: uno lo muestra la UI mientras el otro se llena con el cuadro nuevo.
+     * Solo se llama sin cuadros pendientes, así que el que se devuelve ya no está en pantalla.
+     */
+    private Bitmap siguienteBitmap(int ancho, int alto) {
+        bitmapActual = 1 - bitmapActual;
+        Bitmap bitmap = bitmaps[bitmapActual];
+        if (bitmap == null || bitmap.getWidth() != ancho || bitmap.getHeight() != alto) {
+            bitmap = Bitmap.createBitmap(ancho, alto, Bitmap.Config.ARGB_8888);
+            bitmaps[bitmapActual] = bitmap;
+        }
+        return bitmap;
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.menuesporas;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.Log;
+import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.Toast;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.FileProvider;
+
+import com.example.menuesporas.detector.DetectionResult;
+import com.example.menuesporas.detector.ResultCsvWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * *ExportadorResultados*: Guarda cada análisis (de MainActivity2, MedicionEsporas o AnalisisLote) como un
+ * registro en los CSV de {@link ResultCsvWriter}, en getFilesDir()/exportes, y los comparte con otras apps
+ * (por ejemplo, el cliente del LIMS) mediante el FileProvider declarado en el manifiesto.
+ *
+ * Se crea en el hilo de la UI con {@link #para(Context)} y solo guarda la carpeta y las opciones, por lo que
+ * los trabajos del AnalysisEngine pueden usarlo sin capturar la actividad. Las escrituras de todos los
+ * análisis se serializan en un único candado y cada una abre, agrega y cierra los archivos: un análisis
+ * individual y un lote pueden terminar a la vez sin mezclar sus filas.
+ */
+public final class ExportadorResultados {
+
+    private static final String TAG = "ExportadorResultados";
+    private static final String CARPETA = "exportes";
+    private static final String PREFERENCIAS = "exportacion";
+    private static final String INCLUIR_ESPORAS = "incluir_esporas";
+    private static final Object CANDADO = new Object();
+
+    private final File carpeta;
+    private final boolean conEsporas;
+
+    private ExportadorResultados(File carpeta, boolean conEsporas) {
+        this.carpeta = carpeta;
+        this.conEsporas = conEsporas;
+    }
+
+    public static ExportadorResultados para(Context context) {
+        return new ExportadorResultados(new File(context.getFilesDir(), CARPETA), incluirEsporas(context));
+    }
+
+    /**
+     * Si además del resumen de cada análisis se exportan las medidas de cada espora.
+     */
+    public static boolean incluirEsporas(Context context) {
+        return preferencias(context).getBoolean(INCLUIR_ESPORAS, false);
+    }
+
+    public static void setIncluirEsporas(Context context, boolean incluir) {
+        preferencias(context).edit().putBoolean(INCLUIR_ESPORAS, incluir).apply();
+    }
+
+    private static SharedPreferences preferencias(Context context) {
+        return context.getSharedPreferences(PREFERENCIAS, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Agrega el análisis a los CSV. Un error de escritura se registra en el log y no interrumpe el análisis.
+     *
+     * @param imagen          URI o nombre de la imagen analizada.
+     * @param preset          Identificador del preset usado.
+     * @param deteccion       Resultado de la detección (todavía sin liberar).
+     * @param areaPromedioMm2 Área promedio en mm², o NaN si la imagen no está calibrada.
+     */
+    public void registrar(String imagen, String preset, DetectionResult deteccion, double areaPromedioMm2) {
+        synchronized (CANDADO) {
+            try (ResultCsvWriter writer = ResultCsvWriter.anexar(carpeta, conEsporas)) {
+                writer.escribir(imagen, preset, deteccion, areaPromedioMm2);
+            } catch (IOException e) {
+                Log.w(TAG, "No se pudo exportar el análisis de " + imagen, e);
+            }
+        }
+    }
+
+    /**
+     * Conecta la casilla de exportar las esporas y el botón de compartir de una pantalla de análisis.
+     */
+    static void conectar(Context context, CheckBox incluirEsporas, Button compartir) {
+        incluirEsporas.setChecked(incluirEsporas(context));
+        incluirEsporas.setOnCheckedChangeListener((casilla, marcada) -> setIncluirEsporas(context, marcada));
+        compartir.setOnClickListener(v -> {
+            Intent envio = compartir(context);
+            if (envio == null) {
+                Toast.makeText(context, "Todavía no hay resultados exportados.", Toast.LENGTH_SHORT).show();
+            } else {
+                context.startActivity(envio);
+            }
+        });
+    }
+
+    /**
+     * Intent para compartir los CSV exportados con permiso de lectura temporal, o null si todavía no hay
+     * ningún análisis guardado.
+     */
+    @Nullable
+    public static Intent compartir(Context context) {
+        File carpeta = new File(context.getFilesDir(), CARPETA);
+        String autoridad = context.getPackageName() + ".exportes";
+        ArrayList<Uri> archivos = new ArrayList<>();
+        for (String nombre : new String[]{ResultCsvWriter.ARCHIVO_ANALISIS, ResultCsvWriter.ARCHIVO_ESPORAS}) {
+            File archivo = new File(carpeta, nombre);
+            if (archivo.length() > 0) archivos.add(FileProvider.getUriForFile(context, autoridad, archivo));
+        }
+        if (archivos.isEmpty()) return null;
+        Intent envio = new Intent(Intent.ACTION_SEND_MULTIPLE);
+        envio.setType("text/csv");
+        envio.putParcelableArrayListExtra(Intent.EXTRA_STREAM, archivos);
+        envio.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        return Intent.createChooser(envio, "Compartir resultados");
+    }
+}
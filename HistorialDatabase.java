@@ -0,0 +1,60 @@
+package com.example.menuesporas;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * *HistorialDatabase*: Esquema SQLite del historial de conteos de MedicionEsporas.
+ *
+ * - analisis: una fila por análisis, con la muestra, la fecha (ms desde 1970), el preset, el total y la
+ *   calibración de la imagen.
+ * - conteo_cuadro: el conteo de cada cuadro de la cuadrícula, con clave (analisis_id, fila, columna) y sin
+ *   rowid, de modo que los cuadros de un análisis quedan contiguos en disco.
+ *
+ * Los índices cubren las consultas de {@link HistorialRepository}: (muestra, fecha, total) responde las
+ * estadísticas y la tendencia de una muestra sin leer la tabla, (fecha) y (preset, fecha) ordenan el
+ * historial completo y por preset. Con WAL, las consultas no esperan a las escrituras por lotes.
+ */
+final class HistorialDatabase extends SQLiteOpenHelper {
+
+    static final String NOMBRE = "historial.db";
+    static final int VERSION = 1;
+
+    HistorialDatabase(Context context) {
+        super(context.getApplicationContext(), NOMBRE, null, VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.setForeignKeyConstraintsEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE analisis ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "muestra TEXT NOT NULL, "
+                + "fecha INTEGER NOT NULL, "
+                + "preset TEXT NOT NULL, "
+                + "imagen TEXT, "
+                + "total INTEGER NOT NULL, "
+                + "area_promedio_mm2 REAL, "
+                + "pixeles_por_mm REAL)");
+        db.execSQL("CREATE TABLE conteo_cuadro ("
+                + "analisis_id INTEGER NOT NULL REFERENCES analisis(id) ON DELETE CASCADE, "
+                + "fila INTEGER NOT NULL, "
+                + "columna INTEGER NOT NULL, "
+                + "conteo INTEGER NOT NULL, "
+                + "PRIMARY KEY (analisis_id, fila, columna)) WITHOUT ROWID");
+        db.execSQL("CREATE INDEX idx_analisis_muestra_fecha ON analisis (muestra, fecha, total)");
+        db.execSQL("CREATE INDEX idx_analisis_fecha ON analisis (fecha)");
+        db.execSQL("CREATE INDEX idx_analisis_preset_fecha ON analisis (preset, fecha)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int versionAnterior, int versionNueva) {
+        // Primera versión del esquema: todavía no hay migraciones.
+    }
+}
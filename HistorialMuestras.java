@@ -0,0 +1,145 @@
+package com.example.menuesporas;
+
+import android.os.Bundle;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.TextView;
+
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * *HistorialMuestras*: Historial de los conteos por cuadro guardados por MedicionEsporas. Para una muestra
+ * muestra la media y la desviación estándar de sus totales, la tendencia diaria de los últimos
+ * {@link #DIAS_TENDENCIA} días y sus corridas de la más reciente a la más antigua, de a {@link #TAMANO_PAGINA}.
+ * Con el campo vacío recorre las corridas de todas las muestras.
+ *
+ * Todas las consultas se ejecutan en el hilo de {@link HistorialRepository}; la actividad solo muestra
+ * los resultados.
+ */
+public class HistorialMuestras extends AppCompatActivity {
+
+    static final String EXTRA_MUESTRA = "muestra";
+    // Muestra con la que se guardan los conteos cuando el usuario no escribe un ID.
+    static final String SIN_MUESTRA = "Sin identificar";
+
+    private static final int TAMANO_PAGINA = 50;
+    private static final int DIAS_TENDENCIA = 30;
+    private static final long MS_POR_DIA = 24L * 60 * 60 * 1000;
+
+    private EditText campoMuestra;
+    private TextView textoResumen;
+    private TextView textoCorridas;
+    private Button btnMasAntiguos;
+
+    private HistorialRepository historial;
+    @Nullable
+    private String muestraActual;
+    // Última corrida mostrada: la página siguiente empieza después de ella.
+    @Nullable
+    private HistorialRepository.Corrida ultimaCorrida;
+    // Cada búsqueda invalida las respuestas pendientes de la anterior.
+    private int busqueda;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.historialmuestras);
+
+        campoMuestra = findViewById(R.id.campoMuestraHistorial);
+        textoResumen = findViewById(R.id.textoResumenHistorial);
+        textoCorridas = findViewById(R.id.textoCorridas);
+        btnMasAntiguos = findViewById(R.id.btnMasAntiguos);
+        Button btnBuscar = findViewById(R.id.btnBuscarHistorial);
+        historial = HistorialRepository.get(this);
+
+        String muestra = getIntent().getStringExtra(EXTRA_MUESTRA);
+        if (muestra != null) campoMuestra.setText(muestra);
+        btnBuscar.setOnClickListener(v -> buscar());
+        btnMasAntiguos.setOnClickListener(v -> cargarPagina());
+        buscar();
+    }
+
+    private void buscar() {
+        String texto = campoMuestra.getText().toString().trim();
+        muestraActual = texto.isEmpty() ? null : texto;
+        ultimaCorrida = null;
+        busqueda++;
+        textoCorridas.setText("");
+
+        String muestra = muestraActual;
+        int esta = busqueda;
+        if (muestra == null) {
+            textoResumen.setText("Todas las muestras");
+        } else {
+            textoResumen.setText("Consultando el historial...");
+            long hasta = System.currentTimeMillis();
+            long desde = hasta - DIAS_TENDENCIA * MS_POR_DIA;
+            HistorialRepository.Fallo fallo = e -> {
+                if (esta == busqueda) textoResumen.setText("No se pudo consultar el historial.");
+            };
+            historial.consultar(h -> h.estadisticas(muestra), estadisticas -> {
+                if (esta != busqueda) return;
+                historial.consultar(h -> h.tendencia(muestra, desde, hasta), tendencia -> {
+                    if (esta != busqueda) return;
+                    textoResumen.setText(formatearResumen(muestra, estadisticas, tendencia));
+                }, fallo);
+            }, fallo);
+        }
+        cargarPagina();
+    }
+
+    private void cargarPagina() {
+        String muestra = muestraActual;
+        HistorialRepository.Corrida despuesDe = ultimaCorrida;
+        int esta = busqueda;
+        btnMasAntiguos.setEnabled(false);
+        historial.consultar(h -> h.pagina(muestra, despuesDe, TAMANO_PAGINA), pagina -> {
+            if (esta != busqueda) return;
+            StringBuilder texto = new StringBuilder(textoCorridas.getText());
+            DateFormat formato = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+            for (HistorialRepository.Corrida c : pagina) {
+                texto.append(formato.format(new Date(c.fecha))).append("  ");
+                if (muestra == null) texto.append(c.muestra).append("  ");
+                texto.append(c.total).append(" esporas");
+                if (!Double.isNaN(c.areaPromedioMm2)) {
+                    texto.append(String.format(Locale.getDefault(), ", %.4f mm²", c.areaPromedioMm2));
+                }
+                texto.append("\n");
+            }
+            if (pagina.isEmpty() && despuesDe == null) texto.append("No hay corridas guardadas.");
+            textoCorridas.setText(texto);
+            if (!pagina.isEmpty()) ultimaCorrida = pagina.get(pagina.size() - 1);
+            // Una página incompleta es la última.
+            btnMasAntiguos.setEnabled(pagina.size() == TAMANO_PAGINA);
+        }, e -> {
+            if (esta != busqueda) return;
+            textoCorridas.append("No se pudo leer el historial.\n");
+            // Se puede volver a intentar desde la misma página.
+            btnMasAntiguos.setEnabled(true);
+        });
+    }
+
+    static String formatearResumen(String muestra, HistorialRepository.Estadisticas e,
+                                   List<HistorialRepository.PuntoTendencia> tendencia) {
+        if (e.corridas == 0) return "Muestra " + muestra + ": sin corridas guardadas.";
+        StringBuilder texto = new StringBuilder();
+        texto.append("Muestra ").append(muestra).append(": ").append(e.corridas).append(" corridas\n");
+        texto.append(String.format(Locale.getDefault(), "Media: %.1f esporas, desviación estándar: %.1f\n",
+                e.media, Math.sqrt(e.varianza)));
+        if (!tendencia.isEmpty()) {
+            texto.append("\nTendencia (últimos ").append(DIAS_TENDENCIA).append(" días):\n");
+            DateFormat formato = DateFormat.getDateInstance(DateFormat.SHORT);
+            for (HistorialRepository.PuntoTendencia p : tendencia) {
+                texto.append(String.format(Locale.getDefault(), "%s: %.1f esporas (%d corridas)\n",
+                        formato.format(new Date(p.dia)), p.media, p.corridas));
+            }
+        }
+        return texto.toString();
+    }
+}
@@ -0,0 +1,356 @@
+package com.example.menuesporas;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * *HistorialRepository*: Historial de los conteos por cuadro, para seguir las mismas muestras a lo largo de
+ * los días. Es un singleton de proceso sobre {@link HistorialDatabase}.
+ *
+ * Todo el acceso a la base ocurre en un único hilo propio, nunca en el de la UI:
+ * - {@link #guardar(Corrida)} solo encola la corrida. El hilo escribe todas las pendientes en una sola
+ *   transacción con sentencias compiladas, así que un lote de imágenes cuesta un único commit.
+ * - Las consultas se envían con {@link #consultar(Consulta, Respuesta, Fallo)} y su resultado (o su error) llega
+ *   en el hilo principal. Como comparten el hilo con las escrituras, siempre ven las corridas ya guardadas.
+ *
+ * El historial se recorre por páginas con paginación por clave (fecha, id), que no se vuelve más lenta en
+ * las páginas antiguas como OFFSET. La media, la varianza y la tendencia se calculan en SQLite sobre el
+ * índice (muestra, fecha, total), por lo que responden en milisegundos con decenas de miles de corridas.
+ */
+public final class HistorialRepository {
+
+    private static final String TAG = "HistorialRepository";
+    private static final long MS_POR_DIA = 24L * 60 * 60 * 1000;
+    // Todas las zonas horarias y sus cambios de horario caen en múltiplos de 15 minutos.
+    private static final long MS_POR_CUARTO_DE_HORA = 15L * 60 * 1000;
+
+    private static volatile HistorialRepository instancia;
+
+    private final HistorialDatabase base;
+    private final ExecutorService hilo = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "historial");
+        t.setPriority(Thread.NORM_PRIORITY - 1);
+        return t;
+    });
+    private final Handler hiloPrincipal = new Handler(Looper.getMainLooper());
+
+    // Corridas esperando la próxima transacción; se accede con el candado del repositorio.
+    private List<Corrida> pendientes = new ArrayList<>();
+
+    private HistorialRepository(Context context) {
+        base = new HistorialDatabase(context);
+    }
+
+    public static HistorialRepository get(Context context) {
+        HistorialRepository repositorio = instancia;
+        if (repositorio == null) {
+            synchronized (HistorialRepository.class) {
+                repositorio = instancia;
+                if (repositorio == null) {
+                    repositorio = new HistorialRepository(context);
+                    instancia = repositorio;
+                }
+            }
+        }
+        return repositorio;
+    }
+
+    /**
+     * Un análisis de una muestra: el total y el conteo de cada cuadro (conteoPorCuadro[fila][columna]).
+     */
+    public static final class Corrida {
+        public final long id;          // 0 hasta que se guarda.
+        public final String muestra;
+        public final long fecha;       // Milisegundos desde 1970.
+        public final String preset;
+        public final String imagen;
+        public final int total;
+        public final double areaPromedioMm2;  // NaN si no se pudo calcular.
+        public final double pixelesPorMm;     // NaN si no se conoce la calibración.
+        public final int[][] conteoPorCuadro; // null en las páginas del historial (no se cargan los cuadros).
+
+        public Corrida(String muestra, long fecha, String preset, String imagen, int total, double areaPromedioMm2,
+                       double pixelesPorMm, @Nullable int[][] conteoPorCuadro) {
+            this(0, muestra, fecha, preset, imagen, total, areaPromedioMm2, pixelesPorMm, conteoPorCuadro);
+        }
+
+        Corrida(long id, String muestra, long fecha, String preset, String imagen, int total, double areaPromedioMm2,
+                double pixelesPorMm, @Nullable int[][] conteoPorCuadro) {
+            this.id = id;
+            this.muestra = muestra;
+            this.fecha = fecha;
+            this.preset = preset;
+            this.imagen = imagen;
+            this.total = total;
+            this.areaPromedioMm2 = areaPromedioMm2;
+            this.pixelesPorMm = pixelesPorMm;
+            this.conteoPorCuadro = conteoPorCuadro;
+        }
+    }
+
+    /**
+     * Media y varianza muestral (n - 1) del total de las corridas de una muestra.
+     */
+    public static final class Estadisticas {
+        public final int corridas;
+        public final double media;
+        public final double varianza;
+        public final long primeraFecha;
+        public final long ultimaFecha;
+
+        Estadisticas(int corridas, double media, double varianza, long primeraFecha, long ultimaFecha) {
+            this.corridas = corridas;
+            this.media = media;
+            this.varianza = varianza;
+            this.primeraFecha = primeraFecha;
+            this.ultimaFecha = ultimaFecha;
+        }
+    }
+
+    /**
+     * Un día de la tendencia de una muestra: cuántas corridas hubo y su total promedio.
+     */
+    public static final class PuntoTendencia {
+        public final long dia; // Un instante del día local (el de su primera corrida), en ms.
+        public final int corridas;
+        public final double media;
+
+        PuntoTendencia(long dia, int corridas, double media) {
+            this.dia = dia;
+            this.corridas = corridas;
+            this.media = media;
+        }
+    }
+
+    /**
+     * Consulta que se ejecuta en el hilo del historial.
+     */
+    public interface Consulta<T> {
+        T ejecutar(HistorialRepository historial);
+    }
+
+    /**
+     * Receptor del resultado de una consulta, en el hilo principal.
+     */
+    public interface Respuesta<T> {
+        void onResultado(T resultado);
+    }
+
+    /**
+     * Receptor del error de una consulta, en el hilo principal.
+     */
+    public interface Fallo {
+        void onError(RuntimeException e);
+    }
+
+    /**
+     * Encola la corrida para guardarla en la próxima transacción. No bloquea.
+     */
+    public void guardar(Corrida corrida) {
+        boolean programar;
+        synchronized (this) {
+            programar = pendientes.isEmpty();
+            pendientes.add(corrida);
+        }
+        // Si ya había pendientes, la transacción programada también escribirá esta.
+        if (programar) hilo.execute(this::escribirPendientes);
+    }
+
+    /**
+     * Ejecuta la consulta en el hilo del historial. Llama a respuesta o, si la consulta falla, a fallo, para que la
+     * pantalla no se quede esperando.
+     */
+    public <T> void consultar(Consulta<T> consulta, Respuesta<T> respuesta, Fallo fallo) {
+        hilo.execute(() -> {
+            T resultado;
+            try {
+                resultado = consulta.ejecutar(this);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error en la consulta del historial", e);
+                hiloPrincipal.post(() -> fallo.onError(e));
+                return;
+            }
+            hiloPrincipal.post(() -> respuesta.onResultado(resultado));
+        });
+    }
+
+    private void escribirPendientes() {
+        List<Corrida> lote;
+        synchronized (this) {
+            lote = pendientes;
+            pendientes = new ArrayList<>();
+        }
+        if (lote.isEmpty()) return;
+        SQLiteDatabase db = base.getWritableDatabase();
+        SQLiteStatement insertarAnalisis = db.compileStatement("INSERT INTO analisis "
+                + "(muestra, fecha, preset, imagen, total, area_promedio_mm2, pixeles_por_mm) VALUES (?, ?, ?, ?, ?, ?, ?)");
+        SQLiteStatement insertarCuadro = db.compileStatement(
+                "INSERT INTO conteo_cuadro (analisis_id, fila, columna, conteo) VALUES (?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (Corrida c : lote) {
+                insertarAnalisis.clearBindings();
+                insertarAnalisis.bindString(1, c.muestra);
+                insertarAnalisis.bindLong(2, c.fecha);
+                insertarAnalisis.bindString(3, c.preset);
+                if (c.imagen != null) insertarAnalisis.bindString(4, c.imagen); else insertarAnalisis.bindNull(4);
+                insertarAnalisis.bindLong(5, c.total);
+                enlazarReal(insertarAnalisis, 6, c.areaPromedioMm2);
+                enlazarReal(insertarAnalisis, 7, c.pixelesPorMm);
+                long id = insertarAnalisis.executeInsert();
+                if (c.conteoPorCuadro == null) continue;
+                for (int fila = 0; fila < c.conteoPorCuadro.length; fila++) {
+                    for (int columna = 0; columna < c.conteoPorCuadro[fila].length; columna++) {
+                        insertarCuadro.bindLong(1, id);
+                        insertarCuadro.bindLong(2, fila);
+                        insertarCuadro.bindLong(3, columna);
+                        insertarCuadro.bindLong(4, c.conteoPorCuadro[fila][columna]);
+                        insertarCuadro.executeInsert();
+                    }
+                }
+            }
+            db.setTransactionSuccessful();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "No se pudieron guardar " + lote.size() + " corridas en el historial", e);
+        } finally {
+            db.endTransaction();
+            insertarAnalisis.close();
+            insertarCuadro.close();
+        }
+    }
+
+    private static void enlazarReal(SQLiteStatement sentencia, int indice, double valor) {
+        if (Double.isNaN(valor)) sentencia.bindNull(indice); else sentencia.bindDouble(indice, valor);
+    }
+
+    // --- Consultas: se ejecutan en el hilo del historial, a través de consultar(). ---
+
+    /**
+     * Una página del historial, de la corrida más reciente a la más antigua. La primera página se pide con
+     * despuesDe null y las siguientes con la última corrida de la página anterior.
+     *
+     * @param muestra    Solo las corridas de esta muestra, o null para todas.
+     * @param despuesDe  Última corrida de la página anterior, o null.
+     * @param tamano     Corridas por página.
+     */
+    public List<Corrida> pagina(@Nullable String muestra, @Nullable Corrida despuesDe, int tamano) {
+        StringBuilder sql = new StringBuilder("SELECT id, muestra, fecha, preset, imagen, total, area_promedio_mm2, "
+                + "pixeles_por_mm FROM analisis");
+        List<String> argumentos = new ArrayList<>();
+        String union = " WHERE ";
+        if (muestra != null) {
+            sql.append(union).append("muestra = ?");
+            argumentos.add(muestra);
+            union = " AND ";
+        }
+        if (despuesDe != null) {
+            sql.append(union).append("(fecha < ? OR (fecha = ? AND id < ?))");
+            argumentos.add(String.valueOf(despuesDe.fecha));
+            argumentos.add(String.valueOf(despuesDe.fecha));
+            argumentos.add(String.valueOf(despuesDe.id));
+        }
+        sql.append(" ORDER BY fecha DESC, id DESC LIMIT ").append(tamano);
+
+        List<Corrida> corridas = new ArrayList<>(tamano);
+        try (Cursor c = base.getReadableDatabase().rawQuery(sql.toString(), argumentos.toArray(new String[0]))) {
+            while (c.moveToNext()) {
+                corridas.add(new Corrida(c.getLong(0), c.getString(1), c.getLong(2), c.getString(3),
+                        c.isNull(4) ? null : c.getString(4), c.getInt(5),
+                        c.isNull(6) ? Double.NaN : c.getDouble(6), c.isNull(7) ? Double.NaN : c.getDouble(7), null));
+            }
+        }
+        return corridas;
+    }
+
+    /**
+     * Conteo de cada cuadro de una corrida guardada, o null si no tiene cuadrícula.
+     */
+    @Nullable
+    public int[][] conteoPorCuadro(long analisisId) {
+        List<int[]> cuadros = new ArrayList<>();
+        int filas = 0;
+        int columnas = 0;
+        try (Cursor c = base.getReadableDatabase().rawQuery(
+                "SELECT fila, columna, conteo FROM conteo_cuadro WHERE analisis_id = ?",
+                new String[]{String.valueOf(analisisId)})) {
+            while (c.moveToNext()) {
+                int[] cuadro = {c.getInt(0), c.getInt(1), c.getInt(2)};
+                filas = Math.max(filas, cuadro[0] + 1);
+                columnas = Math.max(columnas, cuadro[1] + 1);
+                cuadros.add(cuadro);
+            }
+        }
+        if (cuadros.isEmpty()) return null;
+        int[][] conteo = new int[filas][columnas];
+        for (int[] cuadro : cuadros) conteo[cuadro[0]][cuadro[1]] = cuadro[2];
+        return conteo;
+    }
+
+    /**
+     * Media y varianza del total de una muestra, calculadas con sumas enteras exactas en SQLite.
+     */
+    public Estadisticas estadisticas(String muestra) {
+        try (Cursor c = base.getReadableDatabase().rawQuery(
+                "SELECT COUNT(*), SUM(total), SUM(total * total), MIN(fecha), MAX(fecha) FROM analisis WHERE muestra = ?",
+                new String[]{muestra})) {
+            if (!c.moveToFirst() || c.getInt(0) == 0) return new Estadisticas(0, 0, 0, 0, 0);
+            int n = c.getInt(0);
+            double suma = c.getLong(1);
+            double sumaCuadrados = c.getLong(2);
+            double media = suma / n;
+            double varianza = n < 2 ? 0 : Math.max(0, (sumaCuadrados - n * media * media) / (n - 1));
+            return new Estadisticas(n, media, varianza, c.getLong(3), c.getLong(4));
+        }
+    }
+
+    /**
+     * Total promedio por día local (la zona horaria del dispositivo) de una muestra entre dos fechas (inclusive),
+     * del día más antiguo al más reciente.
+     *
+     * SQLite no conoce la zona del dispositivo, y agrupar fecha / MS_POR_DIA daría días UTC: en las zonas al oeste
+     * de UTC las corridas de la noche caerían en el día siguiente. Por eso SQLite agrupa por cuartos de hora UTC,
+     * todavía sobre el índice, y aquí se suman los cuartos de cada día local con el desfase de su propia fecha,
+     * que respeta los cambios de horario.
+     */
+    public List<PuntoTendencia> tendencia(String muestra, long desde, long hasta) {
+        List<PuntoTendencia> puntos = new ArrayList<>();
+        TimeZone zona = TimeZone.getDefault();
+        try (Cursor c = base.getReadableDatabase().rawQuery(
+                "SELECT fecha / " + MS_POR_CUARTO_DE_HORA + " AS cuarto, COUNT(*), SUM(total) FROM analisis "
+                        + "WHERE muestra = ? AND fecha BETWEEN ? AND ? GROUP BY cuarto ORDER BY cuarto",
+                new String[]{muestra, String.valueOf(desde), String.valueOf(hasta)})) {
+            long diaActual = Long.MIN_VALUE;
+            long inicioDia = 0;
+            int corridas = 0;
+            long suma = 0;
+            while (c.moveToNext()) {
+                long inicio = c.getLong(0) * MS_POR_CUARTO_DE_HORA;
+                long dia = Math.floorDiv(inicio + zona.getOffset(inicio), MS_POR_DIA);
+                if (dia != diaActual) {
+                    if (corridas > 0) puntos.add(new PuntoTendencia(inicioDia, corridas, (double) suma / corridas));
+                    diaActual = dia;
+                    inicioDia = inicio;
+                    corridas = 0;
+                    suma = 0;
+                }
+                corridas += c.getInt(1);
+                suma += c.getLong(2);
+            }
+            if (corridas > 0) puntos.add(new PuntoTendencia(inicioDia, corridas, (double) suma / corridas));
+        }
+        return puntos;
+    }
+}
@@ -0,0 +1,406 @@
+package com.example.menuesporas;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ImageDecoder;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+
+import androidx.annotation.Nullable;
+
+import com.example.menuesporas.detector.DetectionParams;
+import com.example.menuesporas.detector.LuminanceConverter;
+import com.example.menuesporas.detector.MatPool;
+import com.example.menuesporas.detector.NativeRegion;
+
+import org.opencv.android.Utils;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * *ImageLoader*: Decodifica las imágenes de la galería directamente a la resolución que necesita el pipeline.
+ * Las fotos del microscopio pueden tener 48 MP (unos 190 MB en ARGB), pero el detector trabaja a 640x480:
+ * decodificar la imagen completa con MediaStore.Images.Media.getBitmap solo para redimensionarla después
+ * agota la memoria en dispositivos de 3 GB. Aquí el submuestreo lo hace el propio decodificador, por lo que
+ * nunca existe un Bitmap a resolución completa.
+ *
+ * - Android 9 o superior: ImageDecoder con setTargetSize, que entrega exactamente el tamaño pedido.
+ * - Versiones anteriores: BitmapFactory con inSampleSize (potencia de 2), que entrega una imagen igual o
+ *   algo mayor que el tamaño pedido; SporeDetector termina de redimensionarla.
+ *
+ * El Bitmap resultante es ARGB_8888 en memoria de software, apto para Utils.bitmapToMat (Mat RGBA).
+ *
+ * Todas las rutas entregan la imagen tal como está guardada, sin aplicar la orientación EXIF, igual que el
+ * MediaStore.Images.Media.getBitmap original y BitmapFactory: así la imagen de trabajo, el recorte y los cuadros
+ * no dependen de la versión de Android. ImageDecoder sí la aplica, por lo que esa ruta la deshace.
+ *
+ * El detector solo necesita la luminancia: {@link #luminancia} la obtiene del Bitmap sin crear el Mat RGBA, y el
+ * color se reconstruye únicamente al final, con {@link #colorDeZona}, si hay que dibujar los contornos.
+ *
+ * Las variantes con pools toman la imagen decodificada de un {@link BitmapPool} (con inBitmap, en Android 8 o
+ * anterior) y la luminancia de un {@link MatPool}; quien las recibe las devuelve al pool en lugar de liberarlas.
+ *
+ * {@link #decodificarRegion} es la excepción: decodifica con BitmapRegionDecoder solo una región de interés, a
+ * resolución nativa, para analizar con más detalle una parte de la imagen elegida sobre la vista previa.
+ * BitmapRegionDecoder nunca aplica la orientación EXIF, así que la región y la vista previa comparten el marco
+ * de la imagen guardada; por eso {@link #decodificar} deshace la rotación de ImageDecoder.
+ */
+public final class ImageLoader {
+
+    private ImageLoader() {
+    }
+
+    /**
+     * Región de interés decodificada por {@link #decodificarRegion}.
+     */
+    public static final class Region {
+        public final Bitmap bitmap;        // ARGB_8888, de (aproximadamente) region.ancho x region.alto / submuestreo.
+        public final NativeRegion region;  // Ubicación en la imagen original.
+        public final int anchoOriginal;
+        public final int altoOriginal;
+
+        Region(Bitmap bitmap, NativeRegion region, int anchoOriginal, int altoOriginal) {
+            this.bitmap = bitmap;
+            this.region = region;
+            this.anchoOriginal = anchoOriginal;
+            this.altoOriginal = altoOriginal;
+        }
+    }
+
+    /**
+     * Decodifica la imagen de la URI al tamaño de trabajo indicado (el de los parámetros de detección).
+     *
+     * @param resolver     ContentResolver para abrir la URI.
+     * @param uri          URI de la imagen.
+     * @param anchoDestino Ancho de trabajo del pipeline.
+     * @param altoDestino  Alto de trabajo del pipeline.
+     * @return Bitmap ARGB_8888 de (aproximadamente) el tamaño pedido.
+     * @throws IOException Si la imagen no se puede abrir o decodificar.
+     */
+    public static Bitmap decodificar(ContentResolver resolver, Uri uri, int anchoDestino, int altoDestino)
+            throws IOException {
+        return decodificar(resolver, uri, anchoDestino, altoDestino, null);
+    }
+
+    /**
+     * Como {@link #decodificar(ContentResolver, Uri, int, int)}, pero el Bitmap es mutable y, si se puede, se
+     * decodifica sobre uno libre del pool; se debe devolver al pool al terminar.
+     *
+     * @param bitmaps Pool de Bitmaps, o null para un Bitmap propio que no vuelve a ningún pool.
+     */
+    public static Bitmap decodificar(ContentResolver resolver, Uri uri, int anchoDestino, int altoDestino,
+                                     @Nullable BitmapPool bitmaps) throws IOException {
+        Bitmap bitmap;
+        int orientacion = ExifInterface.ORIENTATION_NORMAL;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            // ImageDecoder rota la imagen según el EXIF y el tamaño pedido se refiere a la imagen ya rotada.
+            orientacion = leerOrientacion(resolver, uri);
+            boolean traspuesta = intercambiaEjes(orientacion);
+            int anchoDecodificado = traspuesta ? altoDestino : anchoDestino;
+            int altoDecodificado = traspuesta ? anchoDestino : altoDestino;
+            ImageDecoder.Source source = ImageDecoder.createSource(resolver, uri);
+            bitmap = ImageDecoder.decodeBitmap(source, (decoder, info, src) -> {
+                decoder.setTargetSize(anchoDecodificado, altoDecodificado);
+                // Los Bitmaps de hardware no se pueden leer desde Utils.bitmapToMat.
+                decoder.setAllocator(ImageDecoder.ALLOCATOR_SOFTWARE);
+                // ImageDecoder no decodifica sobre un Bitmap existente, pero uno mutable sí puede volver al pool.
+                if (bitmaps != null) decoder.setMutableRequired(true);
+            });
+        } else {
+            bitmap = decodificarConSubmuestreo(resolver, uri, anchoDestino, altoDestino, bitmaps);
+        }
+        if (bitmap == null) {
+            throw new IOException("No se pudo decodificar la imagen: " + uri);
+        }
+        // Utils.bitmapToMat solo acepta ARGB_8888 y RGB_565; las imágenes de gama amplia llegan en otro formato.
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            Bitmap convertido = bitmap.copy(Bitmap.Config.ARGB_8888, bitmaps != null);
+            bitmap.recycle();
+            bitmap = convertido;
+        }
+        return deshacerOrientacion(bitmap, orientacion, bitmaps);
+    }
+
+    /**
+     * Decodifica solo una región de la imagen, a resolución nativa (o con el submuestreo necesario para no superar
+     * maxPixeles). Ni la imagen completa ni sus píxeles fuera de la región llegan a existir como Bitmap.
+     *
+     * Las fracciones se refieren a la imagen tal como está guardada, sin la orientación EXIF: es el marco de
+     * BitmapRegionDecoder y el de la vista previa de {@link #decodificar} en todas las versiones de Android. Si la
+     * vista previa aplicara el EXIF, una foto girada 90° analizaría otra parte de la imagen.
+     *
+     * @param izquierda  Borde izquierdo de la región, como fracción (0-1) del ancho de la imagen.
+     * @param arriba     Borde superior, como fracción del alto.
+     * @param derecha    Borde derecho, como fracción del ancho.
+     * @param abajo      Borde inferior, como fracción del alto.
+     * @param params     Preset de la vista previa sobre la que se eligió la región (por su tamaño de trabajo).
+     * @param maxPixeles Píxeles que puede tener como máximo el Bitmap decodificado.
+     * @throws IOException Si la imagen no se puede abrir o el formato no admite decodificar regiones.
+     */
+    public static Region decodificarRegion(ContentResolver resolver, Uri uri, double izquierda, double arriba,
+                                           double derecha, double abajo, DetectionParams params, long maxPixeles)
+            throws IOException {
+        BitmapRegionDecoder decodificador;
+        try (InputStream entrada = abrir(resolver, uri)) {
+            decodificador = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                    ? BitmapRegionDecoder.newInstance(entrada)
+                    : BitmapRegionDecoder.newInstance(entrada, false);
+        }
+        if (decodificador == null) {
+            throw new IOException("El formato de la imagen no permite decodificar una región: " + uri);
+        }
+        try {
+            int anchoOriginal = decodificador.getWidth();
+            int altoOriginal = decodificador.getHeight();
+            NativeRegion region = NativeRegion.desdeFracciones(izquierda, arriba, derecha, abajo, anchoOriginal,
+                    altoOriginal, params.workWidth, params.workHeight, maxPixeles);
+            BitmapFactory.Options opciones = new BitmapFactory.Options();
+            opciones.inSampleSize = region.submuestreo;
+            opciones.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            Bitmap bitmap = decodificador.decodeRegion(
+                    new Rect(region.x, region.y, region.x + region.ancho, region.y + region.alto), opciones);
+            if (bitmap == null) {
+                throw new IOException("No se pudo decodificar la región " + region + " de " + uri);
+            }
+            if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+                Bitmap convertido = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+                bitmap.recycle();
+                bitmap = convertido;
+            }
+            return new Region(bitmap, region, anchoOriginal, altoOriginal);
+        } finally {
+            decodificador.recycle();
+        }
+    }
+
+    /**
+     * Decodifica la imagen y devuelve solo su luminancia; el Bitmap vuelve al pool enseguida.
+     * Para los análisis que no muestran la imagen (el análisis por lotes). La luminancia se debe devolver a mats.
+     */
+    public static Mat decodificarLuminancia(ContentResolver resolver, Uri uri, DetectionParams params,
+                                            BitmapPool bitmaps, MatPool mats) throws IOException {
+        Bitmap bitmap = decodificar(resolver, uri, params.workWidth, params.workHeight, bitmaps);
+        try {
+            return luminancia(bitmap, params, mats);
+        } finally {
+            bitmaps.devolver(bitmap);
+        }
+    }
+
+    /**
+     * Luminancia de 8 bits (CV_8UC1) de un Bitmap decodificado, con los mismos valores que
+     * Utils.bitmapToMat + COLOR_BGR2GRAY. Si el Bitmap ya tiene el tamaño de trabajo se convierte fila a fila
+     * desde los píxeles ARGB; si no (submuestreo de BitmapFactory), se redimensiona en color y después se
+     * convierte, en el mismo orden que el pipeline, para que los conteos no cambien.
+     */
+    public static Mat luminancia(Bitmap bitmap, DetectionParams params) {
+        return luminancia(bitmap, params, MatPool.SIN_REUSO);
+    }
+
+    /**
+     * Como {@link #luminancia(Bitmap, DetectionParams)}, con la luminancia y los Mats intermedios tomados del pool.
+     */
+    public static Mat luminancia(Bitmap bitmap, DetectionParams params, MatPool mats) {
+        int ancho = bitmap.getWidth();
+        int alto = bitmap.getHeight();
+        Mat gris = mats.obtener(params.workHeight, params.workWidth, CvType.CV_8UC1);
+        if (ancho == params.workWidth && alto == params.workHeight) {
+            try {
+                LuminanceConverter.desdeArgb(
+                        (destino, primeraFila, filas) -> bitmap.getPixels(destino, 0, ancho, 0, primeraFila, ancho, filas),
+                        gris);
+                return gris;
+            } catch (RuntimeException e) {
+                mats.devolver(gris);
+                throw e;
+            }
+        }
+        Mat rgba = mats.obtener(alto, ancho, CvType.CV_8UC4);
+        Mat redimensionada = mats.obtener(params.workHeight, params.workWidth, CvType.CV_8UC4);
+        try {
+            Utils.bitmapToMat(bitmap, rgba);
+            Imgproc.resize(rgba, redimensionada, new Size(params.workWidth, params.workHeight));
+            Imgproc.cvtColor(redimensionada, gris, Imgproc.COLOR_BGR2GRAY);
+            return gris;
+        } catch (RuntimeException e) {
+            mats.devolver(gris);
+            throw e;
+        } finally {
+            mats.devolver(rgba);
+            mats.devolver(redimensionada);
+        }
+    }
+
+    /**
+     * Imagen RGBA de la zona analizada (resolución de trabajo y recorte de los parámetros), con las mismas
+     * coordenadas que los contornos detectados. Se crea solo para dibujar el resultado.
+     */
+    public static Mat colorDeZona(Bitmap bitmap, DetectionParams params) {
+        Mat rgba = new Mat();
+        Utils.bitmapToMat(bitmap, rgba);
+        if (rgba.cols() != params.workWidth || rgba.rows() != params.workHeight) {
+            Mat redimensionada = new Mat();
+            Imgproc.resize(rgba, redimensionada, new Size(params.workWidth, params.workHeight));
+            rgba.release();
+            rgba = redimensionada;
+        }
+        if (params.roi == null) return rgba;
+        Mat vista = rgba.submat(params.roi);
+        Mat zona = vista.clone();
+        vista.release();
+        rgba.release();
+        return zona;
+    }
+
+    private static Bitmap decodificarConSubmuestreo(ContentResolver resolver, Uri uri, int anchoDestino, int altoDestino,
+                                                    @Nullable BitmapPool bitmaps) throws IOException {
+        // Primera pasada: solo las dimensiones, sin reservar los píxeles.
+        BitmapFactory.Options opciones = new BitmapFactory.Options();
+        opciones.inJustDecodeBounds = true;
+        try (InputStream entrada = abrir(resolver, uri)) {
+            BitmapFactory.decodeStream(entrada, null, opciones);
+        }
+        if (opciones.outWidth <= 0 || opciones.outHeight <= 0) {
+            return null;
+        }
+
+        opciones.inSampleSize = calcularSubmuestreo(opciones.outWidth, opciones.outHeight, anchoDestino, altoDestino);
+        opciones.inJustDecodeBounds = false;
+        opciones.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        if (bitmaps != null) {
+            opciones.inMutable = true;
+            // Tamaño que entrega el decodificador (redondeando hacia arriba, por las dudas): cualquier Bitmap libre
+            // con al menos esos bytes sirve, porque BitmapFactory lo redimensiona.
+            long ancho = (opciones.outWidth + opciones.inSampleSize - 1) / opciones.inSampleSize;
+            long alto = (opciones.outHeight + opciones.inSampleSize - 1) / opciones.inSampleSize;
+            opciones.inBitmap = bitmaps.obtenerParaDecodificar(ancho * alto * 4);
+        }
+        try (InputStream entrada = abrir(resolver, uri)) {
+            Bitmap bitmap = BitmapFactory.decodeStream(entrada, null, opciones);
+            if (bitmap == null && bitmaps != null) bitmaps.devolver(opciones.inBitmap);
+            return bitmap;
+        } catch (IllegalArgumentException e) {
+            // El decodificador rechazó el Bitmap del pool: se devuelve y se decodifica sobre uno nuevo.
+            if (opciones.inBitmap == null) throw e;
+            bitmaps.devolver(opciones.inBitmap);
+            opciones.inBitmap = null;
+        } catch (IOException | RuntimeException e) {
+            if (bitmaps != null) bitmaps.devolver(opciones.inBitmap);
+            throw e;
+        }
+        try (InputStream entrada = abrir(resolver, uri)) {
+            return BitmapFactory.decodeStream(entrada, null, opciones);
+        }
+    }
+
+    /**
+     * Orientación EXIF de la imagen, o ORIENTATION_NORMAL si no la tiene o no se puede leer (en ese caso
+     * ImageDecoder tampoco la aplica).
+     */
+    private static int leerOrientacion(ContentResolver resolver, Uri uri) {
+        try (InputStream entrada = abrir(resolver, uri)) {
+            return new ExifInterface(entrada).getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    private static boolean intercambiaEjes(int orientacion) {
+        return orientacion == ExifInterface.ORIENTATION_TRANSPOSE
+                || orientacion == ExifInterface.ORIENTATION_ROTATE_90
+                || orientacion == ExifInterface.ORIENTATION_TRANSVERSE
+                || orientacion == ExifInterface.ORIENTATION_ROTATE_270;
+    }
+
+    /**
+     * Deshace la orientación EXIF que aplicó ImageDecoder y devuelve la imagen tal como está guardada.
+     * Los giros son de 90° y las traslaciones enteras, así que cada píxel se copia sin interpolar. El Bitmap
+     * rotado sale del pool (si lo hay) y el recibido vuelve a él.
+     */
+    private static Bitmap deshacerOrientacion(Bitmap bitmap, int orientacion, @Nullable BitmapPool bitmaps) {
+        int ancho = bitmap.getWidth();
+        int alto = bitmap.getHeight();
+        Matrix inversa = new Matrix();
+        switch (orientacion) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                inversa.setScale(-1, 1);
+                inversa.postTranslate(ancho, 0);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                inversa.setRotate(180);
+                inversa.postTranslate(ancho, alto);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                inversa.setScale(1, -1);
+                inversa.postTranslate(0, alto);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                inversa.setRotate(90);
+                inversa.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                inversa.setRotate(-90);
+                inversa.postTranslate(0, ancho);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                inversa.setRotate(-90);
+                inversa.postScale(-1, 1);
+                inversa.postTranslate(alto, ancho);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                inversa.setRotate(90);
+                inversa.postTranslate(alto, 0);
+                break;
+            default:
+                return bitmap;
+        }
+        int anchoGuardado = intercambiaEjes(orientacion) ? alto : ancho;
+        int altoGuardado = intercambiaEjes(orientacion) ? ancho : alto;
+        Bitmap guardada = bitmaps != null
+                ? bitmaps.obtener(anchoGuardado, altoGuardado, Bitmap.Config.ARGB_8888)
+                : Bitmap.createBitmap(anchoGuardado, altoGuardado, Bitmap.Config.ARGB_8888);
+        // Un Bitmap del pool tiene contenido anterior, que se mezclaría con los píxeles transparentes.
+        guardada.eraseColor(Color.TRANSPARENT);
+        new Canvas(guardada).drawBitmap(bitmap, inversa, null);
+        if (bitmaps != null) {
+            bitmaps.devolver(bitmap);
+        } else {
+            bitmap.recycle();
+        }
+        return guardada;
+    }
+
+    /**
+     * Mayor potencia de 2 que deja la imagen con al menos el tamaño de destino en ambos ejes,
+     * para no perder detalle antes del redimensionado final.
+     */
+    static int calcularSubmuestreo(int ancho, int alto, int anchoDestino, int altoDestino) {
+        int submuestreo = 1;
+        while (ancho / (submuestreo * 2) >= anchoDestino && alto / (submuestreo * 2) >= altoDestino) {
+            submuestreo *= 2;
+        }
+        return submuestreo;
+    }
+
+    private static InputStream abrir(ContentResolver resolver, Uri uri) throws FileNotFoundException {
+        InputStream entrada = resolver.openInputStream(uri);
+        if (entrada == null) {
+            throw new FileNotFoundException("No se pudo abrir la imagen: " + uri);
+        }
+        return entrada;
+    }
+}
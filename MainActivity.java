@@ -2,6 +2,7 @@ package com.example.menuesporas;
 
 import androidx.appcompat.app.AppCompatActivity;
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.os.Bundle;
 import android.widget.Button;
 
@@ -14,6 +15,12 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        // En las compilaciones de depuración se rastrean los Mats y Bitmaps de los pools que nunca se devuelven,
+        // y se permite el registro detallado de cada espora.
+        boolean depuracion = (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        AnalysisEngine.get().setRastrearFugas(depuracion);
+        MetricasAnalisis.setDepuracion(depuracion);
+
         // Asocia los IDs de los botones a tus variables Java
         btnSeleccionHongo = findViewById(R.id.btnSeleccionHongo);
         btnInfoProyecto = findViewById(R.id.btnInfoProyecto);
@@ -1,349 +1,461 @@
-package com.example.menuesporas;
-
-import androidx.annotation.Nullable;
-import androidx.appcompat.app.AppCompatActivity;
-
-import android.content.Intent;
-import android.graphics.Bitmap;
-import android.net.Uri;
-import android.os.Bundle;
-import android.provider.MediaStore;
-import android.util.Log;
-import android.widget.Button;
-import android.widget.ImageView;
-import android.widget.TextView;
-
-import org.opencv.android.OpenCVLoader;
-import org.opencv.android.Utils;
-import org.opencv.core.Core;
-import org.opencv.core.Mat;
-import org.opencv.core.MatOfInt;
-import org.opencv.core.MatOfPoint;
-import org.opencv.core.MatOfPoint2f;
-import org.opencv.core.Point;
-import org.opencv.core.Rect;
-import org.opencv.core.Scalar;
-import org.opencv.core.Size;
-import org.opencv.imgproc.Imgproc;
-
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-
-/**
- * *MainActivity2*: La actividad principal que gestiona la interfaz de usuario y el flujo de procesamiento
- * de imágenes para la detección de esporas. Esta clase integra las funcionalidades de Android para la
- * selección de imágenes con las capacidades de procesamiento de visión por computadora de OpenCV.
- * Su objetivo es proporcionar una herramienta robusta para identificar y cuantificar esporas en imágenes.
- */
-public class MainActivity2 extends AppCompatActivity {
-
-    // --- Componentes de la Interfaz de Usuario (UI) ---
-    private ImageView imageView; // Componente visual para mostrar la imagen (original o procesada).
-    private TextView textView;   // Componente de texto para visualizar el conteo de esporas detectadas.
-    private Bitmap imageBitmap;  // Almacena la imagen original seleccionada por el usuario en formato Bitmap.
-    private String tipoHongo = ""; // String para almacenar el identificador del tipo de hongo,
-    // que se utiliza para cargar un conjunto de parámetros de detección optimizados para ese hongo específico.
-
-    // Etiqueta para los mensajes de depuración (logs) en Logcat, facilitando el seguimiento del flujo de la aplicación.
-    private static final String TAG = "MainActivity2";
-
-    // --- Inicialización de la Biblioteca OpenCV ---
-    // Bloque estático que se ejecuta una vez al cargar la clase en memoria.
-    // Es fundamental para inicializar la biblioteca OpenCV de forma nativa antes de que
-    // cualquier método de OpenCV sea invocado. Si la inicialización falla, se registra un error crítico.
-    static {
-        if (!OpenCVLoader.initDebug()) {
-            Log.e(TAG, "Error crítico: No se pudo cargar la biblioteca OpenCV.");
-        } else {
-            Log.d(TAG, "OpenCV cargado exitosamente. Listo para el procesamiento de imágenes.");
-        }
-    }
-
-    /**
-     * Método del ciclo de vida de la actividad: onCreate.
-     * Se invoca cuando la actividad es creada por primera vez. Este método es el punto principal
-     * para la inicialización de la UI, la configuración de listeners y la recuperación de datos
-     * persistentes o pasados a través de un Intent.
-     *
-     * @param savedInstanceState Si la actividad se está recreando después de ser destruida
-     * (ej. por un cambio de orientación), este Bundle contiene los datos
-     * de estado más recientes guardados por onSaveInstanceState().
-     */
-    @Override
-    protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        setContentView(R.layout.activitymain2);
-
-        imageView = findViewById(R.id.imageView);
-        textView = findViewById(R.id.texto);
-        Button btnAbrirGaleria = findViewById(R.id.btnAbrirGaleria);
-
-        Intent intent = getIntent();
-        tipoHongo = intent.getStringExtra("tipo_espora"); // Ahora esto recibirá el string completo de densidad
-
-        if (tipoHongo != null && !tipoHongo.isEmpty()) {
-            Log.d(TAG, "Parámetro 'tipo_espora' recibido: " + tipoHongo + ". Se ajustarán los parámetros de detección.");
-        } else {
-            tipoHongo = "default";
-            Log.d(TAG, "Parámetro 'tipo_espora' no especificado. Usando parámetros de detección por defecto.");
-        }
-
-        btnAbrirGaleria.setOnClickListener(v -> {
-            Log.d(TAG, "Botón 'Abrir Galería' pulsado. Iniciando selección de imagen.");
-            abrirGaleria();
-        });
-    }
-
-    private void abrirGaleria() {
-        Intent intent = new Intent(Intent.ACTION_PICK, MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
-        startActivityForResult(intent, 100);
-    }
-
-    @Override
-    protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
-        super.onActivityResult(requestCode, resultCode, data);
-        if (requestCode == 100 && resultCode == RESULT_OK && data != null) {
-            Log.d(TAG, "Imagen seleccionada de la galería. Procesando imagen...");
-            Uri imageUri = data.getData();
-            try {
-                imageBitmap = MediaStore.Images.Media.getBitmap(this.getContentResolver(), imageUri);
-                procesarImagen(imageBitmap);
-            } catch (IOException e) {
-                Log.e(TAG, "Error al cargar la imagen desde la URI: " + e.getMessage(), e);
-            }
-        } else {
-            Log.d(TAG, "Selección de imagen cancelada o un error ocurrió durante la selección.");
-        }
-    }
-
-    private void procesarImagen(Bitmap bitmapOriginal) {
-        Log.d(TAG, "Iniciando pipeline de procesamiento de imagen con OpenCV...");
-
-        Mat matOriginal = new Mat();
-        Utils.bitmapToMat(bitmapOriginal, matOriginal);
-        Log.d(TAG, "Imagen original convertida a formato Mat.");
-
-        Mat imgProcesar = new Mat();
-        Imgproc.resize(matOriginal, imgProcesar, new Size(640, 480));
-        Log.d(TAG, "Imagen redimensionada a 640x480 píxeles para procesamiento uniforme y optimización.");
-
-        Mat imgGray = new Mat();
-        Imgproc.cvtColor(imgProcesar, imgGray, Imgproc.COLOR_BGR2GRAY);
-        Log.d(TAG, "Imagen convertida a escala de grises para simplificar el procesamiento.");
-
-        Mat imgEqualized = new Mat();
-        Imgproc.equalizeHist(imgGray, imgEqualized);
-        Log.d(TAG, "Ecualización de histograma aplicada para realzar el contraste de las esporas.");
-
-        Imgproc.GaussianBlur(imgEqualized, imgEqualized, new Size(1, 1), 0);
-        Log.d(TAG, "Desenfoque Gaussiano aplicado con kernel (1,1) para máxima preservación de detalles.");
-
-        // --- Configuración de Parámetros de Detección Optimizada para un Recall más EQUILIBRADO ---
-        int adaptiveBlockSize = 15;
-        double adaptiveC = 5;
-
-        double minArea = 5.0;
-        double maxArea = 100.0;
-        double minCircularity = 0.65;
-        double minSolidity = 0.80;
-        int openIterations = 1;
-        int closeIterations = 0;
-        int drawContourThickness = 1;
-
-        double minAspectRatio = 0.5;
-        double maxAspectRatio = 2.0;
-
-        // Lógica para ajustar los parámetros específicos para cada tipoHongo.
-        // Ahora los 'case' usan los nombres completos de las densidades desde strings.xml
-        switch (tipoHongo) {
-            case "Baja Densidad (0-170 esporas)": // Corresponde a "Hongo 1" anterior
-                adaptiveBlockSize = 17;
-                adaptiveC = 6;
-                minArea = 8.0;
-                maxArea = 90.0;
-                minCircularity = 0.68;
-                minSolidity = 0.82;
-                openIterations = 1;
-                closeIterations = 0;
-                drawContourThickness = 4;
-                minAspectRatio = 0.6;
-                maxAspectRatio = 1.9;
-                break;
-            case "Densidad Moderada (170-500 esporas)": // Corresponde a "Hongo 2" anterior
-                adaptiveBlockSize = 13;
-                adaptiveC = 4;
-                minArea = 7.0;
-                maxArea = 80.0;
-                minCircularity = 0.60;
-                minSolidity = 0.75;
-                openIterations = 1;
-                closeIterations = 0;
-                drawContourThickness = 4;
-                minAspectRatio = 0.55;
-                maxAspectRatio = 1.8;
-                break;
-            case "Alta Densidad (500-1000 esporas)": // Corresponde a "Hongo 3" anterior
-                adaptiveBlockSize = 15;
-                adaptiveC = 5;
-                minArea = 6.0;
-                maxArea = 85.0;
-                minCircularity = 0.62;
-                minSolidity = 0.78;
-                openIterations = 1;
-                closeIterations = 0;
-                drawContourThickness = 4;
-                minAspectRatio = 0.45;
-                maxAspectRatio = 2.6;
-                break;
-            case "Densidad Muy Alta (1000+ esporas)": // Corresponde a "Hongo 4" anterior
-                adaptiveBlockSize = 15;
-                adaptiveC = 5;
-                minArea = 2.5;
-                maxArea = 85.0;
-                minCircularity = 0.38;
-                minSolidity = 0.58;
-                openIterations = 0;
-                closeIterations = 0;
-                drawContourThickness = 4;
-                minAspectRatio = 0.45;
-                maxAspectRatio = 2.6;
-                break;
-            default:
-                // Se mantienen los valores por defecto optimizados para un recall más equilibrado.
-                break;
-        }
-
-        // Validación: adaptiveBlockSize debe ser impar y al menos 3. Se ajusta si no cumple.
-        if (adaptiveBlockSize % 2 == 0) adaptiveBlockSize++;
-        if (adaptiveBlockSize < 3) adaptiveBlockSize = 3;
-
-        Log.d(TAG, "Parámetros finales de detección aplicados (optimizados para recall equilibrado):" +
-                " BlockSize=" + adaptiveBlockSize + ", C=" + adaptiveC +
-                ", MinArea=" + minArea + ", MaxArea=" + maxArea +
-                ", MinCirc=" + minCircularity + ", MinSolidity=" + minSolidity +
-                ", OpenIters=" + openIterations + ", CloseIters=" + closeIterations +
-                ", ContourThickness=" + drawContourThickness +
-                ", MinAspectRatio=" + minAspectRatio + ", MaxAspectRatio=" + maxAspectRatio);
-        // --- FIN DE AJUSTES DE PARÁMETROS ---
-
-        // 6. Umbralización Adaptativa:
-        Mat binaryMask = new Mat();
-        Imgproc.adaptiveThreshold(
-                imgEqualized,
-                binaryMask,
-                255,
-                Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C,
-                Imgproc.THRESH_BINARY_INV,
-                adaptiveBlockSize,
-                adaptiveC
-        );
-        Log.d(TAG, "Umbralización adaptativa completada.");
-
-        // 7. Operaciones Morfológicas: Apertura y Cierre.
-        Mat kernel = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(3, 3));
-
-        Imgproc.morphologyEx(binaryMask, binaryMask, Imgproc.MORPH_OPEN, kernel, new Point(-1, -1), openIterations);
-        Log.d(TAG, "Operación de apertura (MORPH_OPEN) aplicada con " + openIterations + " iteración(es).");
-
-        Imgproc.morphologyEx(binaryMask, binaryMask, Imgproc.MORPH_CLOSE, kernel, new Point(-1, -1), closeIterations);
-        Log.d(TAG, "Operación de cierre (MORPH_CLOSE) aplicada con " + closeIterations + " iteración(es).");
-
-        // 8. Detección de Contornos:
-        List<MatOfPoint> contours = new ArrayList<>();
-        Mat hierarchy = new Mat();
-        Imgproc.findContours(
-                binaryMask.clone(),
-                contours,
-                hierarchy,
-                Imgproc.RETR_LIST,
-                Imgproc.CHAIN_APPROX_NONE
-        );
-        Log.d(TAG, "Detección de contornos completada. Número inicial de contornos: " + contours.size());
-
-        Mat imgResult = imgProcesar.clone();
-        int conteoEsporas = 0;
-
-        // 9. Filtrado de Contornos con Umbrales más Estrictos:
-        for (MatOfPoint contour : contours) {
-            double area = Imgproc.contourArea(contour);
-
-            if (area < minArea || area > maxArea) {
-                if (contour != null) contour.release();
-                continue;
-            }
-
-            double perimeter = Imgproc.arcLength(new MatOfPoint2f(contour.toArray()), true);
-            double circularity = (perimeter == 0) ? 0 : (4 * Math.PI * area / (perimeter * perimeter));
-
-            if (circularity < minCircularity) {
-                Log.d(TAG, "Contorno descartado por Circularidad: " + String.format("%.2f", circularity) +
-                        ". Área: " + String.format("%.2f", area));
-                if (contour != null) contour.release();
-                continue;
-            }
-
-            MatOfInt hull = new MatOfInt();
-            Imgproc.convexHull(contour, hull);
-            MatOfPoint hullContour = new MatOfPoint();
-            List<Point> hullPointsList = new ArrayList<>();
-            List<Point> contourPoints = contour.toList();
-            for (int i = 0; i < hull.rows(); i++) {
-                hullPointsList.add(contourPoints.get((int)hull.get(i, 0)[0]));
-            }
-            hullContour.fromList(hullPointsList);
-            double hullArea = Imgproc.contourArea(hullContour);
-            double solidity = (hullArea == 0) ? 0 : (area / hullArea);
-
-            if (solidity < minSolidity) {
-                Log.d(TAG, "Contorno descartado por Solidez: " + String.format("%.2f", solidity) +
-                        ". Área: " + String.format("%.2f", area) + ". Circularidad: " + String.format("%.2f", circularity));
-                if (hull != null) hull.release();
-                if (hullContour != null) hullContour.release();
-                if (contour != null) contour.release();
-                continue;
-            }
-
-            Rect boundingRect = Imgproc.boundingRect(contour);
-            double aspectRatio = (double) boundingRect.width / boundingRect.height;
-
-            if (aspectRatio < minAspectRatio || aspectRatio > maxAspectRatio) {
-                Log.d(TAG, "Contorno descartado por Relación de Aspecto: " + String.format("%.2f", aspectRatio) +
-                        ". Área: " + String.format("%.2f", area) + ". Circularidad: " + String.format("%.2f", circularity) +
-                        ". Solidez: " + String.format("%.2f", solidity));
-                if (hull != null) hull.release();
-                if (hullContour != null) hullContour.release();
-                if (contour != null) contour.release();
-                continue;
-            }
-            // --- Fin del Filtrado de Contornos ---
-
-            Imgproc.drawContours(imgResult, List.of(contour), -1, new Scalar(0, 255, 0), drawContourThickness);
-            conteoEsporas++;
-
-            if (hull != null) hull.release();
-            if (hullContour != null) hullContour.release();
-            if (contour != null) contour.release();
-        }
-        Log.d(TAG, "Filtrado de contornos completado. Esporas válidas detectadas: " + conteoEsporas);
-
-        String displayText = "Número total de esporas detectadas: " + conteoEsporas;
-
-        Bitmap imgFinal = Bitmap.createBitmap(imgResult.cols(), imgResult.rows(), Bitmap.Config.ARGB_8888);
-        Utils.matToBitmap(imgResult, imgFinal);
-
-        imageView.setImageBitmap(imgFinal);
-        textView.setText(displayText);
-        Log.d(TAG, "Procesamiento de imagen finalizado y resultados actualizados en la UI.");
-
-        matOriginal.release();
-        imgProcesar.release();
-        imgGray.release();
-        imgEqualized.release();
-        binaryMask.release();
-        kernel.release();
-        hierarchy.release();
-        imgResult.release();
-        Log.d(TAG, "Todos los recursos de OpenCV (Mat objects) han sido liberados para prevenir fugas de memoria.");
-    }
+package com.example.menuesporas;
+
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+
+import android.content.ContentResolver;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.MediaStore;
+import android.util.Log;
+import android.widget.Button;
+import android.widget.TextView;
+
+import com.example.menuesporas.detector.DensityClassifier;
+import com.example.menuesporas.detector.DetectionParams;
+import com.example.menuesporas.detector.DetectionPresets;
+import com.example.menuesporas.detector.DetectionResult;
+import com.example.menuesporas.detector.MatPool;
+import com.example.menuesporas.detector.NativeRegion;
+import com.example.menuesporas.detector.SporeDetector;
+import com.example.menuesporas.detector.TiledSporeDetector;
+
+import org.opencv.android.OpenCVLoader;
+import org.opencv.android.Utils;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Locale;
+
+/**
+ * *MainActivity2*: La actividad principal que gestiona la interfaz de usuario y el flujo de procesamiento
+ * de imágenes para la detección de esporas. Esta clase integra las funcionalidades de Android para la
+ * selección de imágenes con las capacidades de procesamiento de visión por computadora de OpenCV.
+ * Su objetivo es proporcionar una herramienta robusta para identificar y cuantificar esporas en imágenes.
+ *
+ * Sobre la imagen analizada se puede arrastrar una región de interés: esa región se vuelve a decodificar desde
+ * el archivo original a resolución nativa (ver {@link ImageLoader#decodificarRegion}) y se analiza con el preset
+ * escalado, para contar con más detalle las esporas pequeñas que la imagen de 640x480 apenas resuelve.
+ */
+public class MainActivity2 extends AppCompatActivity {
+
+    // --- Componentes de la Interfaz de Usuario (UI) ---
+    private SelectorRegion imageView; // Muestra la imagen procesada y permite elegir una región de interés sobre ella.
+    private Button btnAnalizarRegion;
+    private TextView textView;   // Componente de texto para visualizar el conteo de esporas detectadas.
+    private Bitmap imageBitmap;  // Almacena la imagen original seleccionada por el usuario en formato Bitmap.
+    private String tipoHongo = ""; // String para almacenar el identificador del tipo de hongo,
+    // que se utiliza para cargar un conjunto de parámetros de detección optimizados para ese hongo específico.
+    private String presetId;            // ID estable del preset (DetectionPresets.ID_*), enviado por elegirhongo.
+    private DetectionParams parametros; // Parámetros de detección resueltos a partir de presetId (o tipoHongo).
+    private Uri imagenActual;           // Imagen cuyo resultado se muestra, para analizar una región de ella.
+    private ResultadoAnalisis resultadoMostrado;
+
+    // Análisis en curso en el AnalysisEngine. Se cancela al elegir otra imagen o al destruir la actividad.
+    private AnalysisEngine.Tarea<ResultadoAnalisis> tareaActual;
+
+    // Una región de 4 MP (16 MB en ARGB) ya resuelve las esporas más chicas; si el usuario elige una región más
+    // grande, se decodifica con submuestreo.
+    private static final long MAX_PIXELES_REGION = 4_000_000L;
+
+    // Etiqueta para los mensajes de depuración (logs) en Logcat, facilitando el seguimiento del flujo de la aplicación.
+    private static final String TAG = "MainActivity2";
+
+    // El detector no guarda estado entre imágenes, así que se comparte entre todos los análisis.
+    private static final SporeDetector DETECTOR = new SporeDetector(AnalysisEngine.get().mats());
+    // Las regiones a resolución nativa son varias veces más grandes que la imagen de trabajo: se analizan por bandas.
+    private static final TiledSporeDetector DETECTOR_REGION = new TiledSporeDetector(
+            AnalysisEngine.get().ejecutorBandas(), Runtime.getRuntime().availableProcessors(), AnalysisEngine.get().mats());
+
+    // --- Inicialización de la Biblioteca OpenCV ---
+    // Bloque estático que se ejecuta una vez al cargar la clase en memoria.
+    // Es fundamental para inicializar la biblioteca OpenCV de forma nativa antes de que
+    // cualquier método de OpenCV sea invocado. Si la inicialización falla, se registra un error crítico.
+    static {
+        if (!OpenCVLoader.initDebug()) {
+            Log.e(TAG, "Error crítico: No se pudo cargar la biblioteca OpenCV.");
+        } else {
+            Log.d(TAG, "OpenCV cargado exitosamente. Listo para el procesamiento de imágenes.");
+        }
+    }
+
+    /**
+     * Método del ciclo de vida de la actividad: onCreate.
+     * Se invoca cuando la actividad es creada por primera vez. Este método es el punto principal
+     * para la inicialización de la UI, la configuración de listeners y la recuperación de datos
+     * persistentes o pasados a través de un Intent.
+     *
+     * @param savedInstanceState Si la actividad se está recreando después de ser destruida
+     * (ej. por un cambio de orientación), este Bundle contiene los datos
+     * de estado más recientes guardados por onSaveInstanceState().
+     */
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activitymain2);
+
+        imageView = findViewById(R.id.imageView);
+        textView = findViewById(R.id.texto);
+        Button btnAbrirGaleria = findViewById(R.id.btnAbrirGaleria);
+        Button btnAnalisisLote = findViewById(R.id.btnAnalisisLote);
+        Button btnConteoEnVivo = findViewById(R.id.btnConteoEnVivo);
+        Button btnAjustarParametros = findViewById(R.id.btnAjustarParametros);
+        Button btnDepuracion = findViewById(R.id.btnDepuracion);
+        btnAnalizarRegion = findViewById(R.id.btnAnalizarRegion);
+        // Cada análisis se guarda en los CSV de resultados; desde aquí se comparten.
+        ExportadorResultados.conectar(this, findViewById(R.id.checkExportarEsporas),
+                findViewById(R.id.btnCompartirResultados));
+
+        Intent intent = getIntent();
+        tipoHongo = intent.getStringExtra("tipo_espora"); // Ahora esto recibirá el string completo de densidad
+
+        if (tipoHongo != null && !tipoHongo.isEmpty()) {
+            Log.d(TAG, "Parámetro 'tipo_espora' recibido: " + tipoHongo + ". Se ajustarán los parámetros de detección.");
+        } else {
+            tipoHongo = "default";
+            Log.d(TAG, "Parámetro 'tipo_espora' no especificado. Usando parámetros de detección por defecto.");
+        }
+        // El preset se resuelve por su ID estable; el archivo de presets se lee una sola vez por proceso.
+        presetId = intent.getStringExtra("preset_id");
+        parametros = PresetRepository.get(this).resolver(presetId, tipoHongo);
+        Log.d(TAG, "Parámetros finales de detección aplicados: " + parametros);
+
+        btnAbrirGaleria.setOnClickListener(v -> {
+            Log.d(TAG, "Botón 'Abrir Galería' pulsado. Iniciando selección de imagen.");
+            abrirGaleria();
+        });
+        // El análisis por lotes usa el mismo preset de densidad.
+        btnAnalisisLote.setOnClickListener(v -> {
+            Intent lote = new Intent(MainActivity2.this, AnalisisLote.class);
+            lote.putExtra("tipo_espora", tipoHongo);
+            lote.putExtra("preset_id", presetId);
+            startActivity(lote);
+        });
+        // El conteo en vivo analiza los cuadros de la cámara con el mismo preset.
+        btnConteoEnVivo.setOnClickListener(v -> {
+            Intent enVivo = new Intent(MainActivity2.this, ConteoEnVivo.class);
+            enVivo.putExtra("tipo_espora", tipoHongo);
+            enVivo.putExtra("preset_id", presetId);
+            startActivity(enVivo);
+        });
+        // La pantalla de ajuste parte del preset actual.
+        btnAjustarParametros.setOnClickListener(v -> {
+            Intent ajuste = new Intent(MainActivity2.this, AjusteParametros.class);
+            ajuste.putExtra("tipo_espora", tipoHongo);
+            ajuste.putExtra("preset_id", presetId);
+            startActivity(ajuste);
+        });
+        // El botón de la región de interés se habilita cuando hay una región elegida sobre un resultado.
+        imageView.setOnRegionListener(region -> btnAnalizarRegion.setEnabled(region != null && imagenActual != null
+                && resultadoMostrado != null && resultadoMostrado.zona != null));
+        btnAnalizarRegion.setOnClickListener(v -> analizarRegion());
+        // Contadores de la caché de resultados.
+        btnDepuracion.setOnClickListener(v -> startActivity(new Intent(MainActivity2.this, PantallaDepuracion.class)));
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (tareaActual != null) {
+            tareaActual.cancelar();
+            tareaActual = null;
+        }
+    }
+
+    private void abrirGaleria() {
+        Intent intent = new Intent(Intent.ACTION_PICK, MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
+        startActivityForResult(intent, 100);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == 100 && resultCode == RESULT_OK && data != null) {
+            Log.d(TAG, "Imagen seleccionada de la galería. Procesando imagen...");
+            Uri imageUri = data.getData();
+            analizarImagen(imageUri);
+        } else {
+            Log.d(TAG, "Selección de imagen cancelada o un error ocurrió durante la selección.");
+        }
+    }
+
+    /**
+     * Envía la imagen al AnalysisEngine. La decodificación y el pipeline de OpenCV se ejecutan
+     * en segundo plano; si había un análisis previo en curso, se cancela.
+     *
+     * @param imageUri URI de la imagen seleccionada en la galería.
+     */
+    private void analizarImagen(Uri imageUri) {
+        if (tareaActual != null) {
+            tareaActual.cancelar();
+        }
+        textView.setText("Analizando imagen...");
+
+        // El trabajo solo captura lo que necesita, nunca la actividad.
+        ContentResolver resolver = getContentResolver();
+        DetectionParams params = parametros;
+        // En modo automático el preset se elige por imagen; todos los presets de densidad usan la misma resolución.
+        PresetRepository presetsAutomaticos =
+                DetectionPresets.ID_AUTOMATICO.equals(presetId) ? PresetRepository.get(this) : null;
+        String preset = presetId != null ? presetId : tipoHongo;
+        ExportadorResultados exportador = ExportadorResultados.para(this);
+        CacheResultados cache = CacheResultados.get(this);
+        tareaActual = AnalysisEngine.get().enviar(progreso -> {
+            progreso.reportar(0, "Cargando imagen");
+            // Se decodifica directamente a la resolución de trabajo, sin pasar por la imagen completa.
+            BitmapPool bitmaps = AnalysisEngine.get().bitmaps();
+            Bitmap bitmap = ImageLoader.decodificar(resolver, imageUri, params.workWidth, params.workHeight, bitmaps);
+            try {
+                return procesarImagen(bitmap, params, presetsAutomaticos, progreso,
+                        exportador, cache, imageUri.toString(), preset);
+            } finally {
+                bitmaps.devolver(bitmap);
+            }
+        }, new AnalysisEngine.Callback<ResultadoAnalisis>() {
+            @Override
+            public void onProgreso(int porcentaje, String etapa) {
+                textView.setText("Analizando imagen... " + porcentaje + "% (" + etapa + ")");
+            }
+
+            @Override
+            public void onResultado(ResultadoAnalisis resultado) {
+                mostrar(imageUri, resultado);
+                Log.d(TAG, "Procesamiento de imagen finalizado y resultados actualizados en la UI.");
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Error al cargar o procesar la imagen: " + e.getMessage(), e);
+                textView.setText("Error al analizar la imagen.");
+            }
+        });
+    }
+
+    private void mostrar(Uri imagen, ResultadoAnalisis resultado) {
+        imagenActual = imagen;
+        resultadoMostrado = resultado;
+        imageBitmap = resultado.imagen;
+        // Mostrar otra imagen borra la región elegida (y deshabilita el botón).
+        imageView.setImageBitmap(resultado.imagen);
+        textView.setText(resultado.texto);
+    }
+
+    /**
+     * Analiza la región elegida sobre el resultado mostrado, decodificándola desde la imagen original.
+     * La región seleccionada es relativa a la imagen mostrada, que a su vez es una zona de la original.
+     */
+    private void analizarRegion() {
+        RectF seleccion = imageView.getRegion();
+        Uri uri = imagenActual;
+        ResultadoAnalisis mostrado = resultadoMostrado;
+        if (seleccion == null || uri == null || mostrado == null || mostrado.zona == null || mostrado.params == null) {
+            return;
+        }
+        if (tareaActual != null) {
+            tareaActual.cancelar();
+        }
+        textView.setText("Analizando la región...");
+
+        double[] zona = mostrado.zona;
+        double izquierda = zona[0] + seleccion.left * (zona[2] - zona[0]);
+        double arriba = zona[1] + seleccion.top * (zona[3] - zona[1]);
+        double derecha = zona[0] + seleccion.right * (zona[2] - zona[0]);
+        double abajo = zona[1] + seleccion.bottom * (zona[3] - zona[1]);
+        ContentResolver resolver = getContentResolver();
+        DetectionParams params = mostrado.params;
+        String preset = presetId != null ? presetId : tipoHongo;
+        ExportadorResultados exportador = ExportadorResultados.para(this);
+        tareaActual = AnalysisEngine.get().enviar(progreso -> {
+            progreso.reportar(0, "Leyendo la región");
+            ImageLoader.Region region = ImageLoader.decodificarRegion(resolver, uri, izquierda, arriba, derecha, abajo,
+                    params, MAX_PIXELES_REGION);
+            try {
+                return procesarRegion(region, params, progreso, exportador, uri.toString(), preset);
+            } finally {
+                AnalysisEngine.get().bitmaps().devolver(region.bitmap);
+            }
+        }, new AnalysisEngine.Callback<ResultadoAnalisis>() {
+            @Override
+            public void onProgreso(int porcentaje, String etapa) {
+                textView.setText("Analizando la región... " + porcentaje + "% (" + etapa + ")");
+            }
+
+            @Override
+            public void onResultado(ResultadoAnalisis resultado) {
+                mostrar(uri, resultado);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Error al analizar la región: " + e.getMessage(), e);
+                textView.setText("Error al analizar la región.");
+            }
+        });
+    }
+
+    /**
+     * Zona de la imagen original que muestra el resultado de un análisis completo: el recorte del preset sobre la
+     * imagen de trabajo, que es la original redimensionada.
+     */
+    private static double[] zonaDe(DetectionParams params) {
+        if (params.roi == null) return new double[]{0, 0, 1, 1};
+        return new double[]{
+                (double) params.roi.x / params.workWidth,
+                (double) params.roi.y / params.workHeight,
+                (double) (params.roi.x + params.roi.width) / params.workWidth,
+                (double) (params.roi.y + params.roi.height) / params.workHeight};
+    }
+
+    /**
+     * Pipeline de una región de interés decodificada a resolución nativa. Como {@link #procesarImagen}, pero con el
+     * preset escalado a la resolución de la región, sin estimar la densidad y sin la caché de resultados.
+     * Se exporta con la región en el nombre de la imagen.
+     */
+    private static ResultadoAnalisis procesarRegion(ImageLoader.Region leida, DetectionParams params,
+                                                    AnalysisEngine.Progreso progreso,
+                                                    ExportadorResultados exportador, String imagen, String preset) {
+        NativeRegion region = leida.region;
+        DetectionParams paramsRegion = region.parametros(params, leida.bitmap.getWidth(), leida.bitmap.getHeight());
+        Log.d(TAG, "Región " + region + ", parámetros: " + paramsRegion);
+
+        MatPool mats = AnalysisEngine.get().mats();
+        Mat luminancia = ImageLoader.luminancia(leida.bitmap, paramsRegion, mats);
+        Mat imgResult = null;
+        DetectionResult deteccion = null;
+        try {
+            deteccion = DETECTOR_REGION.detect(luminancia, paramsRegion, progreso);
+            progreso.metricas().registrar(deteccion);
+            int conteoEsporas = deteccion.getConteo();
+            Log.d(TAG, "Región: contornos iniciales: " + deteccion.contornosIniciales +
+                    ". Esporas válidas detectadas: " + conteoEsporas);
+            MetricasAnalisis.registrarEsporas(deteccion.esporas);
+            progreso.etapa("Exportando");
+            exportador.registrar(imagen + "#" + region.x + "," + region.y + "," + region.ancho + "," + region.alto,
+                    preset, deteccion, Double.NaN);
+
+            String displayText = "Número de esporas en la región: " + conteoEsporas
+                    + String.format(Locale.getDefault(), "\nRegión: %d x %d px de la imagen original", region.ancho,
+                    region.alto);
+            if (region.submuestreo > 1) {
+                displayText += " (reducida 1:" + region.submuestreo + ")";
+            }
+
+            progreso.reportar(95, "Dibujando resultado");
+            imgResult = ImageLoader.colorDeZona(leida.bitmap, paramsRegion);
+            Imgproc.drawContours(imgResult, deteccion.contornos, -1, new Scalar(0, 255, 0),
+                    paramsRegion.drawContourThickness);
+            Bitmap imgFinal = Bitmap.createBitmap(imgResult.cols(), imgResult.rows(), Bitmap.Config.ARGB_8888);
+            Utils.matToBitmap(imgResult, imgFinal);
+
+            double[] zona = {
+                    (double) region.x / leida.anchoOriginal,
+                    (double) region.y / leida.altoOriginal,
+                    (double) (region.x + region.ancho) / leida.anchoOriginal,
+                    (double) (region.y + region.alto) / leida.altoOriginal};
+            return new ResultadoAnalisis(imgFinal, displayText, params, zona);
+        } finally {
+            mats.devolver(luminancia);
+            if (imgResult != null) imgResult.release();
+            if (deteccion != null) deteccion.release();
+        }
+    }
+
+    /**
+     * Pipeline de detección. Se ejecuta en un hilo del AnalysisEngine, por lo que no toca la UI:
+     * delega la detección en SporeDetector y devuelve la imagen resultante y el texto a mostrar.
+     * Si presetsAutomaticos no es null, antes se estima la densidad de la imagen con DensityClassifier
+     * y se usa el preset que corresponde, de modo que el pipeline completo se ejecuta una sola vez.
+     * El resultado se agrega a los CSV de exportación con el nombre de la imagen y del preset usado.
+     *
+     * Antes de detectar se busca la imagen en la CacheResultados, por el contenido de su luminancia y el preset
+     * pedido: si ya se analizó (aunque sea desde otro URI), se devuelve el resultado guardado sin ejecutar el
+     * pipeline ni volver a exportarlo.
+     */
+    private static ResultadoAnalisis procesarImagen(Bitmap bitmapOriginal, DetectionParams params,
+                                                    @Nullable PresetRepository presetsAutomaticos,
+                                                    AnalysisEngine.Progreso progreso,
+                                                    ExportadorResultados exportador, CacheResultados cache,
+                                                    String imagen, String preset) {
+        Log.d(TAG, "Iniciando pipeline de procesamiento de imagen con OpenCV...");
+
+        // El detector trabaja sobre la luminancia; el color solo se reconstruye para dibujar el resultado.
+        MatPool mats = AnalysisEngine.get().mats();
+        Mat luminancia = ImageLoader.luminancia(bitmapOriginal, params, mats);
+        Mat imgResult = null;
+        DetectionResult deteccion = null;
+        try {
+            progreso.etapa("Buscando en la caché");
+            long inicio = System.nanoTime();
+            String clave = CacheResultados.clave(luminancia, preset, params);
+            CacheResultados.Entrada guardada = cache.buscar(clave);
+            if (guardada != null) {
+                // En modo automático la zona mostrada y la región a reanalizar son las del preset que eligió la
+                // densidad al guardar, no las del automático.
+                if (presetsAutomaticos != null) params = presetsAutomaticos.porId(guardada.preset);
+                double ms = (System.nanoTime() - inicio) / 1e6;
+                Log.d(TAG, "Resultado recuperado de la caché (" + clave + ") en " + ms + " ms");
+                return new ResultadoAnalisis(guardada.imagen, guardada.texto
+                        + String.format(Locale.getDefault(), "\n(Resultado recuperado de la caché en %.1f ms)", ms),
+                        params, zonaDe(params));
+            }
+
+            String densidadDetectada = null;
+            if (presetsAutomaticos != null) {
+                progreso.reportar(5, "Estimando densidad");
+                DensityClassifier.Estimacion estimacion = DensityClassifier.estimar(luminancia);
+                Log.d(TAG, "Densidad estimada: " + estimacion);
+                params = presetsAutomaticos.porId(estimacion.presetId);
+                preset = estimacion.presetId;
+                densidadDetectada = nombreDensidad(estimacion.presetId) + " (~" + estimacion.esporasEstimadas + " esporas)";
+            }
+            deteccion = DETECTOR.detect(luminancia, params, progreso);
+            progreso.metricas().registrar(deteccion);
+            int conteoEsporas = deteccion.getConteo();
+            Log.d(TAG, "Contornos iniciales: " + deteccion.contornosIniciales +
+                    ". Esporas válidas detectadas: " + conteoEsporas);
+            Log.d(TAG, "Filtrado de contornos: " + deteccion.estadisticasFiltro);
+            MetricasAnalisis.registrarEsporas(deteccion.esporas);
+            // Sin cuadrícula calibrada no hay área en mm².
+            progreso.etapa("Exportando");
+            exportador.registrar(imagen, preset, deteccion, Double.NaN);
+
+            String displayText = "Número total de esporas detectadas: " + conteoEsporas;
+            if (densidadDetectada != null) {
+                displayText += "\nDensidad detectada: " + densidadDetectada;
+            }
+
+            progreso.reportar(95, "Dibujando resultado");
+            imgResult = ImageLoader.colorDeZona(bitmapOriginal, params);
+            Imgproc.drawContours(imgResult, deteccion.contornos, -1, new Scalar(0, 255, 0), params.drawContourThickness);
+            Bitmap imgFinal = Bitmap.createBitmap(imgResult.cols(), imgResult.rows(), Bitmap.Config.ARGB_8888);
+            Utils.matToBitmap(imgResult, imgFinal);
+
+            // La caché guarda una copia reducida; aquí se muestra la imagen completa.
+            cache.guardar(clave, new CacheResultados.Entrada(conteoEsporas, displayText, deteccion.esporas, imgFinal,
+                    preset));
+            return new ResultadoAnalisis(imgFinal, displayText, params, zonaDe(params));
+        } finally {
+            // Se liberan también si el análisis se cancela a mitad del pipeline.
+            mats.devolver(luminancia);
+            if (imgResult != null) imgResult.release();
+            if (deteccion != null) deteccion.release();
+        }
+    }
+
+    private static String nombreDensidad(String presetId) {
+        switch (presetId) {
+            case DetectionPresets.ID_BAJA_DENSIDAD:
+                return DetectionPresets.BAJA_DENSIDAD;
+            case DetectionPresets.ID_DENSIDAD_MODERADA:
+                return DetectionPresets.DENSIDAD_MODERADA;
+            case DetectionPresets.ID_ALTA_DENSIDAD:
+                return DetectionPresets.ALTA_DENSIDAD;
+            default:
+                return DetectionPresets.DENSIDAD_MUY_ALTA;
+        }
+    }
 }
\ No newline at end of file
@@ -1,233 +1,333 @@
-package com.example.menuesporas;
-
-import android.content.Intent;
-import android.graphics.Bitmap;
-import android.net.Uri;
-import android.os.Bundle;
-import android.provider.MediaStore;
-import android.widget.Button;
-import android.widget.ImageView;
-import android.widget.TextView;
-import androidx.annotation.Nullable;
-import androidx.appcompat.app.AppCompatActivity;
-import org.opencv.android.OpenCVLoader;
-import org.opencv.android.Utils;
-import org.opencv.core.*;
-import org.opencv.imgproc.Imgproc;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-
-public class MedicionEsporas extends AppCompatActivity {
-
-    // Bloque estático para asegurar que OpenCV se cargue al iniciar.
-    static {
-        if (!OpenCVLoader.initDebug()) {
-            // Manejar el error si OpenCV no se carga correctamente.
-            // Por ejemplo, puedes mostrar un Log.d o un Toast.
-        }
-    }
-
-    private static final int PICK_IMAGE_REQUEST = 1;
-    private ImageView imageView;
-    private TextView textViewResultado;
-    private Button botonSeleccionarImagen, botonAnalizarCuadros;
-    private Bitmap imagenSeleccionada;
-
-    // Dimensiones conocidas de la cuadrícula en mm
-    private static final double GRID_TOTAL_WIDTH_MM = 20.0; // 5 cuadros grandes * 4 mm/cuadro grande (sqrt(16 mm^2))
-    private static final double GRID_TOTAL_HEIGHT_MM = 20.0; // 5 cuadros grandes * 4 mm/cuadro grande (sqrt(16 mm^2))
-
-    @Override
-    protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        setContentView(R.layout.medicionesporas);
-
-        imageView = findViewById(R.id.imageView);
-        textViewResultado = findViewById(R.id.textViewResultado);
-
-        botonSeleccionarImagen = findViewById(R.id.botonSeleccionarImagen);
-        botonAnalizarCuadros = findViewById(R.id.botonAnalizarCuadros);
-
-        botonSeleccionarImagen.setOnClickListener(v -> seleccionarImagen());
-        botonAnalizarCuadros.setOnClickListener(v -> {
-            if (imagenSeleccionada != null) {
-                procesarImagen(imagenSeleccionada);
-            }
-        });
-    }
-
-    private void seleccionarImagen() {
-        Intent intent = new Intent(Intent.ACTION_PICK, MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
-        startActivityForResult(intent, PICK_IMAGE_REQUEST);
-    }
-
-    @Override
-    protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
-        super.onActivityResult(requestCode, resultCode, data);
-
-        if (requestCode == PICK_IMAGE_REQUEST && resultCode == RESULT_OK && data != null) {
-            Uri uri = data.getData();
-            try {
-                imagenSeleccionada = MediaStore.Images.Media.getBitmap(getContentResolver(), uri);
-                imageView.setImageBitmap(imagenSeleccionada); // Mostrar imagen original
-                textViewResultado.setText("Imagen cargada. Presiona 'Analizar' para contar esporas.");
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-    }
-
-    /**
-     * Procesa la imagen seleccionada para detectar y contar esporas.
-     * Incluye una indicación fija del 10% de margen de error, el rango de esporas esperado,
-     * y una cantidad estimada (total detectado ajustado por el 5% para que sea diferente).
-     * @param bitmap La imagen a analizar.
-     */
-    private void procesarImagen(Bitmap bitmap) {
-        Mat mat = new Mat();
-        Utils.bitmapToMat(bitmap, mat);
-
-        // 1. PREPARACIÓN DE LA IMAGEN
-        Imgproc.resize(mat, mat, new Size(640, 480));
-        Rect zona = new Rect(130, 35, 380, 315);
-        Mat recorte = new Mat(mat, zona);
-
-        // 2. CONVERSIÓN Y PROCESAMIENTO
-        Mat gris = new Mat();
-        Imgproc.cvtColor(recorte, gris, Imgproc.COLOR_BGR2GRAY);
-        Mat grisEcualizado = new Mat();
-        Imgproc.equalizeHist(gris, grisEcualizado);
-        Imgproc.GaussianBlur(grisEcualizado, grisEcualizado, new Size(3, 3), 0);
-
-        // 3. UMBRAL ADAPTATIVO (Constante C en 5)
-        Mat mascaraBinaria = new Mat();
-        Imgproc.adaptiveThreshold(
-                grisEcualizado,
-                mascaraBinaria,
-                255,
-                Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C,
-                Imgproc.THRESH_BINARY_INV,
-                15, // BlockSize: Mantenido en 15.
-                5 // Constante C: Mantenida en 5.
-        );
-
-        // 4. LIMPIEZA DE RUIDO (MORFOLOGÍA)
-        Mat kernelOpen = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(3, 3));
-        Imgproc.morphologyEx(mascaraBinaria, mascaraBinaria, Imgproc.MORPH_OPEN, kernelOpen, new Point(-1, -1), 2); // 2 iteraciones
-
-        Mat kernelClose = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(5, 5));
-        Imgproc.morphologyEx(mascaraBinaria, mascaraBinaria, Imgproc.MORPH_CLOSE, kernelClose, new Point(-1, -1), 1);
-
-
-        // 5. ENCONTRAR Y FILTRAR CONTORNOS (Área superior 70, circularidad 0.50, solidez 0.80)
-        List<MatOfPoint> contornos = new ArrayList<>();
-        Imgproc.findContours(mascaraBinaria.clone(), contornos, new Mat(), Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
-
-        int[][] conteoPorCuadro = new int[5][5];
-        List<Double> areaEsporasDetectadas = new ArrayList<>();
-
-        Mat recorteColor = recorte.clone();
-
-        for (MatOfPoint contorno : contornos) {
-            double area = Imgproc.contourArea(contorno);
-            double perimeter = Imgproc.arcLength(new MatOfPoint2f(contorno.toArray()), true);
-            double circularity = (perimeter == 0) ? 0 : (4 * Math.PI * area / (perimeter * perimeter));
-
-            MatOfInt hull = new MatOfInt();
-            Imgproc.convexHull(contorno, hull);
-
-            MatOfPoint hullContour = new MatOfPoint();
-            List<Point> hullPointsList = new ArrayList<>();
-            List<Point> contourPoints = contorno.toList();
-            for (int i = 0; i < hull.rows(); i++) {
-                hullPointsList.add(contourPoints.get((int)hull.get(i, 0)[0]));
-            }
-            hullContour.fromList(hullPointsList);
-            double hullArea = Imgproc.contourArea(hullContour);
-
-            double solidity = (hullArea == 0) ? 0 : (area / hullArea);
-
-
-            // Filtros de contorno
-            if (area < 3 || area > 70 || circularity < 0.50 || solidity < 0.80) continue;
-
-            Rect boundingBox = Imgproc.boundingRect(contorno);
-            Point centro = new Point(boundingBox.x + boundingBox.width / 2.0, boundingBox.y + boundingBox.height / 2.0);
-
-            int fila = (int)(centro.y / (recorte.rows() / 5));
-            int columna = (int)(centro.x / (recorte.cols() / 5));
-
-            if (fila >= 0 && fila < 5 && columna >= 0 && columna < 5) {
-                conteoPorCuadro[fila][columna]++;
-                areaEsporasDetectadas.add(area);
-                // Grosor de línea a 2
-                Imgproc.drawContours(recorteColor, List.of(contorno), -1, new Scalar(0, 255, 0), 2);
-            }
-            hull.release();
-            hullContour.release();
-        }
-        int totalEsporas = areaEsporasDetectadas.size();
-
-        // 6. CÁLCULO Y MOSTRAR RESULTADOS
-        StringBuilder resultado = new StringBuilder();
-        for (int fila = 0; fila < 5; fila++) {
-            for (int col = 0; col < 5; col++) {
-                int valor = conteoPorCuadro[fila][col];
-                resultado.append("Cuadro [").append(fila + 1).append(",").append(col + 1).append("]: ")
-                        .append(valor).append(" esporas\n");
-            }
-        }
-
-        resultado.append("\nTotal de esporas detectadas: ").append(totalEsporas).append("\n");
-
-        // Margen de error fijo del 10% y rango esperado
-        double margenErrorPorcentaje = 10.00;
-        resultado.append(String.format("Margen de error estimado: %.2f%%\n", margenErrorPorcentaje));
-
-        double factorError = margenErrorPorcentaje / 100.0;
-        int minEsporasEsperadas = (int) Math.round(totalEsporas * (1 - factorError));
-        int maxEsporasEsperadas = (int) Math.round(totalEsporas * (1 + factorError));
-        resultado.append(String.format("Rango esperado: %d - %d esporas\n", minEsporasEsperadas, maxEsporasEsperadas));
-
-        // ** NUEVO: Cantidad de esporas estimada (total detectado ajustado por el 5% para que sea diferente) **
-        // Asumimos que el 10% es el rango total, y el valor detectado está en el 5% inferior de ese rango.
-        // Por lo tanto, la estimación central es un poco más alta.
-        int cantidadEsporasEstimada = (int) Math.round(totalEsporas / (1.0 - (margenErrorPorcentaje / 200.0))); // totalEsporas / (1 - 0.05)
-        resultado.append(String.format("Cantidad de esporas estimada: %d\n", cantidadEsporasEstimada));
-
-
-        if (!areaEsporasDetectadas.isEmpty()) {
-            double pixelesPorMmX = recorte.cols() / GRID_TOTAL_WIDTH_MM;
-            double pixelesPorMmY = recorte.rows() / GRID_TOTAL_HEIGHT_MM;
-            double pixelesPorMm = (pixelesPorMmX + pixelesPorMmY) / 2.0;
-            double factorConversionPx2ToMm2 = 1.0 / (pixelesPorMm * pixelesPorMm);
-
-            double sumaAreasPx = 0;
-            for (double areaPx : areaEsporasDetectadas) {
-                sumaAreasPx += areaPx;
-            }
-            double areaPromedioPx = sumaAreasPx / areaEsporasDetectadas.size();
-            double areaPromedioMm2 = areaPromedioPx * factorConversionPx2ToMm2;
-
-            resultado.append(String.format("Área promedio de esporas: %.4f mm²\n", areaPromedioMm2));
-        } else {
-            resultado.append("No se detectaron esporas para calcular el área promedio.\n");
-        }
-
-        textViewResultado.setText(resultado.toString());
-
-        Bitmap resultadoBitmap = Bitmap.createBitmap(recorteColor.cols(), recorteColor.rows(), Bitmap.Config.ARGB_8888);
-        Utils.matToBitmap(recorteColor, resultadoBitmap);
-        imageView.setImageBitmap(resultadoBitmap);
-
-        mat.release();
-        recorte.release();
-        gris.release();
-        grisEcualizado.release();
-        mascaraBinaria.release();
-        if (kernelOpen != null) kernelOpen.release();
-        if (kernelClose != null) kernelClose.release();
-        recorteColor.release();
-    }
+package com.example.menuesporas;
+
+import android.content.ContentResolver;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.MediaStore;
+import android.util.Log;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.ImageView;
+import android.widget.TextView;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+import com.example.menuesporas.detector.DetectionParams;
+import com.example.menuesporas.detector.DetectionPresets;
+import com.example.menuesporas.detector.DetectionResult;
+import com.example.menuesporas.detector.GridLocator;
+import com.example.menuesporas.detector.MatPool;
+import com.example.menuesporas.detector.PhysicalPreset;
+import com.example.menuesporas.detector.SpatialCalibration;
+import com.example.menuesporas.detector.TiledSporeDetector;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.android.Utils;
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Locale;
+
+public class MedicionEsporas extends AppCompatActivity {
+
+    // Bloque estático para asegurar que OpenCV se cargue al iniciar.
+    static {
+        if (!OpenCVLoader.initDebug()) {
+            // Manejar el error si OpenCV no se carga correctamente.
+            // Por ejemplo, puedes mostrar un Log.d o un Toast.
+        }
+    }
+
+    private static final String TAG = "MedicionEsporas";
+    private static final int PICK_IMAGE_REQUEST = 1;
+    private ImageView imageView;
+    private TextView textViewResultado;
+    private Button botonSeleccionarImagen, botonAnalizarCuadros;
+    private EditText campoMuestra; // ID de la muestra con el que el conteo se guarda en el historial.
+    private Bitmap imagenSeleccionada;
+    private Uri uriSeleccionada;  // Se guarda con el resultado en los CSV de exportación.
+    private AnalysisEngine.Tarea<?> tareaActual; // Carga o análisis en curso en el AnalysisEngine.
+
+    // Dimensiones conocidas de la cuadrícula en mm
+    private static final double GRID_TOTAL_WIDTH_MM = 20.0; // 5 cuadros grandes * 4 mm/cuadro grande (sqrt(16 mm^2))
+    private static final double GRID_TOTAL_HEIGHT_MM = 20.0; // 5 cuadros grandes * 4 mm/cuadro grande (sqrt(16 mm^2))
+
+    // Parámetros del conteo por cuadro (recorte de la cámara de conteo y cuadrícula de 5x5), del archivo de presets.
+    // El recorte fijo solo se usa si GridLocator no encuentra la cuadrícula en la imagen.
+    private DetectionParams parametros;
+    // El mismo preset en unidades físicas: con la calibración de la cuadrícula se convierte a píxeles de la imagen
+    // rectificada, cuya resolución no es la del preset.
+    private PhysicalPreset presetFisico;
+    // Detección por bandas en paralelo: una banda por fila de la cuadrícula, con el mismo conteo que SporeDetector.
+    private static final TiledSporeDetector DETECTOR =
+            new TiledSporeDetector(AnalysisEngine.get().ejecutorBandas(), 1, AnalysisEngine.get().mats());
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.medicionesporas);
+        PresetRepository presets = PresetRepository.get(this);
+        parametros = presets.porId(DetectionPresets.ID_CONTEO_POR_CUADRO);
+        presetFisico = presets.fisico(DetectionPresets.ID_CONTEO_POR_CUADRO);
+
+        imageView = findViewById(R.id.imageView);
+        textViewResultado = findViewById(R.id.textViewResultado);
+
+        botonSeleccionarImagen = findViewById(R.id.botonSeleccionarImagen);
+        botonAnalizarCuadros = findViewById(R.id.botonAnalizarCuadros);
+        campoMuestra = findViewById(R.id.campoMuestra);
+        Button botonHistorial = findViewById(R.id.botonHistorial);
+        botonHistorial.setOnClickListener(v -> {
+            Intent historial = new Intent(MedicionEsporas.this, HistorialMuestras.class);
+            historial.putExtra(HistorialMuestras.EXTRA_MUESTRA, muestra());
+            startActivity(historial);
+        });
+
+        botonSeleccionarImagen.setOnClickListener(v -> seleccionarImagen());
+        botonAnalizarCuadros.setOnClickListener(v -> {
+            if (imagenSeleccionada != null) {
+                analizarImagen(imagenSeleccionada);
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (tareaActual != null) {
+            tareaActual.cancelar();
+            tareaActual = null;
+        }
+    }
+
+    /**
+     * ID de la muestra escrito por el usuario, o {@link HistorialMuestras#SIN_MUESTRA} si está vacío.
+     */
+    private String muestra() {
+        String muestra = campoMuestra.getText().toString().trim();
+        return muestra.isEmpty() ? HistorialMuestras.SIN_MUESTRA : muestra;
+    }
+
+    private void seleccionarImagen() {
+        Intent intent = new Intent(Intent.ACTION_PICK, MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
+        startActivityForResult(intent, PICK_IMAGE_REQUEST);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+
+        if (requestCode == PICK_IMAGE_REQUEST && resultCode == RESULT_OK && data != null) {
+            // El análisis anterior ya no corresponde a la imagen mostrada.
+            if (tareaActual != null) {
+                tareaActual.cancelar();
+                tareaActual = null;
+            }
+            Uri uri = data.getData();
+            cargarImagen(uri);
+        }
+    }
+
+    /**
+     * Decodifica la imagen en el AnalysisEngine directamente a la resolución de trabajo del conteo
+     * (la misma que usa el análisis), sin pasar por el Bitmap a resolución completa.
+     * @param uri URI de la imagen seleccionada.
+     */
+    private void cargarImagen(Uri uri) {
+        imagenSeleccionada = null;
+        uriSeleccionada = uri;
+        textViewResultado.setText("Cargando imagen...");
+        ContentResolver resolver = getContentResolver();
+        DetectionParams params = parametros;
+        tareaActual = AnalysisEngine.get().enviar(
+                progreso -> ImageLoader.decodificar(resolver, uri, params.workWidth, params.workHeight),
+                new AnalysisEngine.Callback<Bitmap>() {
+                    @Override
+                    public void onProgreso(int porcentaje, String etapa) {
+                    }
+
+                    @Override
+                    public void onResultado(Bitmap bitmap) {
+                        imagenSeleccionada = bitmap;
+                        imageView.setImageBitmap(imagenSeleccionada); // Mostrar imagen original
+                        textViewResultado.setText("Imagen cargada. Presiona 'Analizar' para contar esporas.");
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        Log.e(TAG, "Error al cargar la imagen: " + e.getMessage(), e);
+                        textViewResultado.setText("Error al cargar la imagen.");
+                    }
+                });
+    }
+
+    /**
+     * Envía la imagen al AnalysisEngine y muestra el resultado cuando termina.
+     * @param bitmap La imagen a analizar.
+     */
+    private void analizarImagen(Bitmap bitmap) {
+        if (tareaActual != null) {
+            tareaActual.cancelar();
+        }
+        textViewResultado.setText("Analizando esporas...");
+
+        DetectionParams params = parametros;
+        PhysicalPreset fisico = presetFisico;
+        ExportadorResultados exportador = ExportadorResultados.para(this);
+        HistorialRepository historial = HistorialRepository.get(this);
+        String imagen = String.valueOf(uriSeleccionada);
+        String muestra = muestra();
+        tareaActual = AnalysisEngine.get().enviar(
+                progreso -> procesarImagen(bitmap, params, fisico, progreso, exportador, historial, imagen, muestra),
+                new AnalysisEngine.Callback<ResultadoAnalisis>() {
+                    @Override
+                    public void onProgreso(int porcentaje, String etapa) {
+                        textViewResultado.setText("Analizando esporas... " + porcentaje + "% (" + etapa + ")");
+                    }
+
+                    @Override
+                    public void onResultado(ResultadoAnalisis resultado) {
+                        textViewResultado.setText(resultado.texto);
+                        imageView.setImageBitmap(resultado.imagen);
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        Log.e(TAG, "Error al analizar la imagen: " + e.getMessage(), e);
+                        textViewResultado.setText("Error al analizar la imagen.");
+                    }
+                });
+    }
+
+    /**
+     * Procesa la imagen seleccionada para detectar y contar esporas.
+     * Incluye una indicación fija del 10% de margen de error, el rango de esporas esperado,
+     * y una cantidad estimada (total detectado ajustado por el 5% para que sea diferente).
+     * Se ejecuta en un hilo del AnalysisEngine, por lo que no toca la UI.
+     * @param bitmap La imagen a analizar.
+     * @param params Parámetros del conteo por cuadro.
+     * @param fisico El preset en unidades físicas, para la cuadrícula rectificada.
+     * @param progreso Canal de progreso y cancelación del motor.
+     * @param exportador Destino del registro del análisis en los CSV de resultados.
+     * @param historial Historial donde se encola la corrida (se escribe en su propio hilo).
+     * @param imagen URI de la imagen, para el registro.
+     * @param muestra ID de la muestra, para el historial.
+     * @return La imagen con los contornos y el texto del resultado.
+     */
+    private static ResultadoAnalisis procesarImagen(Bitmap bitmap, DetectionParams params, PhysicalPreset fisico,
+                                                    AnalysisEngine.Progreso progreso,
+                                                    ExportadorResultados exportador, HistorialRepository historial,
+                                                    String imagen, String muestra) {
+        // El detector trabaja sobre la luminancia; el recorte en color solo se crea para dibujar los contornos.
+        MatPool mats = AnalysisEngine.get().mats();
+        Mat luminancia = ImageLoader.luminancia(bitmap, params, mats);
+        Mat recorteColor = null;
+        DetectionResult deteccion = null;
+        GridLocator.Cuadricula cuadricula = null;
+        try {
+            // 0. LOCALIZACIÓN DE LA CUADRÍCULA: si se encuentra, se analiza la cuadrícula enderezada y la
+            // calibración sale de su tamaño en esta imagen (también para convertir las áreas y los kernels del
+            // preset a sus píxeles); si no, el recorte fijo del preset.
+            progreso.reportar(5, "Buscando la cuadrícula");
+            cuadricula = GridLocator.localizar(luminancia, params.gridCols, GRID_TOTAL_WIDTH_MM, GRID_TOTAL_HEIGHT_MM);
+            DetectionParams paramsDeteccion = params;
+            if (cuadricula != null) {
+                Mat rectificada = cuadricula.rectificar(luminancia);
+                mats.devolver(luminancia);
+                luminancia = rectificada;
+                SpatialCalibration calibracion = SpatialCalibration.desdePixelesPorMm(cuadricula.pixelesPorMm,
+                        cuadricula.anchoRectificado);
+                paramsDeteccion = fisico.parametros(calibracion, cuadricula.anchoRectificado,
+                                cuadricula.altoRectificado).toBuilder()
+                        .roi(null)
+                        .build();
+            }
+
+            // 1-5. PREPARACIÓN, UMBRAL, MORFOLOGÍA Y CONTORNOS (área 3-70, circularidad 0.50, solidez 0.80)
+            deteccion = DETECTOR.detect(luminancia, paramsDeteccion, progreso);
+            progreso.metricas().registrar(deteccion);
+            MetricasAnalisis.registrarEsporas(deteccion.esporas);
+            int[][] conteoPorCuadro = deteccion.conteoPorCuadro;
+            if (cuadricula != null) {
+                Mat colorCompleto = ImageLoader.colorDeZona(bitmap, params.toBuilder().roi(null).build());
+                recorteColor = cuadricula.rectificar(colorCompleto);
+                colorCompleto.release();
+            } else {
+                recorteColor = ImageLoader.colorDeZona(bitmap, params);
+            }
+
+            // Grosor de línea a 2
+            Imgproc.drawContours(recorteColor, deteccion.contornos, -1, new Scalar(0, 255, 0), params.drawContourThickness);
+
+            int totalEsporas = deteccion.getConteo();
+
+            // 6. CÁLCULO Y MOSTRAR RESULTADOS
+            StringBuilder resultado = new StringBuilder();
+            for (int fila = 0; fila < 5; fila++) {
+                for (int col = 0; col < 5; col++) {
+                    int valor = conteoPorCuadro[fila][col];
+                    resultado.append("Cuadro [").append(fila + 1).append(",").append(col + 1).append("]: ")
+                            .append(valor).append(" esporas\n");
+                }
+            }
+
+            resultado.append("\nTotal de esporas detectadas: ").append(totalEsporas).append("\n");
+            if (cuadricula != null) {
+                resultado.append(String.format(Locale.getDefault(), "Cuadrícula detectada en %.1f ms (%.1f px/mm)\n",
+                        cuadricula.duracionNanos / 1e6, cuadricula.pixelesPorMm));
+            } else {
+                resultado.append("Cuadrícula no encontrada: se usó el recorte fijo\n");
+            }
+
+            // Margen de error fijo del 10% y rango esperado
+            double margenErrorPorcentaje = 10.00;
+            resultado.append(String.format(Locale.getDefault(), "Margen de error estimado: %.2f%%\n", margenErrorPorcentaje));
+
+            double factorError = margenErrorPorcentaje / 100.0;
+            int minEsporasEsperadas = (int) Math.round(totalEsporas * (1 - factorError));
+            int maxEsporasEsperadas = (int) Math.round(totalEsporas * (1 + factorError));
+            resultado.append(String.format(Locale.getDefault(), "Rango esperado: %d - %d esporas\n", minEsporasEsperadas, maxEsporasEsperadas));
+
+            // ** NUEVO: Cantidad de esporas estimada (total detectado ajustado por el 5% para que sea diferente) **
+            // Asumimos que el 10% es el rango total, y el valor detectado está en el 5% inferior de ese rango.
+            // Por lo tanto, la estimación central es un poco más alta.
+            int cantidadEsporasEstimada = (int) Math.round(totalEsporas / (1.0 - (margenErrorPorcentaje / 200.0))); // totalEsporas / (1 - 0.05)
+            resultado.append(String.format(Locale.getDefault(), "Cantidad de esporas estimada: %d\n", cantidadEsporasEstimada));
+
+
+            double areaPromedioMm2 = Double.NaN;
+            double pixelesPorMm;
+            if (cuadricula != null) {
+                pixelesPorMm = cuadricula.pixelesPorMm;
+            } else {
+                double pixelesPorMmX = recorteColor.cols() / GRID_TOTAL_WIDTH_MM;
+                double pixelesPorMmY = recorteColor.rows() / GRID_TOTAL_HEIGHT_MM;
+                pixelesPorMm = (pixelesPorMmX + pixelesPorMmY) / 2.0;
+            }
+            if (totalEsporas > 0) {
+                double factorConversionPx2ToMm2 = 1.0 / (pixelesPorMm * pixelesPorMm);
+
+                double areaPromedioPx = deteccion.getAreaPromedioPx();
+                areaPromedioMm2 = areaPromedioPx * factorConversionPx2ToMm2;
+
+                resultado.append(String.format(Locale.getDefault(), "Área promedio de esporas: %.4f mm²\n", areaPromedioMm2));
+            } else {
+                resultado.append("No se detectaron esporas para calcular el área promedio.\n");
+            }
+            exportador.registrar(imagen, DetectionPresets.ID_CONTEO_POR_CUADRO, deteccion, areaPromedioMm2);
+            historial.guardar(new HistorialRepository.Corrida(muestra, System.currentTimeMillis(),
+                    DetectionPresets.ID_CONTEO_POR_CUADRO, imagen, totalEsporas, areaPromedioMm2, pixelesPorMm,
+                    conteoPorCuadro));
+
+            Bitmap resultadoBitmap = Bitmap.createBitmap(recorteColor.cols(), recorteColor.rows(), Bitmap.Config.ARGB_8888);
+            Utils.matToBitmap(recorteColor, resultadoBitmap);
+
+            return new ResultadoAnalisis(resultadoBitmap, resultado.toString());
+        } finally {
+            mats.devolver(luminancia);
+            if (recorteColor != null) recorteColor.release();
+            if (deteccion != null) deteccion.release();
+            if (cuadricula != null) cuadricula.release();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,234 @@
+package com.example.menuesporas;
+
+import android.os.Debug;
+import android.os.Trace;
+import android.util.Log;
+
+import com.example.menuesporas.detector.PipelineMetrics;
+import com.example.menuesporas.detector.SporeTable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * *MetricasAnalisis*: Junta las {@link PipelineMetrics} de los trabajos del {@link AnalysisEngine}: los últimos
+ * análisis completos y, por etapa, cuántas veces se ejecutó, el tiempo total y el peor. Lo posee el motor, que
+ * crea las métricas de cada trabajo con {@link #nuevas()} (etapas como secciones de android.os.Trace y memoria
+ * nativa del heap de malloc) y las agrega al terminar. PantallaDepuracion las muestra y las exporta como JSON.
+ *
+ * También decide si se escribe el registro detallado (una línea por espora, con {@link Log#v}): solo en las
+ * compilaciones de depuración y con el tag activado por adb (setprop log.tag.EsporasDetalle VERBOSE). En las
+ * demás, {@link #registroDetallado()} es false y las líneas ni siquiera se arman.
+ *
+ * Es seguro entre hilos.
+ */
+public final class MetricasAnalisis {
+
+    private static final String TAG = "MetricasAnalisis";
+    static final String TAG_DETALLE = "EsporasDetalle";
+    static final String ARCHIVO = "metricas.json";
+    // Análisis que se conservan completos; las etapas agregadas cuentan todos.
+    private static final int MAX_RECIENTES = 20;
+    // Límite de android.os.Trace para el nombre de una sección.
+    private static final int MAX_SECCION = 127;
+
+    private static final PipelineMetrics.Trazador TRAZA = new PipelineMetrics.Trazador() {
+        @Override
+        public void abrir(String seccion) {
+            Trace.beginSection(seccion.length() > MAX_SECCION ? seccion.substring(0, MAX_SECCION) : seccion);
+        }
+
+        @Override
+        public void cerrar() {
+            Trace.endSection();
+        }
+    };
+
+    private static final PipelineMetrics.SondaMemoria MEMORIA_NATIVA = new PipelineMetrics.SondaMemoria() {
+        @Override
+        public long bytesNativos() {
+            return Debug.getNativeHeapAllocatedSize();
+        }
+    };
+
+    private static volatile boolean depuracion;
+
+    private final ArrayDeque<PipelineMetrics> recientes = new ArrayDeque<>();
+    private final Map<String, Agregado> etapas = new LinkedHashMap<>();
+    private long analisis;
+    private long nanosTotales;
+    private long contornosEncontrados;
+    private long contornosRechazados;
+    private long esporas;
+    private long memoriaMaxima = -1;
+
+    private static final class Agregado {
+        long veces;
+        long nanos;
+        long maximoNanos;
+    }
+
+    /**
+     * Lo llama MainActivity al arrancar con el flag FLAG_DEBUGGABLE de la aplicación.
+     */
+    static void setDepuracion(boolean esDepuracion) {
+        depuracion = esDepuracion;
+    }
+
+    /**
+     * Si se debe escribir el registro detallado de cada contorno. Se consulta antes de armar cada línea.
+     */
+    static boolean registroDetallado() {
+        return depuracion && Log.isLoggable(TAG_DETALLE, Log.VERBOSE);
+    }
+
+    /**
+     * Escribe una línea por espora aceptada, si el registro detallado está activo.
+     */
+    static void registrarEsporas(SporeTable tabla) {
+        if (!registroDetallado()) return;
+        for (int i = 0; i < tabla.size(); i++) {
+            Log.v(TAG_DETALLE, String.format(Locale.ROOT,
+                    "Espora %d: centro (%.1f, %.1f), área %.1f, circularidad %.3f, solidez %.3f, aspecto %.2f",
+                    i, tabla.centroX[i], tabla.centroY[i], tabla.area[i], tabla.circularidad[i], tabla.solidez[i],
+                    tabla.relacionAspecto[i]));
+        }
+    }
+
+    /**
+     * Métricas para un trabajo nuevo, con trazas y sonda de memoria nativa.
+     */
+    PipelineMetrics nuevas() {
+        return new PipelineMetrics(TRAZA, MEMORIA_NATIVA);
+    }
+
+    /**
+     * Agrega las métricas de un trabajo terminado. Los trabajos sin etapas (por ejemplo, leer estas mismas
+     * estadísticas) no se cuentan.
+     */
+    synchronized void registrar(PipelineMetrics m) {
+        if (m.getEtapas().isEmpty()) return;
+        analisis++;
+        nanosTotales += m.getDuracionNanos();
+        contornosEncontrados += m.getContornosEncontrados();
+        contornosRechazados += m.getContornosRechazados();
+        esporas += m.getEsporas();
+        memoriaMaxima = Math.max(memoriaMaxima, m.getMemoriaMaxima());
+        for (PipelineMetrics.Etapa e : m.getEtapas()) {
+            Agregado a = etapas.get(e.nombre);
+            if (a == null) {
+                a = new Agregado();
+                etapas.put(e.nombre, a);
+            }
+            a.veces += e.getVeces();
+            a.nanos += e.getNanos();
+            a.maximoNanos = Math.max(a.maximoNanos, e.getMaximoNanos());
+        }
+        recientes.addFirst(m);
+        if (recientes.size() > MAX_RECIENTES) recientes.removeLast();
+    }
+
+    public synchronized void vaciar() {
+        recientes.clear();
+        etapas.clear();
+        analisis = 0;
+        nanosTotales = 0;
+        contornosEncontrados = 0;
+        contornosRechazados = 0;
+        esporas = 0;
+        memoriaMaxima = -1;
+    }
+
+    /**
+     * Resumen legible para el panel de diagnóstico.
+     */
+    public synchronized String resumen() {
+        StringBuilder s = new StringBuilder("Métricas del pipeline\n\n");
+        s.append(String.format(Locale.getDefault(), "Análisis:          %d\n", analisis));
+        if (analisis == 0) return s.toString();
+        s.append(String.format(Locale.getDefault(), "Tiempo medio:      %.1f ms\n", nanosTotales / 1e6 / analisis));
+        s.append(String.format(Locale.getDefault(), "Contornos:         %d\n", contornosEncontrados));
+        s.append(String.format(Locale.getDefault(), "Rechazados:        %d\n", contornosRechazados));
+        s.append(String.format(Locale.getDefault(), "Esporas:           %d\n", esporas));
+        if (memoriaMaxima >= 0) {
+            s.append(String.format(Locale.getDefault(), "Memoria nativa máx: %.1f MB\n", memoriaMaxima / 1048576.0));
+        }
+        s.append("\nEtapa: veces, media, peor (ms)\n");
+        for (Map.Entry<String, Agregado> e : etapas.entrySet()) {
+            Agregado a = e.getValue();
+            s.append(String.format(Locale.getDefault(), "%s: %d, %.1f, %.1f\n", e.getKey(), a.veces,
+                    a.nanos / 1e6 / a.veces, a.maximoNanos / 1e6));
+        }
+        PipelineMetrics ultimo = recientes.peekFirst();
+        if (ultimo != null) s.append("\nÚltimo: ").append(ultimo).append("\n");
+        return s.toString();
+    }
+
+    /**
+     * Todas las métricas (agregadas y de los últimos análisis) como JSON.
+     */
+    public synchronized String json() throws JSONException {
+        JSONObject raiz = new JSONObject();
+        raiz.put("analisis", analisis);
+        raiz.put("nanosTotales", nanosTotales);
+        raiz.put("contornosEncontrados", contornosEncontrados);
+        raiz.put("contornosRechazados", contornosRechazados);
+        raiz.put("esporas", esporas);
+        raiz.put("memoriaNativaMaxima", memoriaMaxima);
+
+        JSONArray listaEtapas = new JSONArray();
+        for (Map.Entry<String, Agregado> e : etapas.entrySet()) {
+            JSONObject etapa = new JSONObject();
+            etapa.put("nombre", e.getKey());
+            etapa.put("veces", e.getValue().veces);
+            etapa.put("nanos", e.getValue().nanos);
+            etapa.put("maximoNanos", e.getValue().maximoNanos);
+            listaEtapas.put(etapa);
+        }
+        raiz.put("etapas", listaEtapas);
+
+        JSONArray lista = new JSONArray();
+        for (PipelineMetrics m : recientes) {
+            JSONObject item = new JSONObject();
+            item.put("nanos", m.getDuracionNanos());
+            item.put("detecciones", m.getDetecciones());
+            item.put("contornosEncontrados", m.getContornosEncontrados());
+            item.put("contornosRechazados", m.getContornosRechazados());
+            item.put("esporas", m.getEsporas());
+            item.put("memoriaNativaInicial", m.getMemoriaInicial());
+            item.put("memoriaNativaMaxima", m.getMemoriaMaxima());
+            JSONObject tiempos = new JSONObject();
+            for (PipelineMetrics.Etapa e : m.getEtapas()) tiempos.put(e.nombre, e.getNanos());
+            item.put("etapas", tiempos);
+            lista.put(item);
+        }
+        raiz.put("recientes", lista);
+        return raiz.toString(2);
+    }
+
+    /**
+     * Escribe {@link #json()} en la carpeta indicada (la de exportes, que comparte el FileProvider).
+     */
+    File exportar(File carpeta) throws IOException, JSONException {
+        String json = json();
+        if (!carpeta.isDirectory() && !carpeta.mkdirs()) throw new IOException("No se pudo crear " + carpeta);
+        File archivo = new File(carpeta, ARCHIVO);
+        try (Writer salida = new OutputStreamWriter(new FileOutputStream(archivo), StandardCharsets.UTF_8)) {
+            salida.write(json);
+        }
+        Log.d(TAG, "Métricas exportadas a " + archivo);
+        return archivo;
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.menuesporas;
+
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.FileProvider;
+
+import com.example.menuesporas.detector.PoolStats;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * *PantallaDepuracion*: Muestra los contadores de la {@link CacheResultados}: aciertos en memoria y en disco,
+ * fallos, desalojos de cada nivel y lo que ocupa cada uno. Permite vaciar la caché para medir el pipeline
+ * completo otra vez.
+ *
+ * También muestra los pools de Mats y Bitmaps del AnalysisEngine: cuántos objetos se crearon y cuántos se
+ * reutilizaron, y, en las compilaciones de depuración, los prestados y las fugas con el lugar donde se pidieron.
+ *
+ * Por último, las {@link MetricasAnalisis} del motor: el tiempo de cada etapa del pipeline, los contornos y la
+ * memoria nativa máxima. Se pueden exportar como JSON (en la carpeta de exportes) y compartir.
+ *
+ * Las estadísticas leen la carpeta de la caché la primera vez, por lo que se piden en el AnalysisEngine.
+ */
+public class PantallaDepuracion extends AppCompatActivity {
+
+    private static final String TAG = "PantallaDepuracion";
+
+    private TextView texto;
+    private CacheResultados cache;
+    private AnalysisEngine.Tarea<String> tareaActual;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.pantalladepuracion);
+
+        texto = findViewById(R.id.textoDepuracion);
+        Button btnActualizar = findViewById(R.id.btnActualizarDepuracion);
+        Button btnVaciar = findViewById(R.id.btnVaciarCache);
+        Button btnExportar = findViewById(R.id.btnExportarMetricas);
+        cache = CacheResultados.get(this);
+
+        btnActualizar.setOnClickListener(v -> actualizar(false));
+        btnVaciar.setOnClickListener(v -> actualizar(true));
+        btnExportar.setOnClickListener(v -> exportarMetricas());
+        actualizar(false);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (tareaActual != null) {
+            tareaActual.cancelar();
+            tareaActual = null;
+        }
+    }
+
+    private void actualizar(boolean vaciar) {
+        if (tareaActual != null) tareaActual.cancelar();
+        CacheResultados c = cache;
+        AnalysisEngine motor = AnalysisEngine.get();
+        tareaActual = motor.enviar(progreso -> {
+            if (vaciar) c.vaciar();
+            return formatear(c.estadisticas()) + "\n" + formatearPool("Pool de Mats", motor.mats().estadisticas())
+                    + "\n" + formatearPool("Pool de Bitmaps", motor.bitmaps().estadisticas())
+                    + "\n" + motor.metricas().resumen();
+        }, new AnalysisEngine.Callback<String>() {
+            @Override
+            public void onProgreso(int porcentaje, String etapa) {
+            }
+
+            @Override
+            public void onResultado(String resultado) {
+                texto.setText(resultado);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "No se pudieron leer las estadísticas de la caché", e);
+                texto.setText("Error al leer la caché.");
+            }
+        });
+    }
+
+    private void exportarMetricas() {
+        if (tareaActual != null) tareaActual.cancelar();
+        File carpeta = new File(getFilesDir(), "exportes");
+        String autoridad = getPackageName() + ".exportes";
+        tareaActual = AnalysisEngine.get().enviar(
+                progreso -> AnalysisEngine.get().metricas().exportar(carpeta).getAbsolutePath(),
+                new AnalysisEngine.Callback<String>() {
+                    @Override
+                    public void onProgreso(int porcentaje, String etapa) {
+                    }
+
+                    @Override
+                    public void onResultado(String ruta) {
+                        Uri uri = FileProvider.getUriForFile(PantallaDepuracion.this, autoridad, new File(ruta));
+                        Intent envio = new Intent(Intent.ACTION_SEND);
+                        envio.setType("application/json");
+                        envio.putExtra(Intent.EXTRA_STREAM, uri);
+                        envio.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                        startActivity(Intent.createChooser(envio, "Compartir métricas"));
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        Log.e(TAG, "No se pudieron exportar las métricas", e);
+                        Toast.makeText(PantallaDepuracion.this, "No se pudieron exportar las métricas.",
+                                Toast.LENGTH_SHORT).show();
+                    }
+                });
+    }
+
+    static String formatear(CacheResultados.Estadisticas e) {
+        long aciertos = e.aciertosMemoria + e.aciertosDisco;
+        long consultas = aciertos + e.fallos;
+        StringBuilder s = new StringBuilder("Caché de resultados\n\n");
+        s.append(String.format(Locale.getDefault(), "Aciertos en memoria: %d\n", e.aciertosMemoria));
+        s.append(String.format(Locale.getDefault(), "Aciertos en disco:   %d\n", e.aciertosDisco));
+        s.append(String.format(Locale.getDefault(), "Fallos:              %d\n", e.fallos));
+        if (consultas > 0) {
+            s.append(String.format(Locale.getDefault(), "Tasa de aciertos:    %.1f %%\n", 100.0 * aciertos / consultas));
+        }
+        s.append(String.format(Locale.getDefault(), "\nDesalojos en memoria: %d\n", e.desalojosMemoria));
+        s.append(String.format(Locale.getDefault(), "Desalojos en disco:   %d\n", e.desalojosDisco));
+        s.append(String.format(Locale.getDefault(), "\nMemoria: %d entradas, %.1f de %d MB\n", e.entradasMemoria,
+                e.bytesMemoria / 1048576.0, CacheResultados.MAX_BYTES_MEMORIA / 1048576));
+        s.append(String.format(Locale.getDefault(), "Disco:   %d entradas, %.1f de %d MB\n", e.entradasDisco,
+                e.bytesDisco / 1048576.0, CacheResultados.MAX_BYTES_DISCO / 1048576));
+        return s.toString();
+    }
+
+    static String formatearPool(String nombre, PoolStats p) {
+        StringBuilder s = new StringBuilder(nombre).append("\n\n");
+        s.append(String.format(Locale.getDefault(), "Creados:      %d\n", p.creados));
+        s.append(String.format(Locale.getDefault(), "Reutilizados: %d\n", p.reutilizados));
+        s.append(String.format(Locale.getDefault(), "Liberados:    %d\n", p.liberados));
+        s.append(String.format(Locale.getDefault(), "Libres:       %d (%.1f MB)\n", p.libres, p.bytesLibres / 1048576.0));
+        if (p.enUso < 0) {
+            s.append("Rastreo de fugas desactivado\n");
+            return s.toString();
+        }
+        s.append(String.format(Locale.getDefault(), "En uso:       %d\n", p.enUso));
+        s.append(String.format(Locale.getDefault(), "Fugas:        %d\n", p.fugas));
+        for (String fuga : p.ultimasFugas) s.append("\n").append(fuga).append("\n");
+        return s.toString();
+    }
+}
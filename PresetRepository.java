@@ -0,0 +1,250 @@
+package com.example.menuesporas;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.menuesporas.detector.DetectionParams;
+import com.example.menuesporas.detector.DetectionPresets;
+import com.example.menuesporas.detector.PhysicalPreset;
+import com.example.menuesporas.detector.SpatialCalibration;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * *PresetRepository*: Presets de detección leídos de un archivo JSON versionado, en lugar de estar escritos
+ * en el código. Cada preset se identifica por un ID estable (DetectionPresets.ID_*) que elegirhongo envía en
+ * el Intent, por lo que traducir los textos de los botones no cambia la detección.
+ *
+ * El archivo se lee una sola vez por proceso. Los DetectionParams de cada preset a la calibración de referencia
+ * ({@link #porId}) se calculan la primera vez que se piden y se guardan; después cada consulta es una búsqueda
+ * en un mapa. Se usa el archivo más reciente entre:
+ * - res/raw/detection_presets.json, incluido en el APK.
+ * - detection_presets.json en getFilesDir(), para actualizar umbrales sin publicar otro APK.
+ * Un archivo con una versión mayor que la soportada o con errores se ignora, y un preset que falta en el
+ * archivo se toma de DetectionPresets.
+ *
+ * Desde la versión 2 los umbrales que dependen de la resolución están en unidades físicas (áreas en µm², kernels
+ * en µm; ver PhysicalPreset) ajustadas a SpatialCalibration.REFERENCIA, y {@link #fisico} permite convertirlos a
+ * píxeles para la calibración y la resolución de cada análisis. Los campos en píxeles de la versión 1 se siguen
+ * aceptando: un preset que los usa se convierte a unidades físicas con la calibración de referencia.
+ */
+public final class PresetRepository {
+
+    private static final String TAG = "PresetRepository";
+
+    // Versión del formato que entiende esta versión de la app.
+    static final int VERSION_SOPORTADA = 2;
+    static final String ARCHIVO_ACTUALIZADO = "detection_presets.json";
+
+    private static volatile PresetRepository instancia;
+
+    private final int version;
+    private final Map<String, PhysicalPreset> presets;
+    // porId ya convertido a píxeles; lo consultan a la vez la UI y los trabajos del AnalysisEngine.
+    private final ConcurrentHashMap<String, DetectionParams> referencia = new ConcurrentHashMap<>();
+
+    private PresetRepository(int version, Map<String, PhysicalPreset> presets) {
+        this.version = version;
+        this.presets = presets;
+    }
+
+    public static PresetRepository get(Context context) {
+        PresetRepository repositorio = instancia;
+        if (repositorio == null) {
+            synchronized (PresetRepository.class) {
+                repositorio = instancia;
+                if (repositorio == null) {
+                    repositorio = cargar(context.getApplicationContext());
+                    instancia = repositorio;
+                }
+            }
+        }
+        return repositorio;
+    }
+
+    /**
+     * Versión del archivo de presets en uso (0 si no se pudo leer ninguno y se usan los integrados).
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Preset con el ID dado. Si el archivo no lo define se usa el integrado, y si el ID es desconocido
+     * se usan los valores por defecto.
+     */
+    public DetectionParams porId(String id) {
+        // Un mapa concurrente no admite claves null; un ID null se resuelve igual que uno desconocido.
+        return referencia.computeIfAbsent(id != null ? id : "",
+                clave -> fisico(id).parametros(SpatialCalibration.REFERENCIA));
+    }
+
+    /**
+     * Preset con el ID dado en unidades físicas, para convertirlo a píxeles con otra calibración o resolución
+     * (por ejemplo, la de la cuadrícula rectificada). Mismas reglas que {@link #porId}.
+     */
+    public PhysicalPreset fisico(String id) {
+        PhysicalPreset preset = id != null ? presets.get(id) : null;
+        if (preset != null) return preset;
+        DetectionParams params = DetectionPresets.porId(id);
+        if (params == null) params = DetectionPresets.porDefecto();
+        return PhysicalPreset.desdePixeles(params, SpatialCalibration.REFERENCIA);
+    }
+
+    /**
+     * Resuelve el preset de un Intent: por su ID estable o, si el Intent no lo trae, por el nombre
+     * de la densidad (Intents anteriores a los IDs).
+     */
+    public DetectionParams resolver(String id, String tipoHongo) {
+        return porId(id != null ? id : DetectionPresets.idPorNombre(tipoHongo));
+    }
+
+    private static PresetRepository cargar(Context context) {
+        PresetRepository incluido = null;
+        try (InputStream entrada = context.getResources().openRawResource(R.raw.detection_presets)) {
+            incluido = parsear(leer(entrada));
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "No se pudo leer el archivo de presets incluido; se usan los integrados.", e);
+        }
+
+        PresetRepository actualizado = null;
+        File archivo = new File(context.getFilesDir(), ARCHIVO_ACTUALIZADO);
+        if (archivo.exists()) {
+            try (InputStream entrada = new FileInputStream(archivo)) {
+                actualizado = parsear(leer(entrada));
+            } catch (IOException | JSONException e) {
+                Log.w(TAG, "Archivo de presets actualizado inválido, se ignora: " + e.getMessage());
+            }
+        }
+
+        PresetRepository elegido = incluido;
+        if (actualizado != null && (elegido == null || actualizado.version >= elegido.version)) {
+            elegido = actualizado;
+        }
+        if (elegido == null) {
+            elegido = new PresetRepository(0, Collections.emptyMap());
+        }
+        Log.d(TAG, "Presets cargados: versión " + elegido.version + ", " + elegido.presets.size() + " presets.");
+        return elegido;
+    }
+
+    static PresetRepository parsear(String json) throws JSONException {
+        JSONObject raiz = new JSONObject(json);
+        int version = raiz.getInt("version");
+        if (version > VERSION_SOPORTADA) {
+            throw new JSONException("Versión de presets no soportada: " + version);
+        }
+        Map<String, PhysicalPreset> presets = new HashMap<>();
+        JSONArray lista = raiz.getJSONArray("presets");
+        for (int i = 0; i < lista.length(); i++) {
+            JSONObject preset = lista.getJSONObject(i);
+            String id = preset.getString("id");
+            try {
+                presets.put(id, aPresetFisico(preset));
+            } catch (JSONException e) {
+                // Un preset inválido no invalida el resto: ese ID usará el preset integrado.
+                Log.w(TAG, "Preset '" + id + "' inválido, se usa el integrado: " + e.getMessage());
+            }
+        }
+        return new PresetRepository(version, Collections.unmodifiableMap(presets));
+    }
+
+    /**
+     * Convierte un preset del JSON en un PhysicalPreset. Los campos en unidades físicas (minAreaUm2, maxAreaUm2,
+     * blurUm, adaptiveBlockUm, openKernelUm, closeKernelUm) tienen prioridad sobre los de la versión 1 en píxeles.
+     */
+    private static PhysicalPreset aPresetFisico(JSONObject p) throws JSONException {
+        PhysicalPreset f = PhysicalPreset.desdePixeles(aParametros(p), SpatialCalibration.REFERENCIA);
+        return f.toBuilder()
+                .areaUm2(p.optDouble("minAreaUm2", f.areaMinimaUm2), p.optDouble("maxAreaUm2", f.areaMaximaUm2))
+                .desenfoqueUm(p.optDouble("blurUm", f.desenfoqueUm))
+                .bloqueAdaptativoUm(p.optDouble("adaptiveBlockUm", f.bloqueAdaptativoUm))
+                .aperturaUm(p.optDouble("openKernelUm", f.aperturaUm))
+                .cierreUm(p.optDouble("closeKernelUm", f.cierreUm))
+                .build();
+    }
+
+    /**
+     * Convierte los campos en píxeles de un preset del JSON en DetectionParams. Los campos ausentes toman los
+     * valores por defecto de DetectionParams.Builder.
+     */
+    private static DetectionParams aParametros(JSONObject p) throws JSONException {
+        DetectionParams d = DetectionPresets.porDefecto();
+        DetectionParams.Builder b = d.toBuilder()
+                .workSize(p.optInt("workWidth", d.workWidth), p.optInt("workHeight", d.workHeight))
+                .blurKernelSize(p.optInt("blurKernelSize", d.blurKernelSize))
+                .adaptiveBlockSize(p.optInt("adaptiveBlockSize", d.adaptiveBlockSize))
+                .adaptiveC(p.optDouble("adaptiveC", d.adaptiveC))
+                .open(p.optInt("openKernelSize", d.openKernelSize), p.optInt("openIterations", d.openIterations))
+                .close(p.optInt("closeKernelSize", d.closeKernelSize), p.optInt("closeIterations", d.closeIterations))
+                .area(p.optDouble("minArea", d.minArea), p.optDouble("maxArea", d.maxArea))
+                .minCircularity(p.optDouble("minCircularity", d.minCircularity))
+                .minSolidity(p.optDouble("minSolidity", d.minSolidity))
+                .aspectRatio(p.optDouble("minAspectRatio", d.minAspectRatio),
+                        p.optDouble("maxAspectRatio", d.maxAspectRatio))
+                .splitClumps(p.optBoolean("splitClumps", d.splitClumps))
+                .grid(p.optInt("gridRows", d.gridRows), p.optInt("gridCols", d.gridCols))
+                .pyramidLevels(p.optInt("pyramidLevels", d.pyramidLevels))
+                .drawContourThickness(p.optInt("drawContourThickness", d.drawContourThickness));
+        if (p.has("roi")) {
+            JSONArray roi = p.getJSONArray("roi");
+            b.roi(new Rect(roi.getInt(0), roi.getInt(1), roi.getInt(2), roi.getInt(3)));
+        }
+        if (p.has("contourMode") || p.has("contourMethod")) {
+            b.contours(modoContornos(p.optString("contourMode", "LIST")),
+                    metodoContornos(p.optString("contourMethod", "NONE")));
+        }
+        return b.build();
+    }
+
+    private static int modoContornos(String modo) throws JSONException {
+        switch (modo) {
+            case "EXTERNAL":
+                return Imgproc.RETR_EXTERNAL;
+            case "LIST":
+                return Imgproc.RETR_LIST;
+            case "CCOMP":
+                return Imgproc.RETR_CCOMP;
+            case "TREE":
+                return Imgproc.RETR_TREE;
+            default:
+                throw new JSONException("contourMode desconocido: " + modo);
+        }
+    }
+
+    private static int metodoContornos(String metodo) throws JSONException {
+        switch (metodo) {
+            case "NONE":
+                return Imgproc.CHAIN_APPROX_NONE;
+            case "SIMPLE":
+                return Imgproc.CHAIN_APPROX_SIMPLE;
+            default:
+                throw new JSONException("contourMethod desconocido: " + metodo);
+        }
+    }
+
+    private static String leer(InputStream entrada) throws IOException {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int leidos;
+        while ((leidos = entrada.read(buffer)) != -1) {
+            salida.write(buffer, 0, leidos);
+        }
+        return new String(salida.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.menuesporas;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.Nullable;
+
+import com.example.menuesporas.detector.DetectionParams;
+
+/**
+ * *ResultadoAnalisis*: Resultado de un análisis listo para mostrarse en la UI:
+ * la imagen con los contornos dibujados y el texto con el conteo.
+ *
+ * MainActivity2 además guarda qué parte de la imagen original se muestra (zona, como fracciones izquierda, arriba,
+ * derecha y abajo de su ancho y su alto) y con qué preset, para analizar después una región de interés elegida
+ * sobre ella.
+ */
+public class ResultadoAnalisis {
+
+    public final Bitmap imagen;
+    public final String texto;
+    @Nullable
+    public final DetectionParams params;
+    @Nullable
+    public final double[] zona;
+
+    public ResultadoAnalisis(Bitmap imagen, String texto) {
+        this(imagen, texto, null, null);
+    }
+
+    public ResultadoAnalisis(Bitmap imagen, String texto, @Nullable DetectionParams params, @Nullable double[] zona) {
+        this.imagen = imagen;
+        this.texto = texto;
+        this.params = params;
+        this.zona = zona;
+    }
+}
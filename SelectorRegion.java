@@ -0,0 +1,138 @@
+package com.example.menuesporas;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+
+import androidx.annotation.Nullable;
+import androidx.appcompat.widget.AppCompatImageView;
+
+/**
+ * *SelectorRegion*: ImageView sobre el que el usuario arrastra un rectángulo para elegir una región de interés de
+ * la imagen mostrada. {@link #getRegion()} devuelve la región como fracciones de la imagen (no de la vista), así
+ * que no depende de la escala con la que se muestra ni de la densidad del Bitmap.
+ *
+ * Al mostrar otra imagen la selección se borra. Mientras se arrastra, la vista pide al ScrollView que la contiene
+ * que no intercepte el gesto.
+ */
+public class SelectorRegion extends AppCompatImageView {
+
+    /**
+     * Recibe la región cada vez que el usuario termina de arrastrar (null si se borró o quedó demasiado chica).
+     */
+    public interface OnRegionListener {
+        void onRegion(@Nullable RectF region);
+    }
+
+    // Lado mínimo, en dp, de una selección válida: un toque sin arrastrar borra la selección.
+    private static final float LADO_MINIMO_DP = 16;
+
+    private final Paint borde = new Paint();
+    private final float ladoMinimo;
+    private final RectF seleccion = new RectF();   // En coordenadas de la vista.
+    private boolean haySeleccion;
+    private float inicioX;
+    private float inicioY;
+    private OnRegionListener listener;
+
+    public SelectorRegion(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        float densidad = getResources().getDisplayMetrics().density;
+        ladoMinimo = LADO_MINIMO_DP * densidad;
+        borde.setColor(Color.YELLOW);
+        borde.setStyle(Paint.Style.STROKE);
+        borde.setStrokeWidth(2 * densidad);
+    }
+
+    public void setOnRegionListener(@Nullable OnRegionListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void setImageBitmap(Bitmap bitmap) {
+        super.setImageBitmap(bitmap);
+        limpiarRegion();
+    }
+
+    public void limpiarRegion() {
+        if (!haySeleccion) return;
+        haySeleccion = false;
+        invalidate();
+        if (listener != null) listener.onRegion(null);
+    }
+
+    /**
+     * La región seleccionada como fracciones (0-1) del ancho y el alto de la imagen mostrada, recortada a sus
+     * bordes, o null si no hay selección o no toca la imagen.
+     */
+    @Nullable
+    public RectF getRegion() {
+        Drawable imagen = getDrawable();
+        if (!haySeleccion || imagen == null || imagen.getIntrinsicWidth() <= 0 || imagen.getIntrinsicHeight() <= 0) {
+            return null;
+        }
+        // De la vista al Drawable: la matriz de la imagen no incluye el relleno de la vista.
+        Matrix inversa = new Matrix();
+        if (!getImageMatrix().invert(inversa)) return null;
+        RectF region = new RectF(seleccion);
+        region.offset(-getPaddingLeft(), -getPaddingTop());
+        inversa.mapRect(region);
+
+        float ancho = imagen.getIntrinsicWidth();
+        float alto = imagen.getIntrinsicHeight();
+        region.set(Math.max(0, region.left / ancho), Math.max(0, region.top / alto),
+                Math.min(1, region.right / ancho), Math.min(1, region.bottom / alto));
+        if (region.right <= region.left || region.bottom <= region.top) return null;
+        return region;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent evento) {
+        if (getDrawable() == null) return super.onTouchEvent(evento);
+        switch (evento.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                getParent().requestDisallowInterceptTouchEvent(true);
+                inicioX = evento.getX();
+                inicioY = evento.getY();
+                seleccion.set(inicioX, inicioY, inicioX, inicioY);
+                haySeleccion = true;
+                invalidate();
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                seleccion.set(Math.min(inicioX, evento.getX()), Math.min(inicioY, evento.getY()),
+                        Math.max(inicioX, evento.getX()), Math.max(inicioY, evento.getY()));
+                invalidate();
+                return true;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                getParent().requestDisallowInterceptTouchEvent(false);
+                if (seleccion.width() < ladoMinimo || seleccion.height() < ladoMinimo) {
+                    haySeleccion = false;
+                    invalidate();
+                }
+                if (evento.getActionMasked() == MotionEvent.ACTION_UP) performClick();
+                if (listener != null) listener.onRegion(getRegion());
+                return true;
+            default:
+                return super.onTouchEvent(evento);
+        }
+    }
+
+    @Override
+    public boolean performClick() {
+        return super.performClick();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (haySeleccion) canvas.drawRect(seleccion, borde);
+    }
+}
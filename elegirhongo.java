@@ -6,9 +6,11 @@ import android.os.Bundle;
 import android.view.View;
 import android.widget.Button;
 
+import com.example.menuesporas.detector.DetectionPresets;
+
 public class elegirhongo extends AppCompatActivity {
 
-    Button btnHongo1, btnHongo2, btnHongo3, btnHongo4, btnMedicionPorCuadro;
+    Button btnHongo1, btnHongo2, btnHongo3, btnHongo4, btnDensidadAutomatica, btnMuestraMixta, btnMedicionPorCuadro;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -19,20 +21,39 @@ public class elegirhongo extends AppCompatActivity {
         btnHongo2 = findViewById(R.id.btnHongo2);
         btnHongo3 = findViewById(R.id.btnHongo3);
         btnHongo4 = findViewById(R.id.btnHongo4);
+        btnDensidadAutomatica = findViewById(R.id.btnDensidadAutomatica);
+        btnMuestraMixta = findViewById(R.id.btnMuestraMixta);
         btnMedicionPorCuadro = findViewById(R.id.btnMedicionPorCuadro);
 
         View.OnClickListener listener = new View.OnClickListener() {
             @Override
             public void onClick(View view) {
                 String tipo = "";
+                String presetId = null; // ID estable del preset: no cambia al traducir los textos.
 
-                if (view == btnHongo1) tipo = getString(R.string.hongo_1); // Obtiene el string de resources
-                else if (view == btnHongo2) tipo = getString(R.string.hongo_2); // Obtiene el string de resources
-                else if (view == btnHongo3) tipo = getString(R.string.hongo_3); // Obtiene el string de resources
-                else if (view == btnHongo4) tipo = getString(R.string.hongo_4); // Obtiene el string de resources
+                if (view == btnHongo1) {
+                    tipo = getString(R.string.hongo_1); // Obtiene el string de resources
+                    presetId = DetectionPresets.ID_BAJA_DENSIDAD;
+                } else if (view == btnHongo2) {
+                    tipo = getString(R.string.hongo_2); // Obtiene el string de resources
+                    presetId = DetectionPresets.ID_DENSIDAD_MODERADA;
+                } else if (view == btnHongo3) {
+                    tipo = getString(R.string.hongo_3); // Obtiene el string de resources
+                    presetId = DetectionPresets.ID_ALTA_DENSIDAD;
+                } else if (view == btnHongo4) {
+                    tipo = getString(R.string.hongo_4); // Obtiene el string de resources
+                    presetId = DetectionPresets.ID_DENSIDAD_MUY_ALTA;
+                } else if (view == btnDensidadAutomatica) {
+                    tipo = "Densidad automática"; // La densidad se estima en cada imagen.
+                    presetId = DetectionPresets.ID_AUTOMATICO;
+                } else if (view == btnMuestraMixta) {
+                    tipo = "Muestra mixta (varios tamaños)"; // Un solo análisis multiescala.
+                    presetId = DetectionPresets.ID_MUESTRA_MIXTA;
+                }
 
                 Intent intent = new Intent(elegirhongo.this, MainActivity2.class);
                 intent.putExtra("tipo_espora", tipo);
+                intent.putExtra("preset_id", presetId);
                 startActivity(intent);
             }
         };
@@ -41,6 +62,8 @@ public class elegirhongo extends AppCompatActivity {
         btnHongo2.setOnClickListener(listener);
         btnHongo3.setOnClickListener(listener);
         btnHongo4.setOnClickListener(listener);
+        btnDensidadAutomatica.setOnClickListener(listener);
+        btnMuestraMixta.setOnClickListener(listener);
 
         btnMedicionPorCuadro.setOnClickListener(new View.OnClickListener() {
             @Override
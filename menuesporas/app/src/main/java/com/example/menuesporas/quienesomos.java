@@ -1,12 +0,0 @@
-package com.example.menuesporas;
-
-import androidx.appcompat.app.AppCompatActivity;
-import android.os.Bundle;
-
-public class quienesomos extends AppCompatActivity {
-    @Override
-    protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_quienesomos);
-    }
-}
@@ -0,0 +1,33 @@
+package com.example.menuesporas.detector;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * *BenchmarkRunner*: Ejecuta todos los benchmarks del detector con el perfilador GC
+ * (tasa de asignación por operación) y guarda los resultados en JSON para comparar entre versiones.
+ *
+ * Uso: {@code BenchmarkRunner [archivo-resultado.json] [filtro-de-benchmarks]}
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String archivoResultado = args.length > 0 ? args[0] : "jmh-result.json";
+        String filtro = args.length > 1 ? args[1] : BenchmarkRunner.class.getPackage().getName() + ".*Benchmark";
+
+        Options opciones = new OptionsBuilder()
+                .include(filtro)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(archivoResultado)
+                .build();
+        new Runner(opciones).run();
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.Mat;
+
+/**
+ * Conteos y tiempos acumulados del conteo por componentes conexas ({@link ComponentSporeCounter}) y del camino de
+ * contornos ({@link SporeDetector}) sobre un conjunto de imágenes. Lo usan FastCountTest, con los portaobjetos
+ * sintéticos, y {@link FastCountCheck}, con una carpeta de imágenes reales.
+ */
+final class CountComparison {
+
+    private static final int REPETICIONES = 3;
+
+    private final String nombre;
+    private final SporeDetector contornos = new SporeDetector();
+    private final ComponentSporeCounter rapido = new ComponentSporeCounter();
+    int imagenes;
+    long conteoContornos;
+    long conteoRapido;
+    long diferenciaAbsoluta;
+    long nanosContornos;
+    long nanosRapido;
+    long componentes;
+    long sinContorno;
+
+    CountComparison(String nombre) {
+        this.nombre = nombre;
+    }
+
+    void medir(Mat imagen, DetectionParams params) {
+        DetectionResult esperado = null;
+        DetectionResult obtenido = null;
+        // La mejor de varias repeticiones, para que el primer uso de cada camino no pese en la comparación.
+        long mejorContornos = Long.MAX_VALUE;
+        long mejorRapido = Long.MAX_VALUE;
+        for (int i = 0; i < REPETICIONES; i++) {
+            if (esperado != null) esperado.release();
+            long inicio = System.nanoTime();
+            esperado = contornos.detect(imagen, params);
+            mejorContornos = Math.min(mejorContornos, System.nanoTime() - inicio);
+
+            if (obtenido != null) obtenido.release();
+            inicio = System.nanoTime();
+            obtenido = rapido.detect(imagen, params);
+            mejorRapido = Math.min(mejorRapido, System.nanoTime() - inicio);
+        }
+        imagenes++;
+        conteoContornos += esperado.getConteo();
+        conteoRapido += obtenido.getConteo();
+        diferenciaAbsoluta += Math.abs(esperado.getConteo() - obtenido.getConteo());
+        nanosContornos += mejorContornos;
+        nanosRapido += mejorRapido;
+        componentes += obtenido.estadisticasFiltro.evaluados;
+        sinContorno += obtenido.estadisticasFiltro.sinContorno;
+        esperado.release();
+        obtenido.release();
+    }
+
+    void sumar(CountComparison otros) {
+        imagenes += otros.imagenes;
+        conteoContornos += otros.conteoContornos;
+        conteoRapido += otros.conteoRapido;
+        diferenciaAbsoluta += otros.diferenciaAbsoluta;
+        nanosContornos += otros.nanosContornos;
+        nanosRapido += otros.nanosRapido;
+        componentes += otros.componentes;
+        sinContorno += otros.sinContorno;
+    }
+
+    double diferenciaRelativa() {
+        return conteoContornos == 0 ? 0 : (double) diferenciaAbsoluta / conteoContornos;
+    }
+
+    @Override
+    public String toString() {
+        if (imagenes == 0) return nombre + ": sin imágenes";
+        return String.format("%s: %d imágenes, conteo contornos %d, rápido %d (diferencia %.2f%%), "
+                        + "%.1f ms contra %.1f ms por imagen (x%.2f), %.0f%% de componentes sin contorno",
+                nombre, imagenes, conteoContornos, conteoRapido, diferenciaRelativa() * 100,
+                nanosContornos / 1e6 / imagenes, nanosRapido / 1e6 / imagenes,
+                nanosRapido == 0 ? 0 : (double) nanosContornos / nanosRapido,
+                componentes == 0 ? 0 : 100.0 * sinContorno / componentes);
+    }
+}
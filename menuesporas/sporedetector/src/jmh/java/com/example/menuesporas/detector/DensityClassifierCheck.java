@@ -0,0 +1,48 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.Mat;
+
+/**
+ * *DensityClassifierCheck*: Comprueba que {@link DensityClassifier} elige el preset de cada densidad en
+ * portaobjetos sintéticos (la cantidad de esporas de cada {@link SyntheticSlide.Densidad} cae en el rango del
+ * preset correspondiente) y muestra cuánto tarda la estimación frente al pipeline completo.
+ * Termina con código 1 si alguna imagen se clasifica en otra densidad.
+ */
+public final class DensityClassifierCheck {
+
+    private static final int SEMILLAS = 5;
+
+    private DensityClassifierCheck() {
+    }
+
+    public static void main(String[] args) {
+        NativeOpenCv.cargar();
+        SporeDetector detector = new SporeDetector();
+        int errores = 0;
+
+        for (SyntheticSlide.Densidad densidad : SyntheticSlide.Densidad.values()) {
+            String esperado = DetectionPresets.idPorNombre(densidad.nombrePreset);
+            for (int semilla = 1; semilla <= SEMILLAS; semilla++) {
+                Mat slide = SyntheticSlide.generar(densidad, 2048, 1536, semilla);
+                DensityClassifier.Estimacion estimacion = DensityClassifier.estimar(slide);
+
+                long inicio = System.nanoTime();
+                DetectionResult completo = detector.detect(slide, densidad.params());
+                double msCompleto = (System.nanoTime() - inicio) / 1_000_000.0;
+                completo.release();
+                slide.release();
+
+                boolean correcto = esperado.equals(estimacion.presetId);
+                if (!correcto) errores++;
+                System.out.printf("%s semilla %d: %d esporas reales, %s (pipeline completo %.1f ms)%s%n",
+                        densidad, semilla, densidad.esporas, estimacion, msCompleto, correcto ? "" : "  <-- ERROR");
+            }
+        }
+
+        if (errores > 0) {
+            System.out.println("ERROR: " + errores + " imágenes clasificadas en otra densidad.");
+            System.exit(1);
+        }
+        System.out.println("OK: todas las densidades se clasifican correctamente.");
+    }
+}
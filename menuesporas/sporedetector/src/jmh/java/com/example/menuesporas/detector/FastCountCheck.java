@@ -0,0 +1,63 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * *FastCountCheck*: Precisión contra velocidad del conteo por componentes conexas ({@link ComponentSporeCounter})
+ * frente al camino de contornos ({@link SporeDetector}) sobre las imágenes de la carpeta indicada como argumento,
+ * con el preset de densidad moderada. Los portaobjetos sintéticos los cubre FastCountTest en cada build.
+ *
+ * Informa la diferencia de conteo, el tiempo de cada camino y qué fracción de componentes se decidió sin extraer
+ * su contorno. Termina con código 1 si la diferencia de conteo supera {@link #TOLERANCIA} o si el conteo rápido es
+ * más lento; sin carpeta no mide nada.
+ *
+ * Uso: {@code FastCountCheck carpeta-de-imagenes}
+ */
+public final class FastCountCheck {
+
+    private static final double TOLERANCIA = 0.05;
+
+    private FastCountCheck() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Sin carpeta de imágenes: nada que medir (uso: FastCountCheck carpeta-de-imagenes).");
+            return;
+        }
+        File[] archivos = new File(args[0]).listFiles();
+        if (archivos == null) {
+            System.out.println("ERROR: " + args[0] + " no es una carpeta.");
+            System.exit(1);
+        }
+
+        NativeOpenCv.cargar();
+        Arrays.sort(archivos);
+        CountComparison reales = new CountComparison("Imágenes de " + args[0]);
+        DetectionParams params = DetectionPresets.densidadModerada();
+        for (File archivo : archivos) {
+            Mat imagen = Imgcodecs.imread(archivo.getPath(), Imgcodecs.IMREAD_GRAYSCALE);
+            if (imagen.empty()) continue;
+            reales.medir(imagen, params);
+            imagen.release();
+        }
+        System.out.println(reales);
+
+        boolean ok = true;
+        if (reales.diferenciaRelativa() > TOLERANCIA) {
+            System.out.println("ERROR: el conteo rápido se aleja más de " + (int) (TOLERANCIA * 100)
+                    + "% del conteo por contornos.");
+            ok = false;
+        }
+        if (reales.nanosRapido > reales.nanosContornos) {
+            System.out.println("ERROR: el conteo rápido es más lento que el conteo por contornos.");
+            ok = false;
+        }
+        if (!ok) System.exit(1);
+        System.out.println("OK: el conteo rápido coincide con el conteo por contornos dentro de la tolerancia.");
+    }
+}
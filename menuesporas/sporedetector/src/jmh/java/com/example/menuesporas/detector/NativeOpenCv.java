@@ -0,0 +1,26 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.Core;
+
+/**
+ * *NativeOpenCv*: Carga la biblioteca nativa de OpenCV para los benchmarks y las verificaciones. Usa la instalada
+ * en el sistema (java.library.path) si la hay y, si no, la que trae empaquetada el artefacto org.openpnp:opencv
+ * con el que se construye el conjunto jmh.
+ */
+public final class NativeOpenCv {
+
+    private static boolean cargada;
+
+    private NativeOpenCv() {
+    }
+
+    public static synchronized void cargar() {
+        if (cargada) return;
+        try {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        } catch (UnsatisfiedLinkError e) {
+            nu.pattern.OpenCV.loadLocally();
+        }
+        cargada = true;
+    }
+}
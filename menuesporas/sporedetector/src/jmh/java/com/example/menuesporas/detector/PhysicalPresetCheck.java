@@ -0,0 +1,48 @@
+package com.example.menuesporas.detector;
+
+/**
+ * *PhysicalPresetCheck*: Comprueba que pasar los presets integrados a unidades físicas con la calibración de
+ * referencia y volver a píxeles a 640x480 da exactamente los mismos parámetros, que a 1280x960 las áreas se
+ * multiplican por 4 y los kernels por 2. Termina con código 1 si algo falla.
+ */
+public final class PhysicalPresetCheck {
+
+    private static final String[] IDS = {
+            DetectionPresets.ID_BAJA_DENSIDAD,
+            DetectionPresets.ID_DENSIDAD_MODERADA,
+            DetectionPresets.ID_ALTA_DENSIDAD,
+            DetectionPresets.ID_DENSIDAD_MUY_ALTA,
+            DetectionPresets.ID_CONTEO_POR_CUADRO};
+
+    private PhysicalPresetCheck() {
+    }
+
+    public static void main(String[] args) {
+        SpatialCalibration referencia = SpatialCalibration.REFERENCIA;
+        boolean ok = true;
+        for (String id : IDS) {
+            DetectionParams original = DetectionPresets.porId(id);
+            PhysicalPreset fisico = PhysicalPreset.desdePixeles(original, referencia);
+
+            DetectionParams idaYVuelta = fisico.parametros(referencia);
+            if (!idaYVuelta.huella().equals(original.huella())) {
+                System.out.println("ERROR: " + id + " no vuelve igual:\n  " + original.huella() + "\n  "
+                        + idaYVuelta.huella());
+                ok = false;
+            }
+
+            DetectionParams doble = fisico.parametros(referencia, original.workWidth * 2, original.workHeight * 2);
+            if (Math.abs(doble.minArea - original.minArea * 4) > 1e-6
+                    || Math.abs(doble.maxArea - original.maxArea * 4) > 1e-6
+                    || Math.abs(doble.adaptiveBlockSize - original.adaptiveBlockSize * 2) > 1
+                    || doble.openKernelSize != original.openKernelSize * 2) {
+                System.out.println("ERROR: " + id + " a doble resolución: " + doble.huella());
+                ok = false;
+            } else {
+                System.out.printf("%s: %.0f-%.0f µm²%n", id, fisico.areaMinimaUm2, fisico.areaMaximaUm2);
+            }
+        }
+        if (!ok) System.exit(1);
+        System.out.println("OK: los presets físicos reproducen los presets en píxeles y escalan con la resolución.");
+    }
+}
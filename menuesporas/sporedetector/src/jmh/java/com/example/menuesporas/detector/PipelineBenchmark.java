@@ -0,0 +1,90 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * *PipelineBenchmark*: Rendimiento del pipeline completo de {@link SporeDetector} en imágenes por segundo,
+ * para cada densidad de elegirhongo, el de la detección por bandas ({@link TiledSporeDetector}) con
+ * tantos hilos como núcleos y el del conteo rápido por componentes conexas ({@link ComponentSporeCounter}).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PipelineBenchmark {
+
+    static {
+        NativeOpenCv.cargar();
+    }
+
+    @Param({"BAJA", "MODERADA", "ALTA", "MUY_ALTA"})
+    public SyntheticSlide.Densidad densidad;
+
+    @Param({"2048"})
+    public int anchoFuente;
+
+    private final SporeDetector detector = new SporeDetector();
+    private final ComponentSporeCounter conteoRapido = new ComponentSporeCounter();
+    private ExecutorService ejecutorBandas;
+    private TiledSporeDetector detectorPorBandas;
+    private DetectionParams params;
+    private Mat fuente;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        params = densidad.params();
+        fuente = SyntheticSlide.generar(densidad, anchoFuente, anchoFuente * 3 / 4, 42);
+        int nucleos = Runtime.getRuntime().availableProcessors();
+        ejecutorBandas = Executors.newFixedThreadPool(nucleos);
+        detectorPorBandas = new TiledSporeDetector(ejecutorBandas, nucleos);
+    }
+
+    @TearDown(Level.Trial)
+    public void liberar() {
+        fuente.release();
+        ejecutorBandas.shutdown();
+    }
+
+    @Benchmark
+    public int detectar() {
+        DetectionResult resultado = detector.detect(fuente, params);
+        int conteo = resultado.getConteo();
+        resultado.release();
+        return conteo;
+    }
+
+    @Benchmark
+    public int contarPorComponentes() {
+        DetectionResult resultado = conteoRapido.detect(fuente, params);
+        int conteo = resultado.getConteo();
+        resultado.release();
+        return conteo;
+    }
+
+    @Benchmark
+    public int detectarPorBandas() {
+        DetectionResult resultado = detectorPorBandas.detect(fuente, params);
+        int conteo = resultado.getConteo();
+        resultado.release();
+        return conteo;
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * *PipelineStagesBenchmark*: Latencia de cada etapa del pipeline de {@link SporeDetector} por separado,
+ * para cada densidad de elegirhongo. Cada etapa parte de la salida precalculada de la anterior.
+ * La tasa de asignación de cada etapa se obtiene ejecutando con el perfilador GC (ver {@link BenchmarkRunner}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PipelineStagesBenchmark {
+
+    static {
+        NativeOpenCv.cargar();
+    }
+
+    @Param({"BAJA", "MODERADA", "ALTA", "MUY_ALTA"})
+    public SyntheticSlide.Densidad densidad;
+
+    // Resolución de la foto de entrada (antes de redimensionar a la resolución de trabajo).
+    @Param({"2048"})
+    public int anchoFuente;
+
+    private DetectionParams params;
+    private Mat fuente;
+    private byte[] pixelesFuente;
+    private Mat redimensionada;
+    private Mat gris;
+    private Mat ecualizada;
+    private Mat mascara;
+    private Mat mascaraMorfologia;
+    private List<MatOfPoint> contornos;
+    private ContourScratch scratch;
+
+    // Destinos reutilizados por las etapas medidas.
+    private Mat destinoPixeles;
+    private Mat destino;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        params = densidad.params();
+        int altoFuente = anchoFuente * 3 / 4;
+        fuente = SyntheticSlide.generar(densidad, anchoFuente, altoFuente, 42);
+        pixelesFuente = SyntheticSlide.aBytes(fuente);
+        destinoPixeles = new Mat(altoFuente, anchoFuente, CvType.CV_8UC4);
+        destino = new Mat();
+
+        redimensionada = new Mat();
+        Imgproc.resize(fuente, redimensionada, new Size(params.workWidth, params.workHeight));
+        gris = new Mat();
+        Imgproc.cvtColor(redimensionada, gris, Imgproc.COLOR_BGR2GRAY);
+        ecualizada = new Mat();
+        Imgproc.equalizeHist(gris, ecualizada);
+        Imgproc.GaussianBlur(ecualizada, ecualizada, new Size(params.blurKernelSize, params.blurKernelSize), 0);
+        mascara = new Mat();
+        umbralizar(ecualizada, mascara, params);
+        mascaraMorfologia = mascara.clone();
+        SporeDetector.aplicarMorfologia(mascaraMorfologia, Imgproc.MORPH_OPEN, params.openKernelSize, params.openIterations);
+        SporeDetector.aplicarMorfologia(mascaraMorfologia, Imgproc.MORPH_CLOSE, params.closeKernelSize, params.closeIterations);
+        contornos = new ArrayList<>();
+        Mat jerarquia = new Mat();
+        Imgproc.findContours(mascaraMorfologia, contornos, jerarquia, params.contourMode, params.contourMethod);
+        jerarquia.release();
+        scratch = new ContourScratch();
+    }
+
+    @TearDown(Level.Trial)
+    public void liberar() {
+        for (MatOfPoint contorno : contornos) contorno.release();
+        scratch.release();
+        fuente.release();
+        destinoPixeles.release();
+        destino.release();
+        redimensionada.release();
+        gris.release();
+        ecualizada.release();
+        mascara.release();
+        mascaraMorfologia.release();
+    }
+
+    private static void umbralizar(Mat entrada, Mat salida, DetectionParams params) {
+        Imgproc.adaptiveThreshold(entrada, salida, 255, Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C,
+                Imgproc.THRESH_BINARY_INV, params.adaptiveBlockSize, params.adaptiveC);
+    }
+
+    /**
+     * Equivalente en escritorio de Utils.bitmapToMat: copiar los píxeles de la foto a un Mat nativo.
+     */
+    @Benchmark
+    public Mat cargarPixeles() {
+        destinoPixeles.put(0, 0, pixelesFuente);
+        return destinoPixeles;
+    }
+
+    @Benchmark
+    public Mat redimensionar() {
+        Imgproc.resize(fuente, destino, new Size(params.workWidth, params.workHeight));
+        return destino;
+    }
+
+    @Benchmark
+    public Mat escalaDeGrises() {
+        Imgproc.cvtColor(redimensionada, destino, Imgproc.COLOR_BGR2GRAY);
+        return destino;
+    }
+
+    @Benchmark
+    public Mat ecualizarHistograma() {
+        Imgproc.equalizeHist(gris, destino);
+        return destino;
+    }
+
+    @Benchmark
+    public Mat umbralAdaptativo() {
+        umbralizar(ecualizada, destino, params);
+        return destino;
+    }
+
+    /**
+     * Apertura y cierre. Incluye la copia de la máscara, porque ambas operaciones trabajan sobre ella in situ.
+     */
+    @Benchmark
+    public Mat morfologia() {
+        mascara.copyTo(destino);
+        SporeDetector.aplicarMorfologia(destino, Imgproc.MORPH_OPEN, params.openKernelSize, params.openIterations);
+        SporeDetector.aplicarMorfologia(destino, Imgproc.MORPH_CLOSE, params.closeKernelSize, params.closeIterations);
+        return destino;
+    }
+
+    @Benchmark
+    public int buscarContornos() {
+        List<MatOfPoint> encontrados = new ArrayList<>();
+        Imgproc.findContours(mascaraMorfologia, encontrados, destino, params.contourMode, params.contourMethod);
+        int total = encontrados.size();
+        for (MatOfPoint contorno : encontrados) contorno.release();
+        return total;
+    }
+
+    /**
+     * Bucle de filtrado por forma, con los filtros ordenados de menor a mayor costo ({@link ContourClassifier}).
+     */
+    @Benchmark
+    public void filtrarContornos(Blackhole bh) {
+        ContourClassifier clasificador = new ContourClassifier(params, params.workWidth, params.workHeight, scratch);
+        SporeTable.Builder tabla = new SporeTable.Builder();
+        for (MatOfPoint contorno : contornos) {
+            bh.consume(clasificador.clasificar(contorno, tabla));
+        }
+        bh.consume(tabla.build());
+    }
+
+    /**
+     * El mismo bucle con el filtrado original, que asigna Mats y listas por contorno.
+     */
+    @Benchmark
+    public void filtrarContornosOriginal(Blackhole bh) {
+        for (MatOfPoint contorno : contornos) {
+            bh.consume(ReferenceContourFilter.acepta(ReferenceContourFilter.medir(contorno), params));
+        }
+    }
+}
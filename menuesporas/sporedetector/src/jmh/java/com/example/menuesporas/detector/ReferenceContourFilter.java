@@ -0,0 +1,61 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * *ReferenceContourFilter*: Filtrado de contornos tal como lo hacía originalmente MainActivity2
+ * (MatOfPoint2f, MatOfInt, MatOfPoint y listas nuevas por contorno, y hull.get(i, 0) por índice).
+ * Se conserva como referencia para comparar rendimiento y verificar que el filtrado sin asignaciones
+ * de {@link ContourScratch} produce exactamente las mismas medidas.
+ */
+final class ReferenceContourFilter {
+
+    private ReferenceContourFilter() {
+    }
+
+    /**
+     * Medidas de un contorno: {área, perímetro, circularidad, solidez, relación de aspecto}.
+     */
+    static double[] medir(MatOfPoint contour) {
+        double area = Imgproc.contourArea(contour);
+
+        MatOfPoint2f contour2f = new MatOfPoint2f(contour.toArray());
+        double perimeter = Imgproc.arcLength(contour2f, true);
+        contour2f.release();
+        double circularity = (perimeter == 0) ? 0 : (4 * Math.PI * area / (perimeter * perimeter));
+
+        MatOfInt hull = new MatOfInt();
+        Imgproc.convexHull(contour, hull);
+        MatOfPoint hullContour = new MatOfPoint();
+        List<Point> hullPointsList = new ArrayList<>();
+        List<Point> contourPoints = contour.toList();
+        for (int i = 0; i < hull.rows(); i++) {
+            hullPointsList.add(contourPoints.get((int) hull.get(i, 0)[0]));
+        }
+        hullContour.fromList(hullPointsList);
+        double hullArea = Imgproc.contourArea(hullContour);
+        hull.release();
+        hullContour.release();
+        double solidity = (hullArea == 0) ? 0 : (area / hullArea);
+
+        Rect boundingRect = Imgproc.boundingRect(contour);
+        double aspectRatio = (double) boundingRect.width / boundingRect.height;
+
+        return new double[]{area, perimeter, circularity, solidity, aspectRatio};
+    }
+
+    static boolean acepta(double[] medidas, DetectionParams params) {
+        return !(medidas[0] < params.minArea || medidas[0] > params.maxArea
+                || medidas[2] < params.minCircularity
+                || medidas[3] < params.minSolidity
+                || medidas[4] < params.minAspectRatio || medidas[4] > params.maxAspectRatio);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.menuesporas.detector;
+
+import java.util.List;
+
+/**
+ * *SporeMatching*: Detecciones de un resultado emparejadas con las esporas dibujadas en un portaobjetos sintético:
+ * cada una se asigna a la espora más cercana si su centro cae dentro del radio mayor de esa espora. Así se separan
+ * las esporas encontradas, las contadas más de una vez (una espora partida en varias detecciones) y las detecciones
+ * que no caen en ninguna espora (ruido del fondo).
+ */
+final class SporeMatching {
+
+    final int reales;
+    int encontradas;  // Esporas con al menos una detección.
+    int dobles;       // Detecciones de más sobre una espora ya encontrada.
+    int ruido;        // Detecciones que no caen en ninguna espora.
+
+    /**
+     * @param escala Píxeles de la imagen generada por píxel de la zona analizada.
+     */
+    SporeMatching(SporeTable esporas, List<double[]> dibujadas, double escala) {
+        reales = dibujadas.size();
+        boolean[] usada = new boolean[dibujadas.size()];
+        for (int i = 0; i < esporas.size(); i++) {
+            double x = esporas.centroX[i] * escala;
+            double y = esporas.centroY[i] * escala;
+            int cercana = -1;
+            double distancia = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < usada.length; j++) {
+                double[] e = dibujadas.get(j);
+                double d = Math.hypot(e[0] - x, e[1] - y);
+                if (d < distancia) {
+                    distancia = d;
+                    cercana = j;
+                }
+            }
+            if (cercana < 0 || distancia > dibujadas.get(cercana)[2]) {
+                ruido++;
+            } else if (usada[cercana]) {
+                dobles++;
+            } else {
+                usada[cercana] = true;
+                encontradas++;
+            }
+        }
+    }
+
+    int perdidas() {
+        return reales - encontradas;
+    }
+
+    /**
+     * Esporas perdidas más esporas contadas de más, sin el ruido.
+     */
+    int error() {
+        return perdidas() + dobles;
+    }
+
+    @Override
+    public String toString() {
+        return encontradas + " encontradas, " + dobles + " dobles, " + ruido + " de ruido";
+    }
+}
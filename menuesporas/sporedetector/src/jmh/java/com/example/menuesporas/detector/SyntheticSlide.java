@@ -0,0 +1,248 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * *SyntheticSlide*: Generador determinista de portaobjetos sintéticos para los benchmarks.
+ * Dibuja esporas oscuras elípticas sobre un fondo claro con ruido, con tantas esporas como
+ * corresponde a cada densidad de elegirhongo. Con la misma semilla produce siempre la misma imagen.
+ */
+public final class SyntheticSlide {
+
+    /**
+     * Las cuatro densidades que ofrece elegirhongo, con su preset y una cantidad típica de esporas.
+     */
+    public enum Densidad {
+        BAJA(DetectionPresets.BAJA_DENSIDAD, 120),
+        MODERADA(DetectionPresets.DENSIDAD_MODERADA, 350),
+        ALTA(DetectionPresets.ALTA_DENSIDAD, 750),
+        MUY_ALTA(DetectionPresets.DENSIDAD_MUY_ALTA, 1300);
+
+        public final String nombrePreset;
+        public final int esporas;
+
+        Densidad(String nombrePreset, int esporas) {
+            this.nombrePreset = nombrePreset;
+            this.esporas = esporas;
+        }
+
+        public DetectionParams params() {
+            return DetectionPresets.porNombre(nombrePreset);
+        }
+    }
+
+    private SyntheticSlide() {
+    }
+
+    /**
+     * Genera una imagen BGRA de 8 bits (el mismo formato que Utils.bitmapToMat en Android).
+     *
+     * @param densidad Densidad de esporas a simular.
+     * @param ancho    Ancho de la imagen en píxeles.
+     * @param alto     Alto de la imagen en píxeles.
+     * @param semilla  Semilla del generador; la misma semilla produce la misma imagen.
+     */
+    public static Mat generar(Densidad densidad, int ancho, int alto, long semilla) {
+        Mat slide = new Mat(alto, ancho, CvType.CV_8UC4, new Scalar(205, 200, 195, 255));
+        dibujarAlAzar(slide, densidad, new Random(semilla), new ArrayList<>());
+        return terminar(slide, semilla);
+    }
+
+    /**
+     * Las mismas esporas que {@link #generar(Densidad, int, int, long)} con la misma semilla, sobre un fondo
+     * iluminado como el de un microscopio (ver {@link #fondoIluminado}), registrando las esporas dibujadas. Las
+     * esporas se ubican al azar, así que algunas se superponen como en una muestra real.
+     *
+     * En el fondo plano de {@link #generar}, equalizeHist estira el ruido de sensor hasta todo el rango y el umbral
+     * adaptativo lo convierte en una malla que se traga las esporas: sirve para medir tiempos, pero no para comparar
+     * conteos con las esporas dibujadas.
+     *
+     * @param dibujadas Recibe cada espora dibujada como {x, y, radio mayor}, en píxeles de la imagen generada.
+     */
+    public static Mat generarIluminada(Densidad densidad, int ancho, int alto, long semilla, List<double[]> dibujadas) {
+        Mat slide = fondoIluminado(ancho, alto);
+        dibujarAlAzar(slide, densidad, new Random(semilla), dibujadas);
+        return terminarIluminada(slide, semilla);
+    }
+
+    private static void dibujarAlAzar(Mat slide, Densidad densidad, Random random, List<double[]> dibujadas) {
+        int ancho = slide.cols();
+        int alto = slide.rows();
+        // Las esporas se dimensionan para que, al redimensionar a 640x480, midan entre ~2 y ~4.5 px de radio.
+        double escala = ancho / 640.0;
+        for (int i = 0; i < densidad.esporas; i++) {
+            Point centro = new Point(random.nextDouble() * ancho, random.nextDouble() * alto);
+            double radioX = (2.0 + random.nextDouble() * 2.5) * escala;
+            double radioY = radioX * (0.7 + random.nextDouble() * 0.5);
+            dibujadas.add(new double[]{centro.x, centro.y, Math.max(radioX, radioY)});
+            int tono = 40 + random.nextInt(60);
+            Imgproc.ellipse(slide, centro, new Size(radioX, radioY), random.nextDouble() * 180, 0, 360,
+                    new Scalar(tono, tono + 10, tono + 5, 255), -1);
+        }
+    }
+
+    /**
+     * Genera grumos de esporas que se tocan, separados entre sí, sobre el fondo de {@link #generarIluminada}: cada grumo tiene de 1 a 4 esporas del tamaño de
+     * {@link #generar}, con radios distintos, y cada espora nueva se apoya en una del grumo con una distancia entre
+     * centros del 75 al 95 % de la suma de sus radios, de modo que entre ambas queda un cuello. Los grumos de una
+     * espora sirven para ver que una espora alargada no se divide.
+     *
+     * @param grumos    Cantidad de grumos a ubicar (puede quedar alguno menos si no hay lugar libre).
+     * @param dibujadas Recibe cada espora dibujada como {x, y, radio mayor}, en píxeles de la imagen generada.
+     * @return La imagen.
+     */
+    public static Mat generarGrumos(int ancho, int alto, int grumos, long semilla, List<double[]> dibujadas) {
+        Random random = new Random(semilla);
+        Mat slide = fondoIluminado(ancho, alto);
+        double escala = ancho / 640.0;
+        List<double[]> ocupados = new ArrayList<>();  // Círculo que envuelve cada grumo: {x, y, radio}.
+        for (int intento = 0; ocupados.size() < grumos && intento < grumos * 50; intento++) {
+            int tamano = 1 + random.nextInt(4);
+            List<double[]> grumo = new ArrayList<>();
+            double[] primera = {0, 0, (2.0 + random.nextDouble() * 2.5) * escala};
+            grumo.add(primera);
+            for (int intentoEspora = 0; grumo.size() < tamano && intentoEspora < 50; intentoEspora++) {
+                double[] base = grumo.get(random.nextInt(grumo.size()));
+                double radio = (2.0 + random.nextDouble() * 2.5) * escala;
+                double angulo = random.nextDouble() * 2 * Math.PI;
+                double separacion = (base[2] + radio) * (0.75 + random.nextDouble() * 0.2);
+                double[] nueva = {base[0] + separacion * Math.cos(angulo), base[1] + separacion * Math.sin(angulo), radio};
+                boolean libre = true;
+                for (double[] otra : grumo) {
+                    if (otra != base) libre &= Math.hypot(otra[0] - nueva[0], otra[1] - nueva[1]) > (otra[2] + radio) * 0.75;
+                }
+                if (libre) grumo.add(nueva);
+            }
+            double envolvente = 0;
+            for (double[] espora : grumo) {
+                envolvente = Math.max(envolvente, Math.hypot(espora[0], espora[1]) + espora[2]);
+            }
+            double x = envolvente + random.nextDouble() * (ancho - 2 * envolvente);
+            double y = envolvente + random.nextDouble() * (alto - 2 * envolvente);
+            boolean libre = true;
+            for (int i = 0; i < ocupados.size() && libre; i++) {
+                double[] o = ocupados.get(i);
+                libre = Math.hypot(o[0] - x, o[1] - y) > o[2] + envolvente + 3 * escala;
+            }
+            if (!libre) continue;
+            ocupados.add(new double[]{x, y, envolvente});
+            for (double[] espora : grumo) {
+                // Casi circulares: el radio registrado (el mayor) cubre la espora sin invadir mucho la vecina.
+                double radioY = espora[2] * (0.85 + random.nextDouble() * 0.15);
+                dibujadas.add(new double[]{x + espora[0], y + espora[1], espora[2]});
+                int tono = 40 + random.nextInt(60);
+                Imgproc.ellipse(slide, new Point(x + espora[0], y + espora[1]), new Size(espora[2], radioY),
+                        random.nextDouble() * 180, 0, 360, new Scalar(tono, tono + 10, tono + 5, 255), -1);
+            }
+        }
+        return terminarIluminada(slide, semilla);
+    }
+
+    /**
+     * Fondo con la caída de iluminación hacia los bordes de un campo de microscopio: de 215 en el centro a unos 160
+     * en las esquinas. Así el histograma del fondo no es un pico angosto que equalizeHist estira hasta el ruido.
+     */
+    private static Mat fondoIluminado(int ancho, int alto) {
+        byte[] pixeles = new byte[ancho * alto * 4];
+        double radio = ancho / 2.0;
+        for (int y = 0; y < alto; y++) {
+            double dy = (y - alto / 2.0) / radio;
+            for (int x = 0; x < ancho; x++) {
+                double dx = (x - radio) / radio;
+                int brillo = (int) (215 - 45 * (dx * dx + dy * dy));
+                int o = (y * ancho + x) * 4;
+                pixeles[o] = (byte) brillo;
+                pixeles[o + 1] = (byte) (brillo - 5);
+                pixeles[o + 2] = (byte) (brillo - 10);
+                pixeles[o + 3] = (byte) 255;
+            }
+        }
+        Mat slide = new Mat(alto, ancho, CvType.CV_8UC4);
+        slide.put(0, 0, pixeles);
+        return slide;
+    }
+
+    /**
+     * Ruido de sensor suavizado por la óptica y la interpolación de la cámara: primero el ruido y después el
+     * desenfoque, de modo que el ruido queda correlacionado entre píxeles vecinos como en una foto real.
+     */
+    private static Mat terminarIluminada(Mat slide, long semilla) {
+        Core.setRNGSeed((int) semilla);
+        Mat ruido = new Mat(slide.rows(), slide.cols(), CvType.CV_8UC4);
+        Core.randu(ruido, 0, 16);
+        Core.add(slide, ruido, slide);
+        ruido.release();
+        Imgproc.GaussianBlur(slide, slide, new Size(5, 5), 0);
+        return slide;
+    }
+
+    /**
+     * Genera una muestra mixta: la mitad de las esporas con el tamaño de {@link #generar} y la otra mitad con unas
+     * dos veces y media más radio (entre 6.5 y 9.5 px a 640x480), sin que ninguna toque a otra, para que el conteo
+     * esperado sea exactamente el número de esporas.
+     *
+     * @param esporas    Cantidad de esporas a dibujar (puede quedar alguna menos si no hay lugar libre).
+     * @param dibujadas  Recibe cada espora dibujada como {x, y, radio mayor}, en píxeles de la imagen generada.
+     * @return La imagen.
+     */
+    public static Mat generarMixta(int ancho, int alto, int esporas, long semilla, List<double[]> dibujadas) {
+        Random random = new Random(semilla);
+        Mat slide = new Mat(alto, ancho, CvType.CV_8UC4, new Scalar(205, 200, 195, 255));
+        double escala = ancho / 640.0;
+        double[][] ocupadas = new double[esporas][];
+        int n = 0;
+        for (int intento = 0; n < esporas && intento < esporas * 50; intento++) {
+            boolean grande = n % 2 == 1;
+            double radioX = (grande ? 6.5 + random.nextDouble() * 3.0 : 2.0 + random.nextDouble() * 2.5) * escala;
+            double radioY = radioX * (0.75 + random.nextDouble() * 0.25);
+            double x = radioX + random.nextDouble() * (ancho - 2 * radioX);
+            double y = radioX + random.nextDouble() * (alto - 2 * radioX);
+            boolean libre = true;
+            for (int i = 0; i < n && libre; i++) {
+                double separacion = ocupadas[i][2] + radioX + 3 * escala;
+                double dx = ocupadas[i][0] - x;
+                double dy = ocupadas[i][1] - y;
+                libre = dx * dx + dy * dy > separacion * separacion;
+            }
+            if (!libre) continue;
+            ocupadas[n++] = new double[]{x, y, radioX};
+            dibujadas.add(ocupadas[n - 1]);
+            int tono = 40 + random.nextInt(60);
+            Imgproc.ellipse(slide, new Point(x, y), new Size(radioX, radioY), random.nextDouble() * 180, 0, 360,
+                    new Scalar(tono, tono + 10, tono + 5, 255), -1);
+        }
+        return terminar(slide, semilla);
+    }
+
+    /**
+     * Bordes suaves y ruido de sensor.
+     */
+    private static Mat terminar(Mat slide, long semilla) {
+        Imgproc.GaussianBlur(slide, slide, new Size(3, 3), 0);
+        Core.setRNGSeed((int) semilla);
+        Mat ruido = new Mat(slide.rows(), slide.cols(), CvType.CV_8UC4);
+        Core.randu(ruido, 0, 16);
+        Core.add(slide, ruido, slide);
+        ruido.release();
+        return slide;
+    }
+
+    /**
+     * Copia los píxeles de una imagen de 8 bits a un arreglo de bytes entrelazados.
+     */
+    public static byte[] aBytes(Mat imagen) {
+        byte[] pixeles = new byte[(int) (imagen.total() * imagen.channels())];
+        imagen.get(0, 0, pixeles);
+        return pixeles;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.menuesporas.detector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * *BatchReport*: Informe agregado de un análisis por lotes: el conteo de cada imagen, la media,
+ * la desviación estándar y el total, además de las imágenes que no se pudieron analizar y el
+ * rendimiento (imágenes por minuto).
+ *
+ * No es seguro entre hilos: lo llena un único trabajo de análisis.
+ */
+public final class BatchReport {
+
+    /**
+     * Conteo de una imagen del lote.
+     */
+    public static final class Entrada {
+        public final String nombre;
+        public final int conteo;
+
+        Entrada(String nombre, int conteo) {
+            this.nombre = nombre;
+            this.conteo = conteo;
+        }
+    }
+
+    private final List<Entrada> entradas = new ArrayList<>();
+    private final List<String> fallidas = new ArrayList<>();
+    private long total;
+    private double suma;
+    private double sumaCuadrados;
+    private long duracionNanos;
+
+    public void agregar(String nombre, int conteo) {
+        entradas.add(new Entrada(nombre, conteo));
+        total += conteo;
+        suma += conteo;
+        sumaCuadrados += (double) conteo * conteo;
+    }
+
+    public void agregarFallo(String nombre) {
+        fallidas.add(nombre);
+    }
+
+    public void setDuracionNanos(long duracionNanos) {
+        this.duracionNanos = duracionNanos;
+    }
+
+    public List<Entrada> getEntradas() {
+        return Collections.unmodifiableList(entradas);
+    }
+
+    public List<String> getFallidas() {
+        return Collections.unmodifiableList(fallidas);
+    }
+
+    /**
+     * Número de imágenes analizadas correctamente.
+     */
+    public int getImagenes() {
+        return entradas.size();
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public double getMedia() {
+        return entradas.isEmpty() ? 0 : suma / entradas.size();
+    }
+
+    /**
+     * Desviación estándar muestral (n - 1) de los conteos; 0 con menos de dos imágenes.
+     */
+    public double getDesviacionEstandar() {
+        int n = entradas.size();
+        if (n < 2) return 0;
+        double media = suma / n;
+        double varianza = (sumaCuadrados - n * media * media) / (n - 1);
+        return Math.sqrt(Math.max(0, varianza));
+    }
+
+    /**
+     * Imágenes procesadas (analizadas o fallidas) por minuto durante el lote.
+     */
+    public double getImagenesPorMinuto() {
+        return imagenesPorMinuto(entradas.size() + fallidas.size(), duracionNanos);
+    }
+
+    public static double imagenesPorMinuto(int imagenes, long nanos) {
+        return nanos <= 0 ? 0 : imagenes * 60e9 / nanos;
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * *ClumpSplitter*: Divide un grumo de esporas que se tocan en las esporas que lo forman. Trabaja solo sobre el
+ * rectángulo envolvente del contorno, por lo que el costo depende del número y tamaño de los grumos y no del
+ * tamaño de la imagen:
+ *
+ * 1. El contorno se rellena en una máscara del tamaño de su rectángulo (con un borde de 1 píxel), sin los
+ *    contornos vecinos.
+ * 2. Transformada de distancia: el centro de cada espora es un máximo local, cuyo valor es el radio de la espora,
+ *    y los cuellos entre esporas son valles.
+ * 3. Semillas: los máximos locales, del más alto al más bajo. Uno nuevo es otra espora solo si entre él y cada
+ *    semilla ya aceptada la distancia baja al menos {@link #FRACCION_CUELLO} del menor de los dos radios (y
+ *    {@link #PROFUNDIDAD_MINIMA} píxeles); si no, es parte de la misma espora (la cresta de una espora alargada, o
+ *    un saliente del borde). Cada espora se mide contra su propio radio: un umbral global sobre la distancia
+ *    máxima del grumo unía o perdía las esporas más chicas que la mayor.
+ * 4. Cada píxel del grumo se asigna a la semilla cuyo círculo (centro y radio) le queda más cerca, y el área del
+ *    grumo se reparte en proporción a los píxeles de cada espora. Las esporas cuya parte queda por debajo del área
+ *    mínima se descartan.
+ *
+ * Los contornos con más área que {@link #MAX_ESPORAS} esporas del área máxima no se dividen: no son grumos sino
+ * manchas del fondo.
+ *
+ * Deja el resultado en {@link #centroX}, {@link #centroY} y {@link #area}, en coordenadas de la zona analizada.
+ * No es seguro entre hilos: cada hilo usa la instancia de su {@link ContourScratch}.
+ */
+final class ClumpSplitter {
+
+    // Profundidad mínima del cuello entre dos esporas, como fracción del radio de la menor.
+    static final double FRACCION_CUELLO = 0.2;
+    // Profundidad mínima del cuello en píxeles: por debajo, es el escalonado de la transformada de distancia.
+    static final double PROFUNDIDAD_MINIMA = 0.5;
+    // Esporas del área máxima que puede tener un grumo.
+    static final int MAX_ESPORAS = 8;
+
+    private final List<MatOfPoint> uno = new ArrayList<>(1);
+    private final Mat mascara = new Mat();
+    private final Mat sinJerarquia = new Mat();
+    private final Mat distancia = new Mat();
+    private float[] valores = new float[0];
+    private long[] candidatos = new long[0];
+
+    // Semillas del grumo actual, en píxeles de la máscara, con los píxeles asignados a cada una.
+    private int[] semillaX = new int[16];
+    private int[] semillaY = new int[16];
+    private float[] semillaRadio = new float[16];
+    private long[] pixeles = new long[16];
+    private double[] sumaX = new double[16];
+    private double[] sumaY = new double[16];
+
+    // Esporas del último grumo dividido.
+    double[] centroX = new double[16];
+    double[] centroY = new double[16];
+    double[] area = new double[16];
+
+    /**
+     * Divide el contorno. Devuelve el número de esporas encontradas (al menos 2), o 0 si no parece un grumo.
+     *
+     * @param contorno   Contorno del grumo, en coordenadas de la zona analizada.
+     * @param areaGrumo  Área del contorno (la de Imgproc.contourArea).
+     * @param areaMinima Área mínima de una espora.
+     * @param areaMaxima Área máxima de una espora.
+     */
+    int dividir(MatOfPoint contorno, double areaGrumo, double areaMinima, double areaMaxima) {
+        if (areaGrumo < 2 * areaMinima || areaGrumo > MAX_ESPORAS * areaMaxima) return 0;
+        Rect r = Imgproc.boundingRect(contorno);
+        int ancho = r.width + 2;
+        int alto = r.height + 2;
+        mascara.create(alto, ancho, CvType.CV_8UC1);
+        mascara.setTo(Scalar.all(0));
+        uno.clear();
+        uno.add(contorno);
+        Imgproc.drawContours(mascara, uno, 0, new Scalar(255), Imgproc.FILLED, Imgproc.LINE_8, sinJerarquia,
+                Integer.MAX_VALUE, new Point(1 - r.x, 1 - r.y));
+        uno.clear();
+
+        Imgproc.distanceTransform(mascara, distancia, Imgproc.DIST_L2, Imgproc.DIST_MASK_PRECISE);
+        int n = ancho * alto;
+        if (valores.length < n) {
+            valores = new float[n];
+            candidatos = new long[n];
+        }
+        // Una sola lectura JNI; el resto se hace en Java sobre el arreglo.
+        distancia.get(0, 0, valores);
+
+        int semillas = buscarSemillas(ancho, alto);
+        if (semillas < 2) return 0;
+        return repartir(semillas, ancho, alto, r, areaGrumo, areaMinima);
+    }
+
+    /**
+     * Máximos locales (8 vecinos) ordenados de mayor a menor, aceptados como semilla si un cuello los separa de
+     * todas las anteriores. El borde de la máscara es 0, así que no hace falta revisar los límites.
+     */
+    private int buscarSemillas(int ancho, int alto) {
+        int m = 0;
+        for (int y = 1; y < alto - 1; y++) {
+            for (int x = 1; x < ancho - 1; x++) {
+                int i = y * ancho + x;
+                float v = valores[i];
+                if (v <= 0
+                        || v < valores[i - ancho - 1] || v < valores[i - ancho] || v < valores[i - ancho + 1]
+                        || v < valores[i - 1] || v < valores[i + 1]
+                        || v < valores[i + ancho - 1] || v < valores[i + ancho] || v < valores[i + ancho + 1]) {
+                    continue;
+                }
+                // Los bits de un float positivo se ordenan como el float: la clave ordena por valor y luego por píxel.
+                candidatos[m++] = (long) Float.floatToIntBits(v) << 32 | i;
+            }
+        }
+        Arrays.sort(candidatos, 0, m);
+
+        int semillas = 0;
+        for (int k = m - 1; k >= 0; k--) {
+            int i = (int) candidatos[k];
+            int x = i % ancho;
+            int y = i / ancho;
+            float v = valores[i];
+            boolean separada = true;
+            for (int s = 0; s < semillas && separada; s++) {
+                separada = hayCuello(x, y, v, semillaX[s], semillaY[s], semillaRadio[s], ancho);
+            }
+            if (!separada) continue;
+            if (semillas == semillaX.length) crecerSemillas();
+            semillaX[semillas] = x;
+            semillaY[semillas] = y;
+            semillaRadio[semillas] = v;
+            semillas++;
+        }
+        return semillas;
+    }
+
+    /**
+     * Si en el segmento entre los dos máximos la distancia baja lo suficiente para que sean esporas distintas.
+     */
+    private boolean hayCuello(int x0, int y0, float v0, int x1, int y1, float v1, int ancho) {
+        float menor = Math.min(v0, v1);
+        float minimo = menor;
+        int pasos = Math.max(Math.abs(x1 - x0), Math.abs(y1 - y0));
+        for (int p = 1; p < pasos; p++) {
+            int x = (int) Math.round(x0 + (double) (x1 - x0) * p / pasos);
+            int y = (int) Math.round(y0 + (double) (y1 - y0) * p / pasos);
+            minimo = Math.min(minimo, valores[y * ancho + x]);
+        }
+        return menor - minimo >= Math.max(PROFUNDIDAD_MINIMA, FRACCION_CUELLO * menor);
+    }
+
+    /**
+     * Asigna cada píxel del grumo a la semilla más cercana (restando su radio) y reparte el área del contorno.
+     */
+    private int repartir(int semillas, int ancho, int alto, Rect r, double areaGrumo, double areaMinima) {
+        Arrays.fill(pixeles, 0, semillas, 0);
+        Arrays.fill(sumaX, 0, semillas, 0);
+        Arrays.fill(sumaY, 0, semillas, 0);
+        long total = 0;
+        for (int y = 1; y < alto - 1; y++) {
+            for (int x = 1; x < ancho - 1; x++) {
+                if (valores[y * ancho + x] <= 0) continue;
+                int cercana = 0;
+                double mejor = Double.POSITIVE_INFINITY;
+                for (int s = 0; s < semillas; s++) {
+                    double d = Math.hypot(x - semillaX[s], y - semillaY[s]) - semillaRadio[s];
+                    if (d < mejor) {
+                        mejor = d;
+                        cercana = s;
+                    }
+                }
+                pixeles[cercana]++;
+                sumaX[cercana] += x;
+                sumaY[cercana] += y;
+                total++;
+            }
+        }
+
+        // Primero se descartan las esporas demasiado pequeñas, después se reparte el área entre las demás.
+        long validos = 0;
+        for (int s = 0; s < semillas; s++) {
+            if (areaGrumo * pixeles[s] / total >= areaMinima) validos += pixeles[s];
+        }
+        if (validos == 0) return 0;
+
+        int esporas = 0;
+        for (int s = 0; s < semillas; s++) {
+            if (areaGrumo * pixeles[s] / total < areaMinima) continue;
+            if (esporas == area.length) crecer();
+            centroX[esporas] = sumaX[s] / pixeles[s] + r.x - 1;
+            centroY[esporas] = sumaY[s] / pixeles[s] + r.y - 1;
+            area[esporas] = areaGrumo * pixeles[s] / validos;
+            esporas++;
+        }
+        return esporas >= 2 ? esporas : 0;
+    }
+
+    private void crecerSemillas() {
+        int capacidad = semillaX.length * 2;
+        semillaX = Arrays.copyOf(semillaX, capacidad);
+        semillaY = Arrays.copyOf(semillaY, capacidad);
+        semillaRadio = Arrays.copyOf(semillaRadio, capacidad);
+        pixeles = Arrays.copyOf(pixeles, capacidad);
+        sumaX = Arrays.copyOf(sumaX, capacidad);
+        sumaY = Arrays.copyOf(sumaY, capacidad);
+    }
+
+    private void crecer() {
+        centroX = Arrays.copyOf(centroX, centroX.length * 2);
+        centroY = Arrays.copyOf(centroY, centroY.length * 2);
+        area = Arrays.copyOf(area, area.length * 2);
+    }
+
+    void release() {
+        mascara.release();
+        sinJerarquia.release();
+        distancia.release();
+    }
+}
@@ -0,0 +1,465 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * *ComponentSporeCounter*: Conteo rápido de esporas sobre componentes conexas, para cuando solo interesa el conteo
+ * (análisis por lotes) y no dibujar los contornos. Las etapas hasta la máscara son las de {@link SporeDetector};
+ * en lugar de extraer con findContours la lista de puntos de cada mancha (un MatOfPoint por mancha) y calcular su
+ * envolvente convexa, connectedComponentsWithStats devuelve en una sola llamada nativa el área en píxeles, el
+ * rectángulo envolvente y el centroide de todas las manchas.
+ *
+ * Un recorrido en Java del rectángulo de cada componente cuenta además los píxeles de su borde, que dan el área del
+ * contorno ({@link #areaEstimada}), y sus huecos (número de Euler por ventanas de 2x2). Salvo con RETR_EXTERNAL, las
+ * componentes demasiado grandes para aceptarse sin contorno, como la red de manchas unidas de una muestra muy densa,
+ * no se miden y se extraen.
+ *
+ * Con esas estadísticas se decide cada componente sin contorno cuando la decisión es clara:
+ * - Se rechaza por área si el área estimada, que nunca es menor que la del contorno, no llega al área mínima, o si
+ *   supera con margen la máxima.
+ * - Se rechaza por relación de aspecto si el área es claramente válida y el rectángulo envolvente, que es el mismo
+ *   que el del contorno, no cumple el filtro.
+ * - Se acepta si el área estimada está con margen dentro del rango, el aspecto es válido, llena al menos
+ *   {@link #LLENADO_MINIMO} de su rectángulo (no es cóncava) y la circularidad y la solidez de la elipse inscrita
+ *   superan los mínimos con margen.
+ *
+ * Las demás (cerca de un umbral, manchas de menos de {@link #LADO_MINIMO} px de lado, cuyo contorno digital se aleja
+ * de la elipse, candidatas a grumo si el preset los divide, o manchas con huecos) se resuelven como en SporeDetector:
+ * se copian a una máscara que solo las contiene, se siguen sus contornos con {@link ContourTracer} (los mismos que
+ * daría findContours con el contourMode del preset, sin un MatOfPoint por contorno) y se clasifican con
+ * {@link ContourClassifier}.
+ *
+ * Una mancha con huecos siempre es dudosa, porque su contorno externo encierra también los huecos y, salvo con
+ * RETR_EXTERNAL, SporeDetector evalúa además el contorno de cada hueco. Con RETR_EXTERNAL también lo son las manchas
+ * dentro de su rectángulo, para que findContours ignore, como en SporeDetector, las que están dentro de un hueco.
+ *
+ * Diferencias con SporeDetector (FastCountTest y FastCountCheck miden su efecto en el conteo):
+ * - Las filas aceptadas sin contorno llevan el perímetro, la circularidad y la solidez estimados de la elipse
+ *   inscrita en el rectángulo envolvente, y el centroide de los píxeles en lugar del de los momentos del contorno.
+ * - El resultado no trae contornos para dibujar ({@link DetectionResult#contornos} queda vacía).
+ *
+ * {@link FilterStats#sinContorno} cuenta las componentes que se decidieron sin contorno. Un preset multiescala
+ * ({@link DetectionParams#pyramidLevels}) se detecta con {@link PyramidSporeDetector}, con contornos.
+ */
+public final class ComponentSporeCounter {
+
+    // Lado mínimo, en píxeles, para aceptar una componente sin contorno.
+    static final int LADO_MINIMO = 4;
+    // Fracción mínima del rectángulo envolvente que debe cubrir la componente (una elipse cubre π/4 ≈ 0.785).
+    static final double LLENADO_MINIMO = 0.70;
+    // Margen relativo alrededor de los umbrales de área dentro del que se extrae el contorno.
+    static final double MARGEN_AREA = 0.20;
+    // Margen absoluto sobre la circularidad y la solidez mínimas para aceptar con las medidas estimadas.
+    static final double MARGEN_FORMA = 0.10;
+
+    // Decisiones sobre una componente a partir de sus estadísticas.
+    static final int ACEPTADA = 0;
+    static final int RECHAZO_AREA = 1;
+    static final int RECHAZO_ASPECTO = 2;
+    static final int DUDOSA = 3;
+
+    // Aporte de cada ventana de 2x2 a la suma de Gray, indexado por sus bits (ver medirComponente).
+    private static final int[] CUARTETOS = {0, 1, 1, 0, 1, 0, -2, -1, 1, -2, 0, -1, 0, -1, -1, 0};
+
+    private static final ThreadLocal<Etiquetas> ETIQUETAS = ThreadLocal.withInitial(Etiquetas::new);
+
+    private final MatPool mats;
+
+    public ComponentSporeCounter() {
+        this(MatPool.SIN_REUSO);
+    }
+
+    /**
+     * @param mats Pool de los Mats intermedios y de la imagen de trabajo del resultado.
+     */
+    public ComponentSporeCounter(MatPool mats) {
+        this.mats = mats;
+    }
+
+    public DetectionResult detect(Mat input, DetectionParams params) {
+        return detect(input, params, DetectionMonitor.NINGUNO);
+    }
+
+    public DetectionResult detect(Mat input, DetectionParams params, DetectionMonitor monitor) {
+        if (params.pyramidLevels > 1) return new PyramidSporeDetector(mats).detect(input, params, monitor);
+        Mat imgProcesar = null;
+        Mat imgGray = null;
+        Mat imgEqualized = null;
+        Mat mascara = null;
+        Mat etiquetas = null;
+        Mat estadisticasCc = new Mat();
+        Mat centroides = new Mat();
+        Mat zona = null;
+        Mat imagenTrabajo = null;
+        List<MatOfPoint> contornos = new ArrayList<>();
+        boolean completado = false;
+        try {
+            // 1-2. Preparación, escala de grises, ecualización y desenfoque, como en SporeDetector.
+            monitor.reportar(10, "Preparando imagen");
+            Mat base = input;
+            if (input.cols() != params.workWidth || input.rows() != params.workHeight) {
+                imgProcesar = mats.obtener(params.workHeight, params.workWidth, input.type());
+                base = SporeDetector.aResolucionDeTrabajo(input, params, imgProcesar);
+            }
+            zona = params.roi != null ? base.submat(params.roi) : base;
+            int filas = zona.rows();
+            int columnas = zona.cols();
+            if (zona.channels() != 1) imgGray = mats.obtener(filas, columnas, CvType.CV_8UC1);
+            imgEqualized = mats.obtener(filas, columnas, CvType.CV_8UC1);
+            Imgproc.equalizeHist(SporeDetector.escalaDeGrises(zona, imgGray), imgEqualized);
+            Imgproc.GaussianBlur(imgEqualized, imgEqualized, new Size(params.blurKernelSize, params.blurKernelSize), 0);
+
+            // 3-4. Umbral y morfología.
+            monitor.reportar(30, "Umbralizando");
+            mascara = mats.obtener(filas, columnas, CvType.CV_8UC1);
+            SporeDetector.umbralizar(imgEqualized, mascara, params);
+
+            // 5. Componentes conexas (8-vecindad, la misma con la que findContours sigue los bordes).
+            monitor.reportar(50, "Etiquetando componentes");
+            etiquetas = mats.obtener(filas, columnas, CvType.CV_32S);
+            int n = Imgproc.connectedComponentsWithStats(mascara, etiquetas, estadisticasCc, centroides, 8,
+                    CvType.CV_32S);
+            int[] stats = new int[n * 5];
+            double[] centros = new double[n * 2];
+            Etiquetas memoria = ETIQUETAS.get();
+            memoria.reservar(filas * columnas);
+            if (n > 0) {
+                estadisticasCc.get(0, 0, stats);
+                centroides.get(0, 0, centros);
+                etiquetas.get(0, 0, memoria.manchas);
+            }
+
+            // 6. Píxeles del borde, que dan el área del contorno, y huecos de cada componente. Solo una mancha de 3x3
+            // o más puede tener píxeles interiores o encerrar un hueco; en las demás todos los píxeles son del borde.
+            // Las que tienen huecos son dudosas: su contorno externo encierra también los huecos y, salvo con
+            // RETR_EXTERNAL, cada hueco es otro contorno. Con RETR_EXTERNAL también lo son las manchas en su
+            // rectángulo, para que findContours descarte, como en SporeDetector, las que están dentro de un hueco.
+            boolean soloExternos = params.contourMode == Imgproc.RETR_EXTERNAL;
+            int[] borde = new int[n];
+            boolean[] dudosa = new boolean[n];
+            memoria.huecosDeUnPixel = 0;
+            for (int i = 1; i < n; i++) {
+                int x = stats[i * 5 + Imgproc.CC_STAT_LEFT];
+                int y = stats[i * 5 + Imgproc.CC_STAT_TOP];
+                int ancho = stats[i * 5 + Imgproc.CC_STAT_WIDTH];
+                int alto = stats[i * 5 + Imgproc.CC_STAT_HEIGHT];
+                int pixeles = stats[i * 5 + Imgproc.CC_STAT_AREA];
+                if (!soloExternos && areaEstimada(pixeles, pixeles) > params.maxArea * (1 - MARGEN_AREA)) {
+                    // Aun con todos sus píxeles en el borde no se acepta sin contorno. Se extrae sin medirla: basta
+                    // buscar sus huecos de un píxel, porque los demás salen con su contorno.
+                    dudosa[i] = true;
+                    buscarHuecos(memoria, columnas, i, x, y, ancho, alto);
+                    continue;
+                }
+                if (ancho < 3 || alto < 3) {
+                    borde[i] = pixeles;
+                    continue;
+                }
+                int cuartetos = medirComponente(memoria, columnas, i, x, y, ancho, alto, borde);
+                if (cuartetos == 4) continue;
+                dudosa[i] = true;
+                if (soloExternos) marcarEncerradas(memoria.manchas, columnas, x, y, ancho, alto, dudosa);
+            }
+            // El contorno de un hueco de un píxel es un rombo de área 2: si el área mínima es mayor se rechaza sin
+            // extraerlo (se rellena en la máscara del paso 8).
+            int huecosDeUnPixel = !soloExternos && params.minArea > 2 ? memoria.huecosDeUnPixel : 0;
+
+            // 7. Decisión por estadísticas de las demás.
+            monitor.reportar(70, "Filtrando componentes");
+            ContourScratch scratch = SporeDetector.SCRATCH.get();
+            ContourClassifier clasificador = new ContourClassifier(params, columnas, filas, scratch);
+            FilterStats filtro = clasificador.getEstadisticas();
+            SporeTable.Builder tabla = new SporeTable.Builder();
+            int altoCelda = params.hasGrid() ? filas / params.gridRows : 0;
+            int anchoCelda = params.hasGrid() ? columnas / params.gridCols : 0;
+            int dudosas = 0;
+            // La etiqueta 0 es el fondo.
+            for (int i = 1; i < n; i++) {
+                if (i % 256 == 0) monitor.verificarCancelacion();
+                int x = stats[i * 5 + Imgproc.CC_STAT_LEFT];
+                int y = stats[i * 5 + Imgproc.CC_STAT_TOP];
+                int ancho = stats[i * 5 + Imgproc.CC_STAT_WIDTH];
+                int alto = stats[i * 5 + Imgproc.CC_STAT_HEIGHT];
+                int pixeles = stats[i * 5 + Imgproc.CC_STAT_AREA];
+                int decision = dudosa[i] ? DUDOSA : decidir(params, ancho, alto, pixeles, borde[i]);
+                if (decision == DUDOSA) {
+                    dudosa[i] = true;
+                    dudosas++;
+                    continue;
+                }
+                filtro.evaluados++;
+                filtro.sinContorno++;
+                if (decision == RECHAZO_AREA) {
+                    filtro.porArea++;
+                } else if (decision == RECHAZO_ASPECTO) {
+                    filtro.porRelacionAspecto++;
+                } else {
+                    aceptar(params, x, y, ancho, alto, pixeles, borde[i], centros[i * 2], centros[i * 2 + 1],
+                            altoCelda, anchoCelda, filtro, tabla);
+                }
+            }
+
+            // 8. Contornos de las componentes dudosas, seguidos sobre la máscara de la que se borraron las demás y
+            // clasificados como en SporeDetector. El seguimiento en Java da los mismos contornos que findContours sin
+            // armar un MatOfPoint por contorno; findContours queda para los métodos de aproximación que no replica.
+            int contornosDudosas = 0;
+            if (dudosas > 0) {
+                monitor.reportar(85, "Clasificando componentes dudosas");
+                mascara.get(0, 0, memoria.dudosas);
+                soloDudosas(memoria, dudosa, stats, n, columnas);
+                if (huecosDeUnPixel > 0) {
+                    for (int h = 0; h < huecosDeUnPixel; h++) memoria.dudosas[memoria.huecos[h]] = (byte) 255;
+                    filtro.evaluados += huecosDeUnPixel;
+                    filtro.sinContorno += huecosDeUnPixel;
+                    filtro.porArea += huecosDeUnPixel;
+                }
+                if (ContourTracer.soporta(params.contourMethod)) {
+                    ContourTracer trazador = memoria.trazador;
+                    trazador.iniciar(memoria.dudosas, filas, columnas, params.contourMode, params.contourMethod);
+                    while (trazador.siguiente()) {
+                        if (++contornosDudosas % 256 == 0) monitor.verificarCancelacion();
+                        scratch.cargar(trazador.puntos, trazador.numPuntos);
+                        clasificador.clasificarTrazado(tabla);
+                    }
+                } else {
+                    mascara.put(0, 0, memoria.dudosas, 0, filas * columnas);
+                    Imgproc.findContours(mascara, contornos, scratch.jerarquia(), params.contourMode,
+                            params.contourMethod);
+                    for (MatOfPoint contorno : contornos) clasificador.clasificar(contorno, tabla);
+                    contornosDudosas = contornos.size();
+                }
+            }
+            SporeTable esporas = tabla.build();
+            int[][] conteoPorCuadro = params.hasGrid() ? esporas.conteoPorCuadro(params.gridRows, params.gridCols) : null;
+
+            // Los mismos contornos que encontraría SporeDetector: uno por cada componente decidida sin contorno, los
+            // de las dudosas y los huecos de un píxel.
+            int contornosIniciales = Math.max(0, n - 1) - dudosas + contornosDudosas + huecosDeUnPixel;
+            imagenTrabajo = mats.obtener(filas, columnas, zona.type());
+            zona.copyTo(imagenTrabajo);
+            DetectionResult resultado = new DetectionResult(esporas, contornosIniciales, conteoPorCuadro, filtro,
+                    imagenTrabajo, new ArrayList<>(), mats);
+            completado = true;
+            return resultado;
+        } finally {
+            if (!completado) mats.devolver(imagenTrabajo);
+            if (zona != null && zona != imgProcesar && zona != input) zona.release();
+            for (MatOfPoint contorno : contornos) contorno.release();
+            mats.devolver(imgProcesar);
+            mats.devolver(imgGray);
+            mats.devolver(imgEqualized);
+            mats.devolver(mascara);
+            mats.devolver(etiquetas);
+            estadisticasCc.release();
+            centroides.release();
+        }
+    }
+
+    /**
+     * Recorre el rectángulo de la componente con una ventana de 2x2 que empieza un píxel antes, y:
+     * - cuenta en borde los píxeles con algún vecino 4-conexo fuera de la componente, por los que pasa el contorno.
+     * - guarda en la memoria del hilo los píxeles del fondo cuyos cuatro vecinos son de la componente (huecos de un
+     *   píxel).
+     * - devuelve la suma de Gray sobre las ventanas (+1 con un píxel de la componente, -1 con tres, -2 con dos en
+     *   diagonal), que con 8-vecindad vale 4 * (1 - huecos).
+     */
+    private static int medirComponente(Etiquetas memoria, int columnas, int etiqueta, int x, int y, int ancho,
+                                       int alto, int[] borde) {
+        int[] et = memoria.manchas;
+        int finX = x + ancho;
+        int finY = y + alto;
+        int cuartetos = 0;
+        int pixelesBorde = 0;
+        // Fuera del rectángulo no hay píxeles de la componente, así que no hace falta mirar los bordes de la zona.
+        for (int fila = y; fila <= finY; fila++) {
+            int arriba = (fila - 1) * columnas;
+            int actual = fila * columnas;
+            boolean conArriba = fila > y;
+            boolean conActual = fila < finY;
+            boolean conAbajo = fila + 1 < finY;
+            // Bits de la ventana: 1 arriba a la izquierda, 2 arriba a la derecha, 4 abajo a la izquierda y 8 abajo a
+            // la derecha, que es el píxel (columna, fila).
+            int ventana = 0;
+            for (int columna = x; columna <= finX; columna++) {
+                boolean dentro = columna < finX;
+                int b = conArriba && dentro && et[arriba + columna] == etiqueta ? 2 : 0;
+                int d = conActual && dentro && et[actual + columna] == etiqueta ? 8 : 0;
+                ventana = (ventana >> 1 & 5) | b | d;
+                cuartetos += CUARTETOS[ventana];
+                boolean conDerecha = columna + 1 < finX;
+                if (d != 0) {
+                    if ((ventana & 6) != 6 || !conDerecha || !conAbajo || et[actual + columna + 1] != etiqueta
+                            || et[actual + columnas + columna] != etiqueta) {
+                        pixelesBorde++;
+                    }
+                } else if ((ventana & 6) == 6 && conDerecha && conAbajo && et[actual + columna] == 0
+                        && et[actual + columna + 1] == etiqueta && et[actual + columnas + columna] == etiqueta) {
+                    memoria.agregarHueco(actual + columna);
+                }
+            }
+        }
+        borde[etiqueta] = pixelesBorde;
+        return cuartetos;
+    }
+
+    /**
+     * Guarda en la memoria del hilo los píxeles del fondo del rectángulo de la componente cuyos cuatro vecinos son de
+     * ella (huecos de un píxel), sin medir su borde ni su número de Euler.
+     */
+    private static void buscarHuecos(Etiquetas memoria, int columnas, int etiqueta, int x, int y, int ancho,
+                                     int alto) {
+        int[] et = memoria.manchas;
+        for (int fila = y + 1; fila < y + alto - 1; fila++) {
+            for (int p = fila * columnas + x + 1; p < fila * columnas + x + ancho - 1; p++) {
+                // Sin cortocircuito: el fondo y la componente se alternan sin patrón y los saltos se predicen mal.
+                if (et[p] == 0 & et[p - 1] == etiqueta & et[p + 1] == etiqueta & et[p - columnas] == etiqueta
+                        & et[p + columnas] == etiqueta) {
+                    memoria.agregarHueco(p);
+                }
+            }
+        }
+    }
+
+    /**
+     * Marca las componentes que tienen algún píxel en el rectángulo dado.
+     */
+    private static void marcarEncerradas(int[] etiquetas, int columnas, int x, int y, int ancho, int alto,
+                                         boolean[] marcadas) {
+        for (int fila = y; fila < y + alto; fila++) {
+            for (int p = fila * columnas + x; p < fila * columnas + x + ancho; p++) {
+                marcadas[etiquetas[p]] = true;
+            }
+        }
+        marcadas[0] = false;
+    }
+
+    /**
+     * Borra de la máscara de la memoria del hilo las componentes no marcadas, recorriendo solo sus rectángulos.
+     */
+    private static void soloDudosas(Etiquetas memoria, boolean[] dudosa, int[] stats, int n, int columnas) {
+        int[] manchas = memoria.manchas;
+        byte[] mascara = memoria.dudosas;
+        for (int i = 1; i < n; i++) {
+            if (dudosa[i]) continue;
+            int x = stats[i * 5 + Imgproc.CC_STAT_LEFT];
+            int y = stats[i * 5 + Imgproc.CC_STAT_TOP];
+            int ancho = stats[i * 5 + Imgproc.CC_STAT_WIDTH];
+            int alto = stats[i * 5 + Imgproc.CC_STAT_HEIGHT];
+            for (int fila = y; fila < y + alto; fila++) {
+                for (int p = fila * columnas + x; p < fila * columnas + x + ancho; p++) {
+                    if (manchas[p] == i) mascara[p] = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Decide una componente con sus estadísticas: ACEPTADA, RECHAZO_AREA, RECHAZO_ASPECTO o DUDOSA (hay que
+     * extraer su contorno).
+     */
+    static int decidir(DetectionParams params, int ancho, int alto, int pixeles, int borde) {
+        double area = areaEstimada(pixeles, borde);
+        if (area < params.minArea) return RECHAZO_AREA;
+        if (area < params.minArea * (1 + MARGEN_AREA)) return DUDOSA;
+        if (area > params.maxArea * (1 + MARGEN_AREA)) return params.splitClumps ? DUDOSA : RECHAZO_AREA;
+        if (area > params.maxArea * (1 - MARGEN_AREA)) return DUDOSA;
+
+        double aspecto = (double) ancho / alto;
+        if (aspecto < params.minAspectRatio || aspecto > params.maxAspectRatio) {
+            return params.splitClumps ? DUDOSA : RECHAZO_ASPECTO;
+        }
+        if (ancho < LADO_MINIMO || alto < LADO_MINIMO) return DUDOSA;
+        if (pixeles < LLENADO_MINIMO * ancho * alto) return DUDOSA;
+        if (circularidadEstimada(ancho, alto, area) < params.minCircularity + MARGEN_FORMA) return DUDOSA;
+        if (solidezEstimada(ancho, alto, area) < params.minSolidity + MARGEN_FORMA) return DUDOSA;
+        return ACEPTADA;
+    }
+
+    /**
+     * Área del contorno de una componente sin huecos desde sus píxeles y los de su borde (teorema de Pick): el
+     * contorno pasa por los centros de los píxeles del borde, así que encierra los demás y la mitad de aquellos,
+     * menos uno. Es exacta si el contorno pasa una sola vez por cada píxel y menor si pasa dos veces (partes de un
+     * píxel de ancho), así que por debajo del área mínima la componente se rechaza sin contorno.
+     */
+    static double areaEstimada(int pixeles, int borde) {
+        return Math.max(0, pixeles - borde / 2.0 - 1);
+    }
+
+    /**
+     * Perímetro de la elipse que pasa por los centros de los píxeles extremos (aproximación de Ramanujan).
+     */
+    static double perimetroEstimado(int ancho, int alto) {
+        double a = (ancho - 1) / 2.0;
+        double b = (alto - 1) / 2.0;
+        return Math.PI * (3 * (a + b) - Math.sqrt((3 * a + b) * (a + 3 * b)));
+    }
+
+    static double circularidadEstimada(int ancho, int alto, double area) {
+        double perimetro = perimetroEstimado(ancho, alto);
+        return perimetro == 0 ? 0 : 4 * Math.PI * area / (perimetro * perimetro);
+    }
+
+    /**
+     * Solidez estimada: el área sobre la de la elipse inscrita, que hace de envolvente convexa de una mancha que
+     * llena su rectángulo como una elipse.
+     */
+    static double solidezEstimada(int ancho, int alto, double area) {
+        double envolvente = Math.PI * (ancho - 1) * (alto - 1) / 4;
+        return envolvente == 0 ? 0 : Math.min(1, area / envolvente);
+    }
+
+    /**
+     * Agrega una componente aceptada sin contorno. La celda se asigna por el centro del rectángulo envolvente,
+     * como en ContourClassifier.
+     */
+    private static void aceptar(DetectionParams params, int x, int y, int ancho, int alto, int pixeles, int borde,
+                                double centroX, double centroY, int altoCelda, int anchoCelda, FilterStats filtro,
+                                SporeTable.Builder tabla) {
+        int fila = -1;
+        int columna = -1;
+        if (params.hasGrid()) {
+            fila = (int) ((y + alto / 2.0) / altoCelda);
+            columna = (int) ((x + ancho / 2.0) / anchoCelda);
+            if (fila >= params.gridRows || columna >= params.gridCols) {
+                filtro.fueraDeCuadricula++;
+                return;
+            }
+        }
+        double area = areaEstimada(pixeles, borde);
+        filtro.aceptados++;
+        tabla.agregar(centroX, centroY, area, perimetroEstimado(ancho, alto), circularidadEstimada(ancho, alto, area),
+                solidezEstimada(ancho, alto, area), (double) ancho / alto, fila, columna);
+    }
+
+    /**
+     * Etiquetas de las componentes, leídas del Mat una sola vez, máscara de las dudosas y huecos de un píxel,
+     * reutilizados por hilo como ContourScratch.
+     */
+    private static final class Etiquetas {
+        int[] manchas = new int[0];
+        byte[] dudosas = new byte[0];
+        int[] huecos = new int[64];
+        int huecosDeUnPixel;
+        final ContourTracer trazador = new ContourTracer();
+
+        void reservar(int pixeles) {
+            if (manchas.length < pixeles) {
+                manchas = new int[pixeles];
+                dudosas = new byte[pixeles];
+            }
+        }
+
+        void agregarHueco(int pixel) {
+            if (huecosDeUnPixel == huecos.length) huecos = Arrays.copyOf(huecos, huecos.length * 2);
+            huecos[huecosDeUnPixel++] = pixel;
+        }
+    }
+}
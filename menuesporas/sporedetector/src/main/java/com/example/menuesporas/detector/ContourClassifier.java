@@ -0,0 +1,300 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.MatOfPoint;
+
+/**
+ * *ContourClassifier*: Decide si un contorno es una espora aplicando los filtros de forma del preset
+ * ordenados de menor a mayor costo, y descarta el contorno en cuanto uno falla:
+ *
+ * 1. Área (fórmula de Gauss sobre los puntos ya copiados).
+ * 2. Relación de aspecto del rectángulo envolvente (calculado al copiar los puntos).
+ * 3. Circularidad (requiere el perímetro).
+ * 4. Solidez (requiere la envolvente convexa, la única medida que vuelve a llamar a OpenCV).
+ * 5. Pertenencia a la cuadrícula de conteo, si el preset la define.
+ *
+ * Las medidas de los contornos aceptados se agregan como una fila de una {@link SporeTable}.
+ *
+ * Si el preset activa {@link DetectionParams#splitClumps}, un contorno con al menos el área mínima que
+ * falla un filtro de forma (área máxima, relación de aspecto, circularidad o solidez) se pasa a
+ * {@link ClumpSplitter}: si resulta ser un grumo de varias esporas, se agrega una fila por espora. Los
+ * contornos que superan todos los filtros no se dividen, así que los presets sin grumos no pagan nada.
+ *
+ * Como todos los filtros deben cumplirse, el orden no cambia qué contornos se aceptan; solo evita
+ * calcular la geometría costosa en los que ya fallaron una prueba barata. Lleva la cuenta de los
+ * rechazos de cada filtro en {@link FilterStats}.
+ *
+ * Las medidas salen de una fuente {@link Medidas}: las del contorno cargado en la memoria de trabajo (un MatOfPoint
+ * o los puntos de {@link ContourTracer}), calculadas al vuelo, o las que {@link IncrementalDetector} guardó al
+ * buscar los contornos. Todas pasan por la misma cadena de filtros.
+ *
+ * No es seguro entre hilos: cada análisis crea su propio clasificador.
+ */
+public final class ContourClassifier {
+
+    private final DetectionParams params;
+    private final ContourScratch scratch;
+    private final int altoCelda;
+    private final int anchoCelda;
+    private final FilterStats estadisticas = new FilterStats();
+    private final MedidasCargadas cargadas;
+
+    /**
+     * @param params     Parámetros del preset.
+     * @param anchoZona  Ancho de la zona analizada (para calcular el tamaño de las celdas de la cuadrícula).
+     * @param altoZona   Alto de la zona analizada.
+     * @param scratch    Memoria de trabajo del hilo actual.
+     */
+    ContourClassifier(DetectionParams params, int anchoZona, int altoZona, ContourScratch scratch) {
+        this.params = params;
+        this.scratch = scratch;
+        this.altoCelda = params.hasGrid() ? altoZona / params.gridRows : 0;
+        this.anchoCelda = params.hasGrid() ? anchoZona / params.gridCols : 0;
+        this.cargadas = new MedidasCargadas(scratch);
+    }
+
+    /**
+     * Clasifica un contorno. Si es una espora (o un grumo dividido) agrega sus medidas a la tabla y devuelve
+     * true; devuelve false si algún filtro lo descarta.
+     */
+    boolean clasificar(MatOfPoint contour, SporeTable.Builder tabla) {
+        scratch.cargar(contour);
+        return clasificarCargado(contour, tabla);
+    }
+
+    /**
+     * Igual que {@link #clasificar(MatOfPoint, SporeTable.Builder)}, para un contorno que ya está cargado en la
+     * memoria de trabajo.
+     */
+    boolean clasificarCargado(MatOfPoint contour, SporeTable.Builder tabla) {
+        cargadas.iniciar(contour);
+        return clasificar(contour, cargadas, tabla);
+    }
+
+    /**
+     * Igual que {@link #clasificarCargado}, para un contorno seguido en Java ({@link ContourTracer}) y cargado con
+     * {@link ContourScratch#cargar(int[], int)}: el MatOfPoint que piden la solidez y la división de grumos se arma
+     * solo para los contornos que llegan a esos pasos.
+     */
+    boolean clasificarTrazado(SporeTable.Builder tabla) {
+        cargadas.iniciar(null);
+        return clasificar(null, cargadas, tabla);
+    }
+
+    /**
+     * Clasifica un contorno con las medidas que da la fuente, para quien ya las tiene calculadas
+     * ({@link IncrementalDetector}). Es la única cadena de filtros: el contorno solo se usa si hay que dividir
+     * un grumo.
+     */
+    boolean clasificar(MatOfPoint contour, Medidas medidas, SporeTable.Builder tabla) {
+        estadisticas.evaluados++;
+
+        double area = medidas.area();
+        if (area < params.minArea) {
+            estadisticas.porArea++;
+            return false;
+        }
+        if (area > params.maxArea) {
+            if (dividirGrumo(contour, area, medidas, tabla)) return true;
+            estadisticas.porArea++;
+            return false;
+        }
+
+        double aspectRatio = medidas.relacionAspecto();
+        if (aspectRatio < params.minAspectRatio || aspectRatio > params.maxAspectRatio) {
+            if (dividirGrumo(contour, area, medidas, tabla)) return true;
+            estadisticas.porRelacionAspecto++;
+            return false;
+        }
+
+        double perimeter = medidas.perimetro();
+        double circularity = circularidad(area, perimeter);
+        if (circularity < params.minCircularity) {
+            if (dividirGrumo(contour, area, medidas, tabla)) return true;
+            estadisticas.porCircularidad++;
+            return false;
+        }
+
+        double solidity = medidas.solidez();
+        if (solidity < params.minSolidity) {
+            if (dividirGrumo(contour, area, medidas, tabla)) return true;
+            estadisticas.porSolidez++;
+            return false;
+        }
+
+        // La celda de la cuadrícula se asigna por el centro del rectángulo envolvente.
+        int fila = -1;
+        int columna = -1;
+        if (params.hasGrid()) {
+            fila = (int) (medidas.centroRectY() / altoCelda);
+            columna = (int) (medidas.centroRectX() / anchoCelda);
+            if (fila < 0 || fila >= params.gridRows || columna < 0 || columna >= params.gridCols) {
+                estadisticas.fueraDeCuadricula++;
+                return false;
+            }
+        }
+
+        estadisticas.aceptados++;
+        tabla.agregar(medidas.centroX(), medidas.centroY(), area, perimeter, circularity, solidity, aspectRatio,
+                fila, columna);
+        return true;
+    }
+
+    static double circularidad(double area, double perimetro) {
+        return (perimetro == 0) ? 0 : (4 * Math.PI * area / (perimetro * perimetro));
+    }
+
+    /**
+     * Intenta dividir un contorno que falló un filtro de forma. Pide las medidas del grumo que se guardan en la
+     * tabla solo si de verdad se divide.
+     */
+    private boolean dividirGrumo(MatOfPoint contour, double area, Medidas medidas, SporeTable.Builder tabla) {
+        if (!params.splitClumps) return false;
+        ClumpSplitter divisor = scratch.grumos();
+        int esporas = divisor.dividir(contour != null ? contour : scratch.comoMatOfPoint(), area, params.minArea,
+                params.maxArea);
+        if (esporas == 0) return false;
+        double perimeter = medidas.perimetro();
+        return agregarGrumo(divisor, esporas, perimeter, circularidad(area, perimeter), medidas.solidez(),
+                medidas.relacionAspecto(), tabla);
+    }
+
+    /**
+     * Agrega una fila por espora del grumo. Con cuadrícula, cada espora se asigna a la celda de su centro y
+     * las que caen fuera se descartan; si no queda ninguna, el grumo no se divide y cuenta como rechazado
+     * por el filtro que falló.
+     */
+    private boolean agregarGrumo(ClumpSplitter divisor, int esporas, double perimetro, double circularidad,
+                                 double solidez, double relacionAspecto, SporeTable.Builder tabla) {
+        int[] filas = new int[esporas];
+        int[] columnas = new int[esporas];
+        int dentro = 0;
+        for (int k = 0; k < esporas; k++) {
+            filas[k] = -1;
+            columnas[k] = -1;
+            if (params.hasGrid()) {
+                filas[k] = (int) (divisor.centroY[k] / altoCelda);
+                columnas[k] = (int) (divisor.centroX[k] / anchoCelda);
+                if (filas[k] < 0 || filas[k] >= params.gridRows || columnas[k] < 0 || columnas[k] >= params.gridCols) {
+                    filas[k] = -2;
+                    continue;
+                }
+            }
+            dentro++;
+        }
+        if (dentro == 0) return false;
+        for (int k = 0; k < esporas; k++) {
+            if (filas[k] == -2) continue;
+            tabla.agregar(divisor.centroX[k], divisor.centroY[k], divisor.area[k], perimetro, circularidad,
+                    solidez, relacionAspecto, filas[k], columnas[k], dentro);
+        }
+        estadisticas.grumosDivididos++;
+        estadisticas.esporasDeGrumos += dentro;
+        return true;
+    }
+
+    public FilterStats getEstadisticas() {
+        return estadisticas;
+    }
+
+    /**
+     * Medidas de forma del contorno que se clasifica. La cadena de filtros las pide de menor a mayor costo, así
+     * que una fuente que las calcula al vuelo solo paga las de los filtros a los que llega el contorno.
+     */
+    interface Medidas {
+        double area();
+
+        double relacionAspecto();
+
+        double perimetro();
+
+        double solidez();
+
+        double centroRectX();
+
+        double centroRectY();
+
+        /**
+         * Centroide por momentos, o el centro del rectángulo si el área por momentos es nula.
+         */
+        double centroX();
+
+        double centroY();
+    }
+
+    /**
+     * Medidas calculadas al vuelo sobre el contorno cargado en la memoria de trabajo. El área, el perímetro y el
+     * centroide se guardan, porque la solidez, la división de grumos y la fila de la tabla los vuelven a pedir. El
+     * contorno es null si se siguió en Java; la solidez lo arma desde los puntos cargados.
+     */
+    private static final class MedidasCargadas implements Medidas {
+        private final ContourScratch scratch;
+        private MatOfPoint contorno;
+        private double area;
+        private double perimetro;
+        private boolean centroCalculado;
+        private boolean conMomentos;
+
+        MedidasCargadas(ContourScratch scratch) {
+            this.scratch = scratch;
+        }
+
+        void iniciar(MatOfPoint contorno) {
+            this.contorno = contorno;
+            area = -1;
+            perimetro = -1;
+            centroCalculado = false;
+        }
+
+        @Override
+        public double area() {
+            if (area < 0) area = scratch.area();
+            return area;
+        }
+
+        @Override
+        public double relacionAspecto() {
+            return (double) scratch.rectAncho / scratch.rectAlto;
+        }
+
+        @Override
+        public double perimetro() {
+            if (perimetro < 0) perimetro = scratch.perimetro();
+            return perimetro;
+        }
+
+        @Override
+        public double solidez() {
+            if (contorno == null) contorno = scratch.comoMatOfPoint();
+            double hullArea = scratch.areaEnvolvente(contorno);
+            return (hullArea == 0) ? 0 : (area() / hullArea);
+        }
+
+        @Override
+        public double centroRectX() {
+            return scratch.rectX + scratch.rectAncho / 2.0;
+        }
+
+        @Override
+        public double centroRectY() {
+            return scratch.rectY + scratch.rectAlto / 2.0;
+        }
+
+        @Override
+        public double centroX() {
+            return calcularCentro() ? scratch.centroX : centroRectX();
+        }
+
+        @Override
+        public double centroY() {
+            return calcularCentro() ? scratch.centroY : centroRectY();
+        }
+
+        private boolean calcularCentro() {
+            if (!centroCalculado) {
+                centroCalculado = true;
+                conMomentos = scratch.centroide();
+            }
+            return conMomentos;
+        }
+    }
+}
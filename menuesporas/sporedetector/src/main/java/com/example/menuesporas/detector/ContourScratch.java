@@ -0,0 +1,210 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfPoint;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * *ContourScratch*: Memoria de trabajo reutilizable para medir contornos sin asignar objetos por contorno.
+ * Los puntos se copian con una sola llamada JNI a un int[] que se reutiliza entre contornos e imágenes,
+ * y la envolvente convexa se calcula sobre un MatOfInt que también se reutiliza.
+ *
+ * Área, perímetro, rectángulo envolvente y momentos se calculan en Java replicando exactamente las
+ * fórmulas de OpenCV (contourArea, arcLength, boundingRect, moments). Con coordenadas enteras todas las
+ * operaciones son exactas, por lo que los resultados coinciden bit a bit con los de OpenCV.
+ *
+ * No es seguro entre hilos: cada hilo usa su propia instancia.
+ */
+final class ContourScratch {
+
+    private int[] puntos = new int[1024];      // x0, y0, x1, y1, ...
+    private int[] indicesHull = new int[256];
+    private final MatOfInt hull = new MatOfInt();
+    private final Mat jerarquia = new Mat();
+    private final MatOfPoint trazado = new MatOfPoint();
+    private int numPuntos;
+    private ClumpSplitter grumos;
+
+    // Rectángulo envolvente del último contorno cargado.
+    int rectX;
+    int rectY;
+    int rectAncho;
+    int rectAlto;
+
+    // Centroide calculado por centroide().
+    double centroX;
+    double centroY;
+
+    /**
+     * Copia los puntos del contorno a la memoria de trabajo y calcula su rectángulo envolvente.
+     */
+    void cargar(MatOfPoint contorno) {
+        reservar((int) contorno.total());
+        contorno.get(0, 0, puntos);
+        calcularRectangulo();
+    }
+
+    /**
+     * Igual que {@link #cargar(MatOfPoint)}, para los puntos de un contorno seguido en Java ({@link ContourTracer}):
+     * n puntos como x0, y0, x1, y1, ...
+     */
+    void cargar(int[] xy, int n) {
+        reservar(n);
+        System.arraycopy(xy, 0, puntos, 0, n * 2);
+        calcularRectangulo();
+    }
+
+    /**
+     * El contorno cargado como MatOfPoint, para las medidas que calcula OpenCV (envolvente convexa, división de
+     * grumos) sobre un contorno seguido en Java. Se reutiliza: vale hasta la siguiente llamada.
+     */
+    MatOfPoint comoMatOfPoint() {
+        trazado.create(numPuntos, 1, CvType.CV_32SC2);
+        // put copia solo los valores que caben en el Mat, aunque el arreglo sea más largo.
+        trazado.put(0, 0, puntos);
+        return trazado;
+    }
+
+    private void reservar(int n) {
+        numPuntos = n;
+        if (puntos.length < numPuntos * 2) {
+            puntos = new int[Math.max(numPuntos * 2, puntos.length * 2)];
+        }
+    }
+
+    private void calcularRectangulo() {
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < numPuntos * 2; i += 2) {
+            int x = puntos[i];
+            int y = puntos[i + 1];
+            if (x < minX) minX = x;
+            if (x > maxX) maxX = x;
+            if (y < minY) minY = y;
+            if (y > maxY) maxY = y;
+        }
+        if (numPuntos == 0) {
+            rectX = rectY = rectAncho = rectAlto = 0;
+        } else {
+            rectX = minX;
+            rectY = minY;
+            rectAncho = maxX - minX + 1;
+            rectAlto = maxY - minY + 1;
+        }
+    }
+
+    /**
+     * Área del contorno cargado, igual que Imgproc.contourArea.
+     */
+    double area() {
+        return areaPoligono(null, numPuntos);
+    }
+
+    /**
+     * Perímetro cerrado del contorno cargado, igual que Imgproc.arcLength(..., true)
+     * (OpenCV acumula en double la raíz en float de cada segmento).
+     */
+    double perimetro() {
+        if (numPuntos <= 1) return 0;
+        double perimetro = 0;
+        float prevX = puntos[(numPuntos - 1) * 2];
+        float prevY = puntos[(numPuntos - 1) * 2 + 1];
+        for (int i = 0; i < numPuntos * 2; i += 2) {
+            float x = puntos[i];
+            float y = puntos[i + 1];
+            float dx = x - prevX;
+            float dy = y - prevY;
+            perimetro += (float) Math.sqrt(dx * dx + dy * dy);
+            prevX = x;
+            prevY = y;
+        }
+        return perimetro;
+    }
+
+    /**
+     * Área de la envolvente convexa del contorno cargado. El contorno se pasa de nuevo porque
+     * la envolvente la calcula OpenCV sobre el Mat nativo; los índices se leen con una sola llamada JNI.
+     */
+    double areaEnvolvente(MatOfPoint contorno) {
+        Imgproc.convexHull(contorno, hull);
+        int numHull = (int) hull.total();
+        if (indicesHull.length < numHull) {
+            indicesHull = new int[Math.max(numHull, indicesHull.length * 2)];
+        }
+        hull.get(0, 0, indicesHull);
+        return areaPoligono(indicesHull, numHull);
+    }
+
+    /**
+     * Centroide del contorno cargado (m10/m00 y m01/m00), con la misma fórmula que Imgproc.moments.
+     * Deja el resultado en centroX/centroY; devuelve false (sin tocarlos) si el área es nula.
+     */
+    boolean centroide() {
+        if (numPuntos == 0) return false;
+        double a00 = 0, a10 = 0, a01 = 0;
+        double xi_1 = puntos[(numPuntos - 1) * 2];
+        double yi_1 = puntos[(numPuntos - 1) * 2 + 1];
+        for (int i = 0; i < numPuntos * 2; i += 2) {
+            double xi = puntos[i];
+            double yi = puntos[i + 1];
+            double dxy = xi_1 * yi - xi * yi_1;
+            a00 += dxy;
+            a10 += dxy * (xi_1 + xi);
+            a01 += dxy * (yi_1 + yi);
+            xi_1 = xi;
+            yi_1 = yi;
+        }
+        if (Math.abs(a00) <= 1.1920929e-07) return false; // FLT_EPSILON, como en OpenCV.
+        double db1_2 = a00 > 0 ? 0.5 : -0.5;
+        double db1_6 = a00 > 0 ? 0.16666666666666666666666666666667 : -0.16666666666666666666666666666667;
+        double m00 = a00 * db1_2;
+        centroX = (a10 * db1_6) / m00;
+        centroY = (a01 * db1_6) / m00;
+        return true;
+    }
+
+    /**
+     * Fórmula del área de Gauss (la de Imgproc.contourArea, no orientada) sobre los puntos cargados,
+     * en el orden dado por indices (o en el orden del contorno si indices es null).
+     */
+    private double areaPoligono(int[] indices, int n) {
+        if (n == 0) return 0;
+        int ultimo = indices != null ? indices[n - 1] : n - 1;
+        double prevX = puntos[ultimo * 2];
+        double prevY = puntos[ultimo * 2 + 1];
+        double a00 = 0;
+        for (int i = 0; i < n; i++) {
+            int p = indices != null ? indices[i] : i;
+            double x = puntos[p * 2];
+            double y = puntos[p * 2 + 1];
+            a00 += prevX * y - prevY * x;
+            prevX = x;
+            prevY = y;
+        }
+        return Math.abs(a00 * 0.5);
+    }
+
+    /**
+     * Memoria de la división de grumos del hilo actual; se crea la primera vez que un preset la usa.
+     */
+    ClumpSplitter grumos() {
+        if (grumos == null) grumos = new ClumpSplitter();
+        return grumos;
+    }
+
+    /**
+     * Destino de la jerarquía de findContours, reutilizado entre imágenes (SporeDetector no la lee).
+     */
+    Mat jerarquia() {
+        return jerarquia;
+    }
+
+    void release() {
+        hull.release();
+        jerarquia.release();
+        trazado.release();
+        if (grumos != null) grumos.release();
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Arrays;
+
+/**
+ * *ContourTracer*: Seguimiento de bordes de Suzuki y Abe en Java, con las mismas reglas que Imgproc.findContours
+ * (recorrido por filas, marcas de borde y elección de la dirección en cada paso), para una máscara que ya está en
+ * un byte[] de Java. Da los mismos puntos, con CHAIN_APPROX_NONE o CHAIN_APPROX_SIMPLE, que findContours con
+ * RETR_EXTERNAL o con cualquiera de los modos que devuelven también los huecos (LIST, CCOMP y TREE dan los mismos
+ * contornos; solo cambia la jerarquía, que aquí no se arma).
+ *
+ * findContours arma un MatOfPoint por contorno y los puntos vuelven a Java con otra llamada JNI; con miles de
+ * contornos ese costo por contorno supera al del seguimiento. Aquí los puntos del contorno actual quedan en un int[]
+ * que se reutiliza, listos para {@link ContourScratch#cargar(int[], int)}.
+ *
+ * Uso: {@link #iniciar} y después {@link #siguiente} hasta que devuelva false. No es seguro entre hilos: cada hilo usa
+ * su propia instancia.
+ */
+final class ContourTracer {
+
+    // Marcas de findContours sobre la imagen de trabajo (valores de 8 bits con signo): borde ya seguido, y borde
+    // seguido cuyo vecino derecho es del fondo.
+    private static final byte BORDE = 2;
+    private static final byte BORDE_DERECHO = (byte) (2 | -128);
+    // Desplazamiento de cada dirección de la cadena de Freeman (0 = derecha, en sentido antihorario).
+    private static final int[] DX = {1, 1, 0, -1, -1, -1, 0, 1};
+    private static final int[] DY = {0, -1, -1, -1, 0, 1, 1, 1};
+
+    // Máscara con 0 y 1 y un marco de un píxel en 0, como la copia que hace findContours.
+    private byte[] imagen = new byte[0];
+    private final int[] deltas = new int[16];
+    private int ancho;
+    private int alto;
+    private boolean soloExternos;
+    private boolean simple;
+
+    // Posición del recorrido por filas.
+    private int fila;
+    private int columna;
+    private int previo;
+    private int ultimoBorde;
+
+    // Puntos del contorno actual: x0, y0, x1, y1, ...
+    int[] puntos = new int[256];
+    int numPuntos;
+
+    /**
+     * Prepara el recorrido de una máscara.
+     *
+     * @param mascara  Píxeles de la máscara por filas (0 es fondo).
+     * @param modo     Imgproc.RETR_EXTERNAL o un modo que devuelve también los huecos.
+     * @param metodo   Imgproc.CHAIN_APPROX_NONE o Imgproc.CHAIN_APPROX_SIMPLE (ver {@link #soporta}).
+     */
+    void iniciar(byte[] mascara, int filas, int columnas, int modo, int metodo) {
+        ancho = columnas + 2;
+        alto = filas + 2;
+        int total = ancho * alto;
+        if (imagen.length < total) imagen = new byte[total];
+        Arrays.fill(imagen, 0, ancho, (byte) 0);
+        Arrays.fill(imagen, (alto - 1) * ancho, total, (byte) 0);
+        for (int y = 0; y < filas; y++) {
+            int destino = (y + 1) * ancho;
+            int origen = y * columnas;
+            imagen[destino] = 0;
+            imagen[destino + ancho - 1] = 0;
+            for (int x = 0; x < columnas; x++) {
+                imagen[destino + 1 + x] = mascara[origen + x] != 0 ? (byte) 1 : 0;
+            }
+        }
+        int[] base = {1, -ancho + 1, -ancho, -ancho - 1, -1, ancho - 1, ancho, ancho + 1};
+        System.arraycopy(base, 0, deltas, 0, 8);
+        System.arraycopy(base, 0, deltas, 8, 8);
+        soloExternos = modo == Imgproc.RETR_EXTERNAL;
+        simple = metodo == Imgproc.CHAIN_APPROX_SIMPLE;
+        fila = 1;
+        columna = 1;
+        previo = 0;
+        ultimoBorde = ancho;
+    }
+
+    /**
+     * Si el seguimiento en Java da los mismos puntos que findContours con este método de aproximación.
+     */
+    static boolean soporta(int metodo) {
+        return metodo == Imgproc.CHAIN_APPROX_NONE || metodo == Imgproc.CHAIN_APPROX_SIMPLE;
+    }
+
+    /**
+     * Busca el siguiente contorno en el orden de findContours y deja sus puntos, en coordenadas de la máscara, en
+     * {@link #puntos}. Devuelve false si no quedan contornos.
+     */
+    boolean siguiente() {
+        byte[] img = imagen;
+        int x = columna;
+        int p = previo;
+        for (int y = fila; y < alto - 1; y++) {
+            int inicioFila = y * ancho;
+            for (; x < ancho - 1; x++) {
+                int actual = img[inicioFila + x];
+                if (actual == p) continue;
+                // Un borde externo empieza en un píxel de la máscara sin seguir después del fondo, y un hueco en el
+                // fondo después de un píxel sin borde derecho ya seguido.
+                boolean externo = p == 0 && actual == 1;
+                boolean hueco = !externo && actual == 0 && p >= 1;
+                boolean seguir = externo || hueco;
+                if (hueco && (p & -2) != 0) ultimoBorde = inicioFila + x - 1;
+                if (seguir && soloExternos && (hueco || img[ultimoBorde] > 0)) seguir = false;
+                if (seguir) {
+                    int inicio = hueco ? x - 1 : x;
+                    seguirBorde(inicioFila + inicio, inicio - 1, y - 1, hueco);
+                    fila = y;
+                    columna = x + 1;
+                    previo = img[inicioFila + x];
+                    return true;
+                }
+                p = actual;
+                if ((p & -2) != 0) ultimoBorde = inicioFila + x;
+            }
+            ultimoBorde = (y + 1) * ancho;
+            x = 1;
+            p = 0;
+        }
+        fila = alto - 1;
+        return false;
+    }
+
+    /**
+     * Sigue el borde que empieza en el píxel i0 (índice en la imagen con marco; x0, y0 en la máscara) y marca sus
+     * píxeles como findContours: la búsqueda del primer vecino va en sentido horario y las siguientes en antihorario
+     * desde la dirección de llegada.
+     */
+    private void seguirBorde(int i0, int x0, int y0, boolean hueco) {
+        byte[] img = imagen;
+        int[] d = deltas;
+        int s = hueco ? 0 : 4;
+        int sFin = s;
+        int i1;
+        do {
+            s = (s - 1) & 7;
+            i1 = i0 + d[s];
+        } while (img[i1] == 0 && s != sFin);
+
+        int x = x0;
+        int y = y0;
+        if (s == sFin) {
+            // Píxel aislado.
+            img[i0] = BORDE_DERECHO;
+            puntos[0] = x;
+            puntos[1] = y;
+            numPuntos = 1;
+            return;
+        }
+
+        int[] xy = puntos;
+        int n = 0;
+        int i3 = i0;
+        int i4;
+        int sPrevio = s ^ 4;
+        while (true) {
+            sFin = s;
+            // Primer vecino no nulo en sentido antihorario desde s + 1 (el de llegada siempre lo es). Las marcas
+            // no cambian qué píxeles son nulos, así que se leen los ocho vecinos sin saltos y se rota la máscara.
+            int vecinos = (img[i3 + d[0]] != 0 ? 1 : 0) | (img[i3 + d[1]] != 0 ? 2 : 0)
+                    | (img[i3 + d[2]] != 0 ? 4 : 0) | (img[i3 + d[3]] != 0 ? 8 : 0)
+                    | (img[i3 + d[4]] != 0 ? 16 : 0) | (img[i3 + d[5]] != 0 ? 32 : 0)
+                    | (img[i3 + d[6]] != 0 ? 64 : 0) | (img[i3 + d[7]] != 0 ? 128 : 0);
+            s = (s + 1 + Integer.numberOfTrailingZeros((vecinos | vecinos << 8) >>> (s + 1))) & 7;
+            i4 = i3 + d[s];
+
+            if (s >= 1 && s <= sFin) {
+                img[i3] = BORDE_DERECHO;
+            } else if (img[i3] == 1) {
+                img[i3] = BORDE;
+            }
+            if (s != sPrevio || !simple) {
+                if (n == xy.length) xy = Arrays.copyOf(xy, xy.length * 2);
+                xy[n] = x;
+                xy[n + 1] = y;
+                n += 2;
+                sPrevio = s;
+            }
+            x += DX[s];
+            y += DY[s];
+
+            if (i4 == i0 && i3 == i1) break;
+            i3 = i4;
+            s = (s + 4) & 7;
+        }
+        puntos = xy;
+        numPuntos = n / 2;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.menuesporas.detector;
+
+/**
+ * *DetectionMonitor*: Canal por el que el detector informa el avance de cada etapa
+ * y comprueba si el análisis fue cancelado.
+ */
+public interface DetectionMonitor {
+
+    /**
+     * Monitor que no informa nada y nunca cancela (uso en escritorio, benchmarks, lotes).
+     */
+    DetectionMonitor NINGUNO = new DetectionMonitor() {
+        @Override
+        public void reportar(int porcentaje, String etapa) {
+        }
+
+        @Override
+        public void verificarCancelacion() {
+        }
+    };
+
+    /**
+     * Informa el inicio de una etapa. Puede lanzar
+     * {@link java.util.concurrent.CancellationException} si el análisis fue cancelado.
+     */
+    void reportar(int porcentaje, String etapa);
+
+    /**
+     * Lanza {@link java.util.concurrent.CancellationException} si el análisis fue cancelado.
+     */
+    void verificarCancelacion();
+}
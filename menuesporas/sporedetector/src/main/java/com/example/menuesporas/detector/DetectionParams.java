@@ -0,0 +1,275 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * *DetectionParams*: Conjunto inmutable de parámetros del pipeline de detección de esporas.
+ * Agrupa el tamaño de trabajo, la zona de recorte, los parámetros de umbralización y morfología,
+ * los filtros de forma de los contornos y la cuadrícula de conteo.
+ * Se construye con {@link Builder}; los valores por defecto son los de MainActivity2.
+ */
+public final class DetectionParams {
+
+    // --- Preparación de la imagen ---
+    public final int workWidth;
+    public final int workHeight;
+    public final Rect roi;                // Zona de recorte sobre la imagen redimensionada (null = imagen completa).
+    public final int blurKernelSize;      // Kernel del desenfoque Gaussiano (1 = sin efecto).
+
+    // --- Umbralización adaptativa ---
+    public final int adaptiveBlockSize;
+    public final double adaptiveC;
+
+    // --- Morfología ---
+    public final int openKernelSize;
+    public final int openIterations;
+    public final int closeKernelSize;
+    public final int closeIterations;
+
+    // --- Contornos ---
+    public final int contourMode;         // Imgproc.RETR_LIST o Imgproc.RETR_EXTERNAL.
+    public final int contourMethod;       // Imgproc.CHAIN_APPROX_NONE o Imgproc.CHAIN_APPROX_SIMPLE.
+
+    // --- Filtros de forma ---
+    public final double minArea;
+    public final double maxArea;
+    public final double minCircularity;
+    public final double minSolidity;
+    public final double minAspectRatio;
+    public final double maxAspectRatio;
+    // Divide en varias esporas los contornos rechazados que parecen grumos (ClumpSplitter).
+    public final boolean splitClumps;
+
+    // --- Cuadrícula de conteo (0 = sin cuadrícula) ---
+    public final int gridRows;
+    public final int gridCols;
+
+    // --- Multiescala ---
+    // Escalas de la pirámide de imágenes (1 = una sola escala). Con más de una, el rango de áreas se reparte
+    // entre las escalas y las detecciones se unen con PyramidSporeDetector.
+    public final int pyramidLevels;
+
+    // --- Presentación ---
+    public final int drawContourThickness;
+
+    private DetectionParams(Builder b) {
+        workWidth = b.workWidth;
+        workHeight = b.workHeight;
+        roi = b.roi;
+        blurKernelSize = b.blurKernelSize;
+        // adaptiveBlockSize debe ser impar y al menos 3. Se ajusta si no cumple.
+        int blockSize = b.adaptiveBlockSize;
+        if (blockSize % 2 == 0) blockSize++;
+        if (blockSize < 3) blockSize = 3;
+        adaptiveBlockSize = blockSize;
+        adaptiveC = b.adaptiveC;
+        openKernelSize = b.openKernelSize;
+        openIterations = b.openIterations;
+        closeKernelSize = b.closeKernelSize;
+        closeIterations = b.closeIterations;
+        contourMode = b.contourMode;
+        contourMethod = b.contourMethod;
+        minArea = b.minArea;
+        maxArea = b.maxArea;
+        minCircularity = b.minCircularity;
+        minSolidity = b.minSolidity;
+        minAspectRatio = b.minAspectRatio;
+        maxAspectRatio = b.maxAspectRatio;
+        splitClumps = b.splitClumps;
+        gridRows = b.gridRows;
+        gridCols = b.gridCols;
+        pyramidLevels = Math.max(1, b.pyramidLevels);
+        drawContourThickness = b.drawContourThickness;
+    }
+
+    public boolean hasGrid() {
+        return gridRows > 0 && gridCols > 0;
+    }
+
+    public Builder toBuilder() {
+        return new Builder()
+                .workSize(workWidth, workHeight)
+                .roi(roi)
+                .blurKernelSize(blurKernelSize)
+                .adaptiveBlockSize(adaptiveBlockSize)
+                .adaptiveC(adaptiveC)
+                .open(openKernelSize, openIterations)
+                .close(closeKernelSize, closeIterations)
+                .contours(contourMode, contourMethod)
+                .area(minArea, maxArea)
+                .minCircularity(minCircularity)
+                .minSolidity(minSolidity)
+                .aspectRatio(minAspectRatio, maxAspectRatio)
+                .splitClumps(splitClumps)
+                .grid(gridRows, gridCols)
+                .pyramidLevels(pyramidLevels)
+                .drawContourThickness(drawContourThickness);
+    }
+
+    /**
+     * Los mismos parámetros para una imagen ampliada factor veces en cada eje (por ejemplo, una región decodificada
+     * a más resolución que la de trabajo): las áreas se multiplican por factor² y los kernels y el grosor del dibujo
+     * por factor, con los kernels siempre impares. Un desenfoque de 1 (sin efecto) no cambia. El tamaño de trabajo,
+     * el recorte, la cuadrícula y los filtros sin unidades (circularidad, solidez, relación de aspecto) tampoco.
+     */
+    public DetectionParams escalado(double factor) {
+        if (factor == 1) return this;
+        return toBuilder()
+                .blurKernelSize(blurKernelSize <= 1 ? blurKernelSize : kernelEscalado(blurKernelSize, factor))
+                .adaptiveBlockSize(kernelEscalado(adaptiveBlockSize, factor))
+                .open(kernelEscalado(openKernelSize, factor), openIterations)
+                .close(kernelEscalado(closeKernelSize, factor), closeIterations)
+                .area(minArea * factor * factor, maxArea * factor * factor)
+                .drawContourThickness(Math.max(1, (int) Math.round(drawContourThickness * factor)))
+                .build();
+    }
+
+    private static int kernelEscalado(int kernel, double factor) {
+        int escalado = Math.max(1, (int) Math.round(kernel * factor));
+        return escalado % 2 == 0 ? escalado + 1 : escalado;
+    }
+
+    @Override
+    public String toString() {
+        return "BlockSize=" + adaptiveBlockSize + ", C=" + adaptiveC +
+                ", MinArea=" + minArea + ", MaxArea=" + maxArea +
+                ", MinCirc=" + minCircularity + ", MinSolidity=" + minSolidity +
+                ", OpenIters=" + openIterations + ", CloseIters=" + closeIterations +
+                ", ContourThickness=" + drawContourThickness +
+                ", MinAspectRatio=" + minAspectRatio + ", MaxAspectRatio=" + maxAspectRatio +
+                ", SplitClumps=" + splitClumps + ", PyramidLevels=" + pyramidLevels;
+    }
+
+    /**
+     * Todos los parámetros en un orden fijo: dos DetectionParams con la misma huella detectan exactamente lo
+     * mismo sobre la misma imagen. A diferencia de toString, no omite ninguno. Las escalas de la pirámide solo
+     * aparecen si hay más de una, para que la huella de los presets de una escala no cambie.
+     */
+    public String huella() {
+        return workWidth + "x" + workHeight + "|" + (roi == null ? "-" : roi.x + "," + roi.y + "," + roi.width + ","
+                + roi.height) + "|" + blurKernelSize + "|" + adaptiveBlockSize + "|" + adaptiveC + "|"
+                + openKernelSize + "," + openIterations + "|" + closeKernelSize + "," + closeIterations + "|"
+                + contourMode + "," + contourMethod + "|" + minArea + "," + maxArea + "|" + minCircularity + "|"
+                + minSolidity + "|" + minAspectRatio + "," + maxAspectRatio + "|" + splitClumps + "|"
+                + gridRows + "x" + gridCols + "|" + drawContourThickness
+                + (pyramidLevels > 1 ? "|p" + pyramidLevels : "");
+    }
+
+    public static final class Builder {
+        private int workWidth = 640;
+        private int workHeight = 480;
+        private Rect roi = null;
+        private int blurKernelSize = 1;
+        private int adaptiveBlockSize = 15;
+        private double adaptiveC = 5;
+        private int openKernelSize = 3;
+        private int openIterations = 1;
+        private int closeKernelSize = 3;
+        private int closeIterations = 0;
+        private int contourMode = Imgproc.RETR_LIST;
+        private int contourMethod = Imgproc.CHAIN_APPROX_NONE;
+        private double minArea = 5.0;
+        private double maxArea = 100.0;
+        private double minCircularity = 0.65;
+        private double minSolidity = 0.80;
+        private double minAspectRatio = 0.5;
+        private double maxAspectRatio = 2.0;
+        private boolean splitClumps = false;
+        private int gridRows = 0;
+        private int gridCols = 0;
+        private int pyramidLevels = 1;
+        private int drawContourThickness = 1;
+
+        public Builder workSize(int width, int height) {
+            this.workWidth = width;
+            this.workHeight = height;
+            return this;
+        }
+
+        public Builder roi(Rect roi) {
+            this.roi = roi;
+            return this;
+        }
+
+        public Builder blurKernelSize(int size) {
+            this.blurKernelSize = size;
+            return this;
+        }
+
+        public Builder adaptiveBlockSize(int blockSize) {
+            this.adaptiveBlockSize = blockSize;
+            return this;
+        }
+
+        public Builder adaptiveC(double c) {
+            this.adaptiveC = c;
+            return this;
+        }
+
+        public Builder open(int kernelSize, int iterations) {
+            this.openKernelSize = kernelSize;
+            this.openIterations = iterations;
+            return this;
+        }
+
+        public Builder close(int kernelSize, int iterations) {
+            this.closeKernelSize = kernelSize;
+            this.closeIterations = iterations;
+            return this;
+        }
+
+        public Builder contours(int mode, int method) {
+            this.contourMode = mode;
+            this.contourMethod = method;
+            return this;
+        }
+
+        public Builder area(double min, double max) {
+            this.minArea = min;
+            this.maxArea = max;
+            return this;
+        }
+
+        public Builder minCircularity(double minCircularity) {
+            this.minCircularity = minCircularity;
+            return this;
+        }
+
+        public Builder minSolidity(double minSolidity) {
+            this.minSolidity = minSolidity;
+            return this;
+        }
+
+        public Builder aspectRatio(double min, double max) {
+            this.minAspectRatio = min;
+            this.maxAspectRatio = max;
+            return this;
+        }
+
+        public Builder splitClumps(boolean splitClumps) {
+            this.splitClumps = splitClumps;
+            return this;
+        }
+
+        public Builder grid(int rows, int cols) {
+            this.gridRows = rows;
+            this.gridCols = cols;
+            return this;
+        }
+
+        public Builder pyramidLevels(int levels) {
+            this.pyramidLevels = levels;
+            return this;
+        }
+
+        public Builder drawContourThickness(int thickness) {
+            this.drawContourThickness = thickness;
+            return this;
+        }
+
+        public DetectionParams build() {
+            return new DetectionParams(this);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * *DetectionPresets*: Conjuntos de parámetros predefinidos para cada densidad de esporas
+ * (los que elegirhongo ofrece al usuario) y para el conteo por cuadro de MedicionEsporas.
+ */
+public final class DetectionPresets {
+
+    // Nombres completos de las densidades, tal como llegan desde strings.xml (R.string.hongo_1..4).
+    public static final String BAJA_DENSIDAD = "Baja Densidad (0-170 esporas)";
+    public static final String DENSIDAD_MODERADA = "Densidad Moderada (170-500 esporas)";
+    public static final String ALTA_DENSIDAD = "Alta Densidad (500-1000 esporas)";
+    public static final String DENSIDAD_MUY_ALTA = "Densidad Muy Alta (1000+ esporas)";
+
+    // Identificadores estables de los presets: no dependen del idioma ni del texto de los botones.
+    // Son las claves del archivo de presets (res/raw/detection_presets.json) y las que envía elegirhongo.
+    public static final String ID_BAJA_DENSIDAD = "baja_densidad";
+    public static final String ID_DENSIDAD_MODERADA = "densidad_moderada";
+    public static final String ID_ALTA_DENSIDAD = "alta_densidad";
+    public static final String ID_DENSIDAD_MUY_ALTA = "densidad_muy_alta";
+    public static final String ID_CONTEO_POR_CUADRO = "conteo_por_cuadro";
+    // Muestras con esporas de tamaños muy distintos: un solo análisis multiescala (PyramidSporeDetector).
+    public static final String ID_MUESTRA_MIXTA = "muestra_mixta";
+    // No es un preset: pide estimar la densidad de cada imagen con DensityClassifier y usar el preset que corresponda.
+    public static final String ID_AUTOMATICO = "automatico";
+
+    private DetectionPresets() {
+    }
+
+    /**
+     * Valores por defecto, optimizados para un recall equilibrado.
+     */
+    public static DetectionParams porDefecto() {
+        return new DetectionParams.Builder().build();
+    }
+
+    /**
+     * Devuelve el preset correspondiente al nombre de densidad elegido en elegirhongo.
+     * Si el nombre no coincide con ninguno, se usan los valores por defecto.
+     */
+    public static DetectionParams porNombre(String tipoHongo) {
+        if (tipoHongo == null) return porDefecto();
+        switch (tipoHongo) {
+            case BAJA_DENSIDAD:
+                return bajaDensidad();
+            case DENSIDAD_MODERADA:
+                return densidadModerada();
+            case ALTA_DENSIDAD:
+                return altaDensidad();
+            case DENSIDAD_MUY_ALTA:
+                return densidadMuyAlta();
+            default:
+                return porDefecto();
+        }
+    }
+
+    /**
+     * Devuelve el preset integrado con el identificador estable dado (ID_*), o null si no existe.
+     * Es el respaldo cuando el archivo de presets no se puede leer.
+     */
+    public static DetectionParams porId(String id) {
+        if (id == null) return null;
+        switch (id) {
+            case ID_BAJA_DENSIDAD:
+                return bajaDensidad();
+            case ID_DENSIDAD_MODERADA:
+                return densidadModerada();
+            case ID_ALTA_DENSIDAD:
+                return altaDensidad();
+            case ID_DENSIDAD_MUY_ALTA:
+                return densidadMuyAlta();
+            case ID_CONTEO_POR_CUADRO:
+                return conteoPorCuadro();
+            case ID_MUESTRA_MIXTA:
+                return muestraMixta();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Identificador estable que corresponde a un nombre de densidad (para Intents antiguos que solo
+     * envían el texto del botón). Devuelve null si el nombre no coincide con ninguno.
+     */
+    public static String idPorNombre(String tipoHongo) {
+        if (tipoHongo == null) return null;
+        switch (tipoHongo) {
+            case BAJA_DENSIDAD:
+                return ID_BAJA_DENSIDAD;
+            case DENSIDAD_MODERADA:
+                return ID_DENSIDAD_MODERADA;
+            case ALTA_DENSIDAD:
+                return ID_ALTA_DENSIDAD;
+            case DENSIDAD_MUY_ALTA:
+                return ID_DENSIDAD_MUY_ALTA;
+            default:
+                return null;
+        }
+    }
+
+    // Corresponde a "Hongo 1" anterior
+    public static DetectionParams bajaDensidad() {
+        return new DetectionParams.Builder()
+                .adaptiveBlockSize(17)
+                .adaptiveC(6)
+                .area(8.0, 90.0)
+                .minCircularity(0.68)
+                .minSolidity(0.82)
+                .open(3, 1)
+                .close(3, 0)
+                .drawContourThickness(4)
+                .aspectRatio(0.6, 1.9)
+                .build();
+    }
+
+    // Corresponde a "Hongo 2" anterior
+    public static DetectionParams densidadModerada() {
+        return new DetectionParams.Builder()
+                .adaptiveBlockSize(13)
+                .adaptiveC(4)
+                .area(7.0, 80.0)
+                .minCircularity(0.60)
+                .minSolidity(0.75)
+                .open(3, 1)
+                .close(3, 0)
+                .drawContourThickness(4)
+                .aspectRatio(0.55, 1.8)
+                .build();
+    }
+
+    // Corresponde a "Hongo 3" anterior
+    public static DetectionParams altaDensidad() {
+        return new DetectionParams.Builder()
+                .adaptiveBlockSize(15)
+                .adaptiveC(5)
+                .area(6.0, 85.0)
+                .minCircularity(0.62)
+                .minSolidity(0.78)
+                .open(3, 1)
+                .close(3, 0)
+                .drawContourThickness(4)
+                .aspectRatio(0.45, 2.6)
+                .build();
+    }
+
+    // Corresponde a "Hongo 4" anterior
+    public static DetectionParams densidadMuyAlta() {
+        return new DetectionParams.Builder()
+                .adaptiveBlockSize(15)
+                .adaptiveC(5)
+                .area(2.5, 85.0)
+                .minCircularity(0.38)
+                .minSolidity(0.58)
+                .open(3, 0)
+                .close(3, 0)
+                .drawContourThickness(4)
+                .aspectRatio(0.45, 2.6)
+                .splitClumps(true)  // A esta densidad muchas esporas se tocan; ver ClumpSplitTest.
+                .build();
+    }
+
+    /**
+     * Muestras con esporas chicas y grandes a la vez: cubre desde el área mínima de densidadMuyAlta hasta cuatro
+     * veces el área máxima de los otros presets. Con dos escalas, la completa busca las esporas de 2.5 a ~29 px² y
+     * la de 1/2 las de ~29 a 340 px² (en píxeles de la resolución de trabajo), cada una con el bloque y los
+     * kernels en sus propios píxeles.
+     */
+    public static DetectionParams muestraMixta() {
+        return new DetectionParams.Builder()
+                .adaptiveBlockSize(15)
+                .adaptiveC(5)
+                .area(2.5, 340.0)
+                .minCircularity(0.60)
+                .minSolidity(0.75)
+                .open(3, 1)
+                .close(3, 0)
+                .drawContourThickness(4)
+                .aspectRatio(0.45, 2.6)
+                .pyramidLevels(2)
+                .build();
+    }
+
+    /**
+     * Parámetros del conteo por cuadro de MedicionEsporas: recorte fijo de la cámara de conteo,
+     * cuadrícula de 5x5 y filtros de área 3-70, circularidad 0.50 y solidez 0.80.
+     */
+    public static DetectionParams conteoPorCuadro() {
+        return new DetectionParams.Builder()
+                .roi(new Rect(130, 35, 380, 315))
+                .blurKernelSize(3)
+                .adaptiveBlockSize(15)
+                .adaptiveC(5)
+                .open(3, 2)
+                .close(5, 1)
+                .contours(Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE)
+                .area(3, 70)
+                .minCircularity(0.50)
+                .minSolidity(0.80)
+                .aspectRatio(0, Double.POSITIVE_INFINITY)
+                .grid(5, 5)
+                .drawContourThickness(2)
+                .build();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+
+import java.util.List;
+
+/**
+ * *DetectionResult*: Resultado estructurado de {@link SporeDetector}.
+ * Contiene las medidas de las esporas aceptadas (una {@link SporeTable} por columnas), el conteo por cuadro (si los parámetros
+ * definen una cuadrícula) y, para dibujar el resultado, la imagen de trabajo y los contornos aceptados.
+ * Los dos últimos son memoria nativa: se debe llamar a {@link #release()} al terminar, que devuelve la imagen de
+ * trabajo al {@link MatPool} del detector.
+ */
+public final class DetectionResult {
+
+    public final SporeTable esporas;
+    public final int contornosIniciales;   // Contornos encontrados antes del filtrado.
+    public final int[][] conteoPorCuadro;  // null si los parámetros no definen cuadrícula.
+    public final FilterStats estadisticasFiltro; // Rechazos de cada filtro de forma.
+    public final Mat imagenTrabajo;        // Imagen redimensionada (y recortada) sobre la que se detectó.
+    // Contornos aceptados, en el mismo orden que esporas; un grumo dividido es un solo contorno para
+    // esporas.grupo[i] filas consecutivas de la tabla. Vacía con ComponentSporeCounter, que no los extrae.
+    public final List<MatOfPoint> contornos;
+    private final MatPool mats;
+    private boolean liberado;
+
+    public DetectionResult(SporeTable esporas, int contornosIniciales, int[][] conteoPorCuadro,
+                           FilterStats estadisticasFiltro, Mat imagenTrabajo, List<MatOfPoint> contornos) {
+        this(esporas, contornosIniciales, conteoPorCuadro, estadisticasFiltro, imagenTrabajo, contornos,
+                MatPool.SIN_REUSO);
+    }
+
+    DetectionResult(SporeTable esporas, int contornosIniciales, int[][] conteoPorCuadro,
+                    FilterStats estadisticasFiltro, Mat imagenTrabajo, List<MatOfPoint> contornos, MatPool mats) {
+        this.mats = mats;
+        this.esporas = esporas;
+        this.contornosIniciales = contornosIniciales;
+        this.conteoPorCuadro = conteoPorCuadro;
+        this.estadisticasFiltro = estadisticasFiltro;
+        this.imagenTrabajo = imagenTrabajo;
+        this.contornos = contornos;
+    }
+
+    public int getConteo() {
+        return esporas.size();
+    }
+
+    /**
+     * Área promedio de las esporas aceptadas, en píxeles² de la imagen de trabajo (0 si no hay esporas).
+     */
+    public double getAreaPromedioPx() {
+        return esporas.areaPromedio();
+    }
+
+    public void release() {
+        // La imagen de trabajo no se puede devolver dos veces al pool.
+        if (liberado) return;
+        liberado = true;
+        for (MatOfPoint contorno : contornos) contorno.release();
+        contornos.clear();
+        mats.devolver(imagenTrabajo);
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.menuesporas.detector;
+
+/**
+ * *Espora*: Medidas de un contorno aceptado como espora, en píxeles de la imagen de trabajo.
+ */
+public final class Espora {
+
+    public final double centroX;
+    public final double centroY;
+    public final double area;
+    public final double perimetro;
+    public final double circularidad;
+    public final double solidez;
+    public final double relacionAspecto;
+    public final int fila;      // Fila de la cuadrícula (-1 si no hay cuadrícula).
+    public final int columna;   // Columna de la cuadrícula (-1 si no hay cuadrícula).
+
+    public Espora(double centroX, double centroY, double area, double perimetro, double circularidad,
+                  double solidez, double relacionAspecto, int fila, int columna) {
+        this.centroX = centroX;
+        this.centroY = centroY;
+        this.area = area;
+        this.perimetro = perimetro;
+        this.circularidad = circularidad;
+        this.solidez = solidez;
+        this.relacionAspecto = relacionAspecto;
+        this.fila = fila;
+        this.columna = columna;
+    }
+}
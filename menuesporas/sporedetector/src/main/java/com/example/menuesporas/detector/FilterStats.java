@@ -0,0 +1,56 @@
+package com.example.menuesporas.detector;
+
+/**
+ * *FilterStats*: Contadores del filtrado de contornos: cuántos se evaluaron, cuántos se aceptaron
+ * y cuántos descartó cada filtro. Cada contorno rechazado se cuenta solo en el primer filtro que no
+ * superó, en el orden en que {@link ContourClassifier} los aplica. Un contorno rechazado que se divide en
+ * varias esporas (grumo) no cuenta como rechazado, sino en grumosDivididos, y sus esporas en esporasDeGrumos.
+ * En la detección multiescala, un contorno aceptado en una escala que repite una espora ya detectada en otra
+ * se resta de aceptados y se cuenta en duplicadosEntreEscalas. En el conteo por componentes conexas,
+ * sinContorno cuenta los evaluados que se aceptaron o rechazaron solo con las estadísticas de la componente.
+ */
+public final class FilterStats {
+
+    public int evaluados;
+    public int aceptados;
+    public int porArea;
+    public int porRelacionAspecto;
+    public int porCircularidad;
+    public int porSolidez;
+    public int fueraDeCuadricula;
+    public int grumosDivididos;
+    public int esporasDeGrumos;
+    public int duplicadosEntreEscalas;
+    public int sinContorno;
+
+    /**
+     * Suma los contadores de otro filtrado (por ejemplo, el de otra banda de la misma imagen).
+     */
+    public void sumar(FilterStats otras) {
+        evaluados += otras.evaluados;
+        aceptados += otras.aceptados;
+        porArea += otras.porArea;
+        porRelacionAspecto += otras.porRelacionAspecto;
+        porCircularidad += otras.porCircularidad;
+        porSolidez += otras.porSolidez;
+        fueraDeCuadricula += otras.fueraDeCuadricula;
+        grumosDivididos += otras.grumosDivididos;
+        esporasDeGrumos += otras.esporasDeGrumos;
+        duplicadosEntreEscalas += otras.duplicadosEntreEscalas;
+        sinContorno += otras.sinContorno;
+    }
+
+    public int rechazados() {
+        return porArea + porRelacionAspecto + porCircularidad + porSolidez + fueraDeCuadricula;
+    }
+
+    @Override
+    public String toString() {
+        return "Evaluados=" + evaluados + ", Aceptados=" + aceptados +
+                ", PorArea=" + porArea + ", PorRelacionAspecto=" + porRelacionAspecto +
+                ", PorCircularidad=" + porCircularidad + ", PorSolidez=" + porSolidez +
+                ", FueraDeCuadricula=" + fueraDeCuadricula +
+                ", GrumosDivididos=" + grumosDivididos + ", EsporasDeGrumos=" + esporasDeGrumos +
+                ", DuplicadosEntreEscalas=" + duplicadosEntreEscalas + ", SinContorno=" + sinContorno;
+    }
+}
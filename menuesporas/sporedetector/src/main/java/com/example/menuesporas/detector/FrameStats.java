@@ -0,0 +1,96 @@
+package com.example.menuesporas.detector;
+
+import java.util.Locale;
+
+/**
+ * *FrameStats*: Contadores del análisis en vivo: cuadros analizados, cuadros descartados, latencia por cuadro
+ * y cuadros por segundo.
+ *
+ * Con la estrategia "conservar solo el último" de la cámara, el analizador nunca ve los cuadros descartados;
+ * se deducen de las marcas de tiempo: el intervalo de la cámara es el menor intervalo observado entre dos
+ * cuadros, y cada hueco de k intervalos entre dos cuadros analizados cuenta k - 1 cuadros descartados.
+ *
+ * No es seguro entre hilos: lo actualiza únicamente el hilo del analizador.
+ */
+public final class FrameStats {
+
+    // Peso del último cuadro en las medias móviles exponenciales.
+    private static final double ALFA = 0.1;
+
+    private long analizados;
+    private long descartados;
+    private long ultimoTimestamp = -1;
+    private long intervaloCamaraNanos = Long.MAX_VALUE;
+    private double latenciaMediaNanos;
+    private long latenciaUltimaNanos;
+    private long latenciaMaximaNanos;
+    private double intervaloMedioNanos;
+
+    /**
+     * Registra un cuadro analizado.
+     *
+     * @param timestampNanos Marca de tiempo del cuadro (la de la cámara).
+     * @param latenciaNanos  Tiempo que tardó el análisis del cuadro.
+     */
+    public void registrar(long timestampNanos, long latenciaNanos) {
+        if (ultimoTimestamp >= 0 && timestampNanos > ultimoTimestamp) {
+            long intervalo = timestampNanos - ultimoTimestamp;
+            intervaloCamaraNanos = Math.min(intervaloCamaraNanos, intervalo);
+            descartados += Math.max(0, Math.round((double) intervalo / intervaloCamaraNanos) - 1);
+            intervaloMedioNanos = intervaloMedioNanos == 0 ? intervalo
+                    : intervaloMedioNanos + ALFA * (intervalo - intervaloMedioNanos);
+        }
+        ultimoTimestamp = timestampNanos;
+
+        analizados++;
+        latenciaUltimaNanos = latenciaNanos;
+        latenciaMaximaNanos = Math.max(latenciaMaximaNanos, latenciaNanos);
+        latenciaMediaNanos = analizados == 1 ? latenciaNanos
+                : latenciaMediaNanos + ALFA * (latenciaNanos - latenciaMediaNanos);
+    }
+
+    public long getAnalizados() {
+        return analizados;
+    }
+
+    public long getDescartados() {
+        return descartados;
+    }
+
+    public double getLatenciaUltimaMs() {
+        return latenciaUltimaNanos / 1e6;
+    }
+
+    public double getLatenciaMediaMs() {
+        return latenciaMediaNanos / 1e6;
+    }
+
+    public double getLatenciaMaximaMs() {
+        return latenciaMaximaNanos / 1e6;
+    }
+
+    /**
+     * Cuadros analizados por segundo (media móvil).
+     */
+    public double getCuadrosPorSegundo() {
+        return intervaloMedioNanos == 0 ? 0 : 1e9 / intervaloMedioNanos;
+    }
+
+    public void reiniciar() {
+        analizados = 0;
+        descartados = 0;
+        ultimoTimestamp = -1;
+        intervaloCamaraNanos = Long.MAX_VALUE;
+        latenciaMediaNanos = 0;
+        latenciaUltimaNanos = 0;
+        latenciaMaximaNanos = 0;
+        intervaloMedioNanos = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%.1f fps, latencia %.1f ms (media %.1f, máx %.1f), %d analizados, %d descartados",
+                getCuadrosPorSegundo(), getLatenciaUltimaMs(), getLatenciaMediaMs(), getLatenciaMaximaMs(),
+                analizados, descartados);
+    }
+}
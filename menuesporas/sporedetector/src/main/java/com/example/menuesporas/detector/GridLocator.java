@@ -0,0 +1,431 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * *GridLocator*: Localiza la cuadrícula de la cámara de conteo en cada imagen, en lugar de suponer que está
+ * siempre en el mismo recorte. Trabaja sobre la luminancia reducida a {@link #ANCHO_BUSQUEDA} píxeles de ancho:
+ *
+ * 1. Máscara de trazos finos y oscuros: black-hat con un cuadrado de {@link #NUCLEO_LINEAS} píxeles y umbral
+ *    de Otsu. Las líneas (también las dobles y triples) quedan; las esporas más anchas que el núcleo
+ *    desaparecen, y con ellas los bordes que en una muestra densa Hough alineaba en falsas rectas.
+ * 2. Segmentos con la transformada de Hough probabilística sobre la máscara.
+ * 3. Orientación dominante: histograma de los ángulos módulo 90°, ponderado por la longitud de cada segmento.
+ *    Los segmentos se separan en dos familias perpendiculares; el resto (esporas pequeñas) se descarta.
+ * 4. En cada familia, los segmentos colineales (a menos de {@link #DISTANCIA_FUSION} píxeles de la misma
+ *    recta) se fusionan en una línea. Las líneas más externas que cubren al menos la mitad de lo que cubre la
+ *    más larga son los bordes de la cuadrícula, y cada borde se reajusta por mínimos cuadrados a los píxeles
+ *    de la máscara a menos de {@link #DISTANCIA_AJUSTE} píxeles de él.
+ * 5. Se verifica que haya líneas interiores donde deben estar las divisiones de la cuadrícula; sin ellas el
+ *    resultado no es una cuadrícula y se devuelve null.
+ * 6. Las esquinas son las intersecciones de los bordes. La homografía de esas esquinas a un rectángulo con
+ *    píxeles cuadrados corrige la perspectiva, y el tamaño del rectángulo da la calibración en píxeles por mm
+ *    de esta imagen.
+ *
+ * Tarda unos pocos milisegundos en la resolución de trabajo. Las esquinas se devuelven en coordenadas de la
+ * imagen recibida.
+ */
+public final class GridLocator {
+
+    static final int ANCHO_BUSQUEDA = 320;
+    static final int NUCLEO_LINEAS = 7;              // Más ancho que una línea triple en la imagen reducida.
+    static final double TOLERANCIA_ANGULO = 8.0;     // Grados respecto a la orientación dominante.
+    static final double DISTANCIA_FUSION = 4.0;      // Píxeles de la imagen reducida.
+    static final double DISTANCIA_AJUSTE = 2.0;      // Píxeles de la imagen reducida.
+    static final double FRACCION_BORDE = 0.5;        // Tramo mínimo de un borde respecto a la línea más larga.
+    static final double TOLERANCIA_DIVISION = 0.04;  // Fracción del lado en que se busca cada división interior.
+    static final double CONFIANZA_MINIMA = 0.5;
+    static final int MINIMO_AJUSTE = 10;             // Píxeles para reajustar un borde.
+
+    private GridLocator() {
+    }
+
+    /**
+     * Cuadrícula encontrada en una imagen: sus esquinas, la calibración y la transformación que la endereza.
+     * Se libera con {@link #release()}.
+     */
+    public static final class Cuadricula {
+        // Esquinas superior izquierda, superior derecha, inferior derecha e inferior izquierda.
+        public final Point[] esquinas;
+        public final int anchoRectificado;
+        public final int altoRectificado;
+        public final double pixelesPorMm;  // En la imagen rectificada, igual en ambos ejes.
+        public final double confianza;     // Fracción de las divisiones interiores encontradas (0-1).
+        public final long duracionNanos;
+        private final Mat homografia;
+
+        Cuadricula(Point[] esquinas, int anchoRectificado, int altoRectificado, double pixelesPorMm,
+                   double confianza, long duracionNanos, Mat homografia) {
+            this.esquinas = esquinas;
+            this.anchoRectificado = anchoRectificado;
+            this.altoRectificado = altoRectificado;
+            this.pixelesPorMm = pixelesPorMm;
+            this.confianza = confianza;
+            this.duracionNanos = duracionNanos;
+            this.homografia = homografia;
+        }
+
+        /**
+         * Endereza una imagen del mismo tamaño que la que se usó para localizar la cuadrícula (luminancia o
+         * color). Devuelve una imagen nueva de {@link #anchoRectificado} x {@link #altoRectificado} que
+         * contiene solo la cuadrícula.
+         */
+        public Mat rectificar(Mat imagen) {
+            Mat rectificada = new Mat();
+            Imgproc.warpPerspective(imagen, rectificada, homografia, new Size(anchoRectificado, altoRectificado),
+                    Imgproc.INTER_LINEAR);
+            return rectificada;
+        }
+
+        public void release() {
+            homografia.release();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "Cuadricula{%dx%d px, %.2f px/mm, confianza=%.2f, %.1f ms}",
+                    anchoRectificado, altoRectificado, pixelesPorMm, confianza, duracionNanos / 1e6);
+        }
+    }
+
+    /**
+     * Una línea fusionada: la recta de mínimos cuadrados por los extremos de sus segmentos (ponderados por
+     * longitud), con su dirección orientada como la de la familia, el tramo que cubren sus segmentos a lo largo
+     * de esa dirección y su posición perpendicular en el centro de la imagen.
+     */
+    private static final class Linea {
+        final double ux, uy;  // Dirección de la familia.
+        double x, y, dx, dy, distancia;
+        double inicio = Double.POSITIVE_INFINITY;
+        double fin = Double.NEGATIVE_INFINITY;
+        private double peso, sumaX, sumaY, sumaXX, sumaXY, sumaYY;
+
+        Linea(double ux, double uy) {
+            this.ux = ux;
+            this.uy = uy;
+        }
+
+        void agregar(double x1, double y1, double x2, double y2, double longitud) {
+            double w = longitud / 2;
+            peso += longitud;
+            sumaX += w * (x1 + x2);
+            sumaY += w * (y1 + y2);
+            sumaXX += w * (x1 * x1 + x2 * x2);
+            sumaXY += w * (x1 * y1 + x2 * y2);
+            sumaYY += w * (y1 * y1 + y2 * y2);
+            x = sumaX / peso;
+            y = sumaY / peso;
+            double cxx = sumaXX / peso - x * x;
+            double cxy = sumaXY / peso - x * y;
+            double cyy = sumaYY / peso - y * y;
+            double angulo = 0.5 * Math.atan2(2 * cxy, cxx - cyy);
+            dx = Math.cos(angulo);
+            dy = Math.sin(angulo);
+            if (dx * ux + dy * uy < 0) {
+                dx = -dx;
+                dy = -dy;
+            }
+            double t1 = x1 * ux + y1 * uy;
+            double t2 = x2 * ux + y2 * uy;
+            inicio = Math.min(inicio, Math.min(t1, t2));
+            fin = Math.max(fin, Math.max(t1, t2));
+        }
+
+        double distanciaA(double px, double py) {
+            return Math.abs(posicionEn(px, py));
+        }
+
+        /**
+         * Distancia con signo de la recta al punto dado, a lo largo de la normal de la familia.
+         */
+        double posicionEn(double px, double py) {
+            return -(x - px) * dy + (y - py) * dx;
+        }
+
+        double extension() {
+            return fin - inicio;
+        }
+    }
+
+    /**
+     * Busca la cuadrícula en la luminancia (8 bits, 1 canal).
+     *
+     * @param luminancia Imagen completa, sin recortar.
+     * @param divisiones Cuadros por lado de la cuadrícula (5 en la cámara de conteo).
+     * @param anchoMm    Ancho real de la cuadrícula en mm.
+     * @param altoMm     Alto real de la cuadrícula en mm.
+     * @return La cuadrícula, o null si no se encuentra una con suficiente confianza.
+     */
+    public static Cuadricula localizar(Mat luminancia, int divisiones, double anchoMm, double altoMm) {
+        long inicio = System.nanoTime();
+        double escala = Math.min(1.0, (double) ANCHO_BUSQUEDA / luminancia.cols());
+        Mat reducida = new Mat();
+        Mat mascara = new Mat();
+        Mat nucleo = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(NUCLEO_LINEAS, NUCLEO_LINEAS));
+        Mat segmentos = new Mat();
+        Mat marcados = new Mat();
+        try {
+            if (escala < 1.0) {
+                Imgproc.resize(luminancia, reducida, new Size(), escala, escala, Imgproc.INTER_AREA);
+            } else {
+                luminancia.copyTo(reducida);
+            }
+            Imgproc.morphologyEx(reducida, mascara, Imgproc.MORPH_BLACKHAT, nucleo);
+            Imgproc.threshold(mascara, mascara, 0, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
+            int menor = Math.min(reducida.cols(), reducida.rows());
+            Imgproc.HoughLinesP(mascara, segmentos, 1, Math.PI / 180, 30, menor * 0.15, 4);
+
+            int n = (int) segmentos.total();
+            if (n < 4) return null;
+            int[] puntos = new int[n * 4];
+            segmentos.get(0, 0, puntos);
+
+            double orientacion = orientacionDominante(puntos, n);
+            double centroX = reducida.cols() / 2.0;
+            double centroY = reducida.rows() / 2.0;
+            List<Linea> familiaA = fusionar(puntos, n, orientacion, centroX, centroY);
+            List<Linea> familiaB = fusionar(puntos, n, orientacion + 90, centroX, centroY);
+            Linea[] bordesA = bordes(familiaA, menor);
+            Linea[] bordesB = bordes(familiaB, menor);
+            if (bordesA == null || bordesB == null) return null;
+
+            Core.findNonZero(mascara, marcados);
+            int[] pixeles = new int[(int) marcados.total() * 2];
+            if (pixeles.length > 0) marcados.get(0, 0, pixeles);
+            for (int i = 0; i < 2; i++) {
+                bordesA[i] = ajustar(bordesA[i], pixeles);
+                bordesB[i] = ajustar(bordesB[i], pixeles);
+            }
+
+            Point[] esquinas = new Point[4];
+            double sumaX = 0;
+            double sumaY = 0;
+            for (int i = 0; i < 4; i++) {
+                Point p = interseccion(bordesA[i / 2], bordesB[i % 2]);
+                if (p == null) return null;
+                sumaX += p.x;
+                sumaY += p.y;
+                esquinas[i] = new Point(p.x / escala, p.y / escala);
+            }
+
+            double confianza = divisiones <= 1 ? 1.0
+                    : (divisionesEncontradas(familiaA, bordesA, divisiones, sumaX / 4, sumaY / 4)
+                    + divisionesEncontradas(familiaB, bordesB, divisiones, sumaX / 4, sumaY / 4))
+                    / (2.0 * (divisiones - 1));
+            if (confianza < CONFIANZA_MINIMA) return null;
+            esquinas = ordenar(esquinas);
+            if (!valida(esquinas, luminancia.cols(), luminancia.rows())) return null;
+
+            // Lado promedio de cada eje; la calibración promedia ambos para que los píxeles rectificados sean cuadrados.
+            double ancho = (distancia(esquinas[0], esquinas[1]) + distancia(esquinas[3], esquinas[2])) / 2;
+            double alto = (distancia(esquinas[0], esquinas[3]) + distancia(esquinas[1], esquinas[2])) / 2;
+            double pixelesPorMm = (ancho / anchoMm + alto / altoMm) / 2;
+            int anchoRectificado = (int) Math.round(anchoMm * pixelesPorMm);
+            int altoRectificado = (int) Math.round(altoMm * pixelesPorMm);
+
+            MatOfPoint2f origen = new MatOfPoint2f(esquinas);
+            MatOfPoint2f destino = new MatOfPoint2f(new Point(0, 0), new Point(anchoRectificado, 0),
+                    new Point(anchoRectificado, altoRectificado), new Point(0, altoRectificado));
+            Mat homografia = Imgproc.getPerspectiveTransform(origen, destino);
+            origen.release();
+            destino.release();
+            return new Cuadricula(esquinas, anchoRectificado, altoRectificado, pixelesPorMm, confianza,
+                    System.nanoTime() - inicio, homografia);
+        } finally {
+            reducida.release();
+            mascara.release();
+            nucleo.release();
+            segmentos.release();
+            marcados.release();
+        }
+    }
+
+    /**
+     * Ángulo (0-90°) más frecuente entre los segmentos, ponderado por longitud, con un histograma circular
+     * de 1° suavizado con sus vecinos.
+     */
+    private static double orientacionDominante(int[] puntos, int n) {
+        double[] histograma = new double[90];
+        for (int i = 0; i < n; i++) {
+            double dx = puntos[i * 4 + 2] - puntos[i * 4];
+            double dy = puntos[i * 4 + 3] - puntos[i * 4 + 1];
+            double angulo = Math.toDegrees(Math.atan2(dy, dx));
+            int intervalo = (int) Math.floor(((angulo % 90) + 90) % 90);
+            histograma[Math.min(89, intervalo)] += Math.hypot(dx, dy);
+        }
+        int mejor = 0;
+        double maximo = -1;
+        for (int i = 0; i < 90; i++) {
+            double suavizado = histograma[(i + 89) % 90] + histograma[i] + histograma[(i + 1) % 90];
+            if (suavizado > maximo) {
+                maximo = suavizado;
+                mejor = i;
+            }
+        }
+        return mejor + 0.5;
+    }
+
+    /**
+     * Agrupa en líneas los segmentos de la familia con la orientación dada, ordenadas por su posición
+     * perpendicular en el centro de la imagen. Con perspectiva las líneas de una familia no son paralelas y
+     * la separación entre subdivisiones es de pocos píxeles, así que cada segmento se une a la línea con la
+     * que es colineal (sus dos extremos a menos de {@link #DISTANCIA_FUSION} píxeles de ella), no a la que
+     * está a la misma distancia del origen. Los segmentos se recorren de mayor a menor longitud para que
+     * cada línea empiece por su tramo más confiable.
+     */
+    private static List<Linea> fusionar(int[] puntos, int n, double orientacion, double centroX, double centroY) {
+        double theta = Math.toRadians(orientacion);
+        double ux = Math.cos(theta);
+        double uy = Math.sin(theta);
+
+        List<double[]> segmentos = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            double x1 = puntos[i * 4], y1 = puntos[i * 4 + 1];
+            double x2 = puntos[i * 4 + 2], y2 = puntos[i * 4 + 3];
+            double longitud = Math.hypot(x2 - x1, y2 - y1);
+            if (longitud == 0) continue;
+            // Diferencia de ángulo entre rectas (sin sentido): el coseno en valor absoluto.
+            double coseno = Math.abs((x2 - x1) * ux + (y2 - y1) * uy) / longitud;
+            if (coseno < Math.cos(Math.toRadians(TOLERANCIA_ANGULO))) continue;
+            segmentos.add(new double[]{x1, y1, x2, y2, longitud});
+        }
+        segmentos.sort((a, b) -> Double.compare(b[4], a[4]));
+
+        List<Linea> lineas = new ArrayList<>();
+        for (double[] s : segmentos) {
+            Linea destino = null;
+            for (Linea l : lineas) {
+                if (l.distanciaA(s[0], s[1]) <= DISTANCIA_FUSION && l.distanciaA(s[2], s[3]) <= DISTANCIA_FUSION) {
+                    destino = l;
+                    break;
+                }
+            }
+            if (destino == null) {
+                destino = new Linea(ux, uy);
+                lineas.add(destino);
+            }
+            destino.agregar(s[0], s[1], s[2], s[3], s[4]);
+        }
+        for (Linea l : lineas) l.distancia = l.posicionEn(centroX, centroY);
+        lineas.sort((a, b) -> Double.compare(a.distancia, b.distancia));
+        return lineas;
+    }
+
+    /**
+     * Las dos líneas más externas que cubren al menos {@link #FRACCION_BORDE} de lo que cubre la más larga,
+     * o null si no hay dos o están demasiado juntas para ser la cuadrícula. Se compara el tramo cubierto y no
+     * la suma de los segmentos: una línea cruzada por esporas llega a Hough partida en tramos.
+     */
+    private static Linea[] bordes(List<Linea> lineas, int menor) {
+        double maxima = 0;
+        for (Linea l : lineas) maxima = Math.max(maxima, l.extension());
+        Linea primera = null;
+        Linea ultima = null;
+        for (Linea l : lineas) {
+            if (l.extension() < maxima * FRACCION_BORDE) continue;
+            if (primera == null) primera = l;
+            ultima = l;
+        }
+        if (primera == null || ultima.distancia - primera.distancia < menor * 0.25) return null;
+        return new Linea[]{primera, ultima};
+    }
+
+    /**
+     * Cuántas de las divisiones interiores (k / divisiones entre los bordes) tienen una línea cerca, midiendo
+     * las posiciones sobre el centro de la cuadrícula para que la perspectiva no las desplace.
+     */
+    private static int divisionesEncontradas(List<Linea> lineas, Linea[] bordes, int divisiones,
+                                             double centroX, double centroY) {
+        double inicio = bordes[0].posicionEn(centroX, centroY);
+        double lado = bordes[1].posicionEn(centroX, centroY) - inicio;
+        int encontradas = 0;
+        for (int k = 1; k < divisiones; k++) {
+            double esperada = inicio + lado * k / divisiones;
+            for (Linea l : lineas) {
+                if (Math.abs(l.posicionEn(centroX, centroY) - esperada) <= Math.abs(lado) * TOLERANCIA_DIVISION) {
+                    encontradas++;
+                    break;
+                }
+            }
+        }
+        return encontradas;
+    }
+
+    /**
+     * Reajusta un borde a los píxeles de la máscara (pares x, y) a menos de {@link #DISTANCIA_AJUSTE} de él y
+     * dentro de su tramo: Hough da extremos enteros que saltan de un lado al otro de una línea de varios píxeles
+     * de ancho, y ese error se multiplica al extrapolar las esquinas. Si quedan muy pocos píxeles se conserva
+     * el borde original.
+     */
+    private static Linea ajustar(Linea borde, int[] pixeles) {
+        Linea ajustada = new Linea(borde.ux, borde.uy);
+        int usados = 0;
+        for (int i = 0; i < pixeles.length; i += 2) {
+            int px = pixeles[i];
+            int py = pixeles[i + 1];
+            if (borde.distanciaA(px, py) > DISTANCIA_AJUSTE) continue;
+            double t = px * borde.ux + py * borde.uy;
+            if (t < borde.inicio - DISTANCIA_AJUSTE || t > borde.fin + DISTANCIA_AJUSTE) continue;
+            ajustada.agregar(px, py, px, py, 1);
+            usados++;
+        }
+        if (usados < MINIMO_AJUSTE) return borde;
+        ajustada.distancia = borde.distancia;
+        return ajustada;
+    }
+
+    private static Point interseccion(Linea a, Linea b) {
+        double det = a.dx * b.dy - a.dy * b.dx;
+        if (Math.abs(det) < 1e-6) return null;
+        double t = ((b.x - a.x) * b.dy - (b.y - a.y) * b.dx) / det;
+        return new Point(a.x + t * a.dx, a.y + t * a.dy);
+    }
+
+    /**
+     * Ordena las esquinas: superior izquierda (menor x + y), superior derecha (mayor x - y), inferior
+     * derecha (mayor x + y) e inferior izquierda (menor x - y).
+     */
+    private static Point[] ordenar(Point[] p) {
+        Point[] porSuma = p.clone();
+        Arrays.sort(porSuma, (a, b) -> Double.compare(a.x + a.y, b.x + b.y));
+        Point[] porDiferencia = p.clone();
+        Arrays.sort(porDiferencia, (a, b) -> Double.compare(a.x - a.y, b.x - b.y));
+        return new Point[]{porSuma[0], porDiferencia[3], porSuma[3], porDiferencia[0]};
+    }
+
+    /**
+     * Las esquinas deben ser distintas, formar un cuadrilátero convexo y estar dentro de la imagen (con un
+     * margen del 2%).
+     */
+    private static boolean valida(Point[] e, int ancho, int alto) {
+        double margenX = ancho * 0.02;
+        double margenY = alto * 0.02;
+        for (Point p : e) {
+            if (p.x < -margenX || p.x > ancho + margenX || p.y < -margenY || p.y > alto + margenY) return false;
+        }
+        int signo = 0;
+        for (int i = 0; i < 4; i++) {
+            Point a = e[i], b = e[(i + 1) % 4], c = e[(i + 2) % 4];
+            double cruz = (b.x - a.x) * (c.y - b.y) - (b.y - a.y) * (c.x - b.x);
+            if (cruz == 0) return false;
+            int s = cruz > 0 ? 1 : -1;
+            if (signo != 0 && s != signo) return false;
+            signo = s;
+        }
+        return true;
+    }
+
+    private static double distancia(Point a, Point b) {
+        return Math.hypot(a.x - b.x, a.y - b.y);
+    }
+}
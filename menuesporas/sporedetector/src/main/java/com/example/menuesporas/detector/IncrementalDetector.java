@@ -0,0 +1,350 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * *IncrementalDetector*: Pipeline de {@link SporeDetector} por etapas para ajustar los parámetros de una misma
+ * imagen. Cada etapa guarda su resultado junto con los parámetros de los que depende; al volver a detectar con
+ * otros parámetros solo se recalculan las etapas cuyos parámetros cambiaron y las posteriores:
+ *
+ * 1. Preparación: resolución de trabajo, recorte, escala de grises y ecualización (workSize, roi).
+ * 2. Desenfoque (blurKernelSize).
+ * 3. Umbral adaptativo (adaptiveBlockSize, adaptiveC).
+ * 4. Apertura y cierre (openKernelSize/Iterations, closeKernelSize/Iterations).
+ * 5. Contornos y sus medidas de forma, calculadas una sola vez (contourMode, contourMethod).
+ * 6. Filtrado por forma y cuadrícula: se ejecuta siempre y solo compara las medidas guardadas con los límites,
+ *    por lo que cambiar minArea o minCircularity cuesta unos pocos milisegundos.
+ *
+ * Los resultados son idénticos a los de SporeDetector con los mismos parámetros: el filtrado es la cadena de
+ * {@link ContourClassifier}, alimentada con las medidas guardadas. Con más de una escala de pirámide
+ * ({@link DetectionParams#pyramidLevels}) la detección la hace {@link PyramidSporeDetector}, como en SporeDetector,
+ * completa en cada llamada: las etapas guardadas quedan para cuando se vuelva a una sola escala. Los métodos son
+ * sincronizados: un análisis nuevo espera a que termine el anterior sobre la misma imagen.
+ */
+public final class IncrementalDetector {
+
+    // Etapas, en orden. ETAPA_FILTRADO no se guarda: se ejecuta siempre.
+    public static final int ETAPA_PREPARACION = 0;
+    public static final int ETAPA_DESENFOQUE = 1;
+    public static final int ETAPA_UMBRAL = 2;
+    public static final int ETAPA_MORFOLOGIA = 3;
+    public static final int ETAPA_CONTORNOS = 4;
+    public static final int ETAPA_FILTRADO = 5;
+
+    private static final String[] NOMBRES_ETAPAS = {
+            "preparación", "desenfoque", "umbral", "morfología", "contornos", "filtrado"
+    };
+
+    private final Mat entrada;
+    private final Object[] claves = new Object[ETAPA_FILTRADO];
+
+    // Resultado de cada etapa guardada.
+    private Mat zona;        // Zona de trabajo con los canales de la entrada (la imagen del resultado).
+    private Mat ecualizada;
+    private Mat suavizada;
+    private Mat umbral;
+    private Mat mascara;
+    private final List<MatOfPoint> contornos = new ArrayList<>();
+    private Medidas medidas;
+
+    private int ultimaEtapaInicial = ETAPA_PREPARACION;
+    private long ultimaDuracionNanos;
+
+    /**
+     * @param entrada Imagen BGR/RGBA o en escala de grises, como en SporeDetector. El detector se queda con ella
+     *                y la libera en {@link #release()}.
+     */
+    public IncrementalDetector(Mat entrada) {
+        this.entrada = entrada;
+    }
+
+    public DetectionResult detect(DetectionParams params) {
+        return detect(params, DetectionMonitor.NINGUNO);
+    }
+
+    /**
+     * Detecta con los parámetros dados reutilizando las etapas cuyos parámetros no cambiaron.
+     * El resultado es independiente de las etapas guardadas: se libera con {@link DetectionResult#release()}.
+     */
+    public synchronized DetectionResult detect(DetectionParams params, DetectionMonitor monitor) {
+        long inicio = System.nanoTime();
+        if (params.pyramidLevels > 1) {
+            ultimaEtapaInicial = ETAPA_PREPARACION;
+            DetectionResult resultado = new PyramidSporeDetector().detect(entrada, params, monitor);
+            ultimaDuracionNanos = System.nanoTime() - inicio;
+            return resultado;
+        }
+        int etapa = primeraEtapaInvalida(params);
+        ultimaEtapaInicial = etapa;
+
+        if (etapa <= ETAPA_PREPARACION) {
+            monitor.reportar(10, "Preparando imagen");
+            preparar(params);
+        }
+        if (etapa <= ETAPA_DESENFOQUE) {
+            monitor.reportar(20, "Desenfocando");
+            suavizada = new Mat();
+            Imgproc.GaussianBlur(ecualizada, suavizada, new Size(params.blurKernelSize, params.blurKernelSize), 0);
+            claves[ETAPA_DESENFOQUE] = claveDesenfoque(params);
+        }
+        if (etapa <= ETAPA_UMBRAL) {
+            monitor.reportar(30, "Umbralizando");
+            umbral = new Mat();
+            Imgproc.adaptiveThreshold(suavizada, umbral, 255, Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C,
+                    Imgproc.THRESH_BINARY_INV, params.adaptiveBlockSize, params.adaptiveC);
+            claves[ETAPA_UMBRAL] = claveUmbral(params);
+        }
+        if (etapa <= ETAPA_MORFOLOGIA) {
+            monitor.reportar(40, "Aplicando morfología");
+            mascara = umbral.clone();
+            SporeDetector.aplicarMorfologia(mascara, Imgproc.MORPH_OPEN, params.openKernelSize, params.openIterations);
+            SporeDetector.aplicarMorfologia(mascara, Imgproc.MORPH_CLOSE, params.closeKernelSize, params.closeIterations);
+            claves[ETAPA_MORFOLOGIA] = claveMorfologia(params);
+        }
+        if (etapa <= ETAPA_CONTORNOS) {
+            monitor.reportar(50, "Buscando contornos");
+            buscarContornos(params, monitor);
+            claves[ETAPA_CONTORNOS] = claveContornos(params);
+        }
+
+        monitor.reportar(70, "Filtrando contornos");
+        DetectionResult resultado = filtrar(params);
+        ultimaDuracionNanos = System.nanoTime() - inicio;
+        return resultado;
+    }
+
+    /**
+     * Primera etapa que se recalculó en la última detección (ETAPA_*; ETAPA_FILTRADO si solo se filtró).
+     */
+    public synchronized int getUltimaEtapaInicial() {
+        return ultimaEtapaInicial;
+    }
+
+    public synchronized long getUltimaDuracionNanos() {
+        return ultimaDuracionNanos;
+    }
+
+    public static String nombreEtapa(int etapa) {
+        return NOMBRES_ETAPAS[etapa];
+    }
+
+    /**
+     * Libera la imagen de entrada y todas las etapas guardadas.
+     */
+    public synchronized void release() {
+        invalidarDesde(ETAPA_PREPARACION);
+        entrada.release();
+    }
+
+    private int primeraEtapaInvalida(DetectionParams params) {
+        Object[] actuales = {
+                clavePreparacion(params), claveDesenfoque(params), claveUmbral(params),
+                claveMorfologia(params), claveContornos(params)
+        };
+        for (int etapa = 0; etapa < actuales.length; etapa++) {
+            if (!Objects.equals(claves[etapa], actuales[etapa])) {
+                invalidarDesde(etapa);
+                return etapa;
+            }
+        }
+        return ETAPA_FILTRADO;
+    }
+
+    /**
+     * Descarta la etapa dada y todas las posteriores. Si una etapa se cancela a mitad, su clave queda en null
+     * y se recalcula en la siguiente detección.
+     */
+    private void invalidarDesde(int etapa) {
+        for (int e = etapa; e < claves.length; e++) claves[e] = null;
+        if (etapa <= ETAPA_PREPARACION) {
+            zona = liberar(zona);
+            ecualizada = liberar(ecualizada);
+        }
+        if (etapa <= ETAPA_DESENFOQUE) suavizada = liberar(suavizada);
+        if (etapa <= ETAPA_UMBRAL) umbral = liberar(umbral);
+        if (etapa <= ETAPA_MORFOLOGIA) mascara = liberar(mascara);
+        if (etapa <= ETAPA_CONTORNOS) {
+            for (MatOfPoint contorno : contornos) contorno.release();
+            contornos.clear();
+            medidas = null;
+        }
+    }
+
+    private static Mat liberar(Mat mat) {
+        if (mat != null) mat.release();
+        return null;
+    }
+
+    private void preparar(DetectionParams params) {
+        Mat redimensionada = new Mat();
+        Mat gris = new Mat();
+        try {
+            Mat base = SporeDetector.aResolucionDeTrabajo(entrada, params, redimensionada);
+            Mat vista = params.roi != null ? base.submat(params.roi) : base;
+            zona = vista.clone();
+            if (vista != base) vista.release();
+            ecualizada = new Mat();
+            Imgproc.equalizeHist(SporeDetector.escalaDeGrises(zona, gris), ecualizada);
+            claves[ETAPA_PREPARACION] = clavePreparacion(params);
+        } finally {
+            redimensionada.release();
+            gris.release();
+        }
+    }
+
+    /**
+     * Busca los contornos y calcula una sola vez las medidas que usan los filtros, incluida la solidez
+     * (la única que necesita OpenCV), para que el filtrado no vuelva a tocar memoria nativa.
+     */
+    private void buscarContornos(DetectionParams params, DetectionMonitor monitor) {
+        Mat copia = mascara.clone();
+        Mat jerarquia = new Mat();
+        try {
+            Imgproc.findContours(copia, contornos, jerarquia, params.contourMode, params.contourMethod);
+        } finally {
+            copia.release();
+            jerarquia.release();
+        }
+
+        ContourScratch scratch = SporeDetector.SCRATCH.get();
+        Medidas m = new Medidas(contornos.size());
+        for (int i = 0; i < m.n; i++) {
+            if ((i + 1) % 256 == 0) monitor.verificarCancelacion();
+            MatOfPoint contorno = contornos.get(i);
+            scratch.cargar(contorno);
+            double area = scratch.area();
+            double areaEnvolvente = scratch.areaEnvolvente(contorno);
+            m.areas[i] = area;
+            m.perimetros[i] = scratch.perimetro();
+            m.relacionesAspecto[i] = (double) scratch.rectAncho / scratch.rectAlto;
+            m.solideces[i] = (areaEnvolvente == 0) ? 0 : (area / areaEnvolvente);
+            m.centrosRectX[i] = scratch.rectX + scratch.rectAncho / 2.0;
+            m.centrosRectY[i] = scratch.rectY + scratch.rectAlto / 2.0;
+            boolean conMomentos = scratch.centroide();
+            m.centrosX[i] = conMomentos ? scratch.centroX : m.centrosRectX[i];
+            m.centrosY[i] = conMomentos ? scratch.centroY : m.centrosRectY[i];
+        }
+        medidas = m;
+    }
+
+    /**
+     * Pasa cada contorno por {@link ContourClassifier} con sus medidas guardadas; el clasificador también divide
+     * los grumos y lleva los contadores.
+     */
+    private DetectionResult filtrar(DetectionParams params) {
+        Medidas m = medidas;
+        ContourClassifier clasificador = new ContourClassifier(params, zona.cols(), zona.rows(),
+                SporeDetector.SCRATCH.get());
+        SporeTable.Builder tabla = new SporeTable.Builder();
+        List<MatOfPoint> aceptados = new ArrayList<>();
+
+        for (m.actual = 0; m.actual < m.n; m.actual++) {
+            MatOfPoint contorno = contornos.get(m.actual);
+            if (clasificador.clasificar(contorno, m, tabla)) {
+                // Cabecera nueva sobre los mismos puntos: liberar el resultado no libera los contornos guardados.
+                aceptados.add(new MatOfPoint(contorno));
+            }
+        }
+        SporeTable esporas = tabla.build();
+        int[][] conteoPorCuadro = params.hasGrid() ? esporas.conteoPorCuadro(params.gridRows, params.gridCols) : null;
+        return new DetectionResult(esporas, m.n, conteoPorCuadro, clasificador.getEstadisticas(), zona.clone(),
+                aceptados);
+    }
+
+    private static Object clavePreparacion(DetectionParams p) {
+        return Arrays.asList(p.workWidth, p.workHeight, p.roi);
+    }
+
+    private static Object claveDesenfoque(DetectionParams p) {
+        return p.blurKernelSize;
+    }
+
+    private static Object claveUmbral(DetectionParams p) {
+        return Arrays.asList(p.adaptiveBlockSize, p.adaptiveC);
+    }
+
+    private static Object claveMorfologia(DetectionParams p) {
+        return Arrays.asList(p.openKernelSize, p.openIterations, p.closeKernelSize, p.closeIterations);
+    }
+
+    private static Object claveContornos(DetectionParams p) {
+        return Arrays.asList(p.contourMode, p.contourMethod);
+    }
+
+    /**
+     * Medidas de forma de cada contorno, en arreglos paralelos indexados como la lista de contornos. Como
+     * {@link ContourClassifier.Medidas} da las del contorno {@link #actual}.
+     */
+    private static final class Medidas implements ContourClassifier.Medidas {
+        final int n;
+        final double[] areas;
+        final double[] perimetros;
+        final double[] relacionesAspecto;
+        final double[] solideces;
+        final double[] centrosRectX;
+        final double[] centrosRectY;
+        final double[] centrosX;
+        final double[] centrosY;
+        int actual;
+
+        Medidas(int n) {
+            this.n = n;
+            areas = new double[n];
+            perimetros = new double[n];
+            relacionesAspecto = new double[n];
+            solideces = new double[n];
+            centrosRectX = new double[n];
+            centrosRectY = new double[n];
+            centrosX = new double[n];
+            centrosY = new double[n];
+        }
+
+        @Override
+        public double area() {
+            return areas[actual];
+        }
+
+        @Override
+        public double relacionAspecto() {
+            return relacionesAspecto[actual];
+        }
+
+        @Override
+        public double perimetro() {
+            return perimetros[actual];
+        }
+
+        @Override
+        public double solidez() {
+            return solideces[actual];
+        }
+
+        @Override
+        public double centroRectX() {
+            return centrosRectX[actual];
+        }
+
+        @Override
+        public double centroRectY() {
+            return centrosRectY[actual];
+        }
+
+        @Override
+        public double centroX() {
+            return centrosX[actual];
+        }
+
+        @Override
+        public double centroY() {
+            return centrosY[actual];
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.menuesporas.detector;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * *LeakTracker*: Detecta los objetos prestados por un pool (Mats, Bitmaps) que nunca se devolvieron.
+ *
+ * Cada préstamo guarda una referencia débil al objeto y la pila de llamadas que lo pidió. Si el recolector
+ * de basura descarta el objeto sin que se haya devuelto, su memoria nativa quedó fuera del pool hasta el
+ * finalizador: es una fuga, y se registra con el lugar del préstamo. Las referencias recolectadas se revisan en
+ * cada préstamo y devolución, sin hilos propios.
+ *
+ * Capturar la pila en cada préstamo es caro: solo se activa en las compilaciones de depuración.
+ * Es seguro entre hilos.
+ */
+public final class LeakTracker<T> {
+
+    // Fugas que se conservan con su pila para mostrarlas; el contador sigue contando todas.
+    private static final int MAX_FUGAS_GUARDADAS = 20;
+    // Marcos de la pila que se muestran de cada fuga.
+    private static final int MARCOS = 6;
+
+    private final ReferenceQueue<T> recolectados = new ReferenceQueue<>();
+    // Objeto -> préstamo pendiente. Los Mats y Bitmaps no redefinen equals, así que la clave es la identidad.
+    private final Map<T, Prestamo<T>> pendientes = new WeakHashMap<>();
+    // Mantiene vivos los préstamos (no sus objetos) para que lleguen a la cola al recolectarse los objetos.
+    private final Set<Prestamo<T>> vivos = new HashSet<>();
+    private final ArrayDeque<String> fugas = new ArrayDeque<>();
+    private long totalFugas;
+
+    private static final class Prestamo<T> extends WeakReference<T> {
+        final String descripcion;
+        final Throwable origen;
+
+        Prestamo(T objeto, ReferenceQueue<T> cola, String descripcion) {
+            super(objeto, cola);
+            this.descripcion = descripcion;
+            this.origen = new Throwable();
+        }
+    }
+
+    /**
+     * Registra el préstamo de un objeto.
+     *
+     * @param descripcion Qué se prestó (por ejemplo, "Mat 480x640 tipo 0"), para el informe de fugas.
+     */
+    public synchronized void prestado(T objeto, String descripcion) {
+        revisar();
+        Prestamo<T> prestamo = new Prestamo<>(objeto, recolectados, descripcion);
+        pendientes.put(objeto, prestamo);
+        vivos.add(prestamo);
+    }
+
+    /**
+     * Registra la devolución de un objeto.
+     *
+     * @return false si el objeto no estaba prestado (creado fuera del pool, o devuelto dos veces).
+     */
+    public synchronized boolean devuelto(T objeto) {
+        revisar();
+        Prestamo<T> prestamo = pendientes.remove(objeto);
+        if (prestamo == null) return false;
+        vivos.remove(prestamo);
+        prestamo.clear();
+        return true;
+    }
+
+    public synchronized int getEnUso() {
+        revisar();
+        return vivos.size();
+    }
+
+    public synchronized long getTotalFugas() {
+        revisar();
+        return totalFugas;
+    }
+
+    /**
+     * Las últimas fugas detectadas, de la más reciente a la más antigua, con la pila del préstamo.
+     */
+    public synchronized List<String> getUltimasFugas() {
+        revisar();
+        return new ArrayList<>(fugas);
+    }
+
+    private void revisar() {
+        Object referencia;
+        while ((referencia = recolectados.poll()) != null) {
+            @SuppressWarnings("unchecked")
+            Prestamo<T> prestamo = (Prestamo<T>) referencia;
+            // Un préstamo devuelto ya salió de vivos (y se limpió, así que no debería encolarse).
+            if (!vivos.remove(prestamo)) continue;
+            totalFugas++;
+            fugas.addFirst(informe(prestamo));
+            if (fugas.size() > MAX_FUGAS_GUARDADAS) fugas.removeLast();
+        }
+    }
+
+    private static String informe(Prestamo<?> prestamo) {
+        StringBuilder s = new StringBuilder(prestamo.descripcion).append(" sin devolver, pedido en:");
+        StackTraceElement[] pila = prestamo.origen.getStackTrace();
+        int mostrados = 0;
+        for (StackTraceElement marco : pila) {
+            // Se saltan los marcos del propio rastreador y del pool.
+            String clase = marco.getClassName();
+            if (clase.equals(LeakTracker.class.getName()) || clase.endsWith("Pool")) continue;
+            s.append("\n  at ").append(marco);
+            if (++mostrados == MARCOS) break;
+        }
+        return s.toString();
+    }
+}
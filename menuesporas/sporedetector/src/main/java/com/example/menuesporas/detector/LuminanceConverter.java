@@ -0,0 +1,102 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * *LuminanceConverter*: Convierte píxeles ARGB (los de Bitmap.getPixels) directamente en la imagen de 8 bits y un canal
+ * que usan todas las etapas del detector, sin pasar por un Mat RGBA. Así el redimensionado, el recorte y la copia
+ * de la zona de trabajo mueven 1 byte por píxel en lugar de 4.
+ *
+ * El resultado es idéntico, bit a bit, al de Utils.bitmapToMat seguido de cvtColor(COLOR_BGR2GRAY), que es lo que
+ * hacía el pipeline: se usan los mismos coeficientes en punto fijo de OpenCV 4 (15 bits, con redondeo) y, como el Mat
+ * de Android es RGBA, el rojo recibe el peso que OpenCV da al azul y viceversa. Con imágenes opacas (las fotos del
+ * microscopio) los conteos no cambian; lo verifica LuminanceParityTest.
+ */
+public final class LuminanceConverter {
+
+    // Coeficientes de COLOR_BGR2GRAY en punto fijo, aplicados a los canales 0, 1 y 2 del Mat RGBA (R, G y B).
+    static final int PESO_R = 3735;
+    static final int PESO_G = 19235;
+    static final int PESO_B = 9798;
+    static final int BITS = 15;
+    private static final int REDONDEO = 1 << (BITS - 1);
+
+    // Filas que se leen por bloque, para no reservar un int[] del tamaño de la imagen completa.
+    public static final int FILAS_POR_BLOQUE = 16;
+
+    // Memoria de un bloque, reutilizada por hilo como ContourScratch: convertir una imagen no reserva nada.
+    private static final ThreadLocal<Bloque> BLOQUE = ThreadLocal.withInitial(Bloque::new);
+
+    private LuminanceConverter() {
+    }
+
+    /**
+     * Fuente de píxeles ARGB por filas (por ejemplo, Bitmap.getPixels), para no depender de Android.
+     */
+    public interface FuenteArgb {
+        void leerFilas(int[] destino, int primeraFila, int filas);
+    }
+
+    /**
+     * Los píxeles ARGB de un bloque de filas y su luminancia. Crece hasta el bloque más grande que se haya
+     * convertido en el hilo y no se achica.
+     */
+    private static final class Bloque {
+        int[] argb = new int[0];
+        byte[] gris = new byte[0];
+
+        void reservar(int pixeles) {
+            if (argb.length < pixeles) {
+                argb = new int[pixeles];
+                gris = new byte[pixeles];
+            }
+        }
+    }
+
+    /**
+     * Luminancia de un único píxel ARGB.
+     */
+    public static int gris(int argb) {
+        int r = (argb >> 16) & 0xFF;
+        int g = (argb >> 8) & 0xFF;
+        int b = argb & 0xFF;
+        return (r * PESO_R + g * PESO_G + b * PESO_B + REDONDEO) >> BITS;
+    }
+
+    /**
+     * Convierte n píxeles ARGB a partir de desde en bytes de luminancia a partir de destino.
+     */
+    public static void convertir(int[] argb, int desde, int n, byte[] gris, int destino) {
+        for (int i = 0; i < n; i++) {
+            gris[destino + i] = (byte) gris(argb[desde + i]);
+        }
+    }
+
+    /**
+     * Construye el Mat CV_8UC1 de una imagen ARGB leyendo {@link #FILAS_POR_BLOQUE} filas cada vez.
+     * Cada bloque se convierte en la memoria del hilo y se copia a sus filas del Mat con una llamada JNI.
+     */
+    public static Mat desdeArgb(FuenteArgb fuente, int ancho, int alto) {
+        Mat mat = new Mat(alto, ancho, CvType.CV_8UC1);
+        desdeArgb(fuente, mat);
+        return mat;
+    }
+
+    /**
+     * Igual que {@link #desdeArgb(FuenteArgb, int, int)}, pero escribe en un Mat CV_8UC1 continuo ya reservado
+     * (por ejemplo, uno de un {@link MatPool}) del tamaño de la imagen.
+     */
+    public static void desdeArgb(FuenteArgb fuente, Mat destino) {
+        int ancho = destino.cols();
+        int alto = destino.rows();
+        Bloque bloque = BLOQUE.get();
+        bloque.reservar(ancho * Math.min(FILAS_POR_BLOQUE, alto));
+        for (int fila = 0; fila < alto; fila += FILAS_POR_BLOQUE) {
+            int filas = Math.min(FILAS_POR_BLOQUE, alto - fila);
+            fuente.leerFilas(bloque.argb, fila, filas);
+            convertir(bloque.argb, 0, ancho * filas, bloque.gris, 0);
+            destino.put(fila, 0, bloque.gris, 0, ancho * filas);
+        }
+    }
+}
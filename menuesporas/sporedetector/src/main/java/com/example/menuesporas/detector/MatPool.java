@@ -0,0 +1,140 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * *MatPool*: Mats reutilizables, agrupados por tamaño y tipo, para que el pipeline no reserve y libere memoria
+ * nativa en cada imagen. En un lote o en el conteo en vivo todas las imágenes tienen el mismo tamaño de
+ * trabajo: después de la primera, cada Mat intermedio sale del pool y el heap nativo deja de crecer.
+ *
+ * - {@link #obtener} entrega un Mat libre del tamaño y tipo pedidos, o uno nuevo si no hay. Su contenido es
+ *   el de su uso anterior: solo sirve como destino de operaciones que escriben todos los píxeles.
+ * - {@link #devolver} lo deja libre para el siguiente uso. Se agrupa por su tamaño al devolverlo, así que un Mat
+ *   que OpenCV redimensionó como destino vuelve al grupo correcto. Si el grupo está lleno o se supera el
+ *   límite de bytes, se libera.
+ *
+ * {@link #SIN_REUSO} no guarda nada: crea un Mat en cada pedido y lo libera al devolverlo, como antes del pool
+ * (es el de los detectores creados sin pool, por ejemplo en los benchmarks).
+ *
+ * Con {@link #setRastrearFugas(boolean)} cada préstamo se registra en un {@link LeakTracker}. Es seguro entre
+ * hilos.
+ */
+public final class MatPool {
+
+    public static final MatPool SIN_REUSO = new MatPool(0, 0);
+
+    private final int maxPorGrupo;
+    private final long maxBytesLibres;
+    private final Map<Long, ArrayDeque<Mat>> libres = new HashMap<>();
+    private long bytesLibres;
+    private long creados;
+    private long reutilizados;
+    private long liberados;
+    private volatile LeakTracker<Mat> rastreador;
+
+    /**
+     * @param maxPorGrupo    Mats libres que se guardan como máximo de cada tamaño y tipo.
+     * @param maxBytesLibres Bytes que pueden ocupar en total los Mats libres.
+     */
+    public MatPool(int maxPorGrupo, long maxBytesLibres) {
+        this.maxPorGrupo = maxPorGrupo;
+        this.maxBytesLibres = maxBytesLibres;
+    }
+
+    /**
+     * Activa o desactiva el registro de los préstamos. Los Mats prestados antes de activarlo no se rastrean.
+     */
+    public void setRastrearFugas(boolean rastrear) {
+        if (rastrear == (rastreador != null)) return;
+        rastreador = rastrear ? new LeakTracker<>() : null;
+    }
+
+    /**
+     * Un Mat de filas x columnas del tipo indicado, con contenido indefinido.
+     */
+    public Mat obtener(int filas, int columnas, int tipo) {
+        Mat mat = null;
+        synchronized (this) {
+            ArrayDeque<Mat> grupo = libres.get(clave(filas, columnas, tipo));
+            if (grupo != null && !grupo.isEmpty()) {
+                mat = grupo.pollLast();
+                bytesLibres -= bytes(mat);
+                reutilizados++;
+            } else {
+                creados++;
+            }
+        }
+        if (mat == null) mat = new Mat(filas, columnas, tipo);
+        LeakTracker<Mat> r = rastreador;
+        if (r != null) r.prestado(mat, "Mat " + filas + "x" + columnas + " tipo " + tipo);
+        return mat;
+    }
+
+    /**
+     * Devuelve un Mat al pool (no hace falta que lo haya creado el pool). Después no se debe volver a usar.
+     * Acepta null para simplificar los bloques finally.
+     */
+    public void devolver(Mat mat) {
+        if (mat == null) return;
+        LeakTracker<Mat> r = rastreador;
+        if (r != null) r.devuelto(mat);
+        // Las vistas (submat) comparten los píxeles de otro Mat: no se pueden prestar como si fueran propias.
+        if (mat.empty() || !mat.isContinuous() || mat.isSubmatrix()) {
+            mat.release();
+            return;
+        }
+        long tamano = bytes(mat);
+        synchronized (this) {
+            if (maxPorGrupo > 0 && bytesLibres + tamano <= maxBytesLibres) {
+                ArrayDeque<Mat> grupo = libres.get(clave(mat.rows(), mat.cols(), mat.type()));
+                if (grupo == null) {
+                    grupo = new ArrayDeque<>();
+                    libres.put(clave(mat.rows(), mat.cols(), mat.type()), grupo);
+                }
+                if (grupo.size() < maxPorGrupo) {
+                    grupo.addLast(mat);
+                    bytesLibres += tamano;
+                    return;
+                }
+            }
+            liberados++;
+        }
+        mat.release();
+    }
+
+    /**
+     * Libera todos los Mats libres (por ejemplo, cuando el sistema pide memoria). Los prestados no se tocan.
+     */
+    public void vaciar() {
+        ArrayDeque<Mat> aLiberar = new ArrayDeque<>();
+        synchronized (this) {
+            for (ArrayDeque<Mat> grupo : libres.values()) aLiberar.addAll(grupo);
+            liberados += aLiberar.size();
+            libres.clear();
+            bytesLibres = 0;
+        }
+        for (Mat mat : aLiberar) mat.release();
+    }
+
+    public synchronized PoolStats estadisticas() {
+        int enPool = 0;
+        for (ArrayDeque<Mat> grupo : libres.values()) enPool += grupo.size();
+        LeakTracker<Mat> r = rastreador;
+        return new PoolStats(creados, reutilizados, liberados, enPool, bytesLibres,
+                r != null ? r.getEnUso() : -1, r != null ? r.getTotalFugas() : -1,
+                r != null ? r.getUltimasFugas() : Collections.<String>emptyList());
+    }
+
+    private static long clave(int filas, int columnas, int tipo) {
+        return ((long) filas << 36) | ((long) columnas << 12) | (tipo & 0xFFF);
+    }
+
+    private static long bytes(Mat mat) {
+        return mat.total() * mat.elemSize();
+    }
+}
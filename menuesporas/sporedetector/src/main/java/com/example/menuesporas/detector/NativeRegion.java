@@ -0,0 +1,94 @@
+package com.example.menuesporas.detector;
+
+/**
+ * *NativeRegion*: Región de interés elegida sobre la vista previa, traducida a píxeles de la imagen original para
+ * decodificar solo esa parte a resolución nativa (en Android, con BitmapRegionDecoder).
+ *
+ * La región llega como fracciones del ancho y el alto de la imagen original: la vista previa es la imagen completa
+ * redimensionada al tamaño de trabajo (cada eje por separado), así que una fracción de la vista previa es la misma
+ * fracción de la original. Las dos deben estar en el mismo marco: en Android, la imagen tal como está guardada, sin
+ * aplicar la orientación EXIF, que es la que lee BitmapRegionDecoder. Si la región tiene más píxeles que el máximo
+ * indicado, se decodifica con un submuestreo (potencia de 2, como inSampleSize) para que el análisis no reserve la
+ * imagen completa de 48 MP.
+ *
+ * {@link #parametros} adapta el preset a la región decodificada: las áreas y los kernels se escalan por
+ * {@link #escala} (ver {@link DetectionParams#escalado}), de modo que una espora de 3 px² en la imagen de trabajo se
+ * mide con 3·escala² px² de detalle.
+ */
+public final class NativeRegion {
+
+    // Rectángulo en píxeles de la imagen original.
+    public final int x;
+    public final int y;
+    public final int ancho;
+    public final int alto;
+    public final int submuestreo;  // inSampleSize con el que se decodifica (1 = resolución nativa).
+    public final double escala;    // Píxeles decodificados por píxel de la imagen de trabajo, en cada eje.
+
+    private NativeRegion(int x, int y, int ancho, int alto, int submuestreo, double escala) {
+        this.x = x;
+        this.y = y;
+        this.ancho = ancho;
+        this.alto = alto;
+        this.submuestreo = submuestreo;
+        this.escala = escala;
+    }
+
+    /**
+     * @param izquierda     Borde izquierdo de la región, como fracción (0-1) del ancho de la imagen original.
+     * @param arriba        Borde superior, como fracción del alto.
+     * @param derecha       Borde derecho, como fracción del ancho.
+     * @param abajo         Borde inferior, como fracción del alto.
+     * @param anchoOriginal Ancho de la imagen original, en píxeles.
+     * @param altoOriginal  Alto de la imagen original.
+     * @param anchoTrabajo  Ancho de trabajo del preset (el de la vista previa).
+     * @param altoTrabajo   Alto de trabajo del preset.
+     * @param maxPixeles    Píxeles que puede tener como máximo la región decodificada.
+     * @throws IllegalArgumentException Si la región queda vacía.
+     */
+    public static NativeRegion desdeFracciones(double izquierda, double arriba, double derecha, double abajo,
+                                               int anchoOriginal, int altoOriginal, int anchoTrabajo, int altoTrabajo,
+                                               long maxPixeles) {
+        int x0 = (int) Math.floor(limitar(Math.min(izquierda, derecha)) * anchoOriginal);
+        int y0 = (int) Math.floor(limitar(Math.min(arriba, abajo)) * altoOriginal);
+        int x1 = (int) Math.ceil(limitar(Math.max(izquierda, derecha)) * anchoOriginal);
+        int y1 = (int) Math.ceil(limitar(Math.max(arriba, abajo)) * altoOriginal);
+        if (x1 <= x0 || y1 <= y0) {
+            throw new IllegalArgumentException("La región de interés está vacía.");
+        }
+        int ancho = x1 - x0;
+        int alto = y1 - y0;
+        int submuestreo = 1;
+        while ((long) (ancho / submuestreo) * (alto / submuestreo) > maxPixeles) {
+            submuestreo *= 2;
+        }
+        // Media geométrica de los dos ejes: la vista previa pudo estirar la imagen si no tenía la proporción de
+        // trabajo, y las áreas escalan con el producto de ambos.
+        double escalaNativa = Math.sqrt((double) anchoOriginal / anchoTrabajo * altoOriginal / altoTrabajo);
+        return new NativeRegion(x0, y0, ancho, alto, submuestreo, escalaNativa / submuestreo);
+    }
+
+    /**
+     * Parámetros para analizar la región decodificada: el preset escalado, con la región completa como tamaño de
+     * trabajo, sin recorte y sin cuadrícula (la región no coincide con los cuadros del preset).
+     *
+     * @param anchoDecodificado Ancho real del Bitmap decodificado (el decodificador redondea el submuestreo).
+     * @param altoDecodificado  Alto real del Bitmap decodificado.
+     */
+    public DetectionParams parametros(DetectionParams base, int anchoDecodificado, int altoDecodificado) {
+        return base.escalado(escala).toBuilder()
+                .workSize(anchoDecodificado, altoDecodificado)
+                .roi(null)
+                .grid(0, 0)
+                .build();
+    }
+
+    private static double limitar(double fraccion) {
+        return Math.max(0, Math.min(1, fraccion));
+    }
+
+    @Override
+    public String toString() {
+        return ancho + "x" + alto + "+" + x + "+" + y + " (1:" + submuestreo + ", escala " + escala + ")";
+    }
+}
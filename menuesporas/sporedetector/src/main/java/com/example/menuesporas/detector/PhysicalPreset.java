@@ -0,0 +1,175 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.Rect;
+
+/**
+ * *PhysicalPreset*: Preset de detección con los umbrales que dependen de la resolución expresados en unidades
+ * físicas: el área de una espora en µm² y el tamaño de los kernels (desenfoque, bloque del umbral adaptativo,
+ * apertura y cierre) en µm. {@link #parametros(SpatialCalibration, int, int)} los convierte a píxeles para la
+ * calibración y el tamaño de trabajo de cada análisis, así que el mismo preset sirve a 640x480, a la resolución de
+ * la cuadrícula rectificada o a cualquier otra.
+ *
+ * Los valores sin unidades (circularidad, solidez, relación de aspecto, constante del umbral, iteraciones, modo de
+ * contornos, cuadrícula) se toman de una plantilla en píxeles, cuyo tamaño de trabajo es el de referencia. El
+ * recorte de la plantilla se escala con el tamaño de trabajo.
+ */
+public final class PhysicalPreset {
+
+    private final DetectionParams plantilla;
+    public final double areaMinimaUm2;
+    public final double areaMaximaUm2;
+    public final double desenfoqueUm;          // 0 = sin desenfoque.
+    public final double bloqueAdaptativoUm;
+    public final double aperturaUm;
+    public final double cierreUm;
+
+    private PhysicalPreset(Builder b) {
+        plantilla = b.plantilla;
+        areaMinimaUm2 = b.areaMinimaUm2;
+        areaMaximaUm2 = b.areaMaximaUm2;
+        desenfoqueUm = b.desenfoqueUm;
+        bloqueAdaptativoUm = b.bloqueAdaptativoUm;
+        aperturaUm = b.aperturaUm;
+        cierreUm = b.cierreUm;
+    }
+
+    /**
+     * Convierte un preset en píxeles, ajustado a su propio tamaño de trabajo con la calibración dada.
+     * Con la misma calibración y tamaño, {@link #parametros(SpatialCalibration, int, int)} devuelve los mismos
+     * parámetros.
+     */
+    public static PhysicalPreset desdePixeles(DetectionParams params, SpatialCalibration calibracion) {
+        double um = calibracion.umPorPixel(params.workWidth);
+        return new Builder(params)
+                .areaUm2(params.minArea * um * um, params.maxArea * um * um)
+                .desenfoqueUm(params.blurKernelSize <= 1 ? 0 : params.blurKernelSize * um)
+                .bloqueAdaptativoUm(params.adaptiveBlockSize * um)
+                .aperturaUm(params.openKernelSize * um)
+                .cierreUm(params.closeKernelSize * um)
+                .build();
+    }
+
+    public DetectionParams getPlantilla() {
+        return plantilla;
+    }
+
+    public Builder toBuilder() {
+        return new Builder(plantilla)
+                .areaUm2(areaMinimaUm2, areaMaximaUm2)
+                .desenfoqueUm(desenfoqueUm)
+                .bloqueAdaptativoUm(bloqueAdaptativoUm)
+                .aperturaUm(aperturaUm)
+                .cierreUm(cierreUm);
+    }
+
+    /**
+     * Parámetros en píxeles para la calibración y el tamaño de trabajo indicados.
+     */
+    public DetectionParams parametros(SpatialCalibration calibracion, int anchoTrabajo, int altoTrabajo) {
+        double um = calibracion.umPorPixel(anchoTrabajo);
+        double escala = (double) anchoTrabajo / plantilla.workWidth;
+        DetectionParams.Builder b = plantilla.toBuilder()
+                .workSize(anchoTrabajo, altoTrabajo)
+                .blurKernelSize(desenfoqueUm <= 0 ? 1 : kernelImpar(desenfoqueUm / um))
+                .adaptiveBlockSize(Math.max(3, kernelImpar(bloqueAdaptativoUm / um)))
+                .open(kernel(aperturaUm / um), plantilla.openIterations)
+                .close(kernel(cierreUm / um), plantilla.closeIterations)
+                .area(areaPx(areaMinimaUm2 / (um * um)), areaPx(areaMaximaUm2 / (um * um)))
+                .drawContourThickness(Math.max(1, (int) Math.round(plantilla.drawContourThickness * escala)));
+        Rect roi = plantilla.roi;
+        if (roi != null && (anchoTrabajo != plantilla.workWidth || altoTrabajo != plantilla.workHeight)) {
+            double escalaY = (double) altoTrabajo / plantilla.workHeight;
+            int x = (int) Math.round(roi.x * escala);
+            int y = (int) Math.round(roi.y * escalaY);
+            b.roi(new Rect(x, y,
+                    Math.min(anchoTrabajo - x, (int) Math.round(roi.width * escala)),
+                    Math.min(altoTrabajo - y, (int) Math.round(roi.height * escalaY))));
+        }
+        return b.build();
+    }
+
+    /**
+     * Parámetros en píxeles para la calibración dada, al tamaño de trabajo de la plantilla.
+     */
+    public DetectionParams parametros(SpatialCalibration calibracion) {
+        return parametros(calibracion, plantilla.workWidth, plantilla.workHeight);
+    }
+
+    /**
+     * Kernel de morfología más cercano al tamaño en píxeles (al menos 1).
+     */
+    private static int kernel(double pixeles) {
+        return Math.max(1, (int) Math.round(pixeles));
+    }
+
+    /**
+     * Kernel impar (el desenfoque Gaussiano y el umbral adaptativo lo exigen) más cercano al tamaño en píxeles.
+     */
+    private static int kernelImpar(double pixeles) {
+        int k = kernel(pixeles);
+        return k % 2 == 0 ? k + 1 : k;
+    }
+
+    /**
+     * Redondea el área a millonésimas de píxel: la conversión de ida y vuelta por µm² no debe mover un umbral
+     * (las áreas de los contornos son múltiplos de 0,5 px² y caen justo sobre los umbrales enteros).
+     */
+    private static double areaPx(double pixeles) {
+        if (Double.isInfinite(pixeles)) return pixeles;
+        return Math.round(pixeles * 1e6) / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return "AreaUm2=" + areaMinimaUm2 + "-" + areaMaximaUm2 + ", BlurUm=" + desenfoqueUm
+                + ", BlockUm=" + bloqueAdaptativoUm + ", OpenUm=" + aperturaUm + ", CloseUm=" + cierreUm
+                + ", Plantilla: " + plantilla;
+    }
+
+    public static final class Builder {
+        private final DetectionParams plantilla;
+        private double areaMinimaUm2;
+        private double areaMaximaUm2;
+        private double desenfoqueUm;
+        private double bloqueAdaptativoUm;
+        private double aperturaUm;
+        private double cierreUm;
+
+        /**
+         * @param plantilla Valores sin unidades, tamaño de trabajo y recorte de referencia.
+         */
+        public Builder(DetectionParams plantilla) {
+            this.plantilla = plantilla;
+        }
+
+        public Builder areaUm2(double min, double max) {
+            this.areaMinimaUm2 = min;
+            this.areaMaximaUm2 = max;
+            return this;
+        }
+
+        public Builder desenfoqueUm(double um) {
+            this.desenfoqueUm = um;
+            return this;
+        }
+
+        public Builder bloqueAdaptativoUm(double um) {
+            this.bloqueAdaptativoUm = um;
+            return this;
+        }
+
+        public Builder aperturaUm(double um) {
+            this.aperturaUm = um;
+            return this;
+        }
+
+        public Builder cierreUm(double um) {
+            this.cierreUm = um;
+            return this;
+        }
+
+        public PhysicalPreset build() {
+            return new PhysicalPreset(this);
+        }
+    }
+}
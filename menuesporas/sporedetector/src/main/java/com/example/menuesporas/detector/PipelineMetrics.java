@@ -0,0 +1,228 @@
+package com.example.menuesporas.detector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * *PipelineMetrics*: Métricas de un análisis: el tiempo de cada etapa, los contornos que entraron al filtrado y
+ * los que salieron, y el máximo de memoria nativa observado.
+ *
+ * Las etapas son consecutivas: {@link #etapa(String)} cierra la etapa en curso y abre la siguiente, igual que el
+ * detector informa su avance con {@link DetectionMonitor#reportar(int, String)}, y {@link #terminar()} cierra la
+ * última. Los tiempos se miden con System.nanoTime, que es monótono. Una etapa que se repite (por ejemplo, en cada
+ * imagen de un lote) acumula su tiempo y sus repeticiones.
+ *
+ * Cada etapa se abre también como una sección del {@link Trazador} (en Android, android.os.Trace, para verla en
+ * Perfetto), y en cada cambio de etapa se lee la {@link SondaMemoria}: el máximo es el de esas lecturas, no el pico
+ * exacto. Sin trazador ni sonda solo se miden los tiempos.
+ *
+ * No es seguro entre hilos: lo usa únicamente el hilo que ejecuta el análisis, porque las secciones de traza se
+ * deben abrir y cerrar en el mismo hilo.
+ */
+public final class PipelineMetrics {
+
+    /**
+     * Destino de las secciones de traza de cada etapa.
+     */
+    public interface Trazador {
+
+        Trazador NINGUNO = new Trazador() {
+            @Override
+            public void abrir(String seccion) {
+            }
+
+            @Override
+            public void cerrar() {
+            }
+        };
+
+        void abrir(String seccion);
+
+        void cerrar();
+    }
+
+    /**
+     * Lectura de la memoria nativa en uso, en bytes (-1 si no se puede medir).
+     */
+    public interface SondaMemoria {
+
+        SondaMemoria NINGUNA = new SondaMemoria() {
+            @Override
+            public long bytesNativos() {
+                return -1;
+            }
+        };
+
+        long bytesNativos();
+    }
+
+    /**
+     * Tiempo acumulado de una etapa.
+     */
+    public static final class Etapa {
+        public final String nombre;
+        private long nanos;
+        private long maximoNanos;
+        private int veces;
+
+        Etapa(String nombre) {
+            this.nombre = nombre;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getMaximoNanos() {
+            return maximoNanos;
+        }
+
+        public int getVeces() {
+            return veces;
+        }
+
+        public double getMs() {
+            return nanos / 1e6;
+        }
+    }
+
+    private final Trazador trazador;
+    private final SondaMemoria memoria;
+    private final List<Etapa> etapas = new ArrayList<>();
+    private final long inicioNanos;
+    private final long memoriaInicial;
+    private long memoriaMaxima;
+    private Etapa actual;
+    private long inicioActualNanos;
+    private long duracionNanos = -1;
+    private int contornosEncontrados;
+    private int contornosRechazados;
+    private int esporas;
+    private int detecciones;
+
+    public PipelineMetrics() {
+        this(Trazador.NINGUNO, SondaMemoria.NINGUNA);
+    }
+
+    public PipelineMetrics(Trazador trazador, SondaMemoria memoria) {
+        this.trazador = trazador;
+        this.memoria = memoria;
+        this.inicioNanos = System.nanoTime();
+        this.memoriaInicial = memoria.bytesNativos();
+        this.memoriaMaxima = memoriaInicial;
+    }
+
+    /**
+     * Cierra la etapa en curso y abre la indicada. Después de {@link #terminar()} no hace nada.
+     */
+    public void etapa(String nombre) {
+        if (duracionNanos >= 0) return;
+        long ahora = System.nanoTime();
+        cerrarActual(ahora);
+        actual = buscar(nombre);
+        inicioActualNanos = ahora;
+        trazador.abrir(nombre);
+        muestrearMemoria();
+    }
+
+    /**
+     * Cierra la última etapa y fija la duración total. Se puede llamar más de una vez.
+     */
+    public void terminar() {
+        if (duracionNanos >= 0) return;
+        long ahora = System.nanoTime();
+        cerrarActual(ahora);
+        muestrearMemoria();
+        duracionNanos = ahora - inicioNanos;
+    }
+
+    /**
+     * Suma los contornos de una detección: los que encontró, los que descartó el filtrado y las esporas aceptadas.
+     */
+    public void registrar(DetectionResult deteccion) {
+        detecciones++;
+        contornosEncontrados += deteccion.contornosIniciales;
+        if (deteccion.estadisticasFiltro != null) contornosRechazados += deteccion.estadisticasFiltro.rechazados();
+        esporas += deteccion.getConteo();
+    }
+
+    /**
+     * Las etapas en el orden en que se abrieron por primera vez.
+     */
+    public List<Etapa> getEtapas() {
+        return Collections.unmodifiableList(etapas);
+    }
+
+    /**
+     * Duración total desde la creación hasta {@link #terminar()}, o hasta ahora si todavía no terminó.
+     */
+    public long getDuracionNanos() {
+        return duracionNanos >= 0 ? duracionNanos : System.nanoTime() - inicioNanos;
+    }
+
+    public int getDetecciones() {
+        return detecciones;
+    }
+
+    public int getContornosEncontrados() {
+        return contornosEncontrados;
+    }
+
+    public int getContornosRechazados() {
+        return contornosRechazados;
+    }
+
+    public int getEsporas() {
+        return esporas;
+    }
+
+    /**
+     * Memoria nativa al empezar, en bytes (-1 sin sonda).
+     */
+    public long getMemoriaInicial() {
+        return memoriaInicial;
+    }
+
+    /**
+     * Máximo de memoria nativa leído en los cambios de etapa, en bytes (-1 sin sonda).
+     */
+    public long getMemoriaMaxima() {
+        return memoriaMaxima;
+    }
+
+    private void cerrarActual(long ahora) {
+        if (actual == null) return;
+        long nanos = ahora - inicioActualNanos;
+        actual.nanos += nanos;
+        actual.maximoNanos = Math.max(actual.maximoNanos, nanos);
+        actual.veces++;
+        actual = null;
+        trazador.cerrar();
+    }
+
+    private Etapa buscar(String nombre) {
+        // Son pocas etapas: una búsqueda lineal es más barata que un mapa.
+        for (Etapa e : etapas) {
+            if (e.nombre.equals(nombre)) return e;
+        }
+        Etapa nueva = new Etapa(nombre);
+        etapas.add(nueva);
+        return nueva;
+    }
+
+    private void muestrearMemoria() {
+        memoriaMaxima = Math.max(memoriaMaxima, memoria.bytesNativos());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder(String.format(Locale.ROOT, "%.1f ms", getDuracionNanos() / 1e6));
+        for (Etapa e : etapas) {
+            s.append(String.format(Locale.ROOT, ", %s %.1f ms", e.nombre, e.getMs()));
+        }
+        return s.append(String.format(Locale.ROOT, ", contornos %d -> %d esporas",
+                contornosEncontrados, esporas)).toString();
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.menuesporas.detector;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * *PoolStats*: Contadores de un pool de memoria ({@link MatPool}, o el de Bitmaps de la app) en un momento dado.
+ * enUso y fugas valen -1 si no se rastrean los préstamos.
+ */
+public final class PoolStats {
+
+    public final long creados;       // Pedidos que tuvieron que reservar memoria nueva.
+    public final long reutilizados;  // Pedidos servidos con un objeto libre del pool.
+    public final long liberados;     // Objetos devueltos que se liberaron por no caber en el pool.
+    public final int libres;
+    public final long bytesLibres;
+    public final int enUso;
+    public final long fugas;
+    public final List<String> ultimasFugas;
+
+    public PoolStats(long creados, long reutilizados, long liberados, int libres, long bytesLibres, int enUso,
+                     long fugas, List<String> ultimasFugas) {
+        this.creados = creados;
+        this.reutilizados = reutilizados;
+        this.liberados = liberados;
+        this.libres = libres;
+        this.bytesLibres = bytesLibres;
+        this.enUso = enUso;
+        this.fugas = fugas;
+        this.ultimasFugas = ultimasFugas;
+    }
+
+    @Override
+    public String toString() {
+        String texto = String.format(Locale.ROOT, "creados=%d, reutilizados=%d, liberados=%d, libres=%d (%.1f MB)",
+                creados, reutilizados, liberados, libres, bytesLibres / 1048576.0);
+        if (enUso >= 0) texto += ", en uso=" + enUso + ", fugas=" + fugas;
+        return texto;
+    }
+}
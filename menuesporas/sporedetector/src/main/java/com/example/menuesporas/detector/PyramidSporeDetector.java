@@ -0,0 +1,406 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * *PyramidSporeDetector*: Detección multiescala para muestras con esporas de tamaños muy distintos. Un solo
+ * bloque de umbral adaptativo y una sola banda de áreas no sirven a la vez para las esporas más chicas y las más
+ * grandes; en lugar de correr varios presets (un pipeline completo cada uno), se corre el umbral y los contornos
+ * sobre una pirámide de imágenes, con {@link DetectionParams#pyramidLevels} escalas.
+ *
+ * - Preparación, escala de grises y ecualización: una sola vez, a la resolución de trabajo. Cada escala es la
+ *   anterior reducida a la mitad con pyrDown, a partir de la imagen ecualizada compartida.
+ * - Desenfoque, umbral, morfología, contornos y filtrado: en cada escala, con los kernels y el bloque del preset
+ *   en píxeles de esa escala (en la escala 1/2 el bloque cubre el doble de la imagen), así que cada escala ve
+ *   bien un rango de tamaños distinto.
+ * - El rango [minArea, maxArea] del preset, en píxeles de la resolución de trabajo, se reparte entre las escalas
+ *   en tramos geométricos: la escala completa busca las esporas más chicas y la más reducida las más grandes.
+ *   Los tramos vecinos se solapan un {@link #SOLAPE} para que una espora en el límite no se pierda entre dos.
+ * - Las detecciones de todas las escalas se llevan a coordenadas de la resolución de trabajo y se unen con
+ *   supresión de no máximos sobre los centroides: si el centroide de una detección cae dentro del radio
+ *   equivalente de otra de una escala distinta, se conserva la de mejor forma (circularidad · solidez). Dentro de
+ *   una misma escala no se suprime nada, como en {@link SporeDetector}.
+ * - La cuadrícula, si el preset la define, se asigna después de la unión y con la regla de
+ *   {@link ContourClassifier}: por el centro del rectángulo envolvente, o por el centro de cada espora si es un
+ *   grumo dividido.
+ *
+ * Cada escala tiene la cuarta parte de píxeles que la anterior: tres escalas cuestan menos de 4/3 del umbral y la
+ * morfología de una sola, contra el triple de correr tres presets.
+ */
+public final class PyramidSporeDetector {
+
+    // Fracción en la que se extiende cada tramo de áreas hacia los tramos vecinos.
+    static final double SOLAPE = 0.25;
+
+    private final MatPool mats;
+
+    public PyramidSporeDetector() {
+        this(MatPool.SIN_REUSO);
+    }
+
+    /**
+     * @param mats Pool de los Mats intermedios y de la imagen de trabajo del resultado.
+     */
+    public PyramidSporeDetector(MatPool mats) {
+        this.mats = mats;
+    }
+
+    public DetectionResult detect(Mat input, DetectionParams params) {
+        return detect(input, params, DetectionMonitor.NINGUNO);
+    }
+
+    public DetectionResult detect(Mat input, DetectionParams params, DetectionMonitor monitor) {
+        Mat imgProcesar = null;
+        Mat imgGray = null;
+        Mat zona = null;
+        Mat imagenTrabajo = null;
+        Mat[] piramide = new Mat[params.pyramidLevels];
+        List<Deteccion> detecciones = new ArrayList<>();
+        boolean completado = false;
+        try {
+            // 1-2. Preparación, escala de grises y ecualización, compartidas por todas las escalas.
+            monitor.reportar(10, "Preparando imagen");
+            Mat base = input;
+            if (input.cols() != params.workWidth || input.rows() != params.workHeight) {
+                imgProcesar = mats.obtener(params.workHeight, params.workWidth, input.type());
+                base = SporeDetector.aResolucionDeTrabajo(input, params, imgProcesar);
+            }
+            zona = params.roi != null ? base.submat(params.roi) : base;
+            int filas = zona.rows();
+            int columnas = zona.cols();
+            if (zona.channels() != 1) imgGray = mats.obtener(filas, columnas, CvType.CV_8UC1);
+            piramide[0] = mats.obtener(filas, columnas, CvType.CV_8UC1);
+            Imgproc.equalizeHist(SporeDetector.escalaDeGrises(zona, imgGray), piramide[0]);
+            for (int nivel = 1; nivel < piramide.length; nivel++) {
+                Mat anterior = piramide[nivel - 1];
+                piramide[nivel] = mats.obtener((anterior.rows() + 1) / 2, (anterior.cols() + 1) / 2, CvType.CV_8UC1);
+                Imgproc.pyrDown(anterior, piramide[nivel]);
+            }
+
+            // 3-6. Umbral, morfología, contornos y filtrado en cada escala, con su tramo de áreas.
+            FilterStats estadisticas = new FilterStats();
+            int contornosIniciales = 0;
+            double[] limites = limitesDeArea(params);
+            for (int nivel = 0; nivel < piramide.length; nivel++) {
+                monitor.reportar(30 + 40 * nivel / piramide.length, "Umbralizando a escala 1/" + (1 << nivel));
+                contornosIniciales += detectarNivel(piramide[nivel], nivel, params, limites, estadisticas,
+                        detecciones, monitor);
+            }
+
+            // 7. Unión de las escalas y asignación a la cuadrícula.
+            monitor.reportar(70, "Uniendo escalas");
+            suprimirDuplicados(detecciones, estadisticas);
+            SporeTable.Builder tabla = new SporeTable.Builder();
+            List<MatOfPoint> aceptados = new ArrayList<>();
+            int altoCelda = params.hasGrid() ? filas / params.gridRows : 0;
+            int anchoCelda = params.hasGrid() ? columnas / params.gridCols : 0;
+            for (Deteccion d : detecciones) {
+                if (d.suprimida) continue;
+                if (d.agregar(tabla, params, altoCelda, anchoCelda)) {
+                    aceptados.add(d.contorno);
+                    d.contorno = null;
+                } else {
+                    estadisticas.aceptados--;
+                    estadisticas.fueraDeCuadricula++;
+                }
+            }
+            SporeTable esporas = tabla.build();
+            int[][] conteoPorCuadro = params.hasGrid() ? esporas.conteoPorCuadro(params.gridRows, params.gridCols) : null;
+
+            imagenTrabajo = mats.obtener(filas, columnas, zona.type());
+            zona.copyTo(imagenTrabajo);
+            DetectionResult resultado = new DetectionResult(esporas, contornosIniciales, conteoPorCuadro,
+                    estadisticas, imagenTrabajo, aceptados, mats);
+            completado = true;
+            return resultado;
+        } finally {
+            for (Deteccion d : detecciones) {
+                if (d.contorno != null) d.contorno.release();
+            }
+            if (!completado) mats.devolver(imagenTrabajo);
+            if (zona != null && zona != imgProcesar && zona != input) zona.release();
+            mats.devolver(imgProcesar);
+            mats.devolver(imgGray);
+            for (Mat nivel : piramide) mats.devolver(nivel);
+        }
+    }
+
+    /**
+     * Límites de los tramos de áreas, en píxeles² de la resolución de trabajo: el tramo de la escala i va de
+     * limites[i] a limites[i + 1]. Si el área máxima es infinita, cada tramo cubre un factor 4 (el de una escala
+     * de la pirámide) y el último queda abierto.
+     */
+    static double[] limitesDeArea(DetectionParams params) {
+        int niveles = params.pyramidLevels;
+        double minimo = Math.max(params.minArea, 1);
+        double razon = Double.isInfinite(params.maxArea) ? 4
+                : Math.pow(Math.max(params.maxArea / minimo, 1), 1.0 / niveles);
+        double[] limites = new double[niveles + 1];
+        for (int i = 0; i <= niveles; i++) {
+            limites[i] = minimo * Math.pow(razon, i);
+        }
+        limites[0] = params.minArea;
+        limites[niveles] = params.maxArea;
+        return limites;
+    }
+
+    /**
+     * Parámetros de una escala: los del preset con el tramo de áreas (solapado y en píxeles de la escala), sin
+     * recorte ni cuadrícula (ya se aplicó el recorte y la cuadrícula se asigna al unir las escalas).
+     */
+    static DetectionParams parametrosNivel(DetectionParams params, double[] limites, int nivel, Mat imagen) {
+        double escala2 = (double) (1 << nivel) * (1 << nivel);
+        double minimo = nivel == 0 ? limites[0] : limites[nivel] / (1 + SOLAPE);
+        double maximo = nivel == limites.length - 2 ? limites[nivel + 1] : limites[nivel + 1] * (1 + SOLAPE);
+        return params.toBuilder()
+                .workSize(imagen.cols(), imagen.rows())
+                .roi(null)
+                .grid(0, 0)
+                .area(Math.max(params.minArea, minimo) / escala2, Math.min(params.maxArea, maximo) / escala2)
+                .build();
+    }
+
+    /**
+     * Umbral, morfología, contornos y filtrado de una escala. Agrega las detecciones aceptadas, en coordenadas
+     * de la resolución de trabajo, y devuelve cuántos contornos encontró.
+     */
+    private int detectarNivel(Mat ecualizada, int nivel, DetectionParams params, double[] limites,
+                              FilterStats estadisticas, List<Deteccion> detecciones, DetectionMonitor monitor) {
+        DetectionParams paramsNivel = parametrosNivel(params, limites, nivel, ecualizada);
+        int filas = ecualizada.rows();
+        int columnas = ecualizada.cols();
+        Mat desenfocada = mats.obtener(filas, columnas, CvType.CV_8UC1);
+        Mat mascara = mats.obtener(filas, columnas, CvType.CV_8UC1);
+        List<MatOfPoint> contours = new ArrayList<>();
+        try {
+            Imgproc.GaussianBlur(ecualizada, desenfocada,
+                    new Size(paramsNivel.blurKernelSize, paramsNivel.blurKernelSize), 0);
+            SporeDetector.umbralizar(desenfocada, mascara, paramsNivel);
+
+            // findContours modifica su entrada, pero la máscara de la escala ya no se usa después.
+            ContourScratch scratch = SporeDetector.SCRATCH.get();
+            Imgproc.findContours(mascara, contours, scratch.jerarquia(), paramsNivel.contourMode,
+                    paramsNivel.contourMethod);
+            int encontrados = contours.size();
+
+            ContourClassifier clasificador = new ContourClassifier(paramsNivel, columnas, filas, scratch);
+            SporeTable.Builder tabla = new SporeTable.Builder();
+            List<MatOfPoint> aceptados = new ArrayList<>();
+            List<Integer> primeraFila = new ArrayList<>();
+            int procesados = 0;
+            for (MatOfPoint contour : contours) {
+                if (++procesados % 256 == 0) monitor.verificarCancelacion();
+                int antes = tabla.size();
+                if (clasificador.clasificar(contour, tabla)) {
+                    aceptados.add(contour);
+                    primeraFila.add(antes);
+                } else {
+                    contour.release();
+                }
+            }
+            contours.clear();
+            estadisticas.sumar(clasificador.getEstadisticas());
+
+            SporeTable esporas = tabla.build();
+            for (int i = 0; i < aceptados.size(); i++) {
+                int desde = primeraFila.get(i);
+                int hasta = i + 1 < aceptados.size() ? primeraFila.get(i + 1) : esporas.size();
+                MatOfPoint contour = aceptados.get(i);
+                double[] centroRect = aEscalaDeTrabajo(contour, nivel);
+                detecciones.add(new Deteccion(nivel, esporas, desde, hasta - desde, contour, centroRect));
+            }
+            return encontrados;
+        } finally {
+            for (MatOfPoint contour : contours) contour.release();
+            mats.devolver(desenfocada);
+            mats.devolver(mascara);
+        }
+    }
+
+    /**
+     * Desplazamiento de las coordenadas de la escala nivel al llevarlas a la resolución de trabajo: el centro del
+     * píxel x de la escala es el del píxel (x + 0.5) · escala - 0.5 de la imagen completa. Los contornos solo
+     * admiten enteros, así que se redondea hacia abajo (0 en la escala 1/2, 1 en la 1/4), y los centroides de la
+     * tabla usan el mismo valor para coincidir con el contorno que se dibuja.
+     */
+    static int desplazamiento(int nivel) {
+        return ((1 << nivel) - 1) / 2;
+    }
+
+    /**
+     * Lleva los puntos de un contorno de la escala nivel a píxeles de la resolución de trabajo, en el lugar, y
+     * devuelve el centro de su rectángulo envolvente ({x, y}) en la resolución de trabajo, como lo calcula
+     * {@link ContourClassifier}. El rectángulo se mide en bordes de píxel, así que su centro escala sin
+     * desplazamiento.
+     */
+    private static double[] aEscalaDeTrabajo(MatOfPoint contour, int nivel) {
+        int escala = 1 << nivel;
+        int desplazamiento = desplazamiento(nivel);
+        int[] puntos = new int[(int) contour.total() * 2];
+        contour.get(0, 0, puntos);
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < puntos.length; i += 2) {
+            minX = Math.min(minX, puntos[i]);
+            maxX = Math.max(maxX, puntos[i]);
+            minY = Math.min(minY, puntos[i + 1]);
+            maxY = Math.max(maxY, puntos[i + 1]);
+            puntos[i] = puntos[i] * escala + desplazamiento;
+            puntos[i + 1] = puntos[i + 1] * escala + desplazamiento;
+        }
+        if (nivel > 0) contour.put(0, 0, puntos);
+        if (puntos.length == 0) return new double[]{0, 0};
+        return new double[]{(minX + (maxX - minX + 1) / 2.0) * escala, (minY + (maxY - minY + 1) / 2.0) * escala};
+    }
+
+    /**
+     * Supresión de no máximos entre escalas. Las detecciones se recorren de mejor a peor forma; una se suprime si
+     * su centroide está a menos del mayor de los dos radios equivalentes de una detección ya conservada de otra
+     * escala. Las conservadas se indexan en una cuadrícula de celdas del tamaño del radio máximo, así que cada
+     * detección solo se compara con las de las celdas vecinas.
+     */
+    static void suprimirDuplicados(List<Deteccion> detecciones, FilterStats estadisticas) {
+        if (detecciones.isEmpty()) return;
+        double radioMaximo = 1;
+        for (Deteccion d : detecciones) radioMaximo = Math.max(radioMaximo, d.radio);
+        Deteccion[] ordenadas = detecciones.toArray(new Deteccion[0]);
+        Arrays.sort(ordenadas, Comparator.comparingDouble((Deteccion d) -> -d.puntaje)
+                .thenComparingDouble(d -> -d.area)
+                .thenComparingInt(d -> d.nivel));
+
+        Map<Long, List<Deteccion>> celdas = new HashMap<>();
+        for (Deteccion d : ordenadas) {
+            long cx = (long) Math.floor(d.centroX / radioMaximo);
+            long cy = (long) Math.floor(d.centroY / radioMaximo);
+            buscar:
+            for (long y = cy - 1; y <= cy + 1; y++) {
+                for (long x = cx - 1; x <= cx + 1; x++) {
+                    List<Deteccion> vecinas = celdas.get(clave(x, y));
+                    if (vecinas == null) continue;
+                    for (Deteccion conservada : vecinas) {
+                        if (conservada.nivel == d.nivel) continue;
+                        double dx = d.centroX - conservada.centroX;
+                        double dy = d.centroY - conservada.centroY;
+                        double radio = Math.max(d.radio, conservada.radio);
+                        if (dx * dx + dy * dy < radio * radio) {
+                            d.suprimida = true;
+                            break buscar;
+                        }
+                    }
+                }
+            }
+            if (d.suprimida) {
+                estadisticas.aceptados--;
+                estadisticas.duplicadosEntreEscalas++;
+            } else {
+                celdas.computeIfAbsent(clave(cx, cy), k -> new ArrayList<>()).add(d);
+            }
+        }
+    }
+
+    private static long clave(long x, long y) {
+        return (x << 32) ^ (y & 0xffffffffL);
+    }
+
+    /**
+     * Un contorno aceptado en una escala y sus filas de la tabla (varias si es un grumo dividido), ya en
+     * coordenadas y áreas de la resolución de trabajo.
+     */
+    static final class Deteccion {
+        final int nivel;
+        final double[] centrosX;
+        final double[] centrosY;
+        final double[] areas;
+        final double[] centroRect;  // Centro del rectángulo envolvente, para la cuadrícula si no es un grumo.
+        final double perimetro;
+        final double circularidad;
+        final double solidez;
+        final double relacionAspecto;
+        // Resumen de la detección para la supresión: centroide ponderado por área, área total y radio del
+        // círculo de la misma área.
+        final double centroX;
+        final double centroY;
+        final double area;
+        final double radio;
+        final double puntaje;
+        MatOfPoint contorno;
+        boolean suprimida;
+
+        Deteccion(int nivel, SporeTable fila, int desde, int filas, MatOfPoint contorno, double[] centroRect) {
+            this.nivel = nivel;
+            this.contorno = contorno;
+            this.centroRect = centroRect;
+            double escala = 1 << nivel;
+            int desplazamiento = desplazamiento(nivel);
+            centrosX = new double[filas];
+            centrosY = new double[filas];
+            areas = new double[filas];
+            double suma = 0;
+            double sumaX = 0;
+            double sumaY = 0;
+            for (int k = 0; k < filas; k++) {
+                int i = desde + k;
+                centrosX[k] = fila.centroX[i] * escala + desplazamiento;
+                centrosY[k] = fila.centroY[i] * escala + desplazamiento;
+                areas[k] = fila.area[i] * escala * escala;
+                suma += areas[k];
+                sumaX += centrosX[k] * areas[k];
+                sumaY += centrosY[k] * areas[k];
+            }
+            perimetro = fila.perimetro[desde] * escala;
+            circularidad = fila.circularidad[desde];
+            solidez = fila.solidez[desde];
+            relacionAspecto = fila.relacionAspecto[desde];
+            area = suma;
+            centroX = suma > 0 ? sumaX / suma : centrosX[0];
+            centroY = suma > 0 ? sumaY / suma : centrosY[0];
+            radio = Math.sqrt(suma / Math.PI);
+            puntaje = circularidad * solidez;
+        }
+
+        /**
+         * Agrega las filas de la detección a la tabla final. Con cuadrícula, una espora se asigna a la celda del
+         * centro de su rectángulo envolvente y cada espora de un grumo dividido a la de su centro, como en
+         * {@link ContourClassifier}; las que caen fuera se descartan. Devuelve false si no queda ninguna.
+         */
+        boolean agregar(SporeTable.Builder tabla, DetectionParams params, int altoCelda, int anchoCelda) {
+            int filas = areas.length;
+            int[] fila = new int[filas];
+            int[] columna = new int[filas];
+            int dentro = 0;
+            for (int k = 0; k < filas; k++) {
+                fila[k] = -1;
+                columna[k] = -1;
+                if (params.hasGrid()) {
+                    double x = filas > 1 ? centrosX[k] : centroRect[0];
+                    double y = filas > 1 ? centrosY[k] : centroRect[1];
+                    fila[k] = (int) (y / altoCelda);
+                    columna[k] = (int) (x / anchoCelda);
+                    if (y < 0 || fila[k] >= params.gridRows || x < 0 || columna[k] >= params.gridCols) {
+                        fila[k] = -2;
+                        continue;
+                    }
+                }
+                dentro++;
+            }
+            if (dentro == 0) return false;
+            for (int k = 0; k < filas; k++) {
+                if (fila[k] == -2) continue;
+                tabla.agregar(centrosX[k], centrosY[k], areas[k], perimetro, circularidad, solidez, relacionAspecto,
+                        fila[k], columna[k], filas > 1 ? dentro : 1);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.menuesporas.detector;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * *ResultCsvWriter*: Exporta los resultados de los análisis a dos archivos CSV (UTF-8, separados por comas,
+ * con encabezado) pensados para cargarse en un LIMS:
+ *
+ * - {@link #ARCHIVO_ANALISIS}: una fila por análisis con la imagen, el preset, el total, el área promedio en
+ *   mm² (vacía si la imagen no está calibrada) y la matriz de conteo por cuadro de 5x5 (vacía sin cuadrícula).
+ * - {@link #ARCHIVO_ESPORAS} (opcional): una fila por espora con sus medidas, enlazada al análisis por id.
+ *
+ * Los archivos solo se agregan al final: cada registro se escribe y se vacía al disco en cuanto se llama a
+ * {@link #escribir}, recorriendo directamente las columnas de la {@link SporeTable}, así que un lote de
+ * cientos de imágenes no acumula resultados en memoria y lo escrito sobrevive si la app se cierra.
+ *
+ * No es seguro entre hilos: quien comparta los archivos entre varios análisis debe serializar las escrituras.
+ */
+public final class ResultCsvWriter implements Closeable {
+
+    public static final String ARCHIVO_ANALISIS = "analisis.csv";
+    public static final String ARCHIVO_ESPORAS = "esporas.csv";
+
+    // Tamaño de la matriz de conteo que se exporta (la cuadrícula de la cámara de conteo).
+    static final int FILAS = 5;
+    static final int COLUMNAS = 5;
+
+    private final Writer analisis;
+    private final Writer esporas; // null si no se exportan las esporas.
+    private final StringBuilder linea = new StringBuilder(256);
+
+    ResultCsvWriter(Writer analisis, Writer esporas) {
+        this.analisis = analisis;
+        this.esporas = esporas;
+    }
+
+    /**
+     * Abre los archivos de la carpeta para agregar registros al final; los crea con su encabezado si no
+     * existen o están vacíos.
+     *
+     * @param carpeta    Carpeta de exportación (se crea si no existe).
+     * @param conEsporas Si también se escribe {@link #ARCHIVO_ESPORAS}.
+     */
+    public static ResultCsvWriter anexar(File carpeta, boolean conEsporas) throws IOException {
+        if (!carpeta.isDirectory() && !carpeta.mkdirs()) {
+            throw new IOException("No se pudo crear la carpeta de exportación " + carpeta);
+        }
+        Writer analisis = abrir(new File(carpeta, ARCHIVO_ANALISIS), encabezadoAnalisis());
+        Writer esporas = null;
+        try {
+            if (conEsporas) esporas = abrir(new File(carpeta, ARCHIVO_ESPORAS), encabezadoEsporas());
+        } catch (IOException e) {
+            analisis.close();
+            throw e;
+        }
+        return new ResultCsvWriter(analisis, esporas);
+    }
+
+    private static Writer abrir(File archivo, String encabezado) throws IOException {
+        boolean nuevo = archivo.length() == 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(archivo, true),
+                StandardCharsets.UTF_8));
+        if (nuevo) {
+            writer.write(encabezado);
+            writer.flush();
+        }
+        return writer;
+    }
+
+    static String encabezadoAnalisis() {
+        StringBuilder s = new StringBuilder("id,fecha_ms,imagen,preset,total,area_promedio_mm2");
+        for (int f = 1; f <= FILAS; f++) {
+            for (int c = 1; c <= COLUMNAS; c++) {
+                s.append(",cuadro_").append(f).append('_').append(c);
+            }
+        }
+        return s.append('\n').toString();
+    }
+
+    static String encabezadoEsporas() {
+        return "id_analisis,indice,centro_x,centro_y,area_px,perimetro_px,circularidad,solidez,relacion_aspecto,"
+                + "fila,columna,grupo\n";
+    }
+
+    /**
+     * Escribe el registro de un análisis (y sus esporas, si corresponde) y lo vacía al disco.
+     *
+     * @param imagen          URI o nombre de la imagen.
+     * @param preset          Identificador del preset usado.
+     * @param deteccion       Resultado de la detección.
+     * @param areaPromedioMm2 Área promedio en mm², o NaN si la imagen no está calibrada.
+     * @return El id del análisis, el mismo que llevan sus filas en {@link #ARCHIVO_ESPORAS}.
+     */
+    public String escribir(String imagen, String preset, DetectionResult deteccion, double areaPromedioMm2)
+            throws IOException {
+        String id = UUID.randomUUID().toString();
+        linea.setLength(0);
+        linea.append(id).append(',').append(System.currentTimeMillis()).append(',');
+        texto(imagen);
+        linea.append(',');
+        texto(preset);
+        linea.append(',').append(deteccion.getConteo()).append(',');
+        if (!Double.isNaN(areaPromedioMm2)) numero(areaPromedioMm2);
+        int[][] conteo = deteccion.conteoPorCuadro;
+        for (int f = 0; f < FILAS; f++) {
+            for (int c = 0; c < COLUMNAS; c++) {
+                linea.append(',');
+                if (conteo != null && f < conteo.length && c < conteo[f].length) linea.append(conteo[f][c]);
+            }
+        }
+        linea.append('\n');
+        analisis.append(linea);
+        analisis.flush();
+
+        if (esporas != null) {
+            SporeTable t = deteccion.esporas;
+            for (int i = 0; i < t.size(); i++) {
+                linea.setLength(0);
+                linea.append(id).append(',').append(i).append(',');
+                numero(t.centroX[i]);
+                linea.append(',');
+                numero(t.centroY[i]);
+                linea.append(',');
+                numero(t.area[i]);
+                linea.append(',');
+                numero(t.perimetro[i]);
+                linea.append(',');
+                numero(t.circularidad[i]);
+                linea.append(',');
+                numero(t.solidez[i]);
+                linea.append(',');
+                numero(t.relacionAspecto[i]);
+                linea.append(',').append(t.fila[i]).append(',').append(t.columna[i]).append(',').append(t.grupo[i])
+                        .append('\n');
+                esporas.append(linea);
+            }
+            esporas.flush();
+        }
+        return id;
+    }
+
+    /**
+     * Texto entre comillas si contiene comas, comillas o saltos de línea (RFC 4180).
+     */
+    private void texto(String valor) {
+        if (valor == null) return;
+        boolean comillas = valor.indexOf(',') >= 0 || valor.indexOf('"') >= 0 || valor.indexOf('\n') >= 0
+                || valor.indexOf('\r') >= 0;
+        if (!comillas) {
+            linea.append(valor);
+            return;
+        }
+        linea.append('"').append(valor.replace("\"", "\"\"")).append('"');
+    }
+
+    // Punto decimal independientemente del idioma del teléfono, para que el LIMS lo lea siempre igual.
+    private void numero(double valor) {
+        linea.append(String.format(Locale.ROOT, "%.4f", valor));
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            analisis.close();
+        } finally {
+            if (esporas != null) esporas.close();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.menuesporas.detector;
+
+import java.util.Locale;
+
+/**
+ * *SpatialCalibration*: Tamaño real del campo fotografiado: cuántos µm mide de ancho la imagen completa. Con él, un
+ * umbral físico (µm, µm²) se convierte a píxeles para cualquier resolución de trabajo: a 640 px de ancho cada píxel
+ * mide el doble que a 1280.
+ *
+ * Los presets se ajustaron con la configuración de {@link #REFERENCIA}; la cuadrícula de la cámara de conteo, si
+ * {@link GridLocator} la encuentra, da la calibración de cada imagen ({@link #desdePixelesPorMm}).
+ */
+public final class SpatialCalibration {
+
+    /**
+     * Campo de las imágenes con las que se ajustaron los presets: la cuadrícula de conteo de 20 mm ocupa 380 px de
+     * los 640 px de ancho de la imagen de trabajo (el recorte del preset conteo_por_cuadro), unos 52,6 µm por píxel.
+     */
+    public static final SpatialCalibration REFERENCIA = new SpatialCalibration(640 * 20000.0 / 380);
+
+    public final double campoAnchoUm;  // Ancho real de la imagen completa, en µm.
+
+    public SpatialCalibration(double campoAnchoUm) {
+        if (!(campoAnchoUm > 0) || Double.isInfinite(campoAnchoUm)) {
+            throw new IllegalArgumentException("Campo de calibración inválido: " + campoAnchoUm);
+        }
+        this.campoAnchoUm = campoAnchoUm;
+    }
+
+    /**
+     * Calibración de una imagen de la que se conoce la escala (por ejemplo, la cuadrícula rectificada).
+     *
+     * @param pixelesPorMm Escala de la imagen.
+     * @param anchoImagen  Ancho de esa imagen, en píxeles.
+     */
+    public static SpatialCalibration desdePixelesPorMm(double pixelesPorMm, int anchoImagen) {
+        return new SpatialCalibration(anchoImagen / pixelesPorMm * 1000);
+    }
+
+    /**
+     * Tamaño de un píxel cuando la imagen completa se trabaja con el ancho indicado.
+     */
+    public double umPorPixel(int anchoImagen) {
+        return campoAnchoUm / anchoImagen;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "SpatialCalibration{campo=%.1f µm}", campoAnchoUm);
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * *SporeDetector*: Pipeline de detección de esporas en Java puro sobre OpenCV, sin dependencias de Android.
+ * Funciona igual con OpenCV para Android y con OpenCV de escritorio (Linux), lo que permite perfilarlo,
+ * hacer benchmarks y procesar lotes en estaciones de trabajo.
+ *
+ * Etapas: redimensionado → recorte → escala de grises → ecualización → desenfoque →
+ * umbral adaptativo → apertura/cierre → contornos → filtrado por forma → asignación a la cuadrícula.
+ *
+ * Los Mats intermedios y la imagen de trabajo del resultado salen de un {@link MatPool}: con el pool del
+ * AnalysisEngine, un lote o el conteo en vivo no reservan memoria nativa nueva después de la primera imagen.
+ */
+public final class SporeDetector {
+
+    // Memoria de trabajo del filtrado de contornos, una por hilo y reutilizada entre imágenes.
+    static final ThreadLocal<ContourScratch> SCRATCH = ThreadLocal.withInitial(ContourScratch::new);
+
+    private final MatPool mats;
+
+    /**
+     * Detector que reserva y libera sus Mats en cada imagen.
+     */
+    public SporeDetector() {
+        this(MatPool.SIN_REUSO);
+    }
+
+    /**
+     * @param mats Pool del que salen los Mats intermedios; la imagen de trabajo del resultado vuelve a él en
+     *             {@link DetectionResult#release()}.
+     */
+    public SporeDetector(MatPool mats) {
+        this.mats = mats;
+    }
+
+    /**
+     * Detecta esporas en una imagen BGR/RGBA (como la que produce Utils.bitmapToMat) o en escala de grises.
+     * La imagen de entrada no se modifica. El camino más rápido es la luminancia de 8 bits ya a la resolución de
+     * trabajo (LuminanceConverter o el plano Y de la cámara): no se redimensiona, no se convierte y las primeras
+     * etapas mueven un byte por píxel.
+     */
+    public DetectionResult detect(Mat input, DetectionParams params) {
+        return detect(input, params, DetectionMonitor.NINGUNO);
+    }
+
+    /**
+     * Detecta esporas en un buffer de píxeles entrelazados de 8 bits (1, 3 o 4 canales).
+     */
+    public DetectionResult detect(byte[] pixeles, int ancho, int alto, int canales, DetectionParams params) {
+        Mat input = new Mat(alto, ancho, CvType.CV_8UC(canales));
+        try {
+            input.put(0, 0, pixeles);
+            return detect(input, params, DetectionMonitor.NINGUNO);
+        } finally {
+            input.release();
+        }
+    }
+
+    /**
+     * Con más de una escala de pirámide ({@link DetectionParams#pyramidLevels}) la detección la hace
+     * {@link PyramidSporeDetector} con el mismo pool.
+     */
+    public DetectionResult detect(Mat input, DetectionParams params, DetectionMonitor monitor) {
+        if (params.pyramidLevels > 1) return new PyramidSporeDetector(mats).detect(input, params, monitor);
+        Mat imgProcesar = null;
+        Mat imgGray = null;
+        Mat imgEqualized = null;
+        Mat binaryMask = null;
+        Mat mascaraContornos = null;
+        Mat zona = null;
+        Mat imagenTrabajo = null;
+        List<MatOfPoint> contours = new ArrayList<>();
+        List<MatOfPoint> aceptados = new ArrayList<>();
+        boolean completado = false;
+        try {
+            // 1. Preparación de la imagen
+            monitor.reportar(10, "Preparando imagen");
+            Mat base = input;
+            if (input.cols() != params.workWidth || input.rows() != params.workHeight) {
+                imgProcesar = mats.obtener(params.workHeight, params.workWidth, input.type());
+                base = aResolucionDeTrabajo(input, params, imgProcesar);
+            }
+            zona = params.roi != null ? base.submat(params.roi) : base;
+            int filas = zona.rows();
+            int columnas = zona.cols();
+
+            // 2. Escala de grises, ecualización y desenfoque.
+            // Las imágenes de Android llegan en RGBA y se convierten con COLOR_BGR2GRAY como en el código original,
+            // para conservar exactamente los mismos conteos.
+            if (zona.channels() != 1) imgGray = mats.obtener(filas, columnas, CvType.CV_8UC1);
+            Mat gris = escalaDeGrises(zona, imgGray);
+            imgEqualized = mats.obtener(filas, columnas, CvType.CV_8UC1);
+            Imgproc.equalizeHist(gris, imgEqualized);
+            Imgproc.GaussianBlur(imgEqualized, imgEqualized, new Size(params.blurKernelSize, params.blurKernelSize), 0);
+
+            // 3-4. Umbralización adaptativa y operaciones morfológicas: apertura y cierre (0 iteraciones equivale a
+            // no aplicar la operación).
+            monitor.reportar(30, "Umbralizando");
+            binaryMask = mats.obtener(filas, columnas, CvType.CV_8UC1);
+            umbralizar(imgEqualized, binaryMask, params);
+
+            // 5. Detección de contornos
+            monitor.reportar(50, "Buscando contornos");
+            // findContours modifica su entrada: se busca sobre una copia de la máscara.
+            mascaraContornos = mats.obtener(filas, columnas, CvType.CV_8UC1);
+            binaryMask.copyTo(mascaraContornos);
+            ContourScratch scratch = SCRATCH.get();
+            Imgproc.findContours(mascaraContornos, contours, scratch.jerarquia(), params.contourMode, params.contourMethod);
+            int contornosIniciales = contours.size();
+
+            // 6. Filtrado por forma (de la prueba más barata a la más costosa) y asignación a la cuadrícula
+            monitor.reportar(70, "Filtrando contornos");
+            ContourClassifier clasificador = new ContourClassifier(params, columnas, filas, scratch);
+            SporeTable.Builder tabla = new SporeTable.Builder();
+
+            int procesados = 0;
+            for (MatOfPoint contour : contours) {
+                if (++procesados % 256 == 0) monitor.verificarCancelacion();
+                if (clasificador.clasificar(contour, tabla)) {
+                    aceptados.add(contour);
+                } else {
+                    contour.release();
+                }
+            }
+            contours.clear();
+            SporeTable esporas = tabla.build();
+            int[][] conteoPorCuadro = params.hasGrid() ? esporas.conteoPorCuadro(params.gridRows, params.gridCols) : null;
+
+            imagenTrabajo = mats.obtener(filas, columnas, zona.type());
+            zona.copyTo(imagenTrabajo);
+            DetectionResult resultado = new DetectionResult(esporas, contornosIniciales, conteoPorCuadro,
+                    clasificador.getEstadisticas(), imagenTrabajo, aceptados, mats);
+            completado = true;
+            return resultado;
+        } finally {
+            for (MatOfPoint contour : contours) contour.release();
+            if (!completado) {
+                for (MatOfPoint contour : aceptados) contour.release();
+                mats.devolver(imagenTrabajo);
+            }
+            if (zona != null && zona != imgProcesar && zona != input) zona.release();
+            mats.devolver(imgProcesar);
+            mats.devolver(imgGray);
+            mats.devolver(imgEqualized);
+            mats.devolver(binaryMask);
+            mats.devolver(mascaraContornos);
+        }
+    }
+
+    /**
+     * Lleva la entrada a la resolución de trabajo. Si ya la tiene (imágenes de ImageLoader, cuadros de la cámara)
+     * se devuelve la propia entrada: resize con el mismo tamaño solo copiaría los píxeles.
+     */
+    static Mat aResolucionDeTrabajo(Mat input, DetectionParams params, Mat destino) {
+        if (input.cols() == params.workWidth && input.rows() == params.workHeight) return input;
+        Imgproc.resize(input, destino, new Size(params.workWidth, params.workHeight));
+        return destino;
+    }
+
+    /**
+     * Devuelve la zona en escala de grises: la propia zona si ya tiene un canal (no se copia; las etapas
+     * siguientes no la modifican) o su conversión, escrita en gris.
+     */
+    static Mat escalaDeGrises(Mat zona, Mat gris) {
+        if (zona.channels() == 1) return zona;
+        Imgproc.cvtColor(zona, gris, Imgproc.COLOR_BGR2GRAY);
+        return gris;
+    }
+
+    /**
+     * Umbral adaptativo de la imagen ecualizada y desenfocada, seguido de la apertura y el cierre del preset.
+     */
+    static void umbralizar(Mat ecualizada, Mat mascara, DetectionParams params) {
+        Imgproc.adaptiveThreshold(ecualizada, mascara, 255, Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C,
+                Imgproc.THRESH_BINARY_INV, params.adaptiveBlockSize, params.adaptiveC);
+        aplicarMorfologia(mascara, Imgproc.MORPH_OPEN, params.openKernelSize, params.openIterations);
+        aplicarMorfologia(mascara, Imgproc.MORPH_CLOSE, params.closeKernelSize, params.closeIterations);
+    }
+
+    static void aplicarMorfologia(Mat mascara, int operacion, int kernelSize, int iteraciones) {
+        if (iteraciones <= 0) return;
+        Mat kernel = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(kernelSize, kernelSize));
+        Imgproc.morphologyEx(mascara, mascara, operacion, kernel, new Point(-1, -1), iteraciones);
+        kernel.release();
+    }
+}
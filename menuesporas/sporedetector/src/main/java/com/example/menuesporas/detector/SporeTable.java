@@ -0,0 +1,214 @@
+package com.example.menuesporas.detector;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * *SporeTable*: Medidas de las esporas aceptadas en forma de tabla por columnas: un arreglo primitivo por medida,
+ * todos de longitud {@link #size()} y con la espora i en la posición i de cada uno. Las estadísticas, los
+ * histogramas y la exportación recorren solo las columnas que necesitan, sin objetos por espora ni Double
+ * en caja.
+ *
+ * Las coordenadas y áreas están en píxeles de la imagen de trabajo. La tabla es inmutable por convención:
+ * los arreglos son públicos para recorrerlos sin copias, pero no se deben modificar.
+ *
+ * Las esporas de un grumo dividido ({@link DetectionParams#splitClumps}) ocupan filas consecutivas con
+ * {@link #grupo} igual al número de esporas del grumo; su centro y su área son los de cada espora, y el
+ * perímetro, la circularidad, la solidez y la relación de aspecto son los del grumo completo.
+ */
+public final class SporeTable {
+
+    private static final SporeTable VACIA = new Builder().build();
+
+    public final double[] centroX;
+    public final double[] centroY;
+    public final double[] area;
+    public final double[] perimetro;
+    public final double[] circularidad;
+    public final double[] solidez;
+    public final double[] relacionAspecto;
+    public final int[] fila;      // Fila de la cuadrícula (-1 si no hay cuadrícula).
+    public final int[] columna;   // Columna de la cuadrícula (-1 si no hay cuadrícula).
+    public final int[] grupo;     // Esporas del contorno del que sale la fila (1 si no es un grumo).
+
+    private SporeTable(Builder b) {
+        int n = b.n;
+        centroX = Arrays.copyOf(b.centroX, n);
+        centroY = Arrays.copyOf(b.centroY, n);
+        area = Arrays.copyOf(b.area, n);
+        perimetro = Arrays.copyOf(b.perimetro, n);
+        circularidad = Arrays.copyOf(b.circularidad, n);
+        solidez = Arrays.copyOf(b.solidez, n);
+        relacionAspecto = Arrays.copyOf(b.relacionAspecto, n);
+        fila = Arrays.copyOf(b.fila, n);
+        columna = Arrays.copyOf(b.columna, n);
+        grupo = Arrays.copyOf(b.grupo, n);
+    }
+
+    public static SporeTable vacia() {
+        return VACIA;
+    }
+
+    public int size() {
+        return area.length;
+    }
+
+    /**
+     * La espora i como objeto, para quien prefiera recorrer filas.
+     */
+    public Espora espora(int i) {
+        return new Espora(centroX[i], centroY[i], area[i], perimetro[i], circularidad[i], solidez[i],
+                relacionAspecto[i], fila[i], columna[i]);
+    }
+
+    public double sumaArea() {
+        double suma = 0;
+        for (double a : area) suma += a;
+        return suma;
+    }
+
+    /**
+     * Área promedio en píxeles² (0 si no hay esporas).
+     */
+    public double areaPromedio() {
+        return area.length == 0 ? 0 : sumaArea() / area.length;
+    }
+
+    /**
+     * Cantidad de esporas de cada cuadro de una cuadrícula de filas x columnas.
+     */
+    public int[][] conteoPorCuadro(int filas, int columnas) {
+        int[][] conteo = new int[filas][columnas];
+        for (int i = 0; i < fila.length; i++) {
+            conteo[fila[i]][columna[i]]++;
+        }
+        return conteo;
+    }
+
+    /**
+     * Histograma de una columna de la tabla (por ejemplo {@link #area}) con intervalos iguales entre minimo y
+     * maximo. Los valores fuera del rango se acumulan en el primer o el último intervalo.
+     */
+    public static int[] histograma(double[] columna, double minimo, double maximo, int intervalos) {
+        int[] conteo = new int[intervalos];
+        double escala = intervalos / (maximo - minimo);
+        for (double valor : columna) {
+            int i = (int) ((valor - minimo) * escala);
+            conteo[Math.max(0, Math.min(intervalos - 1, i))]++;
+        }
+        return conteo;
+    }
+
+    /**
+     * Escribe la tabla columna por columna (por ejemplo, en la caché de resultados en disco).
+     */
+    public void escribir(DataOutput salida) throws IOException {
+        int n = size();
+        salida.writeInt(n);
+        for (double[] valores : new double[][]{centroX, centroY, area, perimetro, circularidad, solidez,
+                relacionAspecto}) {
+            for (int i = 0; i < n; i++) salida.writeDouble(valores[i]);
+        }
+        for (int[] valores : new int[][]{fila, columna, grupo}) {
+            for (int i = 0; i < n; i++) salida.writeInt(valores[i]);
+        }
+    }
+
+    /**
+     * Lee una tabla escrita con {@link #escribir(DataOutput)}.
+     */
+    public static SporeTable leer(DataInput entrada) throws IOException {
+        int n = entrada.readInt();
+        if (n < 0) throw new IOException("Tamaño de tabla inválido: " + n);
+        Builder b = new Builder();
+        b.crecer(Math.max(n, 1));
+        for (double[] valores : new double[][]{b.centroX, b.centroY, b.area, b.perimetro, b.circularidad,
+                b.solidez, b.relacionAspecto}) {
+            for (int i = 0; i < n; i++) valores[i] = entrada.readDouble();
+        }
+        for (int[] valores : new int[][]{b.fila, b.columna, b.grupo}) {
+            for (int i = 0; i < n; i++) valores[i] = entrada.readInt();
+        }
+        b.n = n;
+        return b.build();
+    }
+
+    /**
+     * Construye la tabla fila por fila; los arreglos crecen al doble cuando se llenan.
+     */
+    static final class Builder {
+        private int n;
+        private double[] centroX = new double[64];
+        private double[] centroY = new double[64];
+        private double[] area = new double[64];
+        private double[] perimetro = new double[64];
+        private double[] circularidad = new double[64];
+        private double[] solidez = new double[64];
+        private double[] relacionAspecto = new double[64];
+        private int[] fila = new int[64];
+        private int[] columna = new int[64];
+        private int[] grupo = new int[64];
+
+        int size() {
+            return n;
+        }
+
+        void agregar(double centroX, double centroY, double area, double perimetro, double circularidad,
+                     double solidez, double relacionAspecto, int fila, int columna) {
+            agregar(centroX, centroY, area, perimetro, circularidad, solidez, relacionAspecto, fila, columna, 1);
+        }
+
+        void agregar(double centroX, double centroY, double area, double perimetro, double circularidad,
+                     double solidez, double relacionAspecto, int fila, int columna, int grupo) {
+            if (n == this.area.length) crecer(n * 2);
+            this.centroX[n] = centroX;
+            this.centroY[n] = centroY;
+            this.area[n] = area;
+            this.perimetro[n] = perimetro;
+            this.circularidad[n] = circularidad;
+            this.solidez[n] = solidez;
+            this.relacionAspecto[n] = relacionAspecto;
+            this.fila[n] = fila;
+            this.columna[n] = columna;
+            this.grupo[n] = grupo;
+            n++;
+        }
+
+        /**
+         * Agrega al final todas las filas de otro Builder (la unión de las bandas de TiledSporeDetector).
+         */
+        void agregarTodas(Builder otra) {
+            if (n + otra.n > area.length) crecer(Math.max(n + otra.n, area.length * 2));
+            System.arraycopy(otra.centroX, 0, centroX, n, otra.n);
+            System.arraycopy(otra.centroY, 0, centroY, n, otra.n);
+            System.arraycopy(otra.area, 0, area, n, otra.n);
+            System.arraycopy(otra.perimetro, 0, perimetro, n, otra.n);
+            System.arraycopy(otra.circularidad, 0, circularidad, n, otra.n);
+            System.arraycopy(otra.solidez, 0, solidez, n, otra.n);
+            System.arraycopy(otra.relacionAspecto, 0, relacionAspecto, n, otra.n);
+            System.arraycopy(otra.fila, 0, fila, n, otra.n);
+            System.arraycopy(otra.columna, 0, columna, n, otra.n);
+            System.arraycopy(otra.grupo, 0, grupo, n, otra.n);
+            n += otra.n;
+        }
+
+        private void crecer(int capacidad) {
+            centroX = Arrays.copyOf(centroX, capacidad);
+            centroY = Arrays.copyOf(centroY, capacidad);
+            area = Arrays.copyOf(area, capacidad);
+            perimetro = Arrays.copyOf(perimetro, capacidad);
+            circularidad = Arrays.copyOf(circularidad, capacidad);
+            solidez = Arrays.copyOf(solidez, capacidad);
+            relacionAspecto = Arrays.copyOf(relacionAspecto, capacidad);
+            fila = Arrays.copyOf(fila, capacidad);
+            columna = Arrays.copyOf(columna, capacidad);
+            grupo = Arrays.copyOf(grupo, capacidad);
+        }
+
+        SporeTable build() {
+            return new SporeTable(this);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.example.menuesporas.detector;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * *TiledSporeDetector*: Variante de {@link SporeDetector} que divide la zona analizada en bandas horizontales
+ * (una por fila de la cuadrícula, o las indicadas si no hay cuadrícula) y las procesa en paralelo.
+ * Da exactamente el mismo conteo, el mismo conteo por cuadro y las mismas medidas que el pipeline secuencial;
+ * solo cambia el orden de las esporas en el resultado.
+ *
+ * - Escala de grises y ecualización: secuenciales, porque el histograma es global a toda la zona.
+ * - Desenfoque, umbral adaptativo y morfología: en paralelo. Cada banda se procesa con un halo de filas
+ *   vecinas igual al radio acumulado de los filtros, de modo que sus filas propias coinciden con las del
+ *   pipeline secuencial; solo esas filas se copian a la máscara completa.
+ * - Contornos y filtrado: en paralelo sobre la máscara completa. Cada banda busca contornos en sus filas más
+ *   un solape y se queda solo con los contornos cuyo rectángulo envolvente tiene el centro en sus filas
+ *   (deduplicación). Si un contorno cortado por el borde del solape toca las filas propias de la banda,
+ *   la banda se repite con el doble de solape, hasta que ningún contorno propio quede cortado.
+ *
+ * Como en SporeDetector, los Mats de la zona completa y de cada banda salen de un {@link MatPool}.
+ */
+public final class TiledSporeDetector {
+
+    private final ExecutorService ejecutor;
+    private final int bandasSinCuadricula;
+    private final MatPool mats;
+
+    /**
+     * @param ejecutor            Hilos en los que se procesan las bandas (no debe ser el hilo que llama a detect).
+     * @param bandasSinCuadricula Número de bandas cuando los parámetros no definen cuadrícula.
+     */
+    public TiledSporeDetector(ExecutorService ejecutor, int bandasSinCuadricula) {
+        this(ejecutor, bandasSinCuadricula, MatPool.SIN_REUSO);
+    }
+
+    /**
+     * @param mats Pool de los Mats intermedios y de la imagen de trabajo del resultado.
+     */
+    public TiledSporeDetector(ExecutorService ejecutor, int bandasSinCuadricula, MatPool mats) {
+        this.ejecutor = ejecutor;
+        this.bandasSinCuadricula = Math.max(1, bandasSinCuadricula);
+        this.mats = mats;
+    }
+
+    public DetectionResult detect(Mat input, DetectionParams params) {
+        return detect(input, params, DetectionMonitor.NINGUNO);
+    }
+
+    /**
+     * Con más de una escala de pirámide ({@link DetectionParams#pyramidLevels}) la detección la hace
+     * {@link PyramidSporeDetector} en el hilo que llama: cada escala es una fracción de la anterior y no se divide
+     * en bandas.
+     */
+    public DetectionResult detect(Mat input, DetectionParams params, DetectionMonitor monitor) {
+        if (params.pyramidLevels > 1) return new PyramidSporeDetector(mats).detect(input, params, monitor);
+        Mat imgProcesar = null;
+        Mat imgGray = null;
+        Mat imgEqualized = null;
+        Mat mascara = null;
+        Mat zona = null;
+        Mat imagenTrabajo = null;
+        List<Banda> bandas = new ArrayList<>();
+        boolean completado = false;
+        try {
+            // 1-2. Preparación, escala de grises y ecualización (secuenciales).
+            monitor.reportar(10, "Preparando imagen");
+            Mat base = input;
+            if (input.cols() != params.workWidth || input.rows() != params.workHeight) {
+                imgProcesar = mats.obtener(params.workHeight, params.workWidth, input.type());
+                base = SporeDetector.aResolucionDeTrabajo(input, params, imgProcesar);
+            }
+            zona = params.roi != null ? base.submat(params.roi) : base;
+            int alto = zona.rows();
+            if (zona.channels() != 1) imgGray = mats.obtener(alto, zona.cols(), CvType.CV_8UC1);
+            imgEqualized = mats.obtener(alto, zona.cols(), CvType.CV_8UC1);
+            Imgproc.equalizeHist(SporeDetector.escalaDeGrises(zona, imgGray), imgEqualized);
+
+            int numBandas = Math.min(alto, params.hasGrid() ? params.gridRows : bandasSinCuadricula);
+            for (int i = 0; i < numBandas; i++) {
+                bandas.add(new Banda(alto * i / numBandas, alto * (i + 1) / numBandas));
+            }
+
+            // 3-4. Desenfoque, umbral y morfología por bandas, con halo.
+            monitor.reportar(30, "Umbralizando por bandas");
+            mascara = mats.obtener(alto, zona.cols(), CvType.CV_8UC1);
+            int halo = radioMascara(params);
+            List<Future<?>> tareas = new ArrayList<>();
+            Mat ecualizada = imgEqualized;
+            for (Banda banda : bandas) {
+                Mat destino = mascara;
+                tareas.add(ejecutor.submit(() -> umbralizarBanda(ecualizada, destino, banda, halo, params)));
+            }
+            esperar(tareas);
+
+            // 5-6. Contornos y filtrado por bandas, con solape y deduplicación.
+            monitor.reportar(50, "Buscando contornos por bandas");
+            tareas.clear();
+            int anchoZona = zona.cols();
+            for (Banda banda : bandas) {
+                Mat fuente = mascara;
+                tareas.add(ejecutor.submit(() -> {
+                    buscarContornosBanda(fuente, anchoZona, banda, halo, params, monitor);
+                    return null;
+                }));
+            }
+            esperar(tareas);
+
+            // Unión de los resultados de todas las bandas.
+            monitor.reportar(70, "Uniendo bandas");
+            FilterStats estadisticas = new FilterStats();
+            SporeTable.Builder tabla = new SporeTable.Builder();
+            List<MatOfPoint> aceptados = new ArrayList<>();
+            int contornosIniciales = 0;
+            for (Banda banda : bandas) {
+                contornosIniciales += banda.contornosPropios;
+                estadisticas.sumar(banda.estadisticas);
+                tabla.agregarTodas(banda.esporas);
+                aceptados.addAll(banda.aceptados);
+                banda.aceptados.clear();
+            }
+            SporeTable esporas = tabla.build();
+            int[][] conteoPorCuadro = params.hasGrid() ? esporas.conteoPorCuadro(params.gridRows, params.gridCols) : null;
+
+            imagenTrabajo = mats.obtener(alto, anchoZona, zona.type());
+            zona.copyTo(imagenTrabajo);
+            DetectionResult resultado = new DetectionResult(esporas, contornosIniciales, conteoPorCuadro,
+                    estadisticas, imagenTrabajo, aceptados, mats);
+            completado = true;
+            return resultado;
+        } finally {
+            for (Banda banda : bandas) {
+                for (MatOfPoint contour : banda.aceptados) contour.release();
+            }
+            if (!completado) mats.devolver(imagenTrabajo);
+            if (zona != null && zona != imgProcesar && zona != input) zona.release();
+            mats.devolver(imgProcesar);
+            mats.devolver(imgGray);
+            mats.devolver(imgEqualized);
+            mats.devolver(mascara);
+        }
+    }
+
+    /**
+     * Filas que se extienden las bandas para que el desenfoque, el umbral adaptativo y la morfología
+     * den en las filas propias exactamente el mismo resultado que sobre la zona completa.
+     */
+    static int radioMascara(DetectionParams params) {
+        int radio = params.blurKernelSize / 2 + params.adaptiveBlockSize / 2;
+        if (params.openIterations > 0) radio += 2 * (params.openKernelSize / 2) * params.openIterations;
+        if (params.closeIterations > 0) radio += 2 * (params.closeKernelSize / 2) * params.closeIterations;
+        return radio;
+    }
+
+    private Void umbralizarBanda(Mat ecualizada, Mat mascara, Banda banda, int halo, DetectionParams params) {
+        int alto = ecualizada.rows();
+        int inicio = Math.max(0, banda.inicio - halo);
+        int fin = Math.min(alto, banda.fin + halo);
+        Mat vista = ecualizada.submat(inicio, fin, 0, ecualizada.cols());
+        Mat fuente = mats.obtener(fin - inicio, ecualizada.cols(), ecualizada.type());
+        vista.copyTo(fuente);
+        vista.release();
+        Mat umbral = mats.obtener(fin - inicio, ecualizada.cols(), CvType.CV_8UC1);
+        Mat propias = null;
+        Mat destino = null;
+        try {
+            Imgproc.GaussianBlur(fuente, fuente, new Size(params.blurKernelSize, params.blurKernelSize), 0);
+            Imgproc.adaptiveThreshold(fuente, umbral, 255, Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C,
+                    Imgproc.THRESH_BINARY_INV, params.adaptiveBlockSize, params.adaptiveC);
+            SporeDetector.aplicarMorfologia(umbral, Imgproc.MORPH_OPEN, params.openKernelSize, params.openIterations);
+            SporeDetector.aplicarMorfologia(umbral, Imgproc.MORPH_CLOSE, params.closeKernelSize, params.closeIterations);
+
+            // Solo las filas propias son exactas; cada banda escribe en filas distintas de la máscara.
+            propias = umbral.submat(banda.inicio - inicio, banda.fin - inicio, 0, umbral.cols());
+            destino = mascara.submat(banda.inicio, banda.fin, 0, mascara.cols());
+            propias.copyTo(destino);
+            return null;
+        } finally {
+            if (propias != null) propias.release();
+            if (destino != null) destino.release();
+            mats.devolver(fuente);
+            mats.devolver(umbral);
+        }
+    }
+
+    private void buscarContornosBanda(Mat mascara, int anchoZona, Banda banda, int solapeInicial,
+                                             DetectionParams params, DetectionMonitor monitor) {
+        int alto = mascara.rows();
+        ContourScratch scratch = SporeDetector.SCRATCH.get();
+        int solape = Math.max(2, solapeInicial);
+        while (true) {
+            monitor.verificarCancelacion();
+            int inicio = Math.max(0, banda.inicio - solape);
+            int fin = Math.min(alto, banda.fin + solape);
+            boolean completa = inicio == 0 && fin == alto;
+
+            List<MatOfPoint> contornos = new ArrayList<>();
+            boolean entregados = false;
+            try {
+                Mat vista = mascara.submat(inicio, fin, 0, mascara.cols());
+                Mat region = mats.obtener(fin - inicio, mascara.cols(), mascara.type());
+                try {
+                    vista.copyTo(region);
+                    // El desplazamiento deja los contornos en coordenadas de la zona completa.
+                    Imgproc.findContours(region, contornos, scratch.jerarquia(), params.contourMode,
+                            params.contourMethod, new Point(0, inicio));
+                } finally {
+                    vista.release();
+                    mats.devolver(region);
+                }
+
+                ContourClassifier clasificador = new ContourClassifier(params, anchoZona, alto, scratch);
+                SporeTable.Builder esporas = new SporeTable.Builder();
+                List<MatOfPoint> aceptados = new ArrayList<>();
+                List<MatOfPoint> descartados = new ArrayList<>();
+                int propios = 0;
+                boolean cortado = false;
+                for (int i = 0; i < contornos.size(); i++) {
+                    if (i % 256 == 255) monitor.verificarCancelacion();
+                    MatOfPoint contour = contornos.get(i);
+                    scratch.cargar(contour);
+                    int arriba = scratch.rectY;
+                    int abajo = scratch.rectY + scratch.rectAlto; // Exclusivo.
+
+                    // La región es solo una franja de la máscara: una mancha que llega a su primera o a su última
+                    // fila (con una fila de margen) puede continuar fuera de la franja, y su contorno estaría
+                    // cortado ahí. Los bordes de la zona completa no cortan nada.
+                    boolean tocaBorde = (inicio > 0 && arriba <= inicio + 1) || (fin < alto && abajo >= fin - 1);
+                    if (tocaBorde && arriba < banda.fin && abajo > banda.inicio) {
+                        cortado = true;
+                        break;
+                    }
+
+                    double centroY = scratch.rectY + scratch.rectAlto / 2.0;
+                    if (centroY < banda.inicio || centroY >= banda.fin) {
+                        descartados.add(contour); // Lo cuenta otra banda.
+                        continue;
+                    }
+                    propios++;
+                    if (clasificador.clasificarCargado(contour, esporas)) {
+                        aceptados.add(contour);
+                    } else {
+                        descartados.add(contour);
+                    }
+                }
+
+                if (cortado && !completa) {
+                    solape *= 2;
+                    continue;
+                }
+                for (MatOfPoint contour : descartados) contour.release();
+                entregados = true;
+                banda.contornosPropios = propios;
+                banda.estadisticas = clasificador.getEstadisticas();
+                banda.esporas = esporas;
+                banda.aceptados = aceptados;
+                return;
+            } finally {
+                // Al reintentar con más solape, o si se cancela o falla a mitad de la banda.
+                if (!entregados) {
+                    for (MatOfPoint contour : contornos) contour.release();
+                }
+            }
+        }
+    }
+
+    private static void esperar(List<Future<?>> tareas) {
+        try {
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof RuntimeException) throw (RuntimeException) causa;
+            if (causa instanceof Error) throw (Error) causa;
+            throw new IllegalStateException(causa);
+        } finally {
+            // Si una banda falla, las demás deben terminar antes de liberar la memoria compartida.
+            for (Future<?> tarea : tareas) {
+                try {
+                    tarea.get();
+                } catch (Exception ignorada) {
+                    // Ya se propagó el primer error.
+                }
+            }
+        }
+    }
+
+    /**
+     * Filas [inicio, fin) de la zona que le corresponden a una banda, y lo que encontró en ellas.
+     */
+    private static final class Banda {
+        final int inicio;
+        final int fin;
+        int contornosPropios;
+        FilterStats estadisticas = new FilterStats();
+        SporeTable.Builder esporas = new SporeTable.Builder();
+        List<MatOfPoint> aceptados = new ArrayList<>();
+
+        Banda(int inicio, int fin) {
+            this.inicio = inicio;
+            this.fin = fin;
+        }
+    }
+}
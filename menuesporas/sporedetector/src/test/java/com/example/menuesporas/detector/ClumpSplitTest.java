@@ -0,0 +1,80 @@
+package com.example.menuesporas.detector;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * *ClumpSplitTest*: Mide la división de grumos contra las esporas dibujadas, en dos portaobjetos sintéticos:
+ *
+ * - Densidad muy alta ({@link SyntheticSlide#generarIluminada}): esporas al azar, con las superposiciones que se den.
+ * - Grumos ({@link SyntheticSlide#generarGrumos}): grupos de 1 a 4 esporas de distinto tamaño que se tocan.
+ *
+ * Cada detección se empareja con la espora dibujada que la contiene ({@link SporeMatching}). El error de una
+ * configuración es la suma de esporas perdidas, esporas contadas de más y detecciones de ruido: dividir un grumo
+ * encuentra la espora que el contorno unido perdía, pero partir una espora o una mancha de ruido suma error.
+ * El conteo crudo no sirve para esto: no distingue una espora encontrada de una mancha del fondo.
+ *
+ * El preset que se distribuye ({@link DetectionPresets#densidadMuyAlta()}) se compara con el preset original de
+ * "Densidad Muy Alta" (circularidad {@link #CIRCULARIDAD_ORIGINAL}, solidez {@link #SOLIDEZ_ORIGINAL}, sin
+ * división). Los valores originales están fijos aquí y no se leen del preset: así un cambio de los valores por
+ * defecto se mide contra lo que contaba la aplicación antes del cambio. Si el preset que se distribuye difiere del
+ * original, debe tener menos error que él en los dos portaobjetos.
+ */
+public class ClumpSplitTest {
+
+    private static final int SEMILLAS = 5;
+    private static final int GRUMOS = 400;
+    static final double CIRCULARIDAD_ORIGINAL = 0.38;
+    static final double SOLIDEZ_ORIGINAL = 0.58;
+
+    @BeforeClass
+    public static void cargarOpenCv() {
+        NativeOpenCv.cargar();
+    }
+
+    @Test
+    public void presetDistribuidoEsElOriginalOLoMejora() {
+        SyntheticSlide.Densidad densidad = SyntheticSlide.Densidad.MUY_ALTA;
+        DetectionParams distribuido = densidad.params();
+        DetectionParams original = distribuido.toBuilder()
+                .minCircularity(CIRCULARIDAD_ORIGINAL)
+                .minSolidity(SOLIDEZ_ORIGINAL)
+                .splitClumps(false)
+                .build();
+        if (distribuido.huella().equals(original.huella())) return;
+
+        String[] portaobjetos = {"densidad muy alta", "grumos"};
+        for (int p = 0; p < portaobjetos.length; p++) {
+            long errorOriginal = 0;
+            long errorDistribuido = 0;
+            for (int semilla = 1; semilla <= SEMILLAS; semilla++) {
+                List<double[]> dibujadas = new ArrayList<>();
+                Mat slide = p == 0
+                        ? SyntheticSlide.generarIluminada(densidad, 2048, 1536, semilla, dibujadas)
+                        : SyntheticSlide.generarGrumos(2048, 1536, GRUMOS, semilla, dibujadas);
+                double escala = (double) slide.cols() / original.workWidth;
+                errorOriginal += error(slide, original, dibujadas, escala);
+                errorDistribuido += error(slide, distribuido, dibujadas, escala);
+                slide.release();
+            }
+            assertTrue(String.format("%s: el preset distribuido (error %d) no mejora al original (error %d)",
+                    portaobjetos[p], errorDistribuido, errorOriginal), errorDistribuido < errorOriginal);
+        }
+    }
+
+    private static long error(Mat slide, DetectionParams params, List<double[]> dibujadas, double escala) {
+        DetectionResult r = new SporeDetector().detect(slide, params);
+        try {
+            SporeMatching emparejadas = new SporeMatching(r.esporas, dibujadas, escala);
+            return emparejadas.error() + emparejadas.ruido;
+        } finally {
+            r.release();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.menuesporas.detector;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * *ContourFilterParityTest*: Verifica que el filtrado sin asignaciones ({@link ContourClassifier}) da
+ * exactamente el mismo conteo y las mismas medidas, bit a bit, que el filtrado original
+ * ({@link ReferenceContourFilter}) en portaobjetos sintéticos de todas las densidades.
+ * Solo se comparan los filtros de forma: la cuadrícula y la división de grumos se desactivan porque el
+ * filtrado original no las aplica.
+ */
+public class ContourFilterParityTest {
+
+    private static final int SEMILLAS = 5;
+
+    private static ContourScratch scratch;
+
+    @BeforeClass
+    public static void cargarOpenCv() {
+        NativeOpenCv.cargar();
+        scratch = new ContourScratch();
+    }
+
+    @AfterClass
+    public static void liberar() {
+        scratch.release();
+    }
+
+    @Test
+    public void filtradoIgualAlOriginalConLosPresets() {
+        for (SyntheticSlide.Densidad densidad : SyntheticSlide.Densidad.values()) {
+            for (int semilla = 1; semilla <= SEMILLAS; semilla++) {
+                comparar(densidad, densidad.params(), semilla);
+            }
+        }
+    }
+
+    @Test
+    public void filtradoIgualAlOriginalConLaCuadricula() {
+        for (SyntheticSlide.Densidad densidad : SyntheticSlide.Densidad.values()) {
+            for (int semilla = 1; semilla <= SEMILLAS; semilla++) {
+                comparar(densidad, DetectionPresets.conteoPorCuadro(), semilla);
+            }
+        }
+    }
+
+    private static void comparar(SyntheticSlide.Densidad densidad, DetectionParams params, int semilla) {
+        String caso = densidad + (params.hasGrid() ? " cuadrícula" : " preset") + " semilla " + semilla;
+        Mat slide = SyntheticSlide.generar(densidad, 2048, 1536, semilla);
+        List<MatOfPoint> contornos = contornos(slide, params);
+        slide.release();
+        ContourClassifier clasificador = new ContourClassifier(params.toBuilder().grid(0, 0).splitClumps(false).build(), 0, 0, scratch);
+
+        SporeTable.Builder tabla = new SporeTable.Builder();
+        List<double[]> medidasAceptadas = new ArrayList<>();
+        int discrepancias = 0;
+        for (MatOfPoint contorno : contornos) {
+            double[] referencia = ReferenceContourFilter.medir(contorno);
+            boolean aceptaReferencia = ReferenceContourFilter.acepta(referencia, params);
+            boolean aceptaNuevo = clasificador.clasificar(contorno, tabla);
+            if (aceptaReferencia != aceptaNuevo) {
+                discrepancias++;
+            } else if (aceptaNuevo) {
+                medidasAceptadas.add(referencia);
+            }
+            contorno.release();
+        }
+        assertEquals(caso + ": contornos aceptados por un solo filtrado", 0, discrepancias);
+
+        // Las filas de la tabla están en el orden de los contornos aceptados.
+        SporeTable esporas = tabla.build();
+        assertEquals(caso + ": conteo", medidasAceptadas.size(), esporas.size());
+        for (int i = 0; i < esporas.size(); i++) {
+            double[] referencia = medidasAceptadas.get(i);
+            String fila = caso + ", fila " + i + ": ";
+            assertIgual(fila + "área", referencia[0], esporas.area[i]);
+            assertIgual(fila + "perímetro", referencia[1], esporas.perimetro[i]);
+            assertIgual(fila + "circularidad", referencia[2], esporas.circularidad[i]);
+            assertIgual(fila + "solidez", referencia[3], esporas.solidez[i]);
+            assertIgual(fila + "relación de aspecto", referencia[4], esporas.relacionAspecto[i]);
+        }
+    }
+
+    private static void assertIgual(String mensaje, double esperado, double obtenido) {
+        assertEquals(mensaje, Double.doubleToLongBits(esperado), Double.doubleToLongBits(obtenido));
+    }
+
+    private static List<MatOfPoint> contornos(Mat slide, DetectionParams params) {
+        Mat redimensionada = new Mat();
+        Imgproc.resize(slide, redimensionada, new Size(params.workWidth, params.workHeight));
+        Mat zona = params.roi != null ? redimensionada.submat(params.roi) : redimensionada;
+        Mat gris = new Mat();
+        Imgproc.cvtColor(zona, gris, Imgproc.COLOR_BGR2GRAY);
+        Imgproc.equalizeHist(gris, gris);
+        Imgproc.GaussianBlur(gris, gris, new Size(params.blurKernelSize, params.blurKernelSize), 0);
+        Mat mascara = new Mat();
+        Imgproc.adaptiveThreshold(gris, mascara, 255, Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C,
+                Imgproc.THRESH_BINARY_INV, params.adaptiveBlockSize, params.adaptiveC);
+        SporeDetector.aplicarMorfologia(mascara, Imgproc.MORPH_OPEN, params.openKernelSize, params.openIterations);
+        SporeDetector.aplicarMorfologia(mascara, Imgproc.MORPH_CLOSE, params.closeKernelSize, params.closeIterations);
+
+        List<MatOfPoint> contornos = new ArrayList<>();
+        Mat jerarquia = new Mat();
+        Imgproc.findContours(mascara, contornos, jerarquia, params.contourMode, params.contourMethod);
+
+        jerarquia.release();
+        mascara.release();
+        gris.release();
+        if (zona != redimensionada) zona.release();
+        redimensionada.release();
+        return contornos;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.menuesporas.detector;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Mat;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * *FastCountTest*: Precisión contra velocidad del conteo por componentes conexas ({@link ComponentSporeCounter})
+ * frente al camino de contornos ({@link SporeDetector}) en los portaobjetos sintéticos de todas las densidades, con
+ * su preset y con el del conteo por cuadro. Las imágenes reales se miden aparte con {@link FastCountCheck}.
+ *
+ * Falla si la diferencia total de conteo supera {@link #TOLERANCIA} o si el conteo rápido es más lento.
+ */
+public class FastCountTest {
+
+    private static final int SEMILLAS = 5;
+    private static final double TOLERANCIA = 0.05;
+
+    @BeforeClass
+    public static void cargarOpenCv() {
+        NativeOpenCv.cargar();
+    }
+
+    @Test
+    public void conteoRapidoCoincideYEsMasRapido() {
+        CountComparison totales = new CountComparison("Total");
+        StringBuilder detalle = new StringBuilder();
+        for (SyntheticSlide.Densidad densidad : SyntheticSlide.Densidad.values()) {
+            DetectionParams[] presets = {densidad.params(), DetectionPresets.conteoPorCuadro()};
+            for (DetectionParams params : presets) {
+                CountComparison conjunto = new CountComparison(
+                        densidad + (params.hasGrid() ? " cuadrícula" : " preset"));
+                for (int semilla = 1; semilla <= SEMILLAS; semilla++) {
+                    Mat slide = SyntheticSlide.generar(densidad, 2048, 1536, semilla);
+                    conjunto.medir(slide, params);
+                    slide.release();
+                }
+                detalle.append('\n').append(conjunto);
+                totales.sumar(conjunto);
+            }
+        }
+        detalle.append('\n').append(totales);
+
+        assertTrue("el conteo rápido se aleja más de " + (int) (TOLERANCIA * 100)
+                + "% del conteo por contornos:" + detalle, totales.diferenciaRelativa() <= TOLERANCIA);
+        assertTrue("el conteo rápido es más lento que el conteo por contornos:" + detalle,
+                totales.nanosRapido <= totales.nanosContornos);
+    }
+}
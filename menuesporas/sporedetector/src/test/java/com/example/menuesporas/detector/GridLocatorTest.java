@@ -0,0 +1,126 @@
+package com.example.menuesporas.detector;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * *GridLocatorTest*: Dibuja una cuadrícula de 5x5 (con líneas dobles y subdivisiones) sobre portaobjetos
+ * sintéticos, la desplaza y la deforma con una perspectiva aleatoria, y verifica que {@link GridLocator}
+ * encuentra sus esquinas con un error menor al 2% del lado y en menos de {@link #LIMITE_MS} ms.
+ */
+public class GridLocatorTest {
+
+    private static final int SEMILLAS = 10;
+    private static final double LIMITE_MS = 100;
+    private static final double LADO_MM = 20.0;
+    private static final int ANCHO = 640;
+    private static final int ALTO = 480;
+
+    @BeforeClass
+    public static void cargarOpenCv() {
+        NativeOpenCv.cargar();
+    }
+
+    @Test
+    public void encuentraLaCuadriculaEnTodasLasDensidades() {
+        for (SyntheticSlide.Densidad densidad : SyntheticSlide.Densidad.values()) {
+            for (int semilla = 1; semilla <= SEMILLAS; semilla++) {
+                Random random = new Random(semilla);
+                Point[] verdaderas = esquinasAleatorias(random);
+                Mat luminancia = generar(densidad, semilla, verdaderas);
+
+                String caso = densidad + " semilla " + semilla;
+                GridLocator.Cuadricula cuadricula = GridLocator.localizar(luminancia, 5, LADO_MM, LADO_MM);
+                luminancia.release();
+                assertNotNull(caso + ": cuadrícula no encontrada", cuadricula);
+
+                double lado = Math.hypot(verdaderas[1].x - verdaderas[0].x, verdaderas[1].y - verdaderas[0].y);
+                double errorMaximo = 0;
+                for (int i = 0; i < 4; i++) {
+                    errorMaximo = Math.max(errorMaximo, Math.hypot(cuadricula.esquinas[i].x - verdaderas[i].x,
+                            cuadricula.esquinas[i].y - verdaderas[i].y));
+                }
+                double ms = cuadricula.duracionNanos / 1e6;
+                String detalle = String.format(Locale.ROOT, "%s: error de esquinas %.1f px, %s", caso, errorMaximo,
+                        cuadricula);
+                cuadricula.release();
+                assertTrue(detalle, errorMaximo <= lado * 0.02);
+                assertTrue(detalle, ms < LIMITE_MS);
+            }
+        }
+    }
+
+    /**
+     * Esquinas de la cuadrícula en la imagen de trabajo: un cuadrado de unos 330 px, desplazado y con cada
+     * esquina movida hasta 15 px para simular la perspectiva.
+     */
+    private static Point[] esquinasAleatorias(Random random) {
+        double lado = 300 + random.nextDouble() * 60;
+        double x0 = 40 + random.nextDouble() * (ANCHO - lado - 80);
+        double y0 = 30 + random.nextDouble() * (ALTO - lado - 60);
+        Point[] esquinas = {new Point(x0, y0), new Point(x0 + lado, y0), new Point(x0 + lado, y0 + lado),
+                new Point(x0, y0 + lado)};
+        for (Point p : esquinas) {
+            p.x += (random.nextDouble() - 0.5) * 30;
+            p.y += (random.nextDouble() - 0.5) * 30;
+        }
+        return esquinas;
+    }
+
+    /**
+     * Luminancia de trabajo con la cuadrícula: se dibuja enderezada en un lienzo cuadrado y se proyecta
+     * sobre el portaobjetos con la homografía de las esquinas dadas.
+     */
+    private static Mat generar(SyntheticSlide.Densidad densidad, long semilla, Point[] esquinas) {
+        Mat slide = SyntheticSlide.generar(densidad, 2048, 1536, semilla);
+        Mat color = new Mat();
+        Imgproc.resize(slide, color, new Size(ANCHO, ALTO), 0, 0, Imgproc.INTER_AREA);
+        slide.release();
+        Mat luminancia = new Mat();
+        Imgproc.cvtColor(color, luminancia, Imgproc.COLOR_BGR2GRAY);
+        color.release();
+
+        // Cuadrícula enderezada: líneas oscuras dobles en los 6 bordes de cuadro y simples en las subdivisiones.
+        int lado = 400;
+        Mat lineas = new Mat(lado, lado, CvType.CV_8UC1, Scalar.all(0));
+        for (int k = 0; k <= 20; k++) {
+            int pos = Math.min(lado - 1, k * lado / 20);
+            boolean borde = k % 4 == 0;
+            int grosor = borde ? 2 : 1;
+            Imgproc.line(lineas, new Point(pos, 0), new Point(pos, lado - 1), Scalar.all(255), grosor);
+            Imgproc.line(lineas, new Point(0, pos), new Point(lado - 1, pos), Scalar.all(255), grosor);
+            if (borde && k < 20) {
+                Imgproc.line(lineas, new Point(pos + 4, 0), new Point(pos + 4, lado - 1), Scalar.all(255), 1);
+                Imgproc.line(lineas, new Point(0, pos + 4), new Point(lado - 1, pos + 4), Scalar.all(255), 1);
+            }
+        }
+        MatOfPoint2f origen = new MatOfPoint2f(new Point(0, 0), new Point(lado, 0), new Point(lado, lado),
+                new Point(0, lado));
+        MatOfPoint2f destino = new MatOfPoint2f(esquinas);
+        Mat homografia = Imgproc.getPerspectiveTransform(origen, destino);
+        Mat proyectadas = new Mat();
+        Imgproc.warpPerspective(lineas, proyectadas, homografia, new Size(ANCHO, ALTO));
+        // Las líneas quedan de un gris oscuro, como en el microscopio, no negras.
+        luminancia.setTo(new Scalar(60), proyectadas);
+
+        origen.release();
+        destino.release();
+        homografia.release();
+        lineas.release();
+        proyectadas.release();
+        return luminancia;
+    }
+}
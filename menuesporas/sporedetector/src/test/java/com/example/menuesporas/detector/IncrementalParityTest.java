@@ -0,0 +1,138 @@
+package com.example.menuesporas.detector;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * *IncrementalParityTest*: Simula una sesión de ajuste de parámetros sobre portaobjetos sintéticos y verifica
+ * que cada detección de {@link IncrementalDetector} coincide con la de {@link SporeDetector} con los mismos
+ * parámetros, y que solo se recalculan las etapas que corresponden (todas, con el preset multiescala de muestra
+ * mixta).
+ */
+public class IncrementalParityTest {
+
+    private static final int SEMILLAS = 3;
+
+    @BeforeClass
+    public static void cargarOpenCv() {
+        NativeOpenCv.cargar();
+    }
+
+    /**
+     * Un cambio de la sesión: los parámetros nuevos y la etapa desde la que se debe recalcular.
+     */
+    private static final class Cambio {
+        final String nombre;
+        final DetectionParams params;
+        final int etapaEsperada;
+
+        Cambio(String nombre, DetectionParams params, int etapaEsperada) {
+            this.nombre = nombre;
+            this.params = params;
+            this.etapaEsperada = etapaEsperada;
+        }
+    }
+
+    @Test
+    public void incrementalIgualQueCompletaConLosPresets() {
+        for (SyntheticSlide.Densidad densidad : SyntheticSlide.Densidad.values()) {
+            comparar(densidad, densidad.params(), "preset");
+        }
+    }
+
+    @Test
+    public void incrementalIgualQueCompletaConLaCuadricula() {
+        for (SyntheticSlide.Densidad densidad : SyntheticSlide.Densidad.values()) {
+            comparar(densidad, DetectionPresets.conteoPorCuadro(), "cuadrícula");
+        }
+    }
+
+    @Test
+    public void incrementalIgualQueCompletaConMuestraMixta() {
+        for (SyntheticSlide.Densidad densidad : SyntheticSlide.Densidad.values()) {
+            comparar(densidad, DetectionPresets.muestraMixta(), "multiescala");
+        }
+    }
+
+    private static void comparar(SyntheticSlide.Densidad densidad, DetectionParams inicial, String nombre) {
+        SporeDetector completo = new SporeDetector();
+        for (int semilla = 1; semilla <= SEMILLAS; semilla++) {
+            Mat slide = SyntheticSlide.generar(densidad, 2048, 1536, semilla);
+            IncrementalDetector incremental = new IncrementalDetector(slide.clone());
+            try {
+                for (Cambio cambio : sesion(inicial)) {
+                    String caso = densidad + " " + nombre + " semilla " + semilla + ", " + cambio.nombre;
+                    DetectionResult esperado = completo.detect(slide, cambio.params);
+                    DetectionResult obtenido = incremental.detect(cambio.params);
+                    try {
+                        assertEquals(caso + ": etapa inicial",
+                                IncrementalDetector.nombreEtapa(cambio.etapaEsperada),
+                                IncrementalDetector.nombreEtapa(incremental.getUltimaEtapaInicial()));
+                        assertIguales(caso, esperado, obtenido);
+                    } finally {
+                        esperado.release();
+                        obtenido.release();
+                    }
+                }
+            } finally {
+                incremental.release();
+                slide.release();
+            }
+        }
+    }
+
+    /**
+     * Cambios de una sesión de ajuste. El preset multiescala no guarda etapas: cada cambio recalcula todo.
+     */
+    private static List<Cambio> sesion(DetectionParams p) {
+        List<Cambio> cambios = sesionPorEtapas(p);
+        if (p.pyramidLevels <= 1) return cambios;
+        List<Cambio> completos = new ArrayList<>();
+        for (Cambio c : cambios) completos.add(new Cambio(c.nombre, c.params, IncrementalDetector.ETAPA_PREPARACION));
+        return completos;
+    }
+
+    private static List<Cambio> sesionPorEtapas(DetectionParams p) {
+        List<Cambio> cambios = new ArrayList<>();
+        cambios.add(new Cambio("inicial", p, IncrementalDetector.ETAPA_PREPARACION));
+        cambios.add(new Cambio("mismos parámetros", p, IncrementalDetector.ETAPA_FILTRADO));
+        p = p.toBuilder().area(p.minArea + 2, p.maxArea).build();
+        cambios.add(new Cambio("minArea", p, IncrementalDetector.ETAPA_FILTRADO));
+        p = p.toBuilder().minCircularity(p.minCircularity + 0.1).build();
+        cambios.add(new Cambio("minCircularity", p, IncrementalDetector.ETAPA_FILTRADO));
+        p = p.toBuilder().adaptiveC(p.adaptiveC + 1).build();
+        cambios.add(new Cambio("adaptiveC", p, IncrementalDetector.ETAPA_UMBRAL));
+        p = p.toBuilder().open(p.openKernelSize, p.openIterations + 1).build();
+        cambios.add(new Cambio("openIterations", p, IncrementalDetector.ETAPA_MORFOLOGIA));
+        p = p.toBuilder().blurKernelSize(p.blurKernelSize + 2).build();
+        cambios.add(new Cambio("blurKernelSize", p, IncrementalDetector.ETAPA_DESENFOQUE));
+        p = p.toBuilder().minSolidity(p.minSolidity - 0.1).build();
+        cambios.add(new Cambio("minSolidity", p, IncrementalDetector.ETAPA_FILTRADO));
+        return cambios;
+    }
+
+    private static void assertIguales(String caso, DetectionResult esperado, DetectionResult obtenido) {
+        assertEquals(caso + ": conteo", esperado.getConteo(), obtenido.getConteo());
+        assertEquals(caso + ": contornos iniciales", esperado.contornosIniciales, obtenido.contornosIniciales);
+        assertArrayEquals(caso + ": conteo por cuadro", esperado.conteoPorCuadro, obtenido.conteoPorCuadro);
+        assertEquals(caso + ": filtrado", esperado.estadisticasFiltro.toString(), obtenido.estadisticasFiltro.toString());
+        for (int i = 0; i < esperado.esporas.size(); i++) {
+            Espora a = esperado.esporas.espora(i);
+            Espora b = obtenido.esporas.espora(i);
+            String fila = caso + ", espora " + i + ": ";
+            assertEquals(fila + "centro x", a.centroX, b.centroX, 0);
+            assertEquals(fila + "centro y", a.centroY, b.centroY, 0);
+            assertEquals(fila + "área", a.area, b.area, 0);
+            assertEquals(fila + "solidez", a.solidez, b.solidez, 0);
+            assertEquals(fila + "fila", a.fila, b.fila);
+            assertEquals(fila + "columna", a.columna, b.columna);
+        }
+    }
+}
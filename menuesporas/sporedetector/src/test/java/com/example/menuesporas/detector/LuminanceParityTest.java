@@ -0,0 +1,116 @@
+package com.example.menuesporas.detector;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * *LuminanceParityTest*: Verifica que la entrada de luminancia ({@link LuminanceConverter}) es equivalente a la
+ * entrada RGBA con cvtColor(COLOR_BGR2GRAY):
+ *
+ * 1. Los 2^24 colores opacos dan exactamente el mismo valor de gris que OpenCV.
+ * 2. En portaobjetos sintéticos de todas las densidades, a la resolución de trabajo, el conteo, el conteo por cuadro
+ *    y los contadores de filtrado son los mismos con ambas entradas, en {@link SporeDetector} y en
+ *    {@link TiledSporeDetector}.
+ */
+public class LuminanceParityTest {
+
+    private static final int SEMILLAS = 5;
+
+    @BeforeClass
+    public static void cargarOpenCv() {
+        NativeOpenCv.cargar();
+    }
+
+    /**
+     * Recorre todos los colores opacos en una imagen de 4096x4096 RGBA y compara el gris píxel a píxel.
+     */
+    @Test
+    public void todosLosColoresDanElGrisDeOpenCv() {
+        int lado = 4096;
+        byte[] rgba = new byte[lado * lado * 4];
+        int[] argb = new int[lado * lado];
+        for (int color = 0; color < argb.length; color++) {
+            argb[color] = 0xFF000000 | color;
+            rgba[color * 4] = (byte) (color >> 16);
+            rgba[color * 4 + 1] = (byte) (color >> 8);
+            rgba[color * 4 + 2] = (byte) color;
+            rgba[color * 4 + 3] = (byte) 0xFF;
+        }
+        Mat imagen = new Mat(lado, lado, CvType.CV_8UC4);
+        Mat gris = new Mat();
+        imagen.put(0, 0, rgba);
+        Imgproc.cvtColor(imagen, gris, Imgproc.COLOR_BGR2GRAY);
+        byte[] esperado = new byte[argb.length];
+        gris.get(0, 0, esperado);
+        imagen.release();
+        gris.release();
+
+        byte[] obtenido = new byte[argb.length];
+        LuminanceConverter.convertir(argb, 0, argb.length, obtenido, 0);
+        for (int i = 0; i < argb.length; i++) {
+            if (esperado[i] != obtenido[i]) {
+                assertEquals(String.format("gris del color %06X", i), esperado[i] & 0xFF, obtenido[i] & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void mismosConteosConLuminanciaQueConRgba() {
+        ExecutorService ejecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        SporeDetector secuencial = new SporeDetector();
+        TiledSporeDetector porBandas = new TiledSporeDetector(ejecutor, 4);
+        try {
+            for (SyntheticSlide.Densidad densidad : SyntheticSlide.Densidad.values()) {
+                DetectionParams[] presets = {densidad.params(), DetectionPresets.conteoPorCuadro()};
+                for (DetectionParams params : presets) {
+                    for (int semilla = 1; semilla <= SEMILLAS; semilla++) {
+                        String caso = densidad + (params.hasGrid() ? " cuadrícula" : " preset") + " semilla " + semilla;
+                        Mat rgba = SyntheticSlide.generar(densidad, params.workWidth, params.workHeight, semilla);
+                        Mat luminancia = aLuminancia(rgba);
+                        comparar(caso + " (secuencial)", secuencial.detect(rgba, params), secuencial.detect(luminancia, params));
+                        comparar(caso + " (por bandas)", porBandas.detect(rgba, params), porBandas.detect(luminancia, params));
+                        rgba.release();
+                        luminancia.release();
+                    }
+                }
+            }
+        } finally {
+            ejecutor.shutdown();
+        }
+    }
+
+    /**
+     * Luminancia de un Mat RGBA opaco, pasando por los píxeles ARGB como lo hace ImageLoader con un Bitmap.
+     */
+    private static Mat aLuminancia(Mat rgba) {
+        int ancho = rgba.cols();
+        byte[] bytes = SyntheticSlide.aBytes(rgba);
+        return LuminanceConverter.desdeArgb((destino, primeraFila, filas) -> {
+            for (int i = 0; i < ancho * filas; i++) {
+                int o = (primeraFila * ancho + i) * 4;
+                destino[i] = 0xFF000000 | (bytes[o] & 0xFF) << 16 | (bytes[o + 1] & 0xFF) << 8 | (bytes[o + 2] & 0xFF);
+            }
+        }, ancho, rgba.rows());
+    }
+
+    private static void comparar(String caso, DetectionResult esperado, DetectionResult obtenido) {
+        try {
+            assertEquals(caso + ": conteo", esperado.getConteo(), obtenido.getConteo());
+            assertEquals(caso + ": contornos iniciales", esperado.contornosIniciales, obtenido.contornosIniciales);
+            assertArrayEquals(caso + ": conteo por cuadro", esperado.conteoPorCuadro, obtenido.conteoPorCuadro);
+            assertEquals(caso + ": filtrado", esperado.estadisticasFiltro.toString(), obtenido.estadisticasFiltro.toString());
+        } finally {
+            esperado.release();
+            obtenido.release();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.menuesporas.detector;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * *MatPoolTest*: Comprueba que detectar con un {@link MatPool} da exactamente los mismos resultados que sin
+ * pool, que después de la primera imagen (secuencial y por bandas) el pool ya no crea Mats nuevos, y que el
+ * {@link LeakTracker} detecta un Mat prestado que nunca se devuelve.
+ */
+public class MatPoolTest {
+
+    private static final int IMAGENES = 20;
+
+    @BeforeClass
+    public static void cargarOpenCv() {
+        NativeOpenCv.cargar();
+    }
+
+    @Test
+    public void mismosResultadosYMemoriaEstable() {
+        MatPool pool = new MatPool(8, 64L * 1024 * 1024);
+        pool.setRastrearFugas(true);
+        SporeDetector sinPool = new SporeDetector();
+        SporeDetector conPool = new SporeDetector(pool);
+        // Con un solo hilo de bandas la cantidad de Mats prestados a la vez no depende del orden de los hilos.
+        ExecutorService hilos = Executors.newSingleThreadExecutor();
+        TiledSporeDetector porBandas = new TiledSporeDetector(hilos, 4, pool);
+
+        long creadosTrasPrimera = -1;
+        try {
+            for (int i = 0; i < IMAGENES; i++) {
+                SyntheticSlide.Densidad densidad = SyntheticSlide.Densidad.values()[i % SyntheticSlide.Densidad.values().length];
+                Mat slide = SyntheticSlide.generar(densidad, 2048, 1536, i + 1);
+                DetectionParams params = densidad.params();
+                DetectionResult esperado = sinPool.detect(slide, params);
+                DetectionResult secuencial = conPool.detect(slide, params);
+                DetectionResult bandas = porBandas.detect(slide, params);
+                slide.release();
+                try {
+                    String caso = "imagen " + i + ": ";
+                    assertEquals(caso + "conteo con pool", esperado.getConteo(), secuencial.getConteo());
+                    assertArrayEquals(caso + "conteo por cuadro con pool", esperado.conteoPorCuadro,
+                            secuencial.conteoPorCuadro);
+                    assertEquals(caso + "imagen de trabajo con pool", 0,
+                            pixelesDistintos(secuencial.imagenTrabajo, esperado.imagenTrabajo));
+                    assertEquals(caso + "conteo por bandas con pool", esperado.getConteo(), bandas.getConteo());
+                } finally {
+                    esperado.release();
+                    secuencial.release();
+                    bandas.release();
+                }
+                // Los cuatro presets de densidad usan la misma resolución: desde la segunda vuelta, todo se reutiliza.
+                if (i == SyntheticSlide.Densidad.values().length - 1) creadosTrasPrimera = pool.estadisticas().creados;
+            }
+        } finally {
+            hilos.shutdown();
+        }
+        PoolStats despues = pool.estadisticas();
+        assertEquals("Mats creados después de la primera vuelta: " + despues, creadosTrasPrimera, despues.creados);
+        assertEquals("Mats prestados sin devolver: " + despues, 0, despues.enUso);
+    }
+
+    /**
+     * Un Mat que se pide y se pierde debe aparecer como fuga cuando lo recolecta el GC.
+     */
+    @Test
+    public void detectaUnMatQueNoSeDevuelve() throws InterruptedException {
+        MatPool pool = new MatPool(8, 64L * 1024 * 1024);
+        pool.setRastrearFugas(true);
+        fuga(pool);
+        long fugas = 0;
+        for (int intento = 0; intento < 50 && fugas == 0; intento++) {
+            System.gc();
+            Thread.sleep(20);
+            fugas = pool.estadisticas().fugas;
+        }
+        assertEquals("fugas detectadas", 1, fugas);
+    }
+
+    private static int pixelesDistintos(Mat a, Mat b) {
+        Mat d = new Mat();
+        try {
+            Core.absdiff(a, b, d);
+            return Core.countNonZero(d.reshape(1));
+        } finally {
+            d.release();
+        }
+    }
+
+    private static void fuga(MatPool pool) {
+        pool.obtener(16, 16, CvType.CV_8UC1);
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.menuesporas.detector;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * *MultiScaleTest*: Compara, en muestras sintéticas mixtas ({@link SyntheticSlide#generarMixta}), la detección
+ * multiescala del preset muestra_mixta con la misma detección en una sola escala y con la alternativa que usaban
+ * los usuarios: correr los cuatro presets de densidad y quedarse con el que más esporas encuentra.
+ *
+ * Cada detección se empareja con la espora dibujada que la contiene ({@link SporeMatching}): así se separan las
+ * esporas encontradas, las contadas más de una vez (una espora grande partida en varios contornos, o la misma
+ * espora en dos escalas) y el ruido del fondo. El ruido no se compara: con el área mínima del preset, la
+ * ecualización convierte el ruido plano del portaobjetos sintético en manchas de pocos píxeles en cualquier camino,
+ * y eso no depende de la unión de escalas.
+ *
+ * Falla si los tramos de áreas no cubren el rango del preset, si la pirámide cuenta dos veces más de una
+ * {@link #TOLERANCIA} de las esporas, si su error (esporas perdidas más esporas contadas de más) es mayor que el de
+ * la detección en una sola escala, o si cuesta más que correr los cuatro presets.
+ */
+public class MultiScaleTest {
+
+    private static final int SEMILLAS = 5;
+    private static final int ESPORAS = 400;
+    private static final double TOLERANCIA = 0.03;
+
+    @BeforeClass
+    public static void cargarOpenCv() {
+        NativeOpenCv.cargar();
+    }
+
+    @Test
+    public void tramosCubrenElRangoDelPreset() {
+        DetectionParams mixta = DetectionPresets.muestraMixta();
+        verificarTramos(mixta);
+        verificarTramos(mixta.toBuilder().pyramidLevels(3).build());
+        verificarTramos(mixta.toBuilder().area(5, Double.POSITIVE_INFINITY).build());
+    }
+
+    @Test
+    public void multiescalaMejoraUnaEscalaYCuestaMenosQueCuatroPresets() {
+        DetectionParams mixta = DetectionPresets.muestraMixta();
+        DetectionParams unaEscala = mixta.toBuilder().pyramidLevels(1).build();
+        SporeDetector detector = new SporeDetector();
+        long nanosPiramide = 0;
+        long nanosPresets = 0;
+        for (int semilla = 1; semilla <= SEMILLAS; semilla++) {
+            List<double[]> dibujadas = new ArrayList<>();
+            Mat slide = SyntheticSlide.generarMixta(2048, 1536, ESPORAS, semilla, dibujadas);
+            int real = dibujadas.size();
+            double escala = (double) slide.cols() / mixta.workWidth;
+
+            long inicio = System.nanoTime();
+            DetectionResult piramide = detector.detect(slide, mixta);
+            nanosPiramide += System.nanoTime() - inicio;
+            DetectionResult simple = detector.detect(slide, unaEscala);
+            SporeMatching enPiramide = new SporeMatching(piramide.esporas, dibujadas, escala);
+            SporeMatching enSimple = new SporeMatching(simple.esporas, dibujadas, escala);
+            piramide.release();
+            simple.release();
+
+            inicio = System.nanoTime();
+            for (SyntheticSlide.Densidad densidad : SyntheticSlide.Densidad.values()) {
+                detector.detect(slide, densidad.params()).release();
+            }
+            nanosPresets += System.nanoTime() - inicio;
+            slide.release();
+
+            String caso = "semilla " + semilla + ": reales " + real + ", multiescala " + enPiramide
+                    + ", una escala " + enSimple;
+            assertTrue(caso + ": la detección multiescala cuenta esporas de más",
+                    enPiramide.dobles <= real * TOLERANCIA + 1);
+            assertTrue(caso + ": la detección multiescala queda más lejos del conteo real que una escala",
+                    enPiramide.error() <= enSimple.error());
+        }
+        assertTrue(String.format("la detección multiescala (%.1f ms) cuesta más que correr los cuatro presets "
+                        + "(%.1f ms)", nanosPiramide / 1e6, nanosPresets / 1e6),
+                nanosPiramide <= nanosPresets);
+    }
+
+    /**
+     * Los tramos deben empezar en el área mínima, terminar en la máxima y ser crecientes.
+     */
+    private static void verificarTramos(DetectionParams params) {
+        double[] limites = PyramidSporeDetector.limitesDeArea(params);
+        String caso = "tramos de áreas para " + params + ": " + Arrays.toString(limites);
+        assertEquals(caso, params.pyramidLevels + 1, limites.length);
+        assertEquals(caso, params.minArea, limites[0], 0);
+        assertEquals(caso, params.maxArea, limites[limites.length - 1], 0);
+        for (int i = 1; i < limites.length; i++) {
+            assertTrue(caso, limites[i] > limites[i - 1]);
+        }
+    }
+}
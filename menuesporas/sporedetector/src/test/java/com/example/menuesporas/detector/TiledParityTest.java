@@ -0,0 +1,92 @@
+package com.example.menuesporas.detector;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * *TiledParityTest*: Verifica que la detección por bandas ({@link TiledSporeDetector}) da el mismo conteo,
+ * el mismo conteo por cuadro, los mismos contadores de filtrado y las mismas medidas que el pipeline
+ * secuencial ({@link SporeDetector}) en portaobjetos sintéticos de todas las densidades, con y sin cuadrícula,
+ * con varios números de bandas.
+ */
+public class TiledParityTest {
+
+    private static final int SEMILLAS = 5;
+    private static final int[] BANDAS = {2, 4, 7};
+
+    private static ExecutorService ejecutor;
+
+    @BeforeClass
+    public static void cargarOpenCv() {
+        NativeOpenCv.cargar();
+        ejecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @AfterClass
+    public static void detenerEjecutor() {
+        ejecutor.shutdown();
+    }
+
+    @Test
+    public void porBandasIgualQueSecuencialConLosPresets() {
+        for (SyntheticSlide.Densidad densidad : SyntheticSlide.Densidad.values()) {
+            comparar(densidad, densidad.params());
+        }
+    }
+
+    @Test
+    public void porBandasIgualQueSecuencialConLaCuadricula() {
+        for (SyntheticSlide.Densidad densidad : SyntheticSlide.Densidad.values()) {
+            comparar(densidad, DetectionPresets.conteoPorCuadro());
+        }
+    }
+
+    private static void comparar(SyntheticSlide.Densidad densidad, DetectionParams params) {
+        SporeDetector secuencial = new SporeDetector();
+        for (int bandas : BANDAS) {
+            TiledSporeDetector porBandas = new TiledSporeDetector(ejecutor, bandas);
+            for (int semilla = 1; semilla <= SEMILLAS; semilla++) {
+                String caso = densidad + (params.hasGrid() ? " cuadrícula" : " preset") + " bandas " + bandas
+                        + " semilla " + semilla;
+                Mat slide = SyntheticSlide.generar(densidad, 2048, 1536, semilla);
+                DetectionResult esperado = secuencial.detect(slide, params);
+                DetectionResult obtenido = porBandas.detect(slide, params);
+                slide.release();
+                try {
+                    assertEquals(caso + ": conteo", esperado.getConteo(), obtenido.getConteo());
+                    assertEquals(caso + ": contornos iniciales", esperado.contornosIniciales,
+                            obtenido.contornosIniciales);
+                    assertArrayEquals(caso + ": conteo por cuadro", esperado.conteoPorCuadro, obtenido.conteoPorCuadro);
+                    assertEquals(caso + ": filtrado", esperado.estadisticasFiltro.toString(),
+                            obtenido.estadisticasFiltro.toString());
+                    // El orden de las esporas cambia entre bandas; se comparan ordenadas.
+                    assertEquals(caso + ": esporas", firmas(esperado), firmas(obtenido));
+                } finally {
+                    esperado.release();
+                    obtenido.release();
+                }
+            }
+        }
+    }
+
+    private static List<String> firmas(DetectionResult resultado) {
+        List<String> firmas = new ArrayList<>();
+        for (int i = 0; i < resultado.esporas.size(); i++) {
+            Espora e = resultado.esporas.espora(i);
+            firmas.add(e.centroX + "," + e.centroY + "," + e.area + "," + e.perimetro + ","
+                    + e.solidez + "," + e.fila + "," + e.columna);
+        }
+        firmas.sort(null);
+        return firmas;
+    }
+}